@@ -20,15 +20,26 @@ import com.mongodb.client.MongoClient
 import com.mongodb.client.MongoClients
 import groovy.transform.CompileStatic
 import org.grails.datastore.gorm.events.ConfigurableApplicationContextEventPublisher
+import io.micrometer.core.instrument.MeterRegistry
+import org.grails.datastore.gorm.utils.ClasspathEntityScanner
+import org.grails.datastore.mapping.core.connections.ConnectionSource
 import org.grails.datastore.mapping.mongo.MongoDatastore
+import org.grails.datastore.mapping.mongo.config.MongoSettings
+import org.grails.datastore.mapping.mongo.connections.MongoConnectionSourceCustomizer
+import org.grails.datastore.mapping.mongo.connections.MongoConnectionSourceFactory
+import org.grails.datastore.mapping.mongo.metrics.MongoMetricsCustomizer
 import org.grails.datastore.mapping.services.Service
 import org.springframework.beans.BeansException
 import org.springframework.beans.factory.annotation.Autowired
 import org.springframework.beans.factory.config.ConfigurableListableBeanFactory
 import org.springframework.boot.autoconfigure.AutoConfigurationPackages
 import org.springframework.boot.autoconfigure.AutoConfigureAfter
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty
 import org.springframework.boot.autoconfigure.mongo.MongoAutoConfiguration
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer
 import org.springframework.boot.autoconfigure.mongo.MongoProperties
 import org.springframework.context.ApplicationContext
 import org.springframework.context.ApplicationContextAware
@@ -50,7 +61,7 @@ import java.beans.Introspector
 @CompileStatic
 @Configuration
 @ConditionalOnMissingBean(MongoDatastore)
-@AutoConfigureAfter(MongoAutoConfiguration)
+@AutoConfigureAfter(value = MongoAutoConfiguration, name = "org.springframework.boot.actuate.autoconfigure.metrics.CompositeMeterRegistryAutoConfiguration")
 class MongoDbGormAutoConfiguration implements ApplicationContextAware{
 
     @Autowired(required = false)
@@ -62,6 +73,9 @@ class MongoDbGormAutoConfiguration implements ApplicationContextAware{
     @Autowired(required = false)
     MongoClientSettings mongoOptions
 
+    @Autowired(required = false)
+    List<MongoConnectionSourceCustomizer> connectionSourceCustomizers = []
+
     ConfigurableApplicationContext applicationContext
 
     @Bean
@@ -91,7 +105,9 @@ class MongoDbGormAutoConfiguration implements ApplicationContextAware{
             datastore = new MongoDatastore(mongo, environment,eventPublisher, packages as Package[])
         }
         else {
-            datastore = new MongoDatastore(environment, eventPublisher, packages as Package[])
+            MongoConnectionSourceFactory connectionSourceFactory = new MongoConnectionSourceFactory()
+            connectionSourceFactory.customizers = connectionSourceCustomizers
+            datastore = new MongoDatastore(environment, connectionSourceFactory, eventPublisher, new ClasspathEntityScanner().scan(packages as Package[]))
         }
 
         for(Service service in datastore.getServices()) {
@@ -116,6 +132,33 @@ class MongoDbGormAutoConfiguration implements ApplicationContextAware{
         mongoDatastore().getTransactionManager()
     }
 
+    /**
+     * Instruments the connection sources of the datastore with Micrometer when a {@link MeterRegistry} is available. The
+     * {@link MongoClient} auto-configured by Spring Boot, which the datastore uses when present, is instrumented as the client of
+     * the default connection source
+     *
+     * @since 9.0
+     */
+    @CompileStatic
+    @Configuration
+    @ConditionalOnClass(name = "io.micrometer.core.instrument.MeterRegistry")
+    @ConditionalOnBean(type = "io.micrometer.core.instrument.MeterRegistry")
+    @ConditionalOnProperty(name = MongoSettings.SETTING_METRICS_ENABLED, havingValue = "true", matchIfMissing = true)
+    static class MongoMetricsConfiguration {
+
+        @Bean
+        MongoMetricsCustomizer mongoMetricsCustomizer(MeterRegistry meterRegistry) {
+            new MongoMetricsCustomizer(meterRegistry)
+        }
+
+        @Bean
+        MongoClientSettingsBuilderCustomizer mongoMetricsClientSettingsCustomizer(MongoMetricsCustomizer mongoMetricsCustomizer) {
+            return { MongoClientSettings.Builder builder ->
+                mongoMetricsCustomizer.customize(ConnectionSource.DEFAULT, null, builder)
+            } as MongoClientSettingsBuilderCustomizer
+        }
+    }
+
     @Override
     void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
         if(!(applicationContext instanceof ConfigurableApplicationContext)) {
@@ -1,11 +1,15 @@
 package org.grails.datastore.gorm.mongodb.boot.autoconfigure
 
 import grails.gorm.annotation.Entity
+import io.micrometer.core.instrument.MeterRegistry
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.grails.datastore.mapping.mongo.metrics.MongoCommandMetricsListener
 import org.springframework.boot.autoconfigure.AutoConfigurationPackages
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration
 import org.springframework.boot.autoconfigure.context.PropertyPlaceholderAutoConfiguration
 import org.springframework.boot.autoconfigure.mongo.MongoAutoConfiguration
 import org.springframework.context.annotation.AnnotationConfigApplicationContext
+import org.springframework.context.annotation.Bean
 import org.springframework.context.annotation.ComponentScan
 import org.springframework.context.annotation.Configuration
 import org.springframework.context.annotation.Import
@@ -38,6 +42,26 @@ class MongoDbGormAutoConfigurationSpec extends Specification{
             Person.count() != null
     }
 
+    void 'Test that the client auto-configured by Spring Boot is instrumented'() {
+        given:"A meter registry"
+            context.register(MeterRegistryConfiguration)
+
+        when:"The context is refreshed and a query is executed"
+            context.refresh()
+            Person.count()
+
+        then:"The commands of the client are timed"
+            !context.getBean(MeterRegistry).find(MongoCommandMetricsListener.METRIC_NAME).tags('entity', Person.name).timers().isEmpty()
+    }
+
+    @Configuration
+    static class MeterRegistryConfiguration {
+        @Bean
+        MeterRegistry meterRegistry() {
+            new SimpleMeterRegistry()
+        }
+    }
+
     @Configuration
     @EnableAutoConfiguration
     @ComponentScan("org.grails.datastore.gorm.mongodb.boot.autoconfigure")
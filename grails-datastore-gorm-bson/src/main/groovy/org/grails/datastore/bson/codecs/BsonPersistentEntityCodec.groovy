@@ -19,6 +19,11 @@ import org.grails.datastore.mapping.model.PersistentEntity
 import org.grails.datastore.mapping.model.PersistentProperty
 import org.grails.datastore.mapping.model.config.GormProperties
 import org.grails.datastore.mapping.model.types.*
+import org.grails.datastore.mapping.reflect.EntityReflector
+import org.grails.datastore.mapping.reflect.FieldEntityAccess
+
+import java.util.concurrent.ConcurrentHashMap
+
 /**
  * Encodes and decodes {@link org.grails.datastore.mapping.model.PersistentEntity} objects from a BSON stream
  *
@@ -31,6 +36,7 @@ class BsonPersistentEntityCodec implements Codec {
     public static final DecoderContext DEFAULT_DECODER_CONTEXT = DecoderContext.builder().build()
     private static final Map<Class<? extends PersistentProperty>, PropertyEncoder> ENCODERS = [:]
     private static final Map<Class<? extends PersistentProperty>, PropertyDecoder> DECODERS = [:]
+    private static volatile int registrationCount
 
     static {
         ENCODERS[Identity] = new IdentityEncoder()
@@ -53,6 +59,8 @@ class BsonPersistentEntityCodec implements Codec {
     final PersistentEntity entity
     final CodecRegistry codecRegistry
     final boolean stateful
+    protected final Map<String, EntityCodecPlan> codecPlans = new ConcurrentHashMap<>()
+    private volatile int codecPlansRegistrationCount = registrationCount
 
     BsonPersistentEntityCodec(CodecRegistry codecRegistry, PersistentEntity entity, boolean stateful = false) {
         this.mappingContext = entity.mappingContext
@@ -63,10 +71,12 @@ class BsonPersistentEntityCodec implements Codec {
 
     static void registerEncoder(Class<? extends PersistentProperty> type, PropertyEncoder propertyEncoder) {
         ENCODERS.put(type, propertyEncoder)
+        registrationCount++
     }
 
     static void registerDecoder(Class<? extends PersistentProperty> type, PropertyDecoder propertyDecoder) {
         DECODERS.put(type, propertyDecoder)
+        registrationCount++
     }
 
     Object decode(BsonReader bsonReader, DecoderContext decoderContext = DEFAULT_DECODER_CONTEXT) {
@@ -75,6 +85,9 @@ class BsonPersistentEntityCodec implements Codec {
         def instance = persistentEntity.javaClass.newInstance()
 
         EntityAccess access = mappingContext.createEntityAccess(persistentEntity, instance)
+        EntityCodecPlan plan = getCodecPlan(persistentEntity)
+        boolean fieldAccess = access instanceof FieldEntityAccess
+        int expectedIndex = 0
         BsonType bsonType = bsonReader.readBsonType()
         boolean abortReading = false
 
@@ -94,6 +107,9 @@ class BsonPersistentEntityCodec implements Codec {
                         def newAccess = createEntityAccess(childEntity, instance)
                         newAccess.setIdentifierNoConversion( access.identifier )
                         access = newAccess
+                        plan = getCodecPlan(childEntity)
+                        fieldAccess = access instanceof FieldEntityAccess
+                        expectedIndex = 0
                     }
                     bsonType = bsonReader.readBsonType()
                     continue
@@ -109,8 +125,17 @@ class BsonPersistentEntityCodec implements Codec {
                     }
                 }
                 else {
-                    PersistentProperty property = persistentEntity.getPropertyByName(name)
-                    if(property && bsonType != BsonType.NULL) {
+                    EntityCodecPlan.PropertySlot slot = plan.findSlot(name, expectedIndex)
+                    PersistentProperty property = slot == null ? persistentEntity.getPropertyByName(name) : null
+                    if(slot != null) {
+                        expectedIndex = slot.index + 1
+                    }
+
+                    if(slot != null && bsonType != BsonType.NULL) {
+                        decodeProperty(bsonReader, bsonType, plan, slot, access, fieldAccess, decoderContext)
+                    }
+                    else if(property && bsonType != BsonType.NULL) {
+                        // not one of the persistent properties of the plan, resolve the decoder by name
                         def propKind = property.getClass().superclass
 
                         if(CharSequence.isAssignableFrom(property.type) && bsonType == BsonType.STRING) {
@@ -170,14 +195,7 @@ class BsonPersistentEntityCodec implements Codec {
             }
         }
 
-        for (PersistentProperty prop in entity.persistentProperties) {
-            def propKind = prop.getClass().superclass
-            Object v = access.getProperty(prop.name)
-            if (v != null) {
-                PropertyEncoder<? extends PersistentProperty> encoder = getPropertyEncoder((Class<? extends PersistentProperty>)propKind)
-                encoder?.encode(writer, (PersistentProperty) prop, v, access, encoderContext, codecRegistry)
-            }
-        }
+        encodeProperties(writer, getCodecPlan(entity), access, encoderContext)
 
         if(value instanceof DynamicAttributes) {
             def attributes = ((DynamicAttributes) value).attributes()
@@ -286,6 +304,111 @@ class BsonPersistentEntityCodec implements Codec {
         entity.javaClass
     }
 
+    /**
+     * Encodes the persistent properties of an entity
+     *
+     * @param writer The writer
+     * @param plan The plan of the entity
+     * @param access The entity access
+     * @param encoderContext The encoder context
+     */
+    protected void encodeProperties(BsonWriter writer, EntityCodecPlan plan, EntityAccess access, EncoderContext encoderContext) {
+        EntityCodecPlan.PropertySlot[] slots = plan.slots
+        boolean fieldAccess = access instanceof FieldEntityAccess
+        Object instance = access.entity
+        for (int i = 0; i < slots.length; i++) {
+            encodeProperty(writer, slots[i], access, instance, fieldAccess, encoderContext)
+        }
+    }
+
+    /**
+     * Encodes a single persistent property, if it has a value
+     *
+     * @param writer The writer
+     * @param slot The slot of the property
+     * @param access The entity access
+     * @param instance The entity
+     * @param fieldAccess Whether the slot accessors can be used in place of the entity access
+     * @param encoderContext The encoder context
+     */
+    protected void encodeProperty(BsonWriter writer, EntityCodecPlan.PropertySlot slot, EntityAccess access, Object instance, boolean fieldAccess, EncoderContext encoderContext) {
+        Object v = fieldAccess && slot.reader != null ? slot.reader.read(instance) : access.getProperty(slot.name)
+        if (v != null) {
+            slot.encoder?.encode(writer, slot.property, v, access, encoderContext, codecRegistry)
+        }
+    }
+
+    /**
+     * Decodes a non-null value of a persistent property
+     *
+     * @param bsonReader The reader, positioned at the value
+     * @param bsonType The type of the value
+     * @param plan The plan of the entity being decoded
+     * @param slot The slot of the property
+     * @param access The entity access
+     * @param fieldAccess Whether the slot accessors can be used in place of the entity access
+     * @param decoderContext The decoder context
+     */
+    protected void decodeProperty(BsonReader bsonReader, BsonType bsonType, EntityCodecPlan plan, EntityCodecPlan.PropertySlot slot, EntityAccess access, boolean fieldAccess, DecoderContext decoderContext) {
+        if(slot.string && bsonType == BsonType.STRING) {
+            if(fieldAccess && slot.writer != null) {
+                slot.writer.write(access.entity, bsonReader.readString())
+            }
+            else {
+                access.setPropertyNoConversion(slot.name, bsonReader.readString())
+            }
+        }
+        else {
+            slot.decoder?.decode(bsonReader, slot.property, access, decoderContext, codecRegistry)
+        }
+    }
+
+    /**
+     * Obtains the {@link EntityCodecPlan} for the given entity, creating it if it has not been resolved yet. Plans are held by
+     * the codec and resolved again if an encoder or decoder has been registered since they were created
+     *
+     * @param entity The entity
+     * @return The plan
+     */
+    EntityCodecPlan getCodecPlan(PersistentEntity entity) {
+        int registrations = registrationCount
+        if(registrations != codecPlansRegistrationCount) {
+            codecPlans.clear()
+            codecPlansRegistrationCount = registrations
+        }
+        EntityCodecPlan plan = codecPlans.get(entity.name)
+        // the same class may be mapped by more than one mapping context
+        if(plan == null || !plan.entity.is(entity)) {
+            plan = createCodecPlan(entity)
+            codecPlans.put(entity.name, plan)
+        }
+        return plan
+    }
+
+    /**
+     * Resolves the encoder, decoder and accessors of each persistent property of the given entity
+     *
+     * @param entity The entity
+     * @return The plan
+     */
+    protected EntityCodecPlan createCodecPlan(PersistentEntity entity) {
+        List<PersistentProperty> properties = entity.persistentProperties
+        EntityReflector reflector = entity.mappingContext.getEntityReflector(entity)
+        EntityCodecPlan.PropertySlot[] slots = new EntityCodecPlan.PropertySlot[properties.size()]
+        for (int i = 0; i < slots.length; i++) {
+            PersistentProperty prop = properties.get(i)
+            Class<? extends PersistentProperty> propKind = (Class<? extends PersistentProperty>) prop.getClass().superclass
+            slots[i] = new EntityCodecPlan.PropertySlot(
+                    i,
+                    prop,
+                    (PropertyEncoder<PersistentProperty>) getPropertyEncoder(propKind),
+                    (PropertyDecoder<PersistentProperty>) getPropertyDecoder(propKind),
+                    reflector
+            )
+        }
+        return new EntityCodecPlan(entity, slots)
+    }
+
     /**
      * Writes the dynamic attributes to the writer
      *
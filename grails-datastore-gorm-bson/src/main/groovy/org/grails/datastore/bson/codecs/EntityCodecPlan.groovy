@@ -0,0 +1,118 @@
+/*
+ * Copyright 2024 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.grails.datastore.bson.codecs
+
+import groovy.transform.CompileStatic
+import org.grails.datastore.mapping.engine.internal.MappingUtils
+import org.grails.datastore.mapping.model.PersistentEntity
+import org.grails.datastore.mapping.model.PersistentProperty
+import org.grails.datastore.mapping.reflect.EntityReflector
+
+/**
+ * The pre-resolved encoding and decoding plan of a {@link PersistentEntity}. Each persistent property is resolved once to a
+ * {@link PropertySlot} holding its encoder, decoder and field accessors so that encoding and decoding a document requires no
+ * per property lookups
+ *
+ * @since 9.0
+ */
+@CompileStatic
+class EntityCodecPlan {
+
+    /**
+     * The entity the plan was built for
+     */
+    final PersistentEntity entity
+
+    /**
+     * The slots in the order of {@link PersistentEntity#getPersistentProperties()}
+     */
+    final PropertySlot[] slots
+
+    private final Map<String, PropertySlot> slotsByName
+
+    EntityCodecPlan(PersistentEntity entity, PropertySlot[] slots) {
+        this.entity = entity
+        this.slots = slots
+        Map<String, PropertySlot> byName = new HashMap<>(slots.length * 2)
+        for (PropertySlot slot in slots) {
+            byName.put(slot.name, slot)
+        }
+        // documents hold properties under their mapped names, which take precedence
+        for (PropertySlot slot in slots) {
+            byName.put(slot.targetName, slot)
+        }
+        this.slotsByName = byName
+    }
+
+    /**
+     * Finds the slot for a document field. Documents written by the codec list their fields in slot order, so the slot after the
+     * previously read one is checked before falling back to a lookup by name
+     *
+     * @param name The name of the field, which is either the mapped name or the name of the property
+     * @param expectedIndex The index of the expected slot
+     * @return The slot or null if the field is not a persistent property
+     */
+    PropertySlot findSlot(String name, int expectedIndex) {
+        if (expectedIndex < slots.length) {
+            PropertySlot expected = slots[expectedIndex]
+            if (expected.targetName == name) {
+                return expected
+            }
+        }
+        return slotsByName.get(name)
+    }
+
+    /**
+     * @param name The name of the property or its mapped name
+     * @return The slot or null if there is no such persistent property
+     */
+    PropertySlot getSlot(String name) {
+        return slotsByName.get(name)
+    }
+
+    /**
+     * A persistent property resolved to its encoder, decoder and accessors
+     */
+    static class PropertySlot {
+        final int index
+        final String name
+        /**
+         * The name of the property in the document
+         */
+        final String targetName
+        final PersistentProperty property
+        final PropertyEncoder<PersistentProperty> encoder
+        final PropertyDecoder<PersistentProperty> decoder
+        /**
+         * Whether the property is a {@link CharSequence} that can be read directly from a BSON string
+         */
+        final boolean string
+        final EntityReflector.PropertyReader reader
+        final EntityReflector.PropertyWriter writer
+
+        PropertySlot(int index, PersistentProperty property, PropertyEncoder<PersistentProperty> encoder, PropertyDecoder<PersistentProperty> decoder, EntityReflector reflector) {
+            this.index = index
+            this.name = property.name
+            this.targetName = MappingUtils.getTargetKey(property)
+            this.property = property
+            this.encoder = encoder
+            this.decoder = decoder
+            this.string = CharSequence.isAssignableFrom(property.type)
+            this.reader = reflector?.getPropertyReader(name)
+            this.writer = reflector?.getPropertyWriter(name)
+        }
+    }
+}
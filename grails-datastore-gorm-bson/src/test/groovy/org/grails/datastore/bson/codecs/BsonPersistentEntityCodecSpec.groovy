@@ -11,6 +11,7 @@ import org.grails.datastore.bson.codecs.domain.Person
 import org.grails.datastore.mapping.keyvalue.mapping.config.KeyValueMappingContext
 import org.grails.datastore.mapping.model.MappingContext
 import org.grails.datastore.mapping.model.PersistentEntity
+import org.grails.datastore.mapping.model.types.Simple
 import org.springframework.core.convert.converter.Converter
 import spock.lang.Specification
 
@@ -144,6 +145,65 @@ class BsonPersistentEntityCodecSpec extends Specification {
         person.age == 12
         person.pattern == /\sfoo+/
     }
-}
 
+    void "Test the codec plan resolves each persistent property once"() {
+        given:"A mapping context"
+        MappingContext mappingContext = new KeyValueMappingContext("test")
+        PersistentEntity entity = mappingContext.addPersistentEntity(Person)
+        CodecRegistry codecRegistry = CodecRegistries.fromProviders(new CodecExtensions())
+        BsonPersistentEntityCodec codec = new BsonPersistentEntityCodec(codecRegistry, entity)
+
+        when:"The plan is obtained"
+        EntityCodecPlan plan = codec.getCodecPlan(entity)
+
+        then:"There is a slot with an encoder and decoder for each persistent property"
+        plan.slots*.name == entity.persistentProperties*.name
+        plan.slots.every { it.encoder != null && it.decoder != null && it.reader != null && it.writer != null }
+        plan.getSlot("name").string
+        !plan.getSlot("age").string
+
+        and:"The plan is reused"
+        codec.getCodecPlan(entity).is(plan)
+
+        and:"A plan is created for an entity of another mapping context"
+        MappingContext otherContext = new KeyValueMappingContext("test")
+        PersistentEntity otherEntity = otherContext.addPersistentEntity(Person)
+        !codec.getCodecPlan(otherEntity).is(plan)
+        codec.getCodecPlan(otherEntity).entity.is(otherEntity)
+    }
+
+    void "Test codec plans are held by each codec and refreshed when an encoder is registered"() {
+        given:"Two codecs for the same entity"
+        MappingContext mappingContext = new KeyValueMappingContext("test")
+        PersistentEntity entity = mappingContext.addPersistentEntity(Person)
+        CodecRegistry codecRegistry = CodecRegistries.fromProviders(new CodecExtensions())
+        BsonPersistentEntityCodec codec = new BsonPersistentEntityCodec(codecRegistry, entity)
+        BsonPersistentEntityCodec otherCodec = new BsonPersistentEntityCodec(codecRegistry, entity)
+        EntityCodecPlan plan = codec.getCodecPlan(entity)
 
+        expect:"Each codec has its own plan"
+        !otherCodec.getCodecPlan(entity).is(plan)
+
+        when:"An encoder is registered"
+        BsonPersistentEntityCodec.registerEncoder(Simple, codec.getPropertyEncoder(Simple))
+
+        then:"The plan is resolved again"
+        !codec.getCodecPlan(entity).is(plan)
+    }
+
+    void "Test read entity from JSON with fields in a different order than the plan"() {
+        given:"A mapping context"
+        MappingContext mappingContext = new KeyValueMappingContext("test")
+        PersistentEntity entity = mappingContext.addPersistentEntity(Person)
+        CodecRegistry codecRegistry = CodecRegistries.fromProviders(new CodecExtensions())
+        BsonPersistentEntityCodec codec = new BsonPersistentEntityCodec(codecRegistry, entity)
+
+        when:"A document is read with its fields in reverse order and an unknown field"
+        Person person = codec.decode(new JsonReader('{"pattern":"p","unknown":1,"name":"Fred","age":12}'))
+
+        then:"Each property is read"
+        person.name == "Fred"
+        person.age == 12
+        person.pattern == "p"
+    }
+}
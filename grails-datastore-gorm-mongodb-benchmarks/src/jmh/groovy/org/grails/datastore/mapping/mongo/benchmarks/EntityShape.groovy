@@ -0,0 +1,133 @@
+package org.grails.datastore.mapping.mongo.benchmarks
+
+import groovy.transform.CompileStatic
+import org.bson.types.ObjectId
+import org.grails.datastore.gorm.schemaless.DynamicAttributes
+import org.grails.datastore.mapping.mongo.benchmarks.domain.*
+
+/**
+ * The entity shapes exercised by the codec benchmarks
+ *
+ * @since 9.0
+ */
+@CompileStatic
+enum EntityShape {
+
+    /**
+     * An entity made up of simple properties only
+     */
+    FLAT(Person, ['email', 'loginCount', 'rating']) {
+        @Override
+        Object newInstance(int size) {
+            new Person(
+                    id: new ObjectId(),
+                    firstName: 'Fred',
+                    lastName: 'Flintstone',
+                    email: 'fred@bedrock.org',
+                    age: 42,
+                    loginCount: 1024L,
+                    rating: 4.5d,
+                    active: true,
+                    dateOfBirth: new Date(0)
+            )
+        }
+    },
+
+    /**
+     * An entity with an embedded property that is itself three levels deep
+     */
+    EMBEDDED(Order, ['reference', 'customer']) {
+        @Override
+        Object newInstance(int size) {
+            new Order(
+                    id: new ObjectId(),
+                    reference: 'ORD-0001',
+                    customer: new Customer(
+                            name: 'Fred',
+                            email: 'fred@bedrock.org',
+                            address: new Address(
+                                    street: '301 Cobblestone Way',
+                                    city: 'Bedrock',
+                                    postCode: '70777',
+                                    location: new Location(latitude: 51.5d, longitude: -0.12d)
+                            )
+                    )
+            )
+        }
+    },
+
+    /**
+     * An entity with a large embedded collection
+     */
+    EMBEDDED_COLLECTION(Playlist, ['name', 'tracks']) {
+        @Override
+        Object newInstance(int size) {
+            Playlist playlist = new Playlist(id: new ObjectId(), name: 'Favourites')
+            for (int i = 0; i < size; i++) {
+                playlist.tracks.add(new Track(title: "Track $i".toString(), artist: 'The Flintstones', duration: 180 + i))
+            }
+            return playlist
+        }
+    },
+
+    /**
+     * A schemaless entity whose state is mostly held in dynamic attributes
+     */
+    SCHEMALESS(Product, ['sku']) {
+        @Override
+        Object newInstance(int size) {
+            Product product = new Product(id: new ObjectId(), sku: 'SKU-0001')
+            DynamicAttributes attributes = (DynamicAttributes) product
+            for (int i = 0; i < size; i++) {
+                attributes.putAt("attribute$i".toString(), i % 2 == 0 ? (Object) "value $i".toString() : (Object) Integer.valueOf(i))
+            }
+            return product
+        }
+    },
+
+    /**
+     * A subclass in a discriminator based hierarchy, encoded and decoded through the root entity codec
+     */
+    HIERARCHY(Vehicle, ['model', 'doors']) {
+        @Override
+        Object newInstance(int size) {
+            new Car(
+                    id: new ObjectId(),
+                    make: 'Flintmobile',
+                    model: 'Stone Age',
+                    doors: 2,
+                    convertible: true
+            )
+        }
+    }
+
+    /**
+     * The class whose codec is used to encode and decode the shape
+     */
+    final Class rootClass
+
+    /**
+     * The properties that are marked as dirty when benchmarking updates
+     */
+    final List<String> dirtyProperties
+
+    EntityShape(Class rootClass, List<String> dirtyProperties) {
+        this.rootClass = rootClass
+        this.dirtyProperties = dirtyProperties
+    }
+
+    /**
+     * Creates a new populated instance of the shape
+     *
+     * @param size The number of elements to populate for collection or schemaless shapes
+     * @return The instance
+     */
+    abstract Object newInstance(int size)
+
+    /**
+     * @return All of the domain classes used by the shapes
+     */
+    static Class[] domainClasses() {
+        [Person, Order, Customer, Address, Location, Playlist, Track, Product, Vehicle, Car, Truck] as Class[]
+    }
+}
@@ -0,0 +1,115 @@
+package org.grails.datastore.mapping.mongo.benchmarks
+
+import groovy.transform.CompileStatic
+import org.bson.BsonDocument
+import org.bson.BsonDocumentReader
+import org.bson.BsonDocumentWriter
+import org.bson.Document
+import org.grails.datastore.bson.codecs.BsonPersistentEntityCodec
+import org.grails.datastore.mapping.core.DatastoreUtils
+import org.grails.datastore.mapping.core.Session
+import org.grails.datastore.mapping.dirty.checking.DirtyCheckable
+import org.grails.datastore.mapping.mongo.MongoDatastore
+import org.grails.datastore.mapping.mongo.config.MongoSettings
+import org.grails.datastore.mapping.mongo.engine.codecs.PersistentEntityCodec
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.Level
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.TearDown
+
+/**
+ * Measures the {@link PersistentEntityCodec} encode, decode and encodeUpdate hot paths for a range of entity shapes.
+ *
+ * All encoding and decoding happens against in-memory {@link BsonDocument} instances so no MongoDB server is required.
+ * Run with {@code ./gradlew :grails-datastore-gorm-mongodb-benchmarks:jmh}. To measure the effect of a change, run the
+ * benchmarks on the commits before and after it and compare the JSON results written to {@code build/results/jmh}.
+ *
+ * @since 9.0
+ */
+@CompileStatic
+@State(Scope.Thread)
+class PersistentEntityCodecBenchmark {
+
+    @Param(['FLAT', 'EMBEDDED', 'EMBEDDED_COLLECTION', 'SCHEMALESS', 'HIERARCHY'])
+    EntityShape shape
+
+    /**
+     * The number of elements in collection based shapes
+     */
+    @Param(['100'])
+    int size
+
+    /**
+     * The value of {@link MongoSettings#SETTING_ENGINE}
+     */
+    @Param(['codec', 'generated'])
+    String engine
+
+    MongoDatastore datastore
+    Session session
+    PersistentEntityCodec codec
+    Object instance
+    BsonDocument document
+    BsonDocument reversedDocument
+
+    @Setup(Level.Trial)
+    void setup() {
+        Map<String, Object> configuration = [(MongoSettings.SETTING_DATABASE_NAME): (Object) 'benchmarks',
+                                             (MongoSettings.SETTING_ENGINE): (Object) engine]
+        datastore = new MongoDatastore(configuration, EntityShape.domainClasses())
+        session = datastore.connect()
+        DatastoreUtils.bindSession(session)
+
+        codec = datastore.getPersistentEntityCodec(shape.rootClass)
+        instance = shape.newInstance(size)
+
+        document = new BsonDocument()
+        codec.encode(new BsonDocumentWriter(document), instance)
+
+        // a document written by another client, whose properties are not in the order of the codec plan. The identifier
+        // and discriminator are kept first as they are always written first
+        reversedDocument = new BsonDocument()
+        List<String> names = document.keySet().toList()
+        for (String name in names.findAll { String n -> n.startsWith('_') } + names.findAll { String n -> !n.startsWith('_') }.reverse()) {
+            reversedDocument.put(name, document.get(name))
+        }
+
+        DirtyCheckable dirtyCheckable = (DirtyCheckable) instance
+        dirtyCheckable.trackChanges()
+        for (String property in shape.dirtyProperties) {
+            dirtyCheckable.markDirty(property)
+        }
+    }
+
+    @TearDown(Level.Trial)
+    void tearDown() {
+        DatastoreUtils.unbindSession(session)
+        session.disconnect()
+        datastore.close()
+    }
+
+    @Benchmark
+    BsonDocument encode() {
+        BsonDocument target = new BsonDocument()
+        codec.encode(new BsonDocumentWriter(target), instance)
+        return target
+    }
+
+    @Benchmark
+    Object decode() {
+        return codec.decode(new BsonDocumentReader(document), BsonPersistentEntityCodec.DEFAULT_DECODER_CONTEXT)
+    }
+
+    @Benchmark
+    Object decodeReversed() {
+        return codec.decode(new BsonDocumentReader(reversedDocument), BsonPersistentEntityCodec.DEFAULT_DECODER_CONTEXT)
+    }
+
+    @Benchmark
+    Document encodeUpdate() {
+        return codec.encodeUpdate(instance)
+    }
+}
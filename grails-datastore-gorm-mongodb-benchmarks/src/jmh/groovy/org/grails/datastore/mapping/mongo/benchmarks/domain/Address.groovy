@@ -0,0 +1,13 @@
+package org.grails.datastore.mapping.mongo.benchmarks.domain
+
+import grails.gorm.annotation.Entity
+
+@Entity
+class Address {
+    String street
+    String city
+    String postCode
+    Location location
+
+    static embedded = ['location']
+}
@@ -0,0 +1,9 @@
+package org.grails.datastore.mapping.mongo.benchmarks.domain
+
+import grails.gorm.annotation.Entity
+
+@Entity
+class Car extends Vehicle {
+    Integer doors
+    Boolean convertible
+}
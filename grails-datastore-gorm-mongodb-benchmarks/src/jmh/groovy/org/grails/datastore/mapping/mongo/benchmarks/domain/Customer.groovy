@@ -0,0 +1,12 @@
+package org.grails.datastore.mapping.mongo.benchmarks.domain
+
+import grails.gorm.annotation.Entity
+
+@Entity
+class Customer {
+    String name
+    String email
+    Address address
+
+    static embedded = ['address']
+}
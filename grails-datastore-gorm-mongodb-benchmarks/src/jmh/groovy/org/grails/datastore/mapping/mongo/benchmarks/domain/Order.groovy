@@ -0,0 +1,16 @@
+package org.grails.datastore.mapping.mongo.benchmarks.domain
+
+import grails.gorm.annotation.Entity
+import org.bson.types.ObjectId
+
+/**
+ * An entity with a deep chain of embedded properties
+ */
+@Entity
+class Order {
+    ObjectId id
+    String reference
+    Customer customer
+
+    static embedded = ['customer']
+}
@@ -0,0 +1,20 @@
+package org.grails.datastore.mapping.mongo.benchmarks.domain
+
+import grails.gorm.annotation.Entity
+import org.bson.types.ObjectId
+
+/**
+ * A flat entity made up of simple properties only
+ */
+@Entity
+class Person {
+    ObjectId id
+    String firstName
+    String lastName
+    String email
+    Integer age
+    Long loginCount
+    Double rating
+    Boolean active
+    Date dateOfBirth
+}
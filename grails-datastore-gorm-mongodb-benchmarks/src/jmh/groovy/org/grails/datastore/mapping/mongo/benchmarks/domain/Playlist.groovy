@@ -0,0 +1,16 @@
+package org.grails.datastore.mapping.mongo.benchmarks.domain
+
+import grails.gorm.annotation.Entity
+import org.bson.types.ObjectId
+
+/**
+ * An entity with a large embedded collection
+ */
+@Entity
+class Playlist {
+    ObjectId id
+    String name
+    List<Track> tracks = []
+
+    static embedded = ['tracks']
+}
@@ -0,0 +1,13 @@
+package org.grails.datastore.mapping.mongo.benchmarks.domain
+
+import grails.gorm.annotation.Entity
+import org.bson.types.ObjectId
+
+/**
+ * A schemaless entity whose state is mostly held in dynamic attributes
+ */
+@Entity
+class Product {
+    ObjectId id
+    String sku
+}
@@ -0,0 +1,10 @@
+package org.grails.datastore.mapping.mongo.benchmarks.domain
+
+import grails.gorm.annotation.Entity
+
+@Entity
+class Track {
+    String title
+    String artist
+    Integer duration
+}
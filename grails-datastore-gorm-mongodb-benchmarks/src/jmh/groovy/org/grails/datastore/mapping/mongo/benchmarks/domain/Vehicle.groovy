@@ -0,0 +1,14 @@
+package org.grails.datastore.mapping.mongo.benchmarks.domain
+
+import grails.gorm.annotation.Entity
+import org.bson.types.ObjectId
+
+/**
+ * The root of a discriminator based inheritance hierarchy
+ */
+@Entity
+class Vehicle {
+    ObjectId id
+    String make
+    String model
+}
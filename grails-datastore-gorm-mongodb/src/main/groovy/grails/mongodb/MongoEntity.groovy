@@ -22,12 +22,14 @@ import com.mongodb.client.MongoCollection
 import com.mongodb.client.MongoDatabase
 import com.mongodb.client.model.FindOneAndDeleteOptions
 import grails.mongodb.api.MongoAllOperations
+import grails.gorm.DetachedCriteria
 import groovy.transform.CompileStatic
 import org.bson.Document
 import org.bson.conversions.Bson
 import org.grails.datastore.gorm.GormEnhancer
 import org.grails.datastore.gorm.GormEntity
 import org.grails.datastore.gorm.mongo.MongoCriteriaBuilder
+import org.grails.datastore.gorm.mongo.api.MongoReactiveApi
 import org.grails.datastore.gorm.mongo.api.MongoStaticApi
 import org.grails.datastore.gorm.schemaless.DynamicAttributes
 import org.grails.datastore.mapping.core.AbstractDatastore
@@ -35,9 +37,14 @@ import org.grails.datastore.mapping.core.SessionImplementor
 import org.grails.datastore.mapping.engine.EntityPersister
 import org.grails.datastore.mapping.mongo.AbstractMongoSession
 import org.grails.datastore.mapping.mongo.MongoDatastore
+import org.grails.datastore.mapping.mongo.changes.ChangeEvent
+import org.grails.datastore.mapping.mongo.changes.ChangeStreamSubscription
 import org.grails.datastore.mapping.mongo.engine.MongoEntityPersister
+import org.grails.datastore.mapping.mongo.query.MongoQuery
 
+import java.util.function.Consumer
 import java.util.function.Function
+import java.util.stream.Stream
 
 /**
  * Enhances the default {@link GormEntity} class with MongoDB specific methods
@@ -146,6 +153,163 @@ trait MongoEntity<D> implements GormEntity<D>, DynamicAttributes {
         currentMongoStaticApi().count(filter)
     }
 
+    /**
+     * The reactive execution mode of the entity. Criteria queries, dynamic finders, aggregations and searches return a
+     * {@link org.reactivestreams.Publisher} and are run on the reactive streams driver
+     *
+     * @return The reactive API
+     * @since 9.0
+     */
+    static MongoReactiveApi<D> getReactive() {
+        currentMongoStaticApi().getReactive()
+    }
+
+    /**
+     * Streams the entities matching the given criteria directly from the cursor. Instances are not cached in the session, so
+     * that large results can be processed in constant memory, and the cursor is closed when the stream is closed
+     *
+     * @param criteria The criteria
+     * @return A stream of the matching entities
+     * @since 9.0
+     */
+    static Stream<D> stream(@DelegatesTo(DetachedCriteria) Closure criteria) {
+        currentMongoStaticApi().stream(criteria)
+    }
+
+    /**
+     * Streams the entities matching the given criteria directly from the cursor. Instances are not cached in the session, so
+     * that large results can be processed in constant memory, and the cursor is closed when the stream is closed
+     *
+     * @param args The query arguments such as max, offset, sort, hint and batchSize
+     * @param criteria The criteria
+     * @return A stream of the matching entities
+     * @since 9.0
+     */
+    static Stream<D> stream(Map args, @DelegatesTo(DetachedCriteria) Closure criteria) {
+        currentMongoStaticApi().stream(args, criteria)
+    }
+
+    /**
+     * Streams the entities matching the given criteria directly from the cursor. Instances are not cached in the session, so
+     * that large results can be processed in constant memory, and the cursor is closed when the stream is closed
+     *
+     * @param criteria The criteria
+     * @param args The query arguments such as max, offset, sort, hint and batchSize
+     * @return A stream of the matching entities
+     * @since 9.0
+     */
+    static Stream<D> stream(DetachedCriteria<D> criteria, Map args = Collections.emptyMap()) {
+        currentMongoStaticApi().stream(criteria, args)
+    }
+
+    /**
+     * Lists a page of entities by keyset rather than by offset. The results are sorted by the sort argument or the default sort
+     * and then by identifier, and the page starts after the position encoded in the token, so that deep pages are read with an
+     * index range instead of skipping documents
+     *
+     * @param token The {@link MongoQuery.KeysetResultList#getNextToken() next token} of the previous page or null for the first page
+     * @param args The query arguments such as max and sort
+     * @return The page
+     * @since 9.0
+     */
+    static MongoQuery.KeysetResultList<D> listAfter(String token, Map args = Collections.emptyMap()) {
+        currentMongoStaticApi().listAfter(token, args)
+    }
+
+    /**
+     * Lists a page of the entities matching the given criteria by keyset rather than by offset
+     *
+     * @param token The {@link MongoQuery.KeysetResultList#getNextToken() next token} of the previous page or null for the first page
+     * @param args The query arguments such as max and sort
+     * @param criteria The criteria
+     * @return The page
+     * @since 9.0
+     */
+    static MongoQuery.KeysetResultList<D> listAfter(String token, Map args, @DelegatesTo(DetachedCriteria) Closure criteria) {
+        currentMongoStaticApi().listAfter(token, args, criteria)
+    }
+
+    /**
+     * Lists a page of the entities matching the given criteria by keyset rather than by offset
+     *
+     * @param criteria The criteria
+     * @param token The {@link MongoQuery.KeysetResultList#getNextToken() next token} of the previous page or null for the first page
+     * @param args The query arguments such as max and sort
+     * @return The page
+     * @since 9.0
+     */
+    static MongoQuery.KeysetResultList<D> listAfter(DetachedCriteria<D> criteria, String token, Map args = Collections.emptyMap()) {
+        currentMongoStaticApi().listAfter(criteria, token, args)
+    }
+
+    /**
+     * Subscribes to the changes of the collection of this domain class, which are delivered to the listener on a separate
+     * thread. Change streams require a replica set or a sharded cluster
+     *
+     * @param listener The listener of the changes
+     * @return The subscription, which should be closed once it is no longer needed
+     * @since 9.0
+     */
+    static ChangeStreamSubscription<D> watch(Consumer<ChangeEvent<D>> listener) {
+        currentMongoStaticApi().watch(listener)
+    }
+
+    /**
+     * Subscribes to the changes of the documents of the collection of this domain class that match the given criteria.
+     * Deletions are delivered regardless of the criteria, unless the collection is shared with other classes or tenants
+     *
+     * @param criteria The criteria
+     * @param listener The listener of the changes
+     * @return The subscription, which should be closed once it is no longer needed
+     * @since 9.0
+     */
+    static ChangeStreamSubscription<D> watch(@DelegatesTo(DetachedCriteria) Closure criteria, Consumer<ChangeEvent<D>> listener) {
+        currentMongoStaticApi().watch(criteria, listener)
+    }
+
+    /**
+     * Subscribes to the changes of the documents of the collection of this domain class that match the given criteria. A
+     * subscription given a {@code name} checkpoints its position and resumes from it when subscribed again with the same name
+     *
+     * @param args The options of the subscription such as name, bufferSize, checkpointCollection, checkpointInterval and
+     * fullDocumentBeforeChange
+     * @param criteria The criteria
+     * @param listener The listener of the changes
+     * @return The subscription, which should be closed once it is no longer needed
+     * @since 9.0
+     */
+    static ChangeStreamSubscription<D> watch(Map args, @DelegatesTo(DetachedCriteria) Closure criteria, Consumer<ChangeEvent<D>> listener) {
+        currentMongoStaticApi().watch(args, criteria, listener)
+    }
+
+    /**
+     * Subscribes to the changes of the documents of the collection of this domain class that match the given criteria
+     *
+     * @param criteria The criteria
+     * @param args The options of the subscription such as name, bufferSize, checkpointCollection, checkpointInterval and
+     * fullDocumentBeforeChange
+     * @param listener The listener of the changes
+     * @return The subscription, which should be closed once it is no longer needed
+     * @since 9.0
+     */
+    static ChangeStreamSubscription<D> watch(DetachedCriteria<D> criteria, Map args, Consumer<ChangeEvent<D>> listener) {
+        currentMongoStaticApi().watch(criteria, args, listener)
+    }
+
+    /**
+     * Executes the closure within a new session configured with the given options. With the {@code readOnly} option the
+     * queries of the session return detached instances and are routed with the read preference of read-only queries, for
+     * example to a secondary
+     *
+     * @param options The options of the session
+     * @param callable The closure, which is passed the session
+     * @return The return value of the closure
+     * @since 9.0
+     */
+    static <T> T withNewSession(Map options, Closure<T> callable) {
+        currentMongoStaticApi().withNewSession(options, callable)
+    }
+
     /**
      * @return Custom MongoDB criteria builder
      */
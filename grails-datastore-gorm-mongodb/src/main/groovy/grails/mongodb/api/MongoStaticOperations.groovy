@@ -6,12 +6,18 @@ import com.mongodb.client.FindIterable
 import com.mongodb.client.MongoCollection
 import com.mongodb.client.MongoDatabase
 import com.mongodb.client.model.FindOneAndDeleteOptions
+import grails.gorm.DetachedCriteria
 import grails.gorm.api.GormStaticOperations
 import org.bson.Document
 import org.bson.conversions.Bson
 import org.grails.datastore.gorm.mongo.MongoCriteriaBuilder
+import org.grails.datastore.mapping.mongo.changes.ChangeEvent
+import org.grails.datastore.mapping.mongo.changes.ChangeStreamSubscription
+import org.grails.datastore.mapping.mongo.query.MongoQuery
 
+import java.util.function.Consumer
 import java.util.function.Function
+import java.util.stream.Stream
 
 /**
  * Static operations for GORM for MongoDB
@@ -171,4 +177,116 @@ interface MongoStaticOperations<D> extends GormStaticOperations<D> {
      * @return The results
      */
     List<D> searchTop(String query, int limit, Map options )
+
+    /**
+     * Streams the entities matching the given criteria from the cursor, without caching them in the session. The stream
+     * should be closed once it has been consumed so that the cursor is closed
+     *
+     * @param criteria The criteria
+     * @return A stream of the matching entities
+     */
+    Stream<D> stream(@DelegatesTo(DetachedCriteria) Closure criteria)
+
+    /**
+     * Streams the entities matching the given criteria from the cursor, without caching them in the session. The stream
+     * should be closed once it has been consumed so that the cursor is closed
+     *
+     * @param args The query arguments such as max, offset, sort, hint and batchSize
+     * @param criteria The criteria
+     * @return A stream of the matching entities
+     */
+    Stream<D> stream(Map args, @DelegatesTo(DetachedCriteria) Closure criteria)
+
+    /**
+     * Streams the entities matching the given criteria from the cursor, without caching them in the session. The stream
+     * should be closed once it has been consumed so that the cursor is closed
+     *
+     * @param criteria The criteria
+     * @param args The query arguments such as max, offset, sort, hint and batchSize
+     * @return A stream of the matching entities
+     */
+    Stream<D> stream(DetachedCriteria<D> criteria, Map args)
+
+    /**
+     * Lists a page of entities by keyset. The page starts after the position encoded in the token, which is obtained from
+     * {@link MongoQuery.KeysetResultList#getNextToken()} of the previous page, so that the cost of a page does not depend on its depth
+     *
+     * @param token The token of the previous page or null for the first page
+     * @param args The query arguments such as max and sort
+     * @return The page
+     */
+    MongoQuery.KeysetResultList<D> listAfter(String token, Map args)
+
+    /**
+     * Lists a page of the entities matching the given criteria by keyset. The page starts after the position encoded in the token
+     *
+     * @param token The token of the previous page or null for the first page
+     * @param args The query arguments such as max and sort
+     * @param criteria The criteria
+     * @return The page
+     */
+    MongoQuery.KeysetResultList<D> listAfter(String token, Map args, @DelegatesTo(DetachedCriteria) Closure criteria)
+
+    /**
+     * Lists a page of the entities matching the given criteria by keyset. The page starts after the position encoded in the token
+     *
+     * @param criteria The criteria
+     * @param token The token of the previous page or null for the first page
+     * @param args The query arguments such as max and sort
+     * @return The page
+     */
+    MongoQuery.KeysetResultList<D> listAfter(DetachedCriteria<D> criteria, String token, Map args)
+
+    /**
+     * Subscribes to the changes of the collection of this domain class. The changes are read from a change stream, which
+     * requires a replica set or a sharded cluster, and are delivered in order to the listener on a separate thread. The
+     * subscription should be closed once it is no longer needed
+     *
+     * @param listener The listener of the changes
+     * @return The subscription
+     */
+    ChangeStreamSubscription<D> watch(Consumer<ChangeEvent<D>> listener)
+
+    /**
+     * Subscribes to the changes of the documents of the collection of this domain class that match the given criteria.
+     * Deletions, whose documents no longer exist, are delivered regardless of the criteria, unless the collection is shared with
+     * other classes or tenants
+     *
+     * @param criteria The criteria
+     * @param listener The listener of the changes
+     * @return The subscription
+     */
+    ChangeStreamSubscription<D> watch(@DelegatesTo(DetachedCriteria) Closure criteria, Consumer<ChangeEvent<D>> listener)
+
+    /**
+     * Subscribes to the changes of the documents of the collection of this domain class that match the given criteria
+     *
+     * @param args The options of the subscription such as name, bufferSize, checkpointCollection, checkpointInterval and
+     * fullDocumentBeforeChange
+     * @param criteria The criteria
+     * @param listener The listener of the changes
+     * @return The subscription
+     */
+    ChangeStreamSubscription<D> watch(Map args, @DelegatesTo(DetachedCriteria) Closure criteria, Consumer<ChangeEvent<D>> listener)
+
+    /**
+     * Subscribes to the changes of the documents of the collection of this domain class that match the given criteria
+     *
+     * @param criteria The criteria
+     * @param args The options of the subscription such as name, bufferSize, checkpointCollection, checkpointInterval and
+     * fullDocumentBeforeChange
+     * @param listener The listener of the changes
+     * @return The subscription
+     */
+    ChangeStreamSubscription<D> watch(DetachedCriteria<D> criteria, Map args, Consumer<ChangeEvent<D>> listener)
+
+    /**
+     * Executes the closure within a new session configured with the given options. With the {@code readOnly} option the
+     * queries of the session return detached instances and are routed with the read preference of read-only queries
+     *
+     * @param options The options of the session
+     * @param callable The closure, which is passed the session
+     * @return The return value of the closure
+     */
+    public <T> T withNewSession(Map options, Closure<T> callable)
 }
\ No newline at end of file
@@ -27,7 +27,9 @@ import org.grails.datastore.gorm.support.AbstractDatastorePersistenceContextInte
 import org.grails.datastore.gorm.support.DatastorePersistenceContextInterceptor
 import org.grails.datastore.mapping.config.DatastoreServiceMethodInvokingFactoryBean
 import org.grails.datastore.mapping.mongo.MongoDatastore
+import org.grails.datastore.mapping.mongo.config.MongoSettings
 import org.grails.datastore.mapping.mongo.connections.MongoConnectionSourceFactory
+import org.grails.datastore.mapping.mongo.metrics.MongoMetricsCustomizer
 import org.springframework.beans.factory.support.BeanDefinitionRegistry
 import org.springframework.context.ApplicationContext
 import org.springframework.context.ApplicationEventPublisher
@@ -47,6 +49,7 @@ class MongoDbDataStoreSpringInitializer extends AbstractDatastoreInitializer {
     public static final String DEFAULT_DATABASE_NAME = "test"
 
     public static final String DATASTORE_TYPE = "mongo"
+    public static final String METER_REGISTRY_CLASS = "io.micrometer.core.instrument.MeterRegistry"
     protected String mongoBeanName = "mongo"
     protected String mongoOptionsBeanName = "mongoOptions"
     protected String databaseName = DEFAULT_DATABASE_NAME
@@ -97,6 +100,9 @@ class MongoDbDataStoreSpringInitializer extends AbstractDatastoreInitializer {
                 eventPublisher = new DefaultApplicationEventPublisher()
             }
             if(mongo == null) {
+                if(isMetricsEnabled()) {
+                    mongoMetricsCustomizer(MongoMetricsCustomizer)
+                }
                 mongoConnectionSourceFactory(MongoConnectionSourceFactory) { bean ->
                     bean.autowire = true
                 }
@@ -144,6 +150,15 @@ class MongoDbDataStoreSpringInitializer extends AbstractDatastoreInitializer {
 
 
 
+    /**
+     * @return Whether the connection sources are instrumented with Micrometer
+     * @since 9.0
+     */
+    protected boolean isMetricsEnabled() {
+        return ClassUtils.isPresent(METER_REGISTRY_CLASS, getClass().getClassLoader()) &&
+                configuration.getProperty(MongoSettings.SETTING_METRICS_ENABLED, Boolean, true)
+    }
+
     /**
      * Sets the name of the Mongo bean to use
      */
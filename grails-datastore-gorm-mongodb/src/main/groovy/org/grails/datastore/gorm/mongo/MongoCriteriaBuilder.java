@@ -277,8 +277,20 @@ public class MongoCriteriaBuilder extends CriteriaBuilder {
         return this;
     }
 
+    /**
+     * Sets the arguments of the query, which are kept when the arguments of the list method are applied. The supported
+     * arguments are {@code hint}, {@code readConcern}, {@code batchSize}, {@code maxTimeMS}, {@code maxAwaitTimeMS},
+     * {@code comment}, {@code allowDiskUse} and {@code noCursorTimeout}
+     *
+     * @param arguments The arguments
+     * @return The criteria instance
+     */
     public Criteria arguments(Map arguments) {
-        ((QueryArgumentsAware)this.query).setArguments(arguments);
+        if (this.query instanceof MongoQuery) {
+            ((MongoQuery)this.query).setCriteriaArguments(arguments);
+        } else {
+            ((QueryArgumentsAware)this.query).setArguments(arguments);
+        }
         return this;
     }
 }
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2024 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.grails.datastore.gorm.mongo.api
+
+import com.mongodb.client.model.Filters
+import com.mongodb.client.model.TextSearchOptions
+import com.mongodb.reactivestreams.client.FindPublisher
+import grails.gorm.DetachedCriteria
+import groovy.transform.CompileDynamic
+import groovy.transform.CompileStatic
+import org.bson.RawBsonDocument
+import org.bson.conversions.Bson
+import org.grails.datastore.gorm.finders.DynamicFinder
+import org.grails.datastore.gorm.finders.FindAllByFinder
+import org.grails.datastore.gorm.finders.FindByFinder
+import org.grails.datastore.mapping.core.Datastore
+import org.grails.datastore.mapping.core.Session
+import org.grails.datastore.mapping.model.PersistentEntity
+import org.grails.datastore.mapping.mongo.AbstractMongoSession
+import org.grails.datastore.mapping.mongo.MongoCodecSession
+import org.grails.datastore.mapping.mongo.query.MongoQuery
+import org.grails.datastore.mapping.mongo.reactive.EntityPublisher
+import org.reactivestreams.Publisher
+
+/**
+ * The reactive execution mode of a MongoDB entity, obtained with {@code Book.reactive}. Queries are built exactly as they are
+ * for the blocking API and are run on the reactive streams driver, with each document decoded by the
+ * {@link org.grails.datastore.mapping.mongo.engine.codecs.PersistentEntityCodec} of the entity as it is emitted. Dynamic finders
+ * of the form {@code findAllBy*} and {@code findBy*} are supported. The reactive mode requires the codec engine
+ *
+ * @since 9.0
+ */
+@CompileStatic
+class MongoReactiveApi<D> {
+
+    final MongoStaticApi<D> staticApi
+    final Class<D> persistentClass
+    private final List<DynamicFinder> finders
+
+    MongoReactiveApi(MongoStaticApi<D> staticApi, Class<D> persistentClass, Datastore datastore) {
+        this.staticApi = staticApi
+        this.persistentClass = persistentClass
+        this.finders = [(DynamicFinder) new FindAllByFinder(datastore), (DynamicFinder) new FindByFinder(datastore)]
+    }
+
+    /**
+     * Finds the entities matching the given criteria
+     *
+     * @param args The query arguments such as max, offset, sort and hint
+     * @param criteria The criteria
+     * @return A publisher of the matching entities
+     */
+    Publisher<D> find(Map args = Collections.emptyMap(), @DelegatesTo(DetachedCriteria) Closure criteria) {
+        find(new DetachedCriteria<D>(persistentClass).build(criteria), args)
+    }
+
+    /**
+     * Finds the entities matching the given criteria
+     *
+     * @param criteria The criteria
+     * @param args The query arguments such as max, offset, sort and hint
+     * @return A publisher of the matching entities
+     */
+    Publisher<D> find(DetachedCriteria<D> criteria, Map args = Collections.emptyMap()) {
+        (Publisher<D>) staticApi.withSession { Session session ->
+            MongoQuery query = (MongoQuery) session.createQuery(persistentClass)
+            DynamicFinder.applyDetachedCriteria(query, criteria)
+            DynamicFinder.populateArgumentsForCriteria(persistentClass, query, args)
+            return publish(query)
+        }
+    }
+
+    /**
+     * Runs an aggregation pipeline whose results are entities
+     *
+     * @param pipeline The pipeline
+     * @return A publisher of the results
+     */
+    Publisher<D> aggregate(List pipeline) {
+        (Publisher<D>) staticApi.withSession { AbstractMongoSession session ->
+            PersistentEntity entity = getCodecEntity(session)
+            List<Bson> newPipeline = staticApi.preparePipeline(pipeline)
+            return new EntityPublisher<D>(session.datastore, entity, session.getReactiveCollection(entity).aggregate(newPipeline))
+        }
+    }
+
+    /**
+     * Searches the text index of the collection
+     *
+     * @param query The search query
+     * @param options The options, such as language, offset and max
+     * @return A publisher of the matching entities
+     */
+    Publisher<D> search(String query, Map options = Collections.emptyMap()) {
+        (Publisher<D>) staticApi.withSession { AbstractMongoSession session ->
+            PersistentEntity entity = getCodecEntity(session)
+            Bson search
+            if(options.language) {
+                search = Filters.text(query, new TextSearchOptions().language(options.language.toString()))
+            }
+            else {
+                search = Filters.text(query)
+            }
+            FindPublisher<RawBsonDocument> publisher = session.getReactiveCollection(entity).find(staticApi.wrapFilterWithMultiTenancy(search))
+
+            int offset = options.offset instanceof Number ? ((Number)options.offset).intValue() : 0
+            int max = options.max instanceof Number ? ((Number)options.max).intValue() : -1
+            if(offset > 0) publisher = publisher.skip(offset)
+            if(max > -1) publisher = publisher.limit(max)
+            return new EntityPublisher<D>(session.datastore, entity, publisher)
+        }
+    }
+
+    /**
+     * Flushes the current session without blocking
+     *
+     * @return A publisher that completes once the pending writes of the session have been sent
+     * @see MongoCodecSession#flushReactive(com.mongodb.WriteConcern)
+     */
+    Publisher<Void> flush() {
+        (Publisher<Void>) staticApi.withSession { Session session ->
+            if(!(session instanceof MongoCodecSession)) {
+                throw new UnsupportedOperationException("Reactive flushes are only supported by the codec engine")
+            }
+            return ((MongoCodecSession) session).flushReactive()
+        }
+    }
+
+    /**
+     * Runs a query built by the blocking API on the reactive streams driver
+     *
+     * @param query The query
+     * @return A publisher of the matching entities
+     */
+    Publisher<D> publish(MongoQuery query) {
+        staticApi.applyMultiTenancy(query)
+        return query.<D>publisher()
+    }
+
+    /**
+     * Resolves {@code findAllBy*} and {@code findBy*} dynamic finders to publishers
+     */
+    @CompileDynamic
+    def methodMissing(String methodName, Object args) {
+        Object[] arguments = args instanceof Object[] ? (Object[]) args : [args] as Object[]
+        DynamicFinder finder = finders.find { DynamicFinder f -> f.isMethodMatch(methodName) }
+        if(finder == null) {
+            throw new MissingMethodException(methodName, MongoReactiveApi, arguments)
+        }
+        staticApi.withSession { Session session ->
+            def invocation = finder.createFinderInvocation(persistentClass, methodName, null, arguments)
+            MongoQuery query = (MongoQuery) finder.buildQuery(invocation, session)
+            if(finder instanceof FindByFinder) {
+                query.max(1)
+            }
+            return publish(query)
+        }
+    }
+
+    private PersistentEntity getCodecEntity(AbstractMongoSession session) {
+        if(!(session instanceof MongoCodecSession)) {
+            throw new UnsupportedOperationException("Reactive queries are only supported by the codec engine")
+        }
+        return session.mappingContext.getPersistentEntity(persistentClass.name)
+    }
+}
@@ -1,10 +1,11 @@
 package org.grails.datastore.gorm.mongo.api
 
+import com.mongodb.ExplainVerbosity
 import com.mongodb.ReadPreference
 import com.mongodb.client.AggregateIterable
 import com.mongodb.client.FindIterable
-import com.mongodb.client.MongoClient
 import com.mongodb.client.MongoCollection
+import com.mongodb.client.MongoCursor
 import com.mongodb.client.MongoDatabase
 import com.mongodb.client.model.Aggregates
 import com.mongodb.client.model.Filters
@@ -14,24 +15,34 @@ import com.mongodb.client.model.TextSearchOptions
 import grails.gorm.multitenancy.Tenants
 import grails.mongodb.MongoEntity
 import grails.mongodb.api.MongoAllOperations
+import grails.gorm.DetachedCriteria
 import groovy.transform.CompileStatic
 import org.bson.Document
+import org.bson.RawBsonDocument
 import org.bson.conversions.Bson
 import org.grails.datastore.gorm.GormStaticApi
+import org.grails.datastore.gorm.finders.DynamicFinder
 import org.grails.datastore.gorm.finders.FinderMethod
 import org.grails.datastore.gorm.mongo.MongoCriteriaBuilder
 import org.grails.datastore.mapping.core.Datastore
+import org.grails.datastore.mapping.core.DatastoreUtils
 import org.grails.datastore.mapping.core.Session
 import org.grails.datastore.mapping.engine.EntityPersister
 import org.grails.datastore.mapping.engine.internal.MappingUtils
 import org.grails.datastore.mapping.mongo.AbstractMongoSession
 import org.grails.datastore.mapping.mongo.MongoCodecSession
-import org.grails.datastore.mapping.mongo.MongoDatastore
+import org.grails.datastore.mapping.mongo.changes.ChangeEvent
+import org.grails.datastore.mapping.mongo.changes.ChangeStreamSubscription
+import org.grails.datastore.mapping.mongo.profiling.SlowQueryProfiler
 import org.grails.datastore.mapping.mongo.query.MongoQuery
 import org.grails.datastore.mapping.multitenancy.MultiTenancySettings
+import org.grails.datastore.mapping.query.Query
 import org.springframework.transaction.PlatformTransactionManager
 
+import java.util.function.Consumer
 import java.util.function.Function
+import java.util.function.Supplier
+import java.util.stream.Stream
 
 /**
  * MongoDB static API implementation
@@ -42,16 +53,30 @@ import java.util.function.Function
 @CompileStatic
 class MongoStaticApi<D> extends GormStaticApi<D> implements MongoAllOperations<D> {
 
+    private MongoReactiveApi<D> reactiveApi
+
     MongoStaticApi(Class<D> persistentClass, Datastore datastore, List<FinderMethod> finders, PlatformTransactionManager transactionManager) {
         super(persistentClass, datastore, finders, transactionManager)
     }
 
+    /**
+     * @return The reactive execution mode of the entity
+     * @since 9.0
+     */
+    MongoReactiveApi<D> getReactive() {
+        MongoReactiveApi<D> api = reactiveApi
+        if(api == null) {
+            api = new MongoReactiveApi<D>(this, persistentClass, datastore)
+            reactiveApi = api
+        }
+        return api
+    }
+
     FindIterable<D> find(Bson filter) {
         withSession { AbstractMongoSession session ->
             def entity = session.mappingContext.getPersistentEntity(persistentClass.name)
             filter = wrapFilterWithMultiTenancy(filter)
-            return session.getCollection(entity)
-                    .withDocumentClass(persistentClass)
+            return session.getCollection(entity, persistentClass)
                     .find(filter)
         }
     }
@@ -61,8 +86,7 @@ class MongoStaticApi<D> extends GormStaticApi<D> implements MongoAllOperations<D
         withSession { AbstractMongoSession session ->
             def entity = session.mappingContext.getPersistentEntity(persistentClass.name)
             filter = wrapFilterWithMultiTenancy(filter)
-            MongoCollection<D> mongoCollection = session.getCollection(entity)
-                                                        .withDocumentClass(persistentClass)
+            MongoCollection<D> mongoCollection = session.getCollection(entity, persistentClass)
             D result = options ? mongoCollection
                                     .findOneAndDelete(filter, options) :
                                 mongoCollection
@@ -121,11 +145,7 @@ class MongoStaticApi<D> extends GormStaticApi<D> implements MongoAllOperations<D
             def entity = session.mappingContext.getPersistentEntity(persistentClass.name)
             final previous = session.useCollection(entity, collectionName)
             try {
-                def dbName = session.getDatabase(entity)
-                MongoClient mongoClient = (MongoClient) session.getNativeInterface()
-                MongoDatabase db = mongoClient.getDatabase(dbName)
-                def coll = db.getCollection(collectionName)
-                return callable.call(coll)
+                return callable.call(session.getCollection(entity))
             } finally {
                 session.useCollection(entity, previous)
             }
@@ -171,20 +191,14 @@ class MongoStaticApi<D> extends GormStaticApi<D> implements MongoAllOperations<D
     List<D> aggregate(List pipeline, Function<AggregateIterable, AggregateIterable> doWithAggregate = Function.identity()) {
         (List<D>)withSession( { AbstractMongoSession session ->
             def persistentEntity = session.mappingContext.getPersistentEntity(persistentClass.name)
-            def mongoCollection = session.getCollection(persistentEntity)
-            if(session instanceof MongoCodecSession) {
-                MongoDatastore datastore = (MongoDatastore)session.getDatastore()
-                mongoCollection = mongoCollection
-                        .withDocumentClass(persistentEntity.javaClass)
-                        .withCodecRegistry(datastore.getCodecRegistry())
-            }
+            MongoCollection mongoCollection = session instanceof MongoCodecSession ? session.getCollection(persistentEntity, persistentEntity.javaClass) : session.getCollection(persistentEntity)
 
             List<? extends Bson> newPipeline = preparePipeline(pipeline)
             AggregateIterable aggregateIterable = mongoCollection.aggregate(newPipeline)
             if (doWithAggregate != null) {
                 aggregateIterable = doWithAggregate.apply(aggregateIterable)
             }
-            new MongoQuery.MongoResultList(aggregateIterable.iterator(), 0, (EntityPersister)session.getPersister(persistentEntity) as EntityPersister)
+            new MongoQuery.MongoResultList(profileAggregate(session, mongoCollection, newPipeline, aggregateIterable), 0, (EntityPersister)session.getPersister(persistentEntity) as EntityPersister)
         } )
     }
 
@@ -194,13 +208,12 @@ class MongoStaticApi<D> extends GormStaticApi<D> implements MongoAllOperations<D
         (List<D>)withSession( { AbstractMongoSession session ->
             def persistentEntity = session.mappingContext.getPersistentEntity(persistentClass.name)
             List<? extends Bson> newPipeline = preparePipeline(pipeline)
-            def mongoCollection = session.getCollection(persistentEntity)
-                    .withReadPreference(readPreference)
+            def mongoCollection = session.getCollection(persistentEntity, Document, null, readPreference)
             def aggregateIterable = mongoCollection.aggregate(newPipeline)
             if (doWithAggregate != null) {
                 aggregateIterable = doWithAggregate.apply(aggregateIterable)
             }
-            new MongoQuery.MongoResultList(aggregateIterable.iterator(), 0, (EntityPersister)session.getPersister(persistentEntity))
+            new MongoQuery.MongoResultList(profileAggregate(session, mongoCollection, newPipeline, aggregateIterable), 0, (EntityPersister)session.getPersister(persistentEntity))
         } )
     }
 
@@ -208,13 +221,7 @@ class MongoStaticApi<D> extends GormStaticApi<D> implements MongoAllOperations<D
     List<D> search(String query, Map options = Collections.emptyMap()) {
         (List<D>)withSession( { AbstractMongoSession session ->
             def persistentEntity = session.mappingContext.getPersistentEntity(persistentClass.name)
-            def coll = session.getCollection(persistentEntity)
-            if(session instanceof MongoCodecSession) {
-                MongoDatastore datastore = (MongoDatastore)session.datastore
-                coll = coll
-                        .withDocumentClass(persistentEntity.javaClass)
-                        .withCodecRegistry(datastore.codecRegistry)
-            }
+            MongoCollection coll = session instanceof MongoCodecSession ? session.getCollection(persistentEntity, persistentEntity.javaClass) : session.getCollection(persistentEntity)
             Bson search
             if(options.language) {
                 search = Filters.text(query, new TextSearchOptions().language(options.language.toString()))
@@ -229,7 +236,7 @@ class MongoStaticApi<D> extends GormStaticApi<D> implements MongoAllOperations<D
             int max = options.max instanceof Number ? ((Number)options.max).intValue() : -1
             if(offset > 0) cursor.skip(offset)
             if(max > -1) cursor.limit(max)
-            new MongoQuery.MongoResultList(cursor.iterator(), offset, (EntityPersister)session.getPersister(persistentEntity))
+            new MongoQuery.MongoResultList(profileSearch(session, coll, search, cursor), offset, (EntityPersister)session.getPersister(persistentEntity))
         } )
     }
 
@@ -238,13 +245,7 @@ class MongoStaticApi<D> extends GormStaticApi<D> implements MongoAllOperations<D
         (List<D>)withSession( { AbstractMongoSession session ->
             def persistentEntity = session.mappingContext.getPersistentEntity(persistentClass.name)
 
-            MongoCollection coll = session.getCollection(persistentEntity)
-            if(session instanceof MongoCodecSession) {
-                MongoDatastore datastore = (MongoDatastore)session.datastore
-                coll = coll
-                        .withDocumentClass(persistentEntity.javaClass)
-                        .withCodecRegistry(datastore.codecRegistry)
-            }
+            MongoCollection coll = session instanceof MongoCodecSession ? session.getCollection(persistentEntity, persistentEntity.javaClass) : session.getCollection(persistentEntity)
             EntityPersister persister = (EntityPersister)session.getPersister(persistentEntity)
 
             Bson search
@@ -263,7 +264,7 @@ class MongoStaticApi<D> extends GormStaticApi<D> implements MongoAllOperations<D
                                             .sort(score)
                                             .limit(limit)
 
-            new MongoQuery.MongoResultList(cursor.iterator(), 0, persister)
+            new MongoQuery.MongoResultList(profileSearch(session, coll, search, cursor), 0, persister)
         } )
     }
 
@@ -274,6 +275,32 @@ class MongoStaticApi<D> extends GormStaticApi<D> implements MongoAllOperations<D
     }
 
 
+    /**
+     * Executes an aggregation, recording it with the {@link SlowQueryProfiler} of the datastore if it is slow
+     */
+    protected MongoCursor profileAggregate(AbstractMongoSession session, MongoCollection collection, List<? extends Bson> pipeline, AggregateIterable aggregateIterable) {
+        SlowQueryProfiler profiler = session.datastore.slowQueryProfiler
+        long start = System.nanoTime()
+        MongoCursor cursor = aggregateIterable.iterator()
+        profiler.record(SlowQueryProfiler.AGGREGATE, collection.namespace, start, { -> new Document('pipeline', pipeline) } as Supplier<Document>, { Document command ->
+            aggregateIterable.explain(ExplainVerbosity.EXECUTION_STATS)
+        } as Function<Document, Document>)
+        return cursor
+    }
+
+    /**
+     * Executes a text search, recording it with the {@link SlowQueryProfiler} of the datastore if it is slow
+     */
+    protected MongoCursor profileSearch(AbstractMongoSession session, MongoCollection collection, Bson search, FindIterable findIterable) {
+        SlowQueryProfiler profiler = session.datastore.slowQueryProfiler
+        long start = System.nanoTime()
+        MongoCursor cursor = findIterable.iterator()
+        profiler.record(SlowQueryProfiler.SEARCH, collection.namespace, start, { -> search } as Supplier<Bson>, { Bson command ->
+            findIterable.explain(ExplainVerbosity.EXECUTION_STATS)
+        } as Function<Bson, Document>)
+        return cursor
+    }
+
     protected Bson wrapFilterWithMultiTenancy(Bson filter) {
         if (multiTenancyMode == MultiTenancySettings.MultiTenancyMode.DISCRIMINATOR && persistentEntity.isMultiTenant()) {
             filter = Filters.and(
@@ -284,7 +311,130 @@ class MongoStaticApi<D> extends GormStaticApi<D> implements MongoAllOperations<D
         return filter
     }
 
-    private List<Bson> preparePipeline(List pipeline) {
+    @Override
+    Stream<D> stream(@DelegatesTo(DetachedCriteria) Closure criteria) {
+        stream(Collections.emptyMap(), criteria)
+    }
+
+    @Override
+    Stream<D> stream(Map args, @DelegatesTo(DetachedCriteria) Closure criteria) {
+        stream(new DetachedCriteria<D>(persistentClass).build(criteria), args)
+    }
+
+    @Override
+    Stream<D> stream(DetachedCriteria<D> criteria, Map args = Collections.emptyMap()) {
+        (Stream<D>) withSession { Session session ->
+            MongoQuery query = (MongoQuery) session.createQuery(persistentClass)
+            DynamicFinder.applyDetachedCriteria(query, criteria)
+            DynamicFinder.populateArgumentsForCriteria(persistentClass, query, args)
+            applyMultiTenancy(query)
+            return query.<D>stream()
+        }
+    }
+
+    @Override
+    MongoQuery.KeysetResultList<D> listAfter(String token, Map args = Collections.emptyMap()) {
+        listAfter(new DetachedCriteria<D>(persistentClass), token, args)
+    }
+
+    @Override
+    MongoQuery.KeysetResultList<D> listAfter(String token, Map args, @DelegatesTo(DetachedCriteria) Closure criteria) {
+        listAfter(new DetachedCriteria<D>(persistentClass).build(criteria), token, args)
+    }
+
+    @Override
+    MongoQuery.KeysetResultList<D> listAfter(DetachedCriteria<D> criteria, String token, Map args = Collections.emptyMap()) {
+        (MongoQuery.KeysetResultList<D>) withSession { Session session ->
+            MongoQuery query = (MongoQuery) session.createQuery(persistentClass)
+            Map arguments = new LinkedHashMap(args)
+            arguments.put(MongoQuery.AFTER_ARGUMENT, token)
+            DynamicFinder.applyDetachedCriteria(query, criteria)
+            DynamicFinder.populateArgumentsForCriteria(persistentClass, query, arguments)
+
+            // the tenant criterion is added by Query#list()
+            List<D> results = (List<D>) query.list()
+            Object max = arguments.get(DynamicFinder.ARGUMENT_MAX)
+            boolean lastPage = results.isEmpty() || (max != null && results.size() < (max instanceof Number ? ((Number) max).intValue() : max.toString().toInteger()))
+            return new MongoQuery.KeysetResultList<D>(results, lastPage ? null : query.createKeysetToken(results.get(results.size() - 1)))
+        }
+    }
+
+    @Override
+    ChangeStreamSubscription<D> watch(Consumer<ChangeEvent<D>> listener) {
+        watch(new DetachedCriteria<D>(persistentClass), Collections.emptyMap(), listener)
+    }
+
+    @Override
+    ChangeStreamSubscription<D> watch(@DelegatesTo(DetachedCriteria) Closure criteria, Consumer<ChangeEvent<D>> listener) {
+        watch(Collections.emptyMap(), criteria, listener)
+    }
+
+    @Override
+    ChangeStreamSubscription<D> watch(Map args, @DelegatesTo(DetachedCriteria) Closure criteria, Consumer<ChangeEvent<D>> listener) {
+        watch(new DetachedCriteria<D>(persistentClass).build(criteria), args, listener)
+    }
+
+    @Override
+    ChangeStreamSubscription<D> watch(DetachedCriteria<D> criteria, Map args, Consumer<ChangeEvent<D>> listener) {
+        ChangeStreamSubscription<D> subscription = (ChangeStreamSubscription<D>) withSession { Session session ->
+            if (!(session instanceof MongoCodecSession)) {
+                throw new UnsupportedOperationException("Change stream subscriptions are only supported by the codec engine")
+            }
+            MongoCodecSession mongoSession = (MongoCodecSession) session
+            def persistentEntity = mongoSession.mappingContext.getPersistentEntity(persistentClass.name)
+            MongoQuery query = (MongoQuery) mongoSession.createQuery(persistentClass)
+            DynamicFinder.applyDetachedCriteria(query, criteria)
+            applyMultiTenancy(query)
+            // the discriminator and tenant restrict deletions as well, which have no document to match the criteria against
+            MongoQuery partition = (MongoQuery) mongoSession.createQuery(persistentClass)
+            applyMultiTenancy(partition)
+            return new ChangeStreamSubscription<D>(
+                    mongoSession.datastore,
+                    persistentEntity,
+                    mongoSession.getCollection(persistentEntity, RawBsonDocument),
+                    ChangeStreamSubscription.createPipeline(query.getMongoQuery(), partition.getMongoQuery()),
+                    args,
+                    listener
+            )
+        }
+        return subscription.start()
+    }
+
+    @Override
+    def <T> T withNewSession(Map options, Closure<T> callable) {
+        Session session = datastore.connect()
+        try {
+            if (session instanceof AbstractMongoSession) {
+                Object readOnly = options.get(MongoQuery.READ_ONLY_ARGUMENT)
+                ((AbstractMongoSession) session).setReadOnly(readOnly instanceof Boolean ? (Boolean) readOnly : Boolean.parseBoolean(String.valueOf(readOnly)))
+            }
+            DatastoreUtils.bindNewSession(session)
+            return callable.call(session)
+        }
+        finally {
+            try {
+                DatastoreUtils.unbindSession(session)
+            }
+            finally {
+                // releases the client session of the routed reads
+                session.disconnect()
+            }
+        }
+    }
+
+    /**
+     * Restricts a query to the current tenant when discriminator multi-tenancy is used, for queries that are not run through
+     * {@link Query#list()}
+     *
+     * @param query The query
+     */
+    protected void applyMultiTenancy(Query query) {
+        if (multiTenancyMode == MultiTenancySettings.MultiTenancyMode.DISCRIMINATOR && persistentEntity.isMultiTenant()) {
+            query.eq(persistentEntity.tenantId.name, Tenants.currentId((Class<Datastore>) datastore.getClass()))
+        }
+    }
+
+    protected List<Bson> preparePipeline(List pipeline) {
         List<Bson> newPipeline = new ArrayList<Bson>()
         if (multiTenancyMode == MultiTenancySettings.MultiTenancyMode.DISCRIMINATOR && persistentEntity.isMultiTenant()) {
             newPipeline.add(
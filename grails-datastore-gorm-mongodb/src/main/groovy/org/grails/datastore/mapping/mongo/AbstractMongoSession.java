@@ -14,9 +14,14 @@
  */
 package org.grails.datastore.mapping.mongo;
 
+import com.mongodb.ClientSessionOptions;
+import com.mongodb.ReadPreference;
 import com.mongodb.WriteConcern;
+import com.mongodb.client.ClientSession;
 import com.mongodb.client.MongoClient;
 import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.configuration.CodecRegistry;
 import org.grails.datastore.mapping.core.AbstractSession;
 import org.grails.datastore.mapping.core.impl.PendingOperation;
 import org.grails.datastore.mapping.document.config.DocumentMappingContext;
@@ -48,6 +53,10 @@ public abstract class AbstractMongoSession extends AbstractSession<MongoClient>
     protected boolean errorOccured = false;
     protected Map<PersistentEntity, String> mongoCollections = new ConcurrentHashMap<PersistentEntity, String>();
     protected Map<PersistentEntity, String> mongoDatabases = new ConcurrentHashMap<PersistentEntity, String>();
+    protected boolean readOnly = false;
+    protected boolean written = false;
+    private ClientSession readClientSession;
+    private final Map<com.mongodb.client.MongoCollection<?>, com.mongodb.client.MongoCollection<?>> sessionCollections = new ConcurrentHashMap<>();
 
     public AbstractMongoSession(MongoDatastore datastore, MappingContext mappingContext, ApplicationEventPublisher publisher) {
         this(datastore, mappingContext, publisher, false);
@@ -69,6 +78,126 @@ public abstract class AbstractMongoSession extends AbstractSession<MongoClient>
         return (MongoDatastore) super.getDatastore();
     }
 
+    /**
+     * @return Whether the queries of this session return detached instances rather than instances cached in the session
+     * @since 9.0
+     */
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    /**
+     * Sets whether the queries of this session are read-only. The results of read-only queries are not cached in the session,
+     * no post load events are fired for them and the session is not flushed before they are executed. Queries are also
+     * read-only within a read-only transaction, such as a method annotated with {@code @ReadOnly}, if the datastore is
+     * configured to {@link MongoDatastore#isDetachReadOnlyTransactions() detach them}
+     *
+     * @param readOnly Whether the queries are read-only
+     * @since 9.0
+     */
+    public void setReadOnly(boolean readOnly) {
+        this.readOnly = readOnly;
+    }
+
+    /**
+     * Obtains the read preference of a query. Read-only queries are routed with the read preference configured for them,
+     * typically to a secondary, unless this session has pending writes or has already written, in which case they stay on the
+     * primary so that the writes are read back. Queries of an entity mapped with its own read preference are not routed
+     *
+     * @param entity The entity
+     * @param readOnly Whether the query is read-only
+     * @return The read preference or null if the query is not routed
+     * @since 9.0
+     */
+    public ReadPreference getRoutedReadPreference(PersistentEntity entity, boolean readOnly) {
+        final MongoCollection mappedForm = getDatastore().getMappedCollection(entity.isRoot() ? entity : entity.getRootEntity());
+        if (mappedForm != null && mappedForm.getReadPreference() != null) {
+            return null;
+        }
+        return getRoutedReadPreference(readOnly);
+    }
+
+    /**
+     * Obtains the read preference of a read-only query, regardless of the read preference mapped for its entity
+     *
+     * @param readOnly Whether the query is read-only
+     * @return The read preference or null if the query is not routed
+     * @since 9.0
+     */
+    public ReadPreference getRoutedReadPreference(boolean readOnly) {
+        final ReadPreference readPreference = getDatastore().getReadOnlyReadPreference();
+        if (!readOnly || readPreference == null || written) {
+            return null;
+        }
+        if (!getPendingInserts().isEmpty() || !getPendingUpdates().isEmpty() || !getPendingDeletes().isEmpty()) {
+            return null;
+        }
+        return readPreference;
+    }
+
+    /**
+     * Obtains the collection read by a query, with the routed read preference of read-only queries
+     *
+     * @param entity The entity
+     * @param readOnly Whether the query is read-only
+     * @return The collection
+     * @since 9.0
+     */
+    public com.mongodb.client.MongoCollection<Document> getReadCollection(PersistentEntity entity, boolean readOnly) {
+        return getReadCollection(entity, Document.class, readOnly);
+    }
+
+    /**
+     * Obtains the collection read by a query with the given document class
+     *
+     * @see #getReadCollection(PersistentEntity, boolean)
+     * @since 9.0
+     */
+    public <T> com.mongodb.client.MongoCollection<T> getReadCollection(PersistentEntity entity, Class<T> documentClass, boolean readOnly) {
+        return getCollection(entity, documentClass, null, getRoutedReadPreference(entity, readOnly));
+    }
+
+    /**
+     * Obtains the causally consistent {@link ClientSession} of the routed reads of this session, so that successive reads
+     * from different secondaries never observe an earlier state. The client session is started on first use and is closed
+     * when this session is disconnected
+     *
+     * @param readOnly Whether the query is read-only
+     * @return The client session or null if the query is not routed
+     * @since 9.0
+     */
+    public ClientSession getReadClientSession(boolean readOnly) {
+        if (getRoutedReadPreference(readOnly) == null) {
+            return null;
+        }
+        if (readClientSession == null) {
+            readClientSession = getNativeInterface().startSession(ClientSessionOptions.builder().causallyConsistent(true).build());
+        }
+        return readClientSession;
+    }
+
+    @Override
+    public void disconnect() {
+        try {
+            super.disconnect();
+        } finally {
+            if (readClientSession != null) {
+                readClientSession.close();
+                readClientSession = null;
+            }
+        }
+    }
+
+    /**
+     * Obtains the {@link CodecRegistry} used to encode and decode the entities of this session
+     *
+     * @return The codec registry
+     * @since 9.0
+     */
+    public CodecRegistry getCodecRegistry() {
+        return getDatastore().getCodecRegistry();
+    }
+
     @Override
     public void flush() {
         flush(this.getWriteConcern());
@@ -178,19 +307,87 @@ public abstract class AbstractMongoSession extends AbstractSession<MongoClient>
         }
     }
 
+    /**
+     * Obtains the collection of the given entity, in the database and collection used by this session. The collection is
+     * configured with the read preference, read concern and write concern mapped for the entity
+     *
+     * @param entity The entity
+     * @return The collection
+     */
     public com.mongodb.client.MongoCollection<Document> getCollection(PersistentEntity entity) {
-        if(entity.isRoot()) {
-            final String database = getDatabase(entity);
-            final String collectionName = getCollectionName(entity);
-            return getNativeInterface()
-                    .getDatabase(database)
-                    .getCollection(collectionName)
-                    .withCodecRegistry(getDatastore().getCodecRegistry());
+        return getCollection(entity, Document.class, null, null);
+    }
+
+    /**
+     * Obtains the collection of the given entity with the given document class
+     *
+     * @param entity The entity
+     * @param documentClass The class of the documents
+     * @return The collection
+     * @since 9.0
+     */
+    public <T> com.mongodb.client.MongoCollection<T> getCollection(PersistentEntity entity, Class<T> documentClass) {
+        return getCollection(entity, documentClass, null, null);
+    }
+
+    /**
+     * Obtains the collection of the given entity, in the database and collection used by this session. The collection is
+     * obtained from the {@link MongoCollectionHandles} of the datastore and is adapted to the codec registry of this session
+     * once per session
+     *
+     * @param entity The entity
+     * @param documentClass The class of the documents
+     * @param writeConcern The write concern or null for the write concern mapped for the entity
+     * @param readPreference The read preference or null for the read preference mapped for the entity
+     * @return The collection
+     * @since 9.0
+     */
+    @SuppressWarnings("unchecked")
+    public <T> com.mongodb.client.MongoCollection<T> getCollection(PersistentEntity entity, Class<T> documentClass, WriteConcern writeConcern, ReadPreference readPreference) {
+        if(!entity.isRoot()) {
+            entity = entity.getRootEntity();
         }
-        else {
-            final PersistentEntity root = entity.getRootEntity();
-            return getCollection(root);
+        final com.mongodb.client.MongoCollection<T> handle = getDatastore().getCollectionHandles()
+                .getCollection(entity, getDatabase(entity), getCollectionName(entity), documentClass, writeConcern, readPreference);
+        final CodecRegistry codecRegistry = getCodecRegistry();
+        if (handle.getCodecRegistry() == codecRegistry) {
+            return handle;
+        }
+        // the codec registry of a session may be bound to it, so the collection is adapted once per session
+        com.mongodb.client.MongoCollection<T> collection = (com.mongodb.client.MongoCollection<T>) sessionCollections.get(handle);
+        if (collection == null || collection.getCodecRegistry() != codecRegistry) {
+            collection = handle.withCodecRegistry(codecRegistry);
+            sessionCollections.put(handle, collection);
+        }
+        return collection;
+    }
+
+    /**
+     * Obtains the collection of the given entity from the reactive streams client of the datastore. Documents are read as
+     * {@link RawBsonDocument} instances so that they can be decoded by the caller
+     *
+     * @param entity The entity
+     * @return The reactive collection
+     * @since 9.0
+     */
+    public com.mongodb.reactivestreams.client.MongoCollection<RawBsonDocument> getReactiveCollection(PersistentEntity entity) {
+        return getReactiveCollection(entity, RawBsonDocument.class, null, null);
+    }
+
+    /**
+     * Obtains the collection of the given entity from the reactive streams client of the datastore
+     *
+     * @see #getCollection(PersistentEntity, Class, WriteConcern, ReadPreference)
+     * @since 9.0
+     */
+    public <T> com.mongodb.reactivestreams.client.MongoCollection<T> getReactiveCollection(PersistentEntity entity, Class<T> documentClass, WriteConcern writeConcern, ReadPreference readPreference) {
+        if(!entity.isRoot()) {
+            entity = entity.getRootEntity();
         }
+        final com.mongodb.reactivestreams.client.MongoCollection<T> handle = getDatastore().getCollectionHandles()
+                .getReactiveCollection(entity, getDatabase(entity), getCollectionName(entity), documentClass, writeConcern, readPreference);
+        final CodecRegistry codecRegistry = getCodecRegistry();
+        return handle.getCodecRegistry() == codecRegistry ? handle : handle.withCodecRegistry(codecRegistry);
     }
 
     @Override
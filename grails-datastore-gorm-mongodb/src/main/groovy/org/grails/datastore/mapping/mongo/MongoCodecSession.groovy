@@ -13,11 +13,13 @@
  * limitations under the License.
  */
 package org.grails.datastore.mapping.mongo
+import com.mongodb.MongoNamespace
 import com.mongodb.WriteConcern
 import com.mongodb.bulk.BulkWriteResult
 import com.mongodb.client.FindIterable
 import com.mongodb.client.MongoClient
 import com.mongodb.client.MongoCollection
+import com.mongodb.client.model.BulkWriteOptions
 import com.mongodb.client.model.DeleteManyModel
 import com.mongodb.client.model.DeleteOneModel
 import com.mongodb.client.model.InsertOneModel
@@ -31,8 +33,12 @@ import org.bson.BsonDocumentReader
 import org.bson.BsonDocumentWrapper
 import org.bson.Document
 import org.bson.codecs.DecoderContext
+import org.bson.codecs.configuration.CodecRegistry
 import org.bson.conversions.Bson
 import org.grails.datastore.bson.query.BsonQuery
+import org.grails.datastore.mapping.cache.TPCacheAdapter
+import org.grails.datastore.mapping.cache.TPCacheAdapterRepository
+import org.grails.datastore.mapping.core.DatastoreUtils
 import org.grails.datastore.mapping.core.OptimisticLockingException
 import org.grails.datastore.mapping.core.impl.PendingDelete
 import org.grails.datastore.mapping.core.impl.PendingInsert
@@ -46,19 +52,36 @@ import org.grails.datastore.mapping.model.PersistentEntity
 import org.grails.datastore.mapping.model.config.GormProperties
 import org.grails.datastore.mapping.model.types.Association
 import org.grails.datastore.mapping.model.types.ToOne
+import org.grails.datastore.mapping.mongo.cache.CaffeineTPCacheAdapter
+import org.grails.datastore.mapping.mongo.config.MongoFlushStrategy
+import org.grails.datastore.mapping.mongo.engine.AssociationBatchLoader
 import org.grails.datastore.mapping.mongo.engine.MongoCodecEntityPersister
 import org.grails.datastore.mapping.mongo.engine.MongoEntityPersister
 import org.grails.datastore.mapping.mongo.engine.codecs.PersistentEntityCodec
+import org.grails.datastore.mapping.mongo.engine.codecs.SessionCodecRegistry
+import org.grails.datastore.mapping.mongo.profiling.SlowQueryProfiler
 import org.grails.datastore.mapping.mongo.query.MongoQuery
 import org.grails.datastore.mapping.query.Query
 import org.grails.datastore.mapping.query.api.QueryableCriteria
 import org.grails.datastore.mapping.transactions.SessionOnlyTransaction
 import org.grails.datastore.mapping.transactions.Transaction
+import org.reactivestreams.Publisher
+import org.reactivestreams.Subscriber
+import org.reactivestreams.Subscription
 import org.springframework.context.ApplicationEventPublisher
 import org.springframework.dao.DataIntegrityViolationException
 
 import jakarta.persistence.FlushModeType
+import java.util.concurrent.Callable
 import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Future
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicReference
+import java.util.function.Supplier
 /**
  * A MongoDB session for codec mapping style
  *
@@ -71,11 +94,37 @@ class MongoCodecSession extends AbstractMongoSession {
         def context = getDocumentMappingContext()
         def entity = context.getPersistentEntity(type.name)
         if(entity) {
-            return new MongoCodecEntityPersister(context, entity, this, publisher, cacheAdapterRepository )
+            return new MongoCodecEntityPersister(context, entity, this, publisher, getEntityCacheRepository() )
         }
         throw new IllegalArgumentException("Type [$type] is not an entity")
     }
 
+    /**
+     * The loader collecting batch fetched associations while a batch of query results is being decoded, if any
+     */
+    AssociationBatchLoader associationBatchLoader
+
+    /**
+     * The strategy used to send bulk writes when this session is flushed. Defaults to the strategy configured for the datastore
+     */
+    MongoFlushStrategy flushStrategy
+
+    /**
+     * The maximum number of documents written per bulk write when this session is flushed, with writes sent as soon as a chunk
+     * is complete. A value of 0 builds the writes for the whole session before sending them. Defaults to the chunk size configured for the datastore
+     */
+    int flushChunkSize
+
+    /**
+     * The list collecting the complete chunks of a reactive flush, which are sent once the whole session has been collected
+     */
+    private List<EntityBulkWrite> deferredBulkWrites
+
+    /**
+     * The registry whose entity codecs are bound to this session, created on first use
+     */
+    private volatile SessionCodecRegistry sessionCodecRegistry
+
     public MongoCodecSession(MongoDatastore datastore, MappingContext mappingContext, ApplicationEventPublisher publisher) {
         this(datastore, mappingContext, publisher, false);
     }
@@ -85,6 +134,8 @@ class MongoCodecSession extends AbstractMongoSession {
 
         FlushModeType defaultFlushMode = datastore.getDefaultFlushMode()
         setFlushMode(defaultFlushMode);
+        this.flushStrategy = datastore.getFlushStrategy()
+        this.flushChunkSize = datastore.getFlushChunkSize()
     }
 
     @Override
@@ -92,194 +143,400 @@ class MongoCodecSession extends AbstractMongoSession {
         return (MongoDatastore)super.getDatastore()
     }
 
+    /**
+     * Obtains a {@link SessionCodecRegistry} bound to this session. The entity codecs it provides resolve the session from the
+     * registry rather than from the current thread, so documents of this session can be encoded and decoded on any thread
+     *
+     * @return The codec registry
+     */
+    @Override
+    SessionCodecRegistry getCodecRegistry() {
+        SessionCodecRegistry registry = sessionCodecRegistry
+        CodecRegistry datastoreRegistry = getDatastore().getCodecRegistry()
+        if(registry == null || !registry.codecRegistry.is(datastoreRegistry)) {
+            registry = new SessionCodecRegistry(this, datastoreRegistry)
+            sessionCodecRegistry = registry
+        }
+        return registry
+    }
+
 
     @Override
     void flush(WriteConcern writeConcern) {
         WriteConcern currentWriteConcern = this.getWriteConcern();
         try {
             this.writeConcern = writeConcern;
-            final Map<PersistentEntity, Collection<PendingUpdate>> pendingUpdates = getPendingUpdates();
-            final Map<PersistentEntity, Collection<PendingInsert>> pendingInserts = getPendingInserts();
-            final Map<PersistentEntity, Collection<PendingDelete>> pendingDeletes = getPendingDeletes();
-
-            if(pendingUpdates.isEmpty() && pendingInserts.isEmpty() && pendingDeletes.isEmpty()) {
+            Collection<EntityBulkWrite> bulkWrites = collectBulkWrites(writeConcern)
+            if(bulkWrites == null) {
                 return;
             }
 
+            // subsequent read-only queries of this session stay on the primary so that the writes are read back
+            written = true
+            executeBulkWrites(bulkWrites, writeConcern)
 
-            Map<String,Integer> numberOfOptimisticUpdates = [:].withDefault { 0 }
-            Map<String,Integer> numberOfPessimisticUpdates = [:].withDefault { 0 }
+            for (Runnable postFlushOperation : postFlushOperations) {
+                postFlushOperation.run();
+            }
+        } finally {
+            clearPendingOperations();
+            postFlushOperations.clear();
+            firstLevelCollectionCache.clear();
+            this.writeConcern = currentWriteConcern;
+        }
+    }
 
-            Map<PersistentEntity, List<WriteModel<Document>>> writeModels = [:]
-            for (PersistentEntity persistentEntity in pendingInserts.keySet()) {
-                final Collection<PendingInsert> inserts = pendingInserts[persistentEntity]
-                if(inserts) {
-                    List<WriteModel<?>> entityWrites = getWriteModelsForEntity(persistentEntity, writeModels)
-                    for (PendingInsert insert in inserts) {
-                        insert.run()
+    /**
+     * Flushes the session without blocking. The pending operations are turned into bulk writes and removed from the session
+     * immediately, as they are by {@link #flush()}, and the bulk writes are sent with the reactive streams driver once the
+     * returned publisher is subscribed to. With the {@link MongoFlushStrategy#ORDERED} strategy the bulk writes are sent one
+     * after the other, otherwise the bulk writes of each collection are sent concurrently. Operations that run after a flush,
+     * such as cascades, run once every bulk write has succeeded on a thread of the {@link MongoDatastore#getReactiveFlushExecutor()
+     * reactive flush executor} with this session bound to it, never on a thread of the driver.
+     *
+     * A session is not thread safe, so it must not be used by any other thread from the moment the publisher is subscribed to
+     * until it terminates
+     *
+     * @param writeConcern The write concern to use, or null to use the write concern of each entity
+     * @return A publisher that completes once the writes have been sent, or fails with the first write error
+     * @since 9.0
+     */
+    Publisher<Void> flushReactive(WriteConcern writeConcern = getWriteConcern()) {
+        WriteConcern currentWriteConcern = this.getWriteConcern()
+        MongoFlushStrategy strategy = flushStrategy ?: MongoFlushStrategy.ORDERED
+        List<EntityBulkWrite> bulkWrites = []
+        List<Runnable> operations = []
+        try {
+            this.writeConcern = writeConcern
+            deferredBulkWrites = bulkWrites
+            Collection<EntityBulkWrite> remaining = collectBulkWrites(writeConcern)
+            if(remaining != null) {
+                bulkWrites.addAll(remaining)
+            }
+            for (EntityBulkWrite bulkWrite in bulkWrites) {
+                bulkWrite.prepare(this, writeConcern, strategy != MongoFlushStrategy.ORDERED)
+            }
+            operations.addAll(postFlushOperations)
+        } finally {
+            deferredBulkWrites = null
+            clearPendingOperations()
+            postFlushOperations.clear()
+            firstLevelCollectionCache.clear()
+            this.writeConcern = currentWriteConcern
+        }
 
-                        if(insert.vetoed) continue
+        List<List<EntityBulkWrite>> lanes = []
+        if(strategy == MongoFlushStrategy.ORDERED) {
+            if(bulkWrites) {
+                lanes.add(bulkWrites)
+            }
+        }
+        else {
+            // the chunks of a collection are still sent in order so that writes to the same document are applied in order
+            Map<PersistentEntity, List<EntityBulkWrite>> byEntity = new LinkedHashMap<>()
+            for (EntityBulkWrite bulkWrite in bulkWrites) {
+                List<EntityBulkWrite> lane = byEntity.get(bulkWrite.entity)
+                if(lane == null) {
+                    lane = []
+                    byEntity.put(bulkWrite.entity, lane)
+                }
+                lane.add(bulkWrite)
+            }
+            lanes.addAll(byEntity.values())
+        }
+        return new FlushPublisher(this, lanes, operations)
+    }
 
+    /**
+     * Runs the pending operations of the session and collects the resulting writes into a bulk write per root entity
+     *
+     * @param writeConcern The write concern to use, or null to use the write concern of each entity
+     * @return The bulk writes that have writes or null if there are no pending operations
+     */
+    protected Collection<EntityBulkWrite> collectBulkWrites(WriteConcern writeConcern) {
+        final Map<PersistentEntity, Collection<PendingUpdate>> pendingUpdates = getPendingUpdates();
+        final Map<PersistentEntity, Collection<PendingInsert>> pendingInserts = getPendingInserts();
+        final Map<PersistentEntity, Collection<PendingDelete>> pendingDeletes = getPendingDeletes();
+
+        if(pendingUpdates.isEmpty() && pendingInserts.isEmpty() && pendingDeletes.isEmpty()) {
+            return null;
+        }
 
-                        def object = insert.nativeEntry
-                        entityWrites << new InsertOneModel<?>(object)
 
-                        final List<PendingOperation> cascadeOperations = insert.cascadeOperations
-                        addPostFlushOperations cascadeOperations
-                    }
+        Map<PersistentEntity, EntityBulkWrite> bulkWrites = [:]
+        for (PersistentEntity persistentEntity in pendingInserts.keySet()) {
+            final Collection<PendingInsert> inserts = pendingInserts[persistentEntity]
+            if(inserts) {
+                EntityBulkWrite bulkWrite = getBulkWriteForEntity(persistentEntity, bulkWrites)
+                for (PendingInsert insert in inserts) {
+                    insert.run()
+
+                    if(insert.vetoed) continue
+
+
+                    def object = insert.nativeEntry
+                    addWrite(bulkWrite, new InsertOneModel<?>(object), insert.nativeKey, writeConcern)
+
+                    final List<PendingOperation> cascadeOperations = insert.cascadeOperations
+                    addPostFlushOperations cascadeOperations
                 }
             }
+        }
+
 
+        for (PersistentEntity persistentEntity in pendingUpdates.keySet()) {
 
-            for (PersistentEntity persistentEntity in pendingUpdates.keySet()) {
+            final Collection<PendingUpdate> updates = pendingUpdates[persistentEntity]
+            if(updates) {
+                EntityBulkWrite bulkWrite = getBulkWriteForEntity(persistentEntity, bulkWrites)
+                for (PendingUpdate update in updates) {
+                    update.run()
 
-                final String name = persistentEntity.isRoot() ? persistentEntity.name : persistentEntity.rootEntity.name
+                    if(update.vetoed) continue
 
-                final Collection<PendingUpdate> updates = pendingUpdates[persistentEntity]
-                if(updates) {
-                    List<WriteModel<?>> entityWrites = getWriteModelsForEntity(persistentEntity, writeModels);
-                    for (PendingUpdate update in updates) {
-                        update.run()
+                    DirtyCheckable changedObject = (DirtyCheckable) update.getNativeEntry()
+                    PersistentEntityCodec codec = (PersistentEntityCodec)getCodecRegistry().get(changedObject.getClass())
 
-                        if(update.vetoed) continue
+                    final Object nativeKey = update.nativeKey
+                    final Document id = new Document(MongoEntityPersister.MONGO_ID_FIELD, nativeKey)
 
-                        DirtyCheckable changedObject = (DirtyCheckable) update.getNativeEntry()
-                        PersistentEntityCodec codec = (PersistentEntityCodec)datastore.codecRegistry.get(changedObject.getClass())
+                    EntityAccess entityAccess = update.entityAccess
+                    boolean isVersioned = persistentEntity.isVersioned()
+                    def currentVersion = null
+                    if(isVersioned) {
+                        currentVersion = entityAccess.getProperty( persistentEntity.version.name )
+                    }
+                    def updateDoc = codec.encodeUpdate(changedObject, entityAccess)
 
-                        final Object nativeKey = update.nativeKey
-                        final Document id = new Document(MongoEntityPersister.MONGO_ID_FIELD, nativeKey)
+                    if(updateDoc) {
 
-                        EntityAccess entityAccess = update.entityAccess
-                        boolean isVersioned = persistentEntity.isVersioned()
-                        def currentVersion = null
                         if(isVersioned) {
-                            currentVersion = entityAccess.getProperty( persistentEntity.version.name )
-                        }
-                        def updateDoc = codec.encodeUpdate(changedObject, entityAccess)
-
-                        if(updateDoc) {
-
-                            if(isVersioned) {
-                                // if the entity is versioned we add to the query the current version
-                                // if the query doesn't match a result this means the document has been updated by
-                                // another thread and an optimistic locking exception should be thrown
-                                if(currentVersion == null) {
-                                    currentVersion = entityAccess.getProperty( persistentEntity.version.name )
-                                }
-                                id[GormProperties.VERSION] = currentVersion
-                                numberOfOptimisticUpdates[name]++
-                            }
-                            else {
-                                numberOfPessimisticUpdates[name]++
+                            // if the entity is versioned we add to the query the current version
+                            // if the query doesn't match a result this means the document has been updated by
+                            // another thread and an optimistic locking exception should be thrown
+                            if(currentVersion == null) {
+                                currentVersion = entityAccess.getProperty( persistentEntity.version.name )
                             }
-                            final options = new UpdateOptions()
-
-                            entityWrites << new UpdateOneModel<Document>(id, updateDoc, options.upsert(false))
-
-                            final List cascadeOperations = update.cascadeOperations
-                            addPostFlushOperations cascadeOperations
+                            id[GormProperties.VERSION] = currentVersion
+                            bulkWrite.optimisticUpdates++
+                        }
+                        else {
+                            bulkWrite.pessimisticUpdates++
                         }
+                        final options = new UpdateOptions()
+
+                        addWrite(bulkWrite, new UpdateOneModel<Document>(id, updateDoc, options.upsert(false)), nativeKey, writeConcern)
 
+                        final List cascadeOperations = update.cascadeOperations
+                        addPostFlushOperations cascadeOperations
                     }
+
                 }
             }
+        }
 
 
-            for (PersistentEntity persistentEntity in pendingDeletes.keySet()) {
-                final Collection<PendingDelete> deletes = pendingDeletes[persistentEntity]
-                if(deletes) {
-                    List<WriteModel<?>> entityWrites = getWriteModelsForEntity(persistentEntity, writeModels)
-                    List<Object> nativeKeys = []
-                    for (PendingDelete delete in deletes) {
-                        delete.run()
-
-                        if(delete.vetoed) continue
+        for (PersistentEntity persistentEntity in pendingDeletes.keySet()) {
+            final Collection<PendingDelete> deletes = pendingDeletes[persistentEntity]
+            if(deletes) {
+                EntityBulkWrite bulkWrite = getBulkWriteForEntity(persistentEntity, bulkWrites)
+                List<Object> nativeKeys = []
+                for (PendingDelete delete in deletes) {
+                    delete.run()
 
-                        final Object k = delete.nativeKey
-                        if(k) {
-                            nativeKeys << k
-                            final List cascadeOperations = delete.cascadeOperations
-                            addPostFlushOperations cascadeOperations
-                        }
+                    if(delete.vetoed) continue
 
+                    final Object k = delete.nativeKey
+                    if(k) {
+                        nativeKeys << k
+                        final List cascadeOperations = delete.cascadeOperations
+                        addPostFlushOperations cascadeOperations
                     }
-                    if(nativeKeys.size() == 1) {
-                        entityWrites << new DeleteOneModel<Document>(new Document( MongoEntityPersister.MONGO_ID_FIELD, nativeKeys.get(0)))
-                    }
-                    else {
-                        entityWrites << new DeleteManyModel<Document>(new Document( MongoEntityPersister.MONGO_ID_FIELD, new Document(BsonQuery.IN_OPERATOR, nativeKeys)))
+
+                }
+                if(nativeKeys.size() == 1) {
+                    addWrite(bulkWrite, new DeleteOneModel<Document>(new Document( MongoEntityPersister.MONGO_ID_FIELD, nativeKeys.get(0))), nativeKeys, writeConcern)
+                }
+                else if(nativeKeys) {
+                    List<List<Object>> keyChunks = flushChunkSize > 0 ? nativeKeys.collate(flushChunkSize) : [nativeKeys]
+                    for (List<Object> keys in keyChunks) {
+                        addWrite(bulkWrite, new DeleteManyModel<Document>(new Document( MongoEntityPersister.MONGO_ID_FIELD, new Document(BsonQuery.IN_OPERATOR, keys))), keys, writeConcern)
                     }
                 }
             }
+        }
 
+        return bulkWrites.values().findAll { EntityBulkWrite bulkWrite -> !bulkWrite.writes.isEmpty() }
+    }
 
-            for (PersistentEntity persistentEntity : writeModels.keySet()) {
-                MongoCollection collection = getCollection(persistentEntity)
-                                                .withDocumentClass(persistentEntity.javaClass)
+    @Override
+    MongoClient getNativeInterface() {
+        return mongoDatastore.mongoClient
+    }
 
-                WriteConcern wc = writeConcern
-                if(wc == null) {
-                    org.grails.datastore.mapping.mongo.config.MongoCollection mapping = (org.grails.datastore.mapping.mongo.config.MongoCollection)persistentEntity.mapping.mappedForm
-                    wc = mapping.writeConcern
-                }
-                if(wc != null) {
-                    collection = collection.withWriteConcern(wc)
-                }
-                else {
-                    wc = collection.writeConcern
-                }
-                final List<WriteModel<?>> writes = writeModels[persistentEntity]
-                if(writes) {
+    public DocumentMappingContext getDocumentMappingContext() {
+        return (DocumentMappingContext) getMappingContext()
+    }
+
+    protected EntityBulkWrite getBulkWriteForEntity(PersistentEntity persistentEntity, Map<PersistentEntity, EntityBulkWrite> bulkWrites) {
+        PersistentEntity key = persistentEntity.root ? persistentEntity : persistentEntity.rootEntity
+        EntityBulkWrite bulkWrite = bulkWrites[key]
+        if(bulkWrite == null) {
+            bulkWrite = new EntityBulkWrite(key)
+            bulkWrites[key] = bulkWrite
+        }
+        return bulkWrite
+    }
+
+    /**
+     * Adds a write to the bulk write for an entity. If a {@link #flushChunkSize} is set and the number of documents targeted
+     * by the bulk write reaches it, the writes are sent immediately and released so that a large session is never held in memory
+     * as a whole
+     *
+     * @param bulkWrite The bulk write
+     * @param write The write
+     * @param key The identifier or identifiers of the documents targeted by the write
+     * @param writeConcern The write concern to use, or null to use the write concern of the entity
+     */
+    protected void addWrite(EntityBulkWrite bulkWrite, WriteModel<?> write, Object key, WriteConcern writeConcern) {
+        bulkWrite.add(write, key)
+        int chunkSize = flushChunkSize
+        if(chunkSize > 0 && bulkWrite.size >= chunkSize) {
+            if(deferredBulkWrites != null) {
+                deferredBulkWrites.add(bulkWrite.detach())
+                return
+            }
+            try {
+                bulkWrite.prepare(this, writeConcern, flushStrategy != null && flushStrategy != MongoFlushStrategy.ORDERED)
+                verifyBulkWrite(bulkWrite, bulkWrite.execute())
+            } finally {
+                invalidateCache(bulkWrite)
+                bulkWrite.reset()
+            }
+        }
+    }
 
-                    final BulkWriteResult bulkWriteResult = collection
-                                                                .bulkWrite(writes)
+    /**
+     * Sends the bulk writes for each collection using the current {@link #flushStrategy}
+     *
+     * @param bulkWrites The bulk writes
+     * @param writeConcern The write concern to use, or null to use the write concern of each entity
+     */
+    protected void executeBulkWrites(Collection<EntityBulkWrite> bulkWrites, WriteConcern writeConcern) {
+        try {
+            doExecuteBulkWrites(bulkWrites, writeConcern)
+        } finally {
+            for (EntityBulkWrite bulkWrite in bulkWrites) {
+                invalidateCache(bulkWrite)
+            }
+        }
+    }
 
-                    final boolean isAcknowledged = wc.isAcknowledged()
-                    if( !bulkWriteResult.wasAcknowledged() && isAcknowledged) {
-                        errorOccured = true;
-                        throw new DataIntegrityViolationException("Write operation was not acknowledged");
+    protected void doExecuteBulkWrites(Collection<EntityBulkWrite> bulkWrites, WriteConcern writeConcern) {
+        MongoFlushStrategy strategy = flushStrategy ?: MongoFlushStrategy.ORDERED
+        boolean parallel = strategy == MongoFlushStrategy.PARALLEL && bulkWrites.size() > 1
+        for (EntityBulkWrite bulkWrite in bulkWrites) {
+            // the collection is resolved on the calling thread as it depends on the state of the session
+            bulkWrite.prepare(this, writeConcern, strategy != MongoFlushStrategy.ORDERED)
+        }
+
+        if(parallel) {
+            Map<EntityBulkWrite, Future<BulkWriteResult>> futures = new LinkedHashMap<>()
+            ExecutorService executor = datastore.flushExecutor
+            for (EntityBulkWrite bulkWrite in bulkWrites) {
+                futures.put(bulkWrite, executor.submit(bulkWrite))
+            }
+
+            // wait for every write to complete before reporting the first failure so that no write is still in flight
+            RuntimeException failure = null
+            for (EntityBulkWrite bulkWrite in futures.keySet()) {
+                try {
+                    BulkWriteResult result = futures.get(bulkWrite).get()
+                    if(failure == null) {
+                        verifyBulkWrite(bulkWrite, result)
                     }
-                    else if(isAcknowledged) {
-                        final int matchedCount = bulkWriteResult.matchedCount
-                        final String name = persistentEntity.name
-                        final Integer numOptimistic = numberOfOptimisticUpdates[name]
-                        final Integer numPessimistic = numberOfPessimisticUpdates[name]
-                        if((matchedCount - numPessimistic) != numOptimistic) {
-                            setFlushMode(FlushModeType.COMMIT)
-                            throw new OptimisticLockingException(persistentEntity, null)
-                        }
+                } catch (ExecutionException e) {
+                    if(failure == null) {
+                        Throwable cause = e.cause
+                        failure = cause instanceof RuntimeException ? (RuntimeException) cause : new DataIntegrityViolationException("Bulk write failed: " + cause.message, cause)
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt()
+                    if(failure == null) {
+                        failure = new DataIntegrityViolationException("Interrupted while waiting for bulk write to complete", e)
+                    }
+                } catch (RuntimeException e) {
+                    if(failure == null) {
+                        failure = e
                     }
                 }
             }
+            if(failure != null) {
+                throw failure
+            }
+        }
+        else {
+            for (EntityBulkWrite bulkWrite in bulkWrites) {
+                verifyBulkWrite(bulkWrite, bulkWrite.execute())
+            }
+        }
+    }
 
-            for (Runnable postFlushOperation : postFlushOperations) {
-                postFlushOperation.run();
+    /**
+     * @return The repository of second-level caches used by this session
+     */
+    protected TPCacheAdapterRepository<Object> getEntityCacheRepository() {
+        return cacheAdapterRepository != null ? (TPCacheAdapterRepository<Object>) cacheAdapterRepository : datastore.entityCacheRepository
+    }
+
+    /**
+     * Removes the documents written by a bulk write from the second-level cache of the entity
+     */
+    protected void invalidateCache(EntityBulkWrite bulkWrite) {
+        invalidateQueryCache(bulkWrite.entity)
+        TPCacheAdapter<Object> cacheAdapter = getEntityCacheRepository()?.getTPCacheAdapter(bulkWrite.entity)
+        if(cacheAdapter instanceof CaffeineTPCacheAdapter) {
+            for (Object key in bulkWrite.keys) {
+                ((CaffeineTPCacheAdapter) cacheAdapter).evict(key)
             }
-        } finally {
-            clearPendingOperations();
-            postFlushOperations.clear();
-            firstLevelCollectionCache.clear();
-            this.writeConcern = currentWriteConcern;
         }
     }
 
-    @Override
-    MongoClient getNativeInterface() {
-        return mongoDatastore.mongoClient
+    /**
+     * Removes all documents of an entity from the second-level cache, used when documents are modified by a query
+     */
+    protected void invalidateCache(PersistentEntity entity) {
+        invalidateQueryCache(entity)
+        TPCacheAdapter<Object> cacheAdapter = getEntityCacheRepository()?.getTPCacheAdapter(entity)
+        if(cacheAdapter instanceof CaffeineTPCacheAdapter) {
+            ((CaffeineTPCacheAdapter) cacheAdapter).evictAll()
+        }
     }
 
-    public DocumentMappingContext getDocumentMappingContext() {
-        return (DocumentMappingContext) getMappingContext()
+    /**
+     * Invalidates the cached query results for the collection of the given entity
+     */
+    protected void invalidateQueryCache(PersistentEntity entity) {
+        datastore.queryResultCache.invalidate(getCollection(entity).namespace.fullName)
     }
 
-    protected List<WriteModel<?>> getWriteModelsForEntity(PersistentEntity persistentEntity, Map<PersistentEntity, List<WriteModel<?>>> writeModels) {
-        PersistentEntity key = persistentEntity.root ? persistentEntity : persistentEntity.rootEntity
-        List<WriteModel<?>> entityWrites = writeModels[key]
-        if(entityWrites == null) {
-            entityWrites = new ArrayList<WriteModel<?>>()
-            writeModels[key] = entityWrites
+    /**
+     * Verifies the result of a bulk write, throwing an {@link OptimisticLockingException} if fewer documents were
+     * matched than updates were issued
+     */
+    protected void verifyBulkWrite(EntityBulkWrite bulkWrite, BulkWriteResult bulkWriteResult) {
+        final boolean isAcknowledged = bulkWrite.writeConcern.isAcknowledged()
+        if( !bulkWriteResult.wasAcknowledged() && isAcknowledged) {
+            errorOccured = true;
+            throw new DataIntegrityViolationException("Write operation was not acknowledged");
+        }
+        else if(isAcknowledged) {
+            final int matchedCount = bulkWriteResult.matchedCount
+            if((matchedCount - bulkWrite.pessimisticUpdates) != bulkWrite.optimisticUpdates) {
+                setFlushMode(FlushModeType.COMMIT)
+                throw new OptimisticLockingException(bulkWrite.entity, null)
+            }
         }
-        return entityWrites
     }
 
     @Override
@@ -298,7 +555,12 @@ class MongoCodecSession extends AbstractMongoSession {
         final Document nativeQuery = buildNativeDocumentQueryFromCriteria(criteria, entity);
 
         final MongoCollection collection = getCollection(entity)
-        final DeleteResult deleteResult = collection.deleteMany((Bson)nativeQuery)
+        DeleteResult deleteResult
+        try {
+            deleteResult = collection.deleteMany((Bson)nativeQuery)
+        } finally {
+            invalidateCache(entity)
+        }
         if( deleteResult.wasAcknowledged() ) {
             return deleteResult.deletedCount
         }
@@ -323,7 +585,12 @@ class MongoCodecSession extends AbstractMongoSession {
                 }
             }
         }
-        final UpdateResult updateResult = collection.updateMany(nativeQuery, new Document(MONGO_SET_OPERATOR, properties), updateOptions)
+        UpdateResult updateResult
+        try {
+            updateResult = collection.updateMany(nativeQuery, new Document(MONGO_SET_OPERATOR, properties), updateOptions)
+        } finally {
+            invalidateCache(entity)
+        }
         if(updateResult.wasAcknowledged()) {
             try {
                 return updateResult.modifiedCount
@@ -344,7 +611,7 @@ class MongoCodecSession extends AbstractMongoSession {
         }
         else if( nativeObject instanceof Document ) {
 
-            def registry = datastore.getCodecRegistry()
+            def registry = getCodecRegistry()
             def codec = registry.get(type)
 
             def reader = new BsonDocumentReader(new BsonDocumentWrapper(nativeObject, registry.get(Document)))
@@ -361,4 +628,296 @@ class MongoCodecSession extends AbstractMongoSession {
 
         return mongoQuery.mongoQuery
     }
+
+    /**
+     * The writes for a single root entity that are sent as one bulk write
+     */
+    protected static class EntityBulkWrite implements Callable<BulkWriteResult> {
+        final PersistentEntity entity
+        List<WriteModel<?>> writes = []
+        int optimisticUpdates = 0
+        int pessimisticUpdates = 0
+
+        /**
+         * Whether more than one write targets the same document, in which case the writes must be applied in order
+         */
+        boolean dependent = false
+
+        protected MongoCollection collection
+        protected WriteConcern writeConcern
+        protected BulkWriteOptions options
+        protected SlowQueryProfiler profiler
+        private Set<Object> keys = new HashSet<>()
+        private int size = 0
+
+        EntityBulkWrite(PersistentEntity entity) {
+            this.entity = entity
+        }
+
+        void add(WriteModel<?> write, Object key) {
+            writes.add(write)
+            if(key instanceof Collection) {
+                for (Object k in (Collection) key) {
+                    trackKey(k)
+                }
+            }
+            else {
+                if(key != null) {
+                    trackKey(key)
+                }
+                else {
+                    size++
+                }
+            }
+        }
+
+        /**
+         * @return The number of documents targeted by the writes
+         */
+        int getSize() {
+            return size
+        }
+
+        /**
+         * Releases the writes once they have been sent
+         */
+        void reset() {
+            writes = []
+            keys = new HashSet<>()
+            size = 0
+            optimisticUpdates = 0
+            pessimisticUpdates = 0
+            dependent = false
+        }
+
+        void prepare(MongoCodecSession session, WriteConcern writeConcern, boolean unordered) {
+            // the collection is configured with the given write concern, or the write concern mapped for the entity
+            MongoCollection collection = session.getCollection(entity, entity.javaClass, writeConcern, null)
+            this.collection = collection
+            this.writeConcern = collection.writeConcern
+            this.options = new BulkWriteOptions().ordered(!unordered || dependent)
+            this.profiler = session.datastore.slowQueryProfiler
+        }
+
+        BulkWriteResult execute() {
+            if(profiler == null || !profiler.enabled) {
+                return collection.bulkWrite(writes, options)
+            }
+            long start = System.nanoTime()
+            BulkWriteResult result = collection.bulkWrite(writes, options)
+            profiler.record(SlowQueryProfiler.BULK_WRITE, collection.namespace, start, { ->
+                Document summary = new Document("writes", writes.size()).append("ordered", options.ordered)
+                if(result.wasAcknowledged()) {
+                    summary.append("inserted", result.insertedCount)
+                           .append("modified", result.modifiedCount)
+                           .append("deleted", result.deletedCount)
+                }
+                return summary
+            } as Supplier<Document>, null)
+            return result
+        }
+
+        /**
+         * Sends the writes with the reactive streams driver, using the collection, write concern and options of {@link #prepare}
+         *
+         * @param handles The collection handles of the datastore
+         * @return The publisher of the result
+         */
+        Publisher<BulkWriteResult> publish(MongoCollectionHandles handles) {
+            MongoNamespace namespace = collection.namespace
+            com.mongodb.reactivestreams.client.MongoCollection reactiveCollection = handles.getReactiveCollection(entity, namespace.databaseName, namespace.collectionName,
+                                                                                                                 entity.javaClass, writeConcern, null)
+                                                                                           .withCodecRegistry(collection.codecRegistry)
+            return (Publisher<BulkWriteResult>) reactiveCollection.bulkWrite(writes, options)
+        }
+
+        /**
+         * Moves the writes to a new bulk write and resets this one
+         *
+         * @return The bulk write holding the writes
+         */
+        EntityBulkWrite detach() {
+            EntityBulkWrite detached = new EntityBulkWrite(entity)
+            detached.writes = writes
+            detached.keys = keys
+            detached.size = size
+            detached.optimisticUpdates = optimisticUpdates
+            detached.pessimisticUpdates = pessimisticUpdates
+            detached.dependent = dependent
+            reset()
+            return detached
+        }
+
+        @Override
+        BulkWriteResult call() {
+            return execute()
+        }
+
+        /**
+         * @return The identifiers of the documents targeted by the writes
+         */
+        Set<Object> getKeys() {
+            return keys
+        }
+
+        private void trackKey(Object key) {
+            size++
+            if(!keys.add(key)) {
+                dependent = true
+            }
+        }
+    }
+    /**
+     * The publisher returned by {@link #flushReactive(WriteConcern)}. Each lane of bulk writes is sent in order and the lanes
+     * are sent concurrently. Once every lane has completed the post flush operations are run on the reactive flush executor of
+     * the datastore with the session bound to that thread and the subscriber is completed, or the first failure is reported
+     */
+    protected static class FlushPublisher implements Publisher<Void> {
+        private final MongoCodecSession session
+        private final List<List<EntityBulkWrite>> lanes
+        private final List<Runnable> postFlushOperations
+        private final AtomicBoolean subscribed = new AtomicBoolean()
+
+        FlushPublisher(MongoCodecSession session, List<List<EntityBulkWrite>> lanes, List<Runnable> postFlushOperations) {
+            this.session = session
+            this.lanes = lanes
+            this.postFlushOperations = postFlushOperations
+        }
+
+        @Override
+        void subscribe(Subscriber<? super Void> subscriber) {
+            FlushSubscription subscription = new FlushSubscription(this, subscriber)
+            subscriber.onSubscribe(subscription)
+            if(!subscribed.compareAndSet(false, true)) {
+                subscription.fail(new IllegalStateException("The writes of a flush can only be sent once"))
+                subscription.finish()
+                return
+            }
+            if(lanes.isEmpty()) {
+                subscription.finish()
+                return
+            }
+            for (List<EntityBulkWrite> lane in lanes) {
+                subscription.send(lane, 0)
+            }
+        }
+
+        protected static class FlushSubscription implements Subscription {
+            private final MongoCodecSession session
+            private final List<Runnable> postFlushOperations
+            private final Subscriber<? super Void> subscriber
+            private final AtomicInteger remainingLanes
+            private final AtomicReference<Throwable> failure = new AtomicReference<>()
+            private volatile boolean cancelled
+
+            FlushSubscription(FlushPublisher publisher, Subscriber<? super Void> subscriber) {
+                this.session = publisher.session
+                this.postFlushOperations = publisher.postFlushOperations
+                this.remainingLanes = new AtomicInteger(publisher.lanes.size())
+                this.subscriber = subscriber
+            }
+
+            @Override
+            void request(long n) {
+                // nothing is emitted besides the terminal signal
+            }
+
+            @Override
+            void cancel() {
+                // writes already sent cannot be recalled, but no further writes are sent
+                cancelled = true
+            }
+
+            void send(List<EntityBulkWrite> lane, int index) {
+                if(index == lane.size() || cancelled || failure.get() != null) {
+                    if(remainingLanes.decrementAndGet() == 0) {
+                        finish()
+                    }
+                    return
+                }
+
+                EntityBulkWrite bulkWrite = lane.get(index)
+                MongoCodecSession session = this.session
+                bulkWrite.publish(session.datastore.collectionHandles).subscribe(new Subscriber<BulkWriteResult>() {
+                    private BulkWriteResult result
+
+                    @Override
+                    void onSubscribe(Subscription subscription) {
+                        subscription.request(1)
+                    }
+
+                    @Override
+                    void onNext(BulkWriteResult bulkWriteResult) {
+                        result = bulkWriteResult
+                    }
+
+                    @Override
+                    void onError(Throwable throwable) {
+                        session.invalidateCache(bulkWrite)
+                        fail(throwable)
+                        send(lane, lane.size())
+                    }
+
+                    @Override
+                    void onComplete() {
+                        try {
+                            session.verifyBulkWrite(bulkWrite, result)
+                        } catch (Throwable e) {
+                            fail(e)
+                        } finally {
+                            session.invalidateCache(bulkWrite)
+                        }
+                        send(lane, index + 1)
+                    }
+                })
+            }
+
+            void fail(Throwable throwable) {
+                failure.compareAndSet(null, throwable)
+            }
+
+            void finish() {
+                if(cancelled) return
+
+                if(failure.get() == null && !postFlushOperations.isEmpty()) {
+                    // the operations use the blocking API, which must never run on a thread of the driver
+                    try {
+                        session.datastore.reactiveFlushExecutor.execute {
+                            runPostFlushOperations()
+                            complete()
+                        }
+                    } catch (RejectedExecutionException e) {
+                        fail(e)
+                        complete()
+                    }
+                }
+                else {
+                    complete()
+                }
+            }
+
+            protected void runPostFlushOperations() {
+                DatastoreUtils.bindNewSession(session)
+                try {
+                    for (Runnable postFlushOperation in postFlushOperations) {
+                        postFlushOperation.run()
+                    }
+                } catch (Throwable e) {
+                    fail(e)
+                } finally {
+                    DatastoreUtils.unbindSession(session)
+                }
+            }
+
+            protected void complete() {
+                Throwable throwable = failure.get()
+                if(throwable != null) {
+                    subscriber.onError(throwable)
+                }
+                else {
+                    subscriber.onComplete()
+                }
+            }
+        }
+    }
 }
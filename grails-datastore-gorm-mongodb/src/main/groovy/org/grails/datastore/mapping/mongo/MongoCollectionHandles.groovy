@@ -0,0 +1,170 @@
+/*
+ * Copyright 2024 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.grails.datastore.mapping.mongo
+
+import com.mongodb.ReadConcern
+import com.mongodb.ReadPreference
+import com.mongodb.WriteConcern
+import com.mongodb.client.MongoCollection
+import groovy.transform.CompileStatic
+import groovy.transform.EqualsAndHashCode
+import org.grails.datastore.mapping.model.PersistentEntity
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.function.Function
+
+/**
+ * A table of the collections of a datastore, created once and configured with the read preference, read concern and write
+ * concern mapped for the entity. Collections are immutable, so a collection is shared by every caller asking for the same
+ * database, collection, document class, write concern and read preference, instead of being derived again from the client on
+ * every query, load and flush
+ *
+ * @since 9.0
+ */
+@CompileStatic
+class MongoCollectionHandles {
+
+    protected final MongoDatastore datastore
+
+    private final Map<Key, MongoCollection<?>> collections = new ConcurrentHashMap<>()
+    private final Map<Key, com.mongodb.reactivestreams.client.MongoCollection<?>> reactiveCollections = new ConcurrentHashMap<>()
+
+    MongoCollectionHandles(MongoDatastore datastore) {
+        this.datastore = datastore
+    }
+
+    /**
+     * Obtains the collection of an entity
+     *
+     * @param entity The entity, whose mapping provides the defaults of the read preference, read concern and write concern
+     * @param databaseName The name of the database
+     * @param collectionName The name of the collection
+     * @param documentClass The class of the documents
+     * @param writeConcern The write concern or null for the mapped write concern
+     * @param readPreference The read preference or null for the mapped read preference
+     * @return The collection
+     */
+    public <T> MongoCollection<T> getCollection(PersistentEntity entity, String databaseName, String collectionName, Class<T> documentClass,
+                                                WriteConcern writeConcern, ReadPreference readPreference) {
+        Key key = createKey(entity, databaseName, collectionName, documentClass, writeConcern, readPreference)
+        return (MongoCollection<T>) collections.computeIfAbsent(key, { Key k -> createCollection(k) } as Function<Key, MongoCollection<?>>)
+    }
+
+    /**
+     * Obtains the collection of an entity from the reactive streams client
+     *
+     * @see #getCollection(PersistentEntity, String, String, Class, WriteConcern, ReadPreference)
+     */
+    public <T> com.mongodb.reactivestreams.client.MongoCollection<T> getReactiveCollection(PersistentEntity entity, String databaseName, String collectionName,
+                                                                                          Class<T> documentClass, WriteConcern writeConcern, ReadPreference readPreference) {
+        Key key = createKey(entity, databaseName, collectionName, documentClass, writeConcern, readPreference)
+        return (com.mongodb.reactivestreams.client.MongoCollection<T>) reactiveCollections.computeIfAbsent(key, { Key k ->
+            createReactiveCollection(k)
+        } as Function<Key, com.mongodb.reactivestreams.client.MongoCollection<?>>)
+    }
+
+    /**
+     * @return The number of collections in the table
+     */
+    int size() {
+        return collections.size() + reactiveCollections.size()
+    }
+
+    /**
+     * Clears the table, for example once the codec registry of the datastore has changed
+     */
+    void clear() {
+        collections.clear()
+        reactiveCollections.clear()
+    }
+
+    /**
+     * Clears the collections of the reactive streams client, once the client is closed
+     */
+    void clearReactive() {
+        reactiveCollections.clear()
+    }
+
+    protected Key createKey(PersistentEntity entity, String databaseName, String collectionName, Class documentClass,
+                            WriteConcern writeConcern, ReadPreference readPreference) {
+        org.grails.datastore.mapping.mongo.config.MongoCollection mappedForm = datastore.getMappedCollection(entity.isRoot() ? entity : entity.rootEntity)
+        return new Key(
+                databaseName,
+                collectionName,
+                documentClass,
+                writeConcern != null ? writeConcern : mappedForm?.writeConcern,
+                readPreference != null ? readPreference : mappedForm?.readPreference,
+                mappedForm?.readConcern
+        )
+    }
+
+    protected MongoCollection<?> createCollection(Key key) {
+        MongoCollection<?> collection = datastore.getMongoClient()
+                .getDatabase(key.database)
+                .getCollection(key.collection, key.documentClass)
+                .withCodecRegistry(datastore.getCodecRegistry())
+        if (key.writeConcern != null) {
+            collection = collection.withWriteConcern(key.writeConcern)
+        }
+        if (key.readPreference != null) {
+            collection = collection.withReadPreference(key.readPreference)
+        }
+        if (key.readConcern != null) {
+            collection = collection.withReadConcern(key.readConcern)
+        }
+        return collection
+    }
+
+    protected com.mongodb.reactivestreams.client.MongoCollection<?> createReactiveCollection(Key key) {
+        com.mongodb.reactivestreams.client.MongoCollection<?> collection = datastore.getReactiveMongoClient()
+                .getDatabase(key.database)
+                .getCollection(key.collection, key.documentClass)
+                .withCodecRegistry(datastore.getCodecRegistry())
+        if (key.writeConcern != null) {
+            collection = collection.withWriteConcern(key.writeConcern)
+        }
+        if (key.readPreference != null) {
+            collection = collection.withReadPreference(key.readPreference)
+        }
+        if (key.readConcern != null) {
+            collection = collection.withReadConcern(key.readConcern)
+        }
+        return collection
+    }
+
+    /**
+     * The key of a collection. The read concern is part of the key as entities mapped to the same collection may map different
+     * read concerns
+     */
+    @EqualsAndHashCode
+    protected static class Key {
+        final String database
+        final String collection
+        final Class documentClass
+        final WriteConcern writeConcern
+        final ReadPreference readPreference
+        final ReadConcern readConcern
+
+        Key(String database, String collection, Class documentClass, WriteConcern writeConcern, ReadPreference readPreference, ReadConcern readConcern) {
+            this.database = database
+            this.collection = collection
+            this.documentClass = documentClass
+            this.writeConcern = writeConcern
+            this.readPreference = readPreference
+            this.readConcern = readConcern
+        }
+    }
+}
@@ -14,10 +14,12 @@ class MongoConstants {
     public static final String SET_OPERATOR = '$set';
     public static final String UNSET_OPERATOR = '$unset';
     public static final String CODEC_ENGINE = "codec";
+    public static final String GENERATED_CODEC_ENGINE = "generated";
     public static final String MONGO_ID_FIELD = "_id";
     public static final String MONGO_CLASS_FIELD = "_class";
     public static final String INC_OPERATOR = '$inc'
     public static final String ASSIGNED_IDENTIFIER_MAPPING = "assigned"
+    public static final String HILO_IDENTIFIER_MAPPING = "hilo"
 
 
     @CompileDynamic
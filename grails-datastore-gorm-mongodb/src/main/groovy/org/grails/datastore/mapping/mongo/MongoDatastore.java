@@ -17,13 +17,16 @@ package org.grails.datastore.mapping.mongo;
 
 
 import com.mongodb.MongoClientSettings;
+import com.mongodb.ReadPreference;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoIterable;
+import com.mongodb.client.model.IndexModel;
 import com.mongodb.client.model.IndexOptions;
 import grails.gorm.multitenancy.Tenants;
 import grails.util.GrailsMessageSourceUtils;
 import groovy.lang.Closure;
 import org.bson.Document;
+import org.bson.RawBsonDocument;
 import org.bson.codecs.Codec;
 import org.bson.codecs.configuration.CodecProvider;
 import org.bson.codecs.configuration.CodecRegistries;
@@ -50,14 +53,25 @@ import org.grails.datastore.mapping.core.*;
 import org.grails.datastore.mapping.core.connections.*;
 import org.grails.datastore.mapping.core.exceptions.ConfigurationException;
 import org.grails.datastore.mapping.model.*;
+import org.grails.datastore.mapping.mongo.cache.CaffeineTPCacheAdapterRepository;
+import org.grails.datastore.mapping.mongo.cache.ChangeStreamCacheInvalidator;
+import org.grails.datastore.mapping.mongo.cache.QueryResultCache;
 import org.grails.datastore.mapping.mongo.config.MongoAttribute;
 import org.grails.datastore.mapping.mongo.config.MongoCollection;
+import org.grails.datastore.mapping.mongo.config.MongoFlushStrategy;
 import org.grails.datastore.mapping.mongo.config.MongoMappingContext;
 import org.grails.datastore.mapping.mongo.config.MongoSettings;
+import org.grails.datastore.mapping.mongo.connections.AbstractMongoConnectionSourceSettings;
 import org.grails.datastore.mapping.mongo.connections.MongoConnectionSourceFactory;
 import org.grails.datastore.mapping.mongo.connections.MongoConnectionSourceSettings;
 import org.grails.datastore.mapping.mongo.connections.MongoConnectionSourceSettingsBuilder;
+import org.grails.datastore.mapping.mongo.engine.HiLoIdentifierGenerator;
+import org.grails.datastore.mapping.mongo.engine.codecs.EmbeddedCodecCache;
+import org.grails.datastore.mapping.mongo.engine.codecs.GeneratedEntityCodec;
 import org.grails.datastore.mapping.mongo.engine.codecs.PersistentEntityCodec;
+import org.grails.datastore.mapping.mongo.engine.codecs.SessionCodecRegistry;
+import org.grails.datastore.mapping.mongo.indexes.MongoIndexManager;
+import org.grails.datastore.mapping.mongo.profiling.SlowQueryProfiler;
 import org.grails.datastore.mapping.multitenancy.AllTenantsResolver;
 import org.grails.datastore.mapping.multitenancy.MultiTenancySettings;
 import org.grails.datastore.mapping.multitenancy.MultiTenantCapableDatastore;
@@ -81,7 +95,11 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A Datastore implementation for the Mongo document store.
@@ -110,7 +128,15 @@ public class MongoDatastore extends AbstractDatastore implements MappingContext.
     protected final Map<PersistentEntity, String> mongoCollections = new ConcurrentHashMap<>();
     protected final Map<PersistentEntity, String> mongoDatabases = new ConcurrentHashMap<>();
     protected final boolean stateless;
+    protected final boolean detachReadOnlyTransactions;
     protected final boolean codecEngine;
+    protected final boolean generatedCodecs;
+    protected final EmbeddedCodecCache embeddedCodecCache = new EmbeddedCodecCache() {
+        @Override
+        protected PersistentEntityCodec createCodec(PersistentEntity entity) {
+            return createPersistentEntityCodec(entity);
+        }
+    };
     protected CodecRegistry codecRegistry;
     protected final ConfigurableApplicationEventPublisher eventPublisher;
     protected final PlatformTransactionManager transactionManager;
@@ -121,6 +147,22 @@ public class MongoDatastore extends AbstractDatastore implements MappingContext.
     protected final MultiTenancySettings.MultiTenancyMode multiTenancyMode;
     protected final TenantResolver tenantResolver;
     protected final AutoTimestampEventListener autoTimestampEventListener;
+    protected final MongoFlushStrategy flushStrategy;
+    protected final int flushConcurrency;
+    protected final int flushChunkSize;
+    protected final CaffeineTPCacheAdapterRepository entityCacheRepository;
+    protected final QueryResultCache queryResultCache;
+    protected final ChangeStreamCacheInvalidator cacheInvalidator;
+    protected final HiLoIdentifierGenerator hiLoIdentifierGenerator = new HiLoIdentifierGenerator();
+    protected final SlowQueryProfiler slowQueryProfiler;
+    protected final MongoIndexManager indexManager;
+    protected final ReadPreference readOnlyReadPreference;
+    protected final MongoCollectionHandles collectionHandles = new MongoCollectionHandles(this);
+    private volatile CompletableFuture<Void> indexCreation = CompletableFuture.completedFuture(null);
+    private ExecutorService flushExecutor;
+    private ExecutorService reactiveFlushExecutor;
+    private com.mongodb.reactivestreams.client.MongoClient reactiveMongoClient;
+    private MongoConnectionSourceFactory connectionSourceFactory;
 
     /**
      * Configures a new {@link MongoDatastore} for the given arguments
@@ -139,6 +181,9 @@ public class MongoDatastore extends AbstractDatastore implements MappingContext.
         }
 
         this.connectionSources = connectionSources;
+        if (connectionSources.getFactory() instanceof MongoConnectionSourceFactory) {
+            this.connectionSourceFactory = (MongoConnectionSourceFactory) connectionSources.getFactory();
+        }
 
         final ConnectionSource<MongoClient, MongoConnectionSourceSettings> defaultConnectionSource = connectionSources.getDefaultConnectionSource();
         MongoConnectionSourceSettings settings = defaultConnectionSource.getSettings();
@@ -150,7 +195,19 @@ public class MongoDatastore extends AbstractDatastore implements MappingContext.
         this.defaultDatabase = settings.getDatabase();
         this.defaultFlushMode = settings.getFlushMode();
         this.stateless = settings.isStateless();
-        this.codecEngine = settings.getEngine().equals(MongoConstants.CODEC_ENGINE);
+        this.detachReadOnlyTransactions = settings.isDetachReadOnlyTransactions();
+        this.generatedCodecs = settings.getEngine().equals(MongoConstants.GENERATED_CODEC_ENGINE);
+        this.codecEngine = generatedCodecs || settings.getEngine().equals(MongoConstants.CODEC_ENGINE);
+        this.flushStrategy = settings.getFlush().getStrategy();
+        this.flushConcurrency = Math.max(1, settings.getFlush().getConcurrency());
+        this.flushChunkSize = Math.max(0, settings.getFlush().getChunkSize());
+        this.entityCacheRepository = new CaffeineTPCacheAdapterRepository(this);
+        this.queryResultCache = new QueryResultCache(settings.getQueryCache().getMaximumSize(), settings.getQueryCache().getExpireAfterWrite());
+        this.cacheInvalidator = new ChangeStreamCacheInvalidator(this, settings.getCacheInvalidation());
+        AbstractMongoConnectionSourceSettings.ProfilingSettings profiling = settings.getProfiling();
+        this.slowQueryProfiler = new SlowQueryProfiler(profiling.getSlowQueryThresholdMs(), profiling.getExplainSampleRate(), profiling.getBufferSize());
+        this.indexManager = new MongoIndexManager(this, settings.getIndexes().getConcurrency(), settings.getIndexes().isAsync());
+        this.readOnlyReadPreference = settings.getReadRouting().toReadPreference();
         codecRegistry = CodecRegistries.fromRegistries(
                 CodecRegistries.fromProviders(new CodecExtensions(), new PersistentEntityCodeRegistry()),
                 mappingContext.getCodecRegistry(),
@@ -213,13 +270,16 @@ public class MongoDatastore extends AbstractDatastore implements MappingContext.
         this.autoTimestampEventListener = new AutoTimestampEventListener(this);
         registerEventListeners(this.eventPublisher);
         this.gormEnhancer = initialize(settings);
+        if (settings.getCacheInvalidation().isEnabled()) {
+            cacheInvalidator.start();
+        }
     }
 
     private MongoDatastore createChildDatastore(MongoMappingContext mappingContext,
                                                     ConfigurableApplicationEventPublisher eventPublisher,
                                                     final MongoDatastore parent,
                                                     SingletonConnectionSources<MongoClient, MongoConnectionSourceSettings> singletonConnectionSources) {
-        return new MongoDatastore(singletonConnectionSources, mappingContext, eventPublisher) {
+        MongoDatastore childDatastore = new MongoDatastore(singletonConnectionSources, mappingContext, eventPublisher) {
             @Override
             protected MongoGormEnhancer initialize(final MongoConnectionSourceSettings settings) {
                 super.buildIndex();
@@ -239,6 +299,9 @@ public class MongoDatastore extends AbstractDatastore implements MappingContext.
                 }
             }
         };
+        // the connection source of the child was created by the factory of the parent
+        childDatastore.connectionSourceFactory = connectionSourceFactory;
+        return childDatastore;
     }
 
     /**
@@ -513,15 +576,46 @@ public class MongoDatastore extends AbstractDatastore implements MappingContext.
      * Builds the MongoDB index for this datastore
      */
     public void buildIndex() {
+        List<PersistentEntity> entities = new ArrayList<>();
         for (PersistentEntity entity : this.mappingContext.getPersistentEntities()) {
             // Only create Mongo templates for entities that are mapped with Mongo
             if (!entity.isExternal()) {
                 if(entity.isMultiTenant() && multiTenancyMode == MultiTenancySettings.MultiTenancyMode.SCHEMA) continue;
 
 
-                initializeIndices(entity);
+                entities.add(entity);
             }
         }
+        this.indexCreation = indexManager.ensureIndexes(entities);
+    }
+
+    /**
+     * @return The read preference of the queries of read-only sessions and transactions, or null if they are not routed
+     * @see MongoSettings#SETTING_READ_ROUTING_READ_PREFERENCE
+     * @since 9.0
+     */
+    public ReadPreference getReadOnlyReadPreference() {
+        return readOnlyReadPreference;
+    }
+
+    /**
+     * @return The manager creating the mapped indexes of the entities
+     * @since 9.0
+     */
+    public MongoIndexManager getIndexManager() {
+        return indexManager;
+    }
+
+    /**
+     * Obtains the creation of the indexes by {@link #buildIndex()}, which completes in the background when indexes are created
+     * asynchronously
+     *
+     * @return A future completed once the indexes have been created
+     * @see MongoSettings#SETTING_INDEXES_ASYNC
+     * @since 9.0
+     */
+    public CompletableFuture<Void> getIndexCreation() {
+        return indexCreation;
     }
 
 
@@ -532,6 +626,125 @@ public class MongoDatastore extends AbstractDatastore implements MappingContext.
         return defaultFlushMode;
     }
 
+    /**
+     * @return The default strategy used to send bulk writes when a session is flushed
+     */
+    public MongoFlushStrategy getFlushStrategy() {
+        return flushStrategy;
+    }
+
+    /**
+     * @return Whether the queries executed within a read-only transaction return detached instances
+     * @see MongoSettings#SETTING_DETACH_READ_ONLY_TRANSACTIONS
+     */
+    public boolean isDetachReadOnlyTransactions() {
+        return detachReadOnlyTransactions;
+    }
+
+    /**
+     * @return The default maximum number of documents written per bulk write when a session is flushed, or 0 if not limited
+     */
+    public int getFlushChunkSize() {
+        return flushChunkSize;
+    }
+
+    /**
+     * @return The repository of second-level caches for entities mapped with {@code cache true}
+     */
+    public CaffeineTPCacheAdapterRepository getEntityCacheRepository() {
+        return entityCacheRepository;
+    }
+
+    /**
+     * @return The cache of results for queries executed with the {@code cache: true} argument
+     */
+    public QueryResultCache getQueryResultCache() {
+        return queryResultCache;
+    }
+
+    /**
+     * @return The invalidator of the caches of this datastore driven by change streams
+     * @see MongoSettings#SETTING_CACHE_INVALIDATION_ENABLED
+     * @since 9.0
+     */
+    public ChangeStreamCacheInvalidator getCacheInvalidator() {
+        return cacheInvalidator;
+    }
+
+    /**
+     * @return The generator allocating blocks of identifiers for entities mapped with {@code id generator: 'hilo'}
+     */
+    public HiLoIdentifierGenerator getHiLoIdentifierGenerator() {
+        return hiLoIdentifierGenerator;
+    }
+
+    /**
+     * @return The profiler recording the slow operations of the datastore
+     * @see MongoSettings#SETTING_PROFILING_SLOW_QUERY_THRESHOLD
+     */
+    public SlowQueryProfiler getSlowQueryProfiler() {
+        return slowQueryProfiler;
+    }
+
+    /**
+     * Obtains the executor used to send the bulk writes for each collection concurrently when flushing with the
+     * {@link MongoFlushStrategy#PARALLEL} strategy. The executor is created on first use and is bounded by the
+     * {@link MongoSettings#SETTING_FLUSH_CONCURRENCY} setting
+     *
+     * @return The executor
+     */
+    public synchronized ExecutorService getFlushExecutor() {
+        if (flushExecutor == null) {
+            final AtomicInteger threadCount = new AtomicInteger();
+            flushExecutor = Executors.newFixedThreadPool(flushConcurrency, runnable -> {
+                Thread thread = new Thread(runnable, "gorm-mongodb-flush-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return flushExecutor;
+    }
+
+    /**
+     * Obtains the executor that runs the operations that follow a reactive flush, such as cascades, so that they never block a
+     * thread of the reactive streams driver. It is separate from the {@link #getFlushExecutor() flush executor} as those operations
+     * may flush the session themselves. The executor is created on first use
+     *
+     * @return The executor
+     * @since 9.0
+     */
+    public synchronized ExecutorService getReactiveFlushExecutor() {
+        if (reactiveFlushExecutor == null) {
+            final AtomicInteger threadCount = new AtomicInteger();
+            reactiveFlushExecutor = Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "gorm-mongodb-reactive-flush-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return reactiveFlushExecutor;
+    }
+
+    /**
+     * Obtains the reactive streams client used by the reactive execution mode. The client is created on first use by the
+     * {@link MongoConnectionSourceFactory} that created the client of the default connection source, with the same settings
+     * and customizers, and is closed together with the datastore
+     *
+     * @return The reactive streams client
+     * @throws IllegalStateException If the client of the default connection source was supplied rather than created from settings
+     * @since 9.0
+     */
+    public synchronized com.mongodb.reactivestreams.client.MongoClient getReactiveMongoClient() {
+        if (reactiveMongoClient == null) {
+            ConnectionSource<MongoClient, MongoConnectionSourceSettings> defaultConnectionSource = connectionSources.getDefaultConnectionSource();
+            if (connectionSourceFactory == null) {
+                throw new IllegalStateException("Cannot create a reactive client for connection source [" + defaultConnectionSource.getName() + "] as it was not created by a MongoConnectionSourceFactory. Configure the connection with settings rather than supplying a MongoClient to use the reactive API.");
+            }
+            reactiveMongoClient = connectionSourceFactory.createReactiveClient(defaultConnectionSource);
+        }
+        return reactiveMongoClient;
+    }
+
     /**
      * @return The default database name
      */
@@ -549,6 +762,8 @@ public class MongoDatastore extends AbstractDatastore implements MappingContext.
         this.codecRegistry = CodecRegistries.fromRegistries(
                 this.codecRegistry,
                 CodecRegistries.fromRegistries(codecRegistries));
+        embeddedCodecCache.clear();
+        collectionHandles.clear();
     }
 
     /**
@@ -561,6 +776,8 @@ public class MongoDatastore extends AbstractDatastore implements MappingContext.
         this.codecRegistry = CodecRegistries.fromRegistries(
                 this.codecRegistry,
                 CodecRegistries.fromProviders(codecProviders));
+        embeddedCodecCache.clear();
+        collectionHandles.clear();
     }
 
     /**
@@ -573,6 +790,8 @@ public class MongoDatastore extends AbstractDatastore implements MappingContext.
         this.codecRegistry = CodecRegistries.fromRegistries(
                 this.codecRegistry,
                 CodecRegistries.fromCodecs(codecs));
+        embeddedCodecCache.clear();
+        collectionHandles.clear();
     }
 
     /**
@@ -598,6 +817,13 @@ public class MongoDatastore extends AbstractDatastore implements MappingContext.
         return transactionManager;
     }
 
+    /**
+     * @return The cache of the codecs used for embedded entities
+     */
+    public EmbeddedCodecCache getEmbeddedCodecCache() {
+        return embeddedCodecCache;
+    }
+
     /**
      * @return The {@link CodecRegistry}
      */
@@ -613,12 +839,37 @@ public class MongoDatastore extends AbstractDatastore implements MappingContext.
      */
     public PersistentEntityCodec getPersistentEntityCodec(PersistentEntity entity) {
         if (entity instanceof EmbeddedPersistentEntity) {
-            return new PersistentEntityCodec(codecRegistry, entity);
+            return embeddedCodecCache.getCodec(entity);
         } else {
             return getPersistentEntityCodec(entity.getJavaClass());
         }
     }
 
+    /**
+     * Creates the codec for the given entity. The {@code generated} engine uses a {@link GeneratedEntityCodec}. Embedded
+     * entities are encoded with the codecs of the {@link EmbeddedCodecCache} of the datastore
+     *
+     * @param entity The entity
+     * @return The {@link PersistentEntityCodec}
+     */
+    protected PersistentEntityCodec createPersistentEntityCodec(PersistentEntity entity) {
+        return createPersistentEntityCodec(entity, codecRegistry);
+    }
+
+    /**
+     * Creates the codec for the given entity that obtains the codecs of its properties from the given registry
+     *
+     * @param entity The entity
+     * @param registry The registry, such as a {@link SessionCodecRegistry} bound to a session
+     * @return The {@link PersistentEntityCodec}
+     * @since 9.0
+     */
+    public PersistentEntityCodec createPersistentEntityCodec(PersistentEntity entity, CodecRegistry registry) {
+        PersistentEntityCodec codec = generatedCodecs ? new GeneratedEntityCodec(registry, entity) : new PersistentEntityCodec(registry, entity);
+        codec.setEmbeddedCodecCache(embeddedCodecCache);
+        return codec;
+    }
+
     /**
      * Obtains a {@link PersistentEntityCodec} for the given entity
      *
@@ -690,12 +941,56 @@ public class MongoDatastore extends AbstractDatastore implements MappingContext.
      * @return The Mongo collection
      */
     public com.mongodb.client.MongoCollection<Document> getCollection(PersistentEntity entity) {
-        return getMongoClient()
-                .getDatabase(getDatabaseName(entity))
-                .getCollection(getCollectionName(entity))
-                .withCodecRegistry(codecRegistry);
+        return getCollection(entity, getDatabaseName(entity), getCollectionName(entity));
+    }
+
+    /**
+     * Obtain the {@link com.mongodb.client.MongoCollection} for the given entity in the given database and collection,
+     * configured with the read preference, read concern and write concern mapped for the entity
+     *
+     * @param entity The entity
+     * @param databaseName The name of the database
+     * @param collectionName The name of the collection
+     * @return The Mongo collection
+     * @since 9.0
+     */
+    public com.mongodb.client.MongoCollection<Document> getCollection(PersistentEntity entity, String databaseName, String collectionName) {
+        return collectionHandles.getCollection(entity, databaseName, collectionName, Document.class, null, null);
+    }
+
+    /**
+     * Obtain the collection of the given entity from the reactive streams client, configured like
+     * {@link #getCollection(PersistentEntity, String, String)}. Documents are read as {@link RawBsonDocument} instances
+     *
+     * @param entity The entity
+     * @param databaseName The name of the database
+     * @param collectionName The name of the collection
+     * @return The reactive collection
+     * @since 9.0
+     */
+    public com.mongodb.reactivestreams.client.MongoCollection<RawBsonDocument> getReactiveCollection(PersistentEntity entity, String databaseName, String collectionName) {
+        return collectionHandles.getReactiveCollection(entity, databaseName, collectionName, RawBsonDocument.class, null, null);
     }
 
+    /**
+     * @return The table of the configured collections of this datastore
+     * @since 9.0
+     */
+    public MongoCollectionHandles getCollectionHandles() {
+        return collectionHandles;
+    }
+
+    /**
+     * @param entity The entity
+     * @return The collection mapping of the entity or null if it has none
+     * @since 9.0
+     */
+    public MongoCollection getMappedCollection(PersistentEntity entity) {
+        final Object mappedForm = entity.getMapping() != null ? entity.getMapping().getMappedForm() : null;
+        return mappedForm instanceof MongoCollection ? (MongoCollection) mappedForm : null;
+    }
+
+
     /**
      * @return The mapping context
      */
@@ -741,6 +1036,7 @@ public class MongoDatastore extends AbstractDatastore implements MappingContext.
             @Override
             public void persistentEntityAdded(PersistentEntity entity) {
                 gormEnhancer.registerEntity(entity);
+                embeddedCodecCache.clear();
                 registerEntity(entity);
             }
         });
@@ -822,7 +1118,19 @@ public class MongoDatastore extends AbstractDatastore implements MappingContext.
      * @param entity The entity
      */
     protected void initializeIndices(final PersistentEntity entity) {
-        final com.mongodb.client.MongoCollection<Document> collection = getCollection(entity);
+        indexManager.ensureIndexes(Collections.singletonList(entity));
+    }
+
+    /**
+     * Obtains the indexes mapped for an entity: the indices and compound indices of the mapping and the properties that are
+     * mapped with index:true
+     *
+     * @param entity The entity
+     * @return The indexes
+     * @since 9.0
+     */
+    public List<IndexModel> getIndexModels(final PersistentEntity entity) {
+        final List<IndexModel> indexes = new ArrayList<>();
         final ClassMapping<MongoCollection> classMapping = entity.getMapping();
         if (classMapping != null) {
             final MongoCollection mappedForm = classMapping.getMappedForm();
@@ -831,24 +1139,18 @@ public class MongoDatastore extends AbstractDatastore implements MappingContext.
                 for (MongoCollection.Index index : indices) {
                     final Map<String, Object> options = index.getOptions();
                     final IndexOptions indexOptions = MongoConstants.mapToObject(IndexOptions.class, options);
-                    collection.createIndex(new Document(index.getDefinition()), indexOptions);
+                    indexes.add(new IndexModel(new Document(index.getDefinition()), indexOptions));
                 }
 
                 for (Map compoundIndex : mappedForm.getCompoundIndices()) {
-
-                    Map indexAttributes = null;
-                    if (compoundIndex.containsKey(INDEX_ATTRIBUTES)) {
-                        Object o = compoundIndex.remove(INDEX_ATTRIBUTES);
-                        if (o instanceof Map) {
-                            indexAttributes = (Map) o;
-                        }
-                    }
-                    Document indexDef = new Document(compoundIndex);
-                    if (indexAttributes != null) {
-                        final IndexOptions indexOptions = MongoConstants.mapToObject(IndexOptions.class, indexAttributes);
-                        collection.createIndex(indexDef, indexOptions);
+                    Map indexDefinition = new LinkedHashMap(compoundIndex);
+                    Object indexAttributes = indexDefinition.remove(INDEX_ATTRIBUTES);
+                    Document indexDef = new Document(indexDefinition);
+                    if (indexAttributes instanceof Map) {
+                        final IndexOptions indexOptions = MongoConstants.mapToObject(IndexOptions.class, (Map) indexAttributes);
+                        indexes.add(new IndexModel(indexDef, indexOptions));
                     } else {
-                        collection.createIndex(indexDef);
+                        indexes.add(new IndexModel(indexDef));
                     }
                 }
             }
@@ -873,17 +1175,15 @@ public class MongoDatastore extends AbstractDatastore implements MappingContext.
                         options.putAll(attributes);
                     }
                 }
-                // continue using deprecated method to support older versions of MongoDB
                 if (options.isEmpty()) {
-                    collection.createIndex(dbObject);
+                    indexes.add(new IndexModel(dbObject));
                 } else {
                     final IndexOptions indexOptions = MongoConstants.mapToObject(IndexOptions.class, options);
-                    collection.createIndex(dbObject, indexOptions);
+                    indexes.add(new IndexModel(dbObject, indexOptions));
                 }
             }
         }
-
-
+        return indexes;
     }
 
     String getMongoFieldNameForProperty(PersistentProperty<MongoAttribute> property) {
@@ -906,6 +1206,10 @@ public class MongoDatastore extends AbstractDatastore implements MappingContext.
     @Override
     @PreDestroy
     public void close() {
+        for (MongoDatastore datastore : datastoresByConnectionSource.values()) {
+            datastore.cacheInvalidator.close();
+        }
+        cacheInvalidator.close();
         try {
             super.destroy();
         } catch (Exception e) {
@@ -918,6 +1222,13 @@ public class MongoDatastore extends AbstractDatastore implements MappingContext.
         } catch(IOException e) {
             LOG.error("There was an error shutting down GORM for an entity: " + e.getMessage(), e);
         } finally {
+            for (MongoDatastore datastore : datastoresByConnectionSource.values()) {
+                datastore.shutdownFlushExecutor();
+                datastore.closeReactiveMongoClient();
+            }
+            shutdownFlushExecutor();
+            closeReactiveMongoClient();
+            embeddedCodecCache.clear();
 
             if(gormEnhancer != null) {
                 try {
@@ -929,6 +1240,25 @@ public class MongoDatastore extends AbstractDatastore implements MappingContext.
         }
     }
 
+    protected synchronized void shutdownFlushExecutor() {
+        if (flushExecutor != null) {
+            flushExecutor.shutdown();
+            flushExecutor = null;
+        }
+        if (reactiveFlushExecutor != null) {
+            reactiveFlushExecutor.shutdown();
+            reactiveFlushExecutor = null;
+        }
+    }
+
+    protected synchronized void closeReactiveMongoClient() {
+        if (reactiveMongoClient != null) {
+            reactiveMongoClient.close();
+            reactiveMongoClient = null;
+            collectionHandles.clearReactive();
+        }
+    }
+
     /**
      * Creates the connection sources for an existing {@link MongoClient}
      *
@@ -981,6 +1311,11 @@ public class MongoDatastore extends AbstractDatastore implements MappingContext.
 
         mongoCollections.put(entity, collectionName);
         mongoDatabases.put(entity,databaseName);
+
+        if (codecEngine) {
+            // resolve the codec plan up front rather than on the first read or write
+            getPersistentEntityCodec(entity).getCodecPlan(entity);
+        }
     }
 
     private static void configureValidationRegistry(MongoConnectionSourceSettings settings, MongoMappingContext mongoMappingContext) {
@@ -1055,7 +1390,7 @@ public class MongoDatastore extends AbstractDatastore implements MappingContext.
             if (codec == null) {
                 final PersistentEntity entity = getMappingContext().getPersistentEntity(entityName);
                 if (entity != null) {
-                    codec = new PersistentEntityCodec(codecRegistry, entity);
+                    codec = createPersistentEntityCodec(entity);
                     codecs.put(entityName, codec);
                 }
             }
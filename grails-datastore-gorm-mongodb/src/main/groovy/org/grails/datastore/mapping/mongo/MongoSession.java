@@ -84,6 +84,7 @@ public class MongoSession extends AbstractMongoSession {
             if(pendingUpdates.isEmpty() && pendingInserts.isEmpty() && pendingDeletes.isEmpty()) {
                 return;
             }
+            written = true;
 
 
             Map<String,Integer> numberOfOptimisticUpdates = new LinkedHashMap<String, Integer>();
@@ -185,11 +186,7 @@ public class MongoSession extends AbstractMongoSession {
 
 
             for (PersistentEntity persistentEntity : writeModels.keySet()) {
-                com.mongodb.client.MongoCollection collection = getCollection(persistentEntity);
-                final WriteConcern wc = getWriteConcern();
-                if(wc != null) {
-                    collection = collection.withWriteConcern(wc);
-                }
+                final com.mongodb.client.MongoCollection<Document> collection = getCollection(persistentEntity, Document.class, getWriteConcern(), null);
                 final List<WriteModel<Document>> writes = writeModels.get(persistentEntity);
                 if(!writes.isEmpty()) {
 
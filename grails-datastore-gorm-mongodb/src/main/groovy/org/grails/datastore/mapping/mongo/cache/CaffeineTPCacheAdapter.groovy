@@ -0,0 +1,155 @@
+/*
+ * Copyright 2024 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.grails.datastore.mapping.mongo.cache
+
+import com.github.benmanes.caffeine.cache.Cache
+import com.github.benmanes.caffeine.cache.Caffeine
+import com.github.benmanes.caffeine.cache.stats.CacheStats
+import groovy.transform.CompileStatic
+import org.bson.RawBsonDocument
+import org.bson.codecs.Codec
+import org.bson.types.ObjectId
+import org.grails.datastore.mapping.cache.TPCacheAdapter
+import org.grails.datastore.mapping.model.PersistentEntity
+import org.grails.datastore.mapping.mongo.MongoDatastore
+import org.grails.datastore.mapping.mongo.config.MongoCollection
+
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * A {@link TPCacheAdapter} backed by a Caffeine cache. Entries are held in their encoded BSON form and decoded into a new
+ * instance on every read, so cached state can never be modified through an instance handed out to the application
+ *
+ * @since 9.0
+ */
+@CompileStatic
+class CaffeineTPCacheAdapter implements TPCacheAdapter<Object> {
+
+    protected final PersistentEntity entity
+    protected final MongoDatastore datastore
+    protected final Cache<Serializable, RawBsonDocument> cache
+    protected final AtomicLong generation = new AtomicLong()
+
+    CaffeineTPCacheAdapter(PersistentEntity entity, MongoDatastore datastore, MongoCollection.CacheConfig config) {
+        this.entity = entity
+        this.datastore = datastore
+        this.cache = buildCache(config)
+    }
+
+    @Override
+    void cacheEntry(Serializable key, Object entry) {
+        if (key == null || entry == null) {
+            return
+        }
+        Codec<Object> codec = (Codec<Object>) datastore.codecRegistry.get(entry.getClass())
+        cache.put(key, new RawBsonDocument(entry, codec))
+    }
+
+    /**
+     * Caches an entry read from the database unless an entry of the cache was evicted since the read started, in which case
+     * the entry may already be stale
+     *
+     * @param key The key
+     * @param entry The entry
+     * @param generation The {@link #getGeneration() generation} of the cache obtained before the entry was read
+     */
+    void cacheLoadedEntry(Serializable key, Object entry, long generation) {
+        if (this.generation.get() != generation) {
+            return
+        }
+        cacheEntry(key, entry)
+        // an eviction may have happened between the check and the write, in which case it must win
+        if (this.generation.get() != generation) {
+            evict(key)
+        }
+    }
+
+    /**
+     * @return The generation of the cache, which changes whenever an entry is evicted
+     */
+    long getGeneration() {
+        return generation.get()
+    }
+
+    @Override
+    Object getCachedEntry(Serializable key) {
+        if (key == null) {
+            return null
+        }
+        RawBsonDocument document = cache.getIfPresent(key)
+        if (document == null) {
+            return null
+        }
+        Codec<Object> codec = (Codec<Object>) datastore.codecRegistry.get(entity.javaClass)
+        return document.decode(codec)
+    }
+
+    /**
+     * Removes the entry for the given key
+     *
+     * @param key The key
+     */
+    void evict(Object key) {
+        generation.incrementAndGet()
+        if (key instanceof Serializable) {
+            cache.invalidate((Serializable) key)
+        }
+        // string identifiers may be held as either form depending on how the entity was read
+        if (key instanceof ObjectId) {
+            cache.invalidate(((ObjectId) key).toHexString())
+        }
+        else if (key instanceof CharSequence && ObjectId.isValid(key.toString())) {
+            cache.invalidate(new ObjectId(key.toString()))
+        }
+    }
+
+    /**
+     * Removes all entries
+     */
+    void evictAll() {
+        generation.incrementAndGet()
+        cache.invalidateAll()
+    }
+
+    /**
+     * @return The number of entries in the cache
+     */
+    long size() {
+        return cache.estimatedSize()
+    }
+
+    /**
+     * @return The hit, miss and eviction statistics of the cache
+     */
+    CacheStats getStats() {
+        return cache.stats()
+    }
+
+    protected Cache<Serializable, RawBsonDocument> buildCache(MongoCollection.CacheConfig config) {
+        Caffeine<Object, Object> builder = Caffeine.newBuilder().recordStats()
+        if (config?.maximumSize != null) {
+            builder.maximumSize(config.maximumSize)
+        }
+        if (config?.expireAfterWrite != null) {
+            builder.expireAfterWrite(config.expireAfterWrite, TimeUnit.SECONDS)
+        }
+        if (config?.expireAfterAccess != null) {
+            builder.expireAfterAccess(config.expireAfterAccess, TimeUnit.SECONDS)
+        }
+        return builder.<Serializable, RawBsonDocument>build()
+    }
+}
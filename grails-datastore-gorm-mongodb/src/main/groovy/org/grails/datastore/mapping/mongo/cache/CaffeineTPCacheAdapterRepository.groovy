@@ -0,0 +1,132 @@
+/*
+ * Copyright 2024 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.grails.datastore.mapping.mongo.cache
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats
+import groovy.transform.CompileStatic
+import org.grails.datastore.mapping.cache.TPCacheAdapter
+import org.grails.datastore.mapping.cache.TPCacheAdapterRepository
+import org.grails.datastore.mapping.model.PersistentEntity
+import org.grails.datastore.mapping.mongo.MongoDatastore
+import org.grails.datastore.mapping.mongo.config.MongoCollection
+
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * A {@link TPCacheAdapterRepository} that creates a {@link CaffeineTPCacheAdapter} for each entity mapped with
+ * {@code cache true} or {@code cache maximumSize: .., expireAfterWrite: ..}. Entities in an inheritance hierarchy share the
+ * cache of the root entity
+ *
+ * @since 9.0
+ */
+@CompileStatic
+class CaffeineTPCacheAdapterRepository implements TPCacheAdapterRepository<Object> {
+
+    protected final MongoDatastore datastore
+    protected final Map<String, TPCacheAdapter<Object>> adapters = new ConcurrentHashMap<>()
+    protected final Set<String> uncached = ConcurrentHashMap.newKeySet()
+
+    CaffeineTPCacheAdapterRepository(MongoDatastore datastore) {
+        this.datastore = datastore
+    }
+
+    @Override
+    TPCacheAdapter<Object> getTPCacheAdapter(PersistentEntity entity) {
+        if (entity == null) {
+            return null
+        }
+        PersistentEntity root = entity.isRoot() ? entity : entity.rootEntity
+        String name = root.name
+        TPCacheAdapter<Object> adapter = adapters.get(name)
+        if (adapter != null || uncached.contains(name)) {
+            return adapter
+        }
+
+        Object mappedForm = root.mapping?.mappedForm
+        MongoCollection.CacheConfig config = mappedForm instanceof MongoCollection ? ((MongoCollection) mappedForm).cache : null
+        if (config == null || !config.enabled) {
+            uncached.add(name)
+            return null
+        }
+        return adapters.computeIfAbsent(name, { String n -> (TPCacheAdapter<Object>) new CaffeineTPCacheAdapter(root, datastore, config) })
+    }
+
+    void setTPCacheAdapter(PersistentEntity entity, TPCacheAdapter<Object> cacheAdapter) {
+        setTPCacheAdapter(entity.isRoot() ? entity.name : entity.rootEntity.name, cacheAdapter)
+    }
+
+    void setTPCacheAdapter(Class entityJavaClass, TPCacheAdapter<Object> cacheAdapter) {
+        setTPCacheAdapter(entityJavaClass.name, cacheAdapter)
+    }
+
+    void setTPCacheAdapter(String entityJavaClassFQN, TPCacheAdapter<Object> cacheAdapter) {
+        if (cacheAdapter == null) {
+            adapters.remove(entityJavaClassFQN)
+            uncached.add(entityJavaClassFQN)
+        }
+        else {
+            uncached.remove(entityJavaClassFQN)
+            adapters.put(entityJavaClassFQN, cacheAdapter)
+        }
+    }
+
+    /**
+     * Removes the cached entry for the given entity and key
+     *
+     * @param entity The entity
+     * @param key The key
+     */
+    void evict(PersistentEntity entity, Object key) {
+        TPCacheAdapter<Object> adapter = getTPCacheAdapter(entity)
+        if (adapter instanceof CaffeineTPCacheAdapter) {
+            ((CaffeineTPCacheAdapter) adapter).evict(key)
+        }
+    }
+
+    /**
+     * Removes all cached entries for the given entity
+     *
+     * @param entity The entity
+     */
+    void evictAll(PersistentEntity entity) {
+        TPCacheAdapter<Object> adapter = getTPCacheAdapter(entity)
+        if (adapter instanceof CaffeineTPCacheAdapter) {
+            ((CaffeineTPCacheAdapter) adapter).evictAll()
+        }
+    }
+
+    /**
+     * @param entity The entity
+     * @return The statistics of the cache for the entity or null if the entity is not cached
+     */
+    CacheStats getStats(PersistentEntity entity) {
+        TPCacheAdapter<Object> adapter = getTPCacheAdapter(entity)
+        return adapter instanceof CaffeineTPCacheAdapter ? ((CaffeineTPCacheAdapter) adapter).stats : null
+    }
+
+    /**
+     * @return The statistics of each entity cache keyed by entity name
+     */
+    Map<String, CacheStats> getStats() {
+        Map<String, CacheStats> stats = new LinkedHashMap<>()
+        for (Map.Entry<String, TPCacheAdapter<Object>> entry in adapters.entrySet()) {
+            if (entry.value instanceof CaffeineTPCacheAdapter) {
+                stats.put(entry.key, ((CaffeineTPCacheAdapter) entry.value).stats)
+            }
+        }
+        return stats
+    }
+}
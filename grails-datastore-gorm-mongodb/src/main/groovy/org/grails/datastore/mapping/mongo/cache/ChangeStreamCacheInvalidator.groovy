@@ -0,0 +1,447 @@
+/*
+ * Copyright 2024 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.grails.datastore.mapping.mongo.cache
+
+import com.mongodb.MongoException
+import com.mongodb.MongoServerException
+import com.mongodb.client.ChangeStreamIterable
+import com.mongodb.client.MongoChangeStreamCursor
+import com.mongodb.client.MongoCollection
+import com.mongodb.client.model.Aggregates
+import com.mongodb.client.model.Filters
+import com.mongodb.client.model.Projections
+import com.mongodb.client.model.ReplaceOptions
+import com.mongodb.client.model.changestream.ChangeStreamDocument
+import com.mongodb.client.model.changestream.OperationType
+import groovy.transform.CompileStatic
+import groovy.util.logging.Slf4j
+import org.bson.BsonDocument
+import org.bson.BsonValue
+import org.bson.Document
+import org.bson.conversions.Bson
+import org.grails.datastore.mapping.model.PersistentEntity
+import org.grails.datastore.mapping.mongo.MongoDatastore
+import org.grails.datastore.mapping.mongo.changes.ChangeStreamSubscription
+import org.grails.datastore.mapping.mongo.connections.AbstractMongoConnectionSourceSettings
+import org.grails.datastore.mapping.multitenancy.MultiTenancySettings
+
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.TimeUnit
+
+/**
+ * Invalidates the second-level and query caches of a datastore with change streams, so that writes made by other application
+ * nodes evict the entries they make stale. Updates, replacements and deletions evict the cached instance by identifier, and any
+ * change invalidates the cached queries of the collection. Drops, renames and invalidations of a collection clear its caches.
+ *
+ * Each database holding the collections of the entities is watched with a single change stream, filtered on the watched
+ * collections, by a daemon thread that dispatches the changes by namespace. Watching a database rather than each collection
+ * holds one connection whatever the number of entities. The resume token of each change stream is persisted, at most once per
+ * interval, so that a watcher restarted after a failure resumes where it stopped. If the token can no longer be resumed, because
+ * the oplog has rolled over, the caches of the entities of the database are flushed since changes may have been missed.
+ *
+ * Only the default collection of each entity, in the default database of the connection source of the datastore, is watched.
+ * Each connection source has its own datastore and caches, so with DATABASE multi-tenancy the database of each tenant is watched
+ * by the invalidator of its connection source. Collections and databases selected with {@code useCollection},
+ * {@code useDatabase} or SCHEMA multi-tenancy are not watched, and the caches of their queries are only invalidated by the writes
+ * of the local node
+ *
+ * @since 9.0
+ */
+@CompileStatic
+@Slf4j
+class ChangeStreamCacheInvalidator implements Closeable {
+
+    /**
+     * The error code of a change stream whose resume point is no longer in the oplog
+     */
+    static final int CHANGE_STREAM_HISTORY_LOST = 286
+    static final int CHANGE_STREAM_FATAL_ERROR = 280
+    static final int INVALID_RESUME_TOKEN = 260
+    /**
+     * The error code of a change stream opened on a server that is not part of a replica set
+     */
+    static final int CHANGE_STREAM_NOT_SUPPORTED = 40573
+
+    private static final long RETRY_DELAY_MS = 1000
+    private static final long MAX_AWAIT_TIME_MS = 1000
+    private static final List<String> DATABASE_OPERATIONS = ['dropDatabase', 'invalidate']
+
+    protected final MongoDatastore datastore
+    protected final AbstractMongoConnectionSourceSettings.CacheInvalidationSettings settings
+    protected final String nodeName
+
+    private final List<DatabaseWatcher> watchers = new CopyOnWriteArrayList<>()
+    private volatile boolean running
+
+    ChangeStreamCacheInvalidator(MongoDatastore datastore, AbstractMongoConnectionSourceSettings.CacheInvalidationSettings settings) {
+        this.datastore = datastore
+        this.settings = settings
+        this.nodeName = settings.nodeName ?: resolveHostName()
+    }
+
+    /**
+     * Starts watching the databases of the entities
+     */
+    synchronized void start() {
+        if (running) {
+            return
+        }
+        running = true
+        if (datastore.getMultiTenancyMode() == MultiTenancySettings.MultiTenancyMode.SCHEMA) {
+            log.warn("Caches are only invalidated by the changes of the default database, the databases of SCHEMA multi-tenancy are not watched")
+        }
+        Map<String, Map<String, List<PersistentEntity>>> entitiesByDatabase = new LinkedHashMap<>()
+        for (PersistentEntity entity in getWatchedEntities()) {
+            Map<String, List<PersistentEntity>> entitiesByCollection = entitiesByDatabase.computeIfAbsent(datastore.getDatabaseName(entity), { String name ->
+                new LinkedHashMap<String, List<PersistentEntity>>()
+            })
+            entitiesByCollection.computeIfAbsent(datastore.getCollectionName(entity), { String name -> new ArrayList<PersistentEntity>() }).add(entity)
+        }
+        for (Map.Entry<String, Map<String, List<PersistentEntity>>> entry in entitiesByDatabase.entrySet()) {
+            DatabaseWatcher watcher = new DatabaseWatcher(this, entry.key, entry.value)
+            watchers.add(watcher)
+            watcher.start("gorm-mongodb-invalidation-" + watchers.size())
+        }
+    }
+
+    /**
+     * Stops watching, waiting for the watchers to persist their resume tokens
+     */
+    @Override
+    synchronized void close() {
+        running = false
+        for (DatabaseWatcher watcher in watchers) {
+            watcher.join(MAX_AWAIT_TIME_MS + RETRY_DELAY_MS)
+        }
+        watchers.clear()
+    }
+
+    /**
+     * @return Whether the databases are watched
+     */
+    boolean isRunning() {
+        return running
+    }
+
+    /**
+     * @return The root entities whose collections are watched
+     */
+    List<PersistentEntity> getWatchedEntities() {
+        List<PersistentEntity> entities = []
+        for (PersistentEntity entity in datastore.mappingContext.persistentEntities) {
+            if (!entity.isRoot() || entity.isExternal()) {
+                continue
+            }
+            if (settings.entities && !settings.entities.contains(entity.name) && !settings.entities.contains(entity.javaClass.simpleName)) {
+                continue
+            }
+            entities.add(entity)
+        }
+        return entities
+    }
+
+    /**
+     * Applies a change of the collection of an entity to the caches
+     *
+     * @param entity The root entity
+     * @param operationType The type of the change
+     * @param documentId The identifier of the changed document or null if the change is not for a single document
+     */
+    void onChange(PersistentEntity entity, OperationType operationType, BsonValue documentId) {
+        switch (operationType) {
+            case OperationType.INSERT:
+                datastore.getQueryResultCache().invalidate(getNamespace(entity))
+                break
+            case OperationType.UPDATE:
+            case OperationType.REPLACE:
+            case OperationType.DELETE:
+                if (documentId != null) {
+                    datastore.getEntityCacheRepository().evict(entity, toIdentifier(entity, documentId))
+                }
+                datastore.getQueryResultCache().invalidate(getNamespace(entity))
+                break
+            default:
+                flush(entity)
+        }
+    }
+
+    /**
+     * Clears the second-level cache of an entity and the cached queries of its collection
+     *
+     * @param entity The root entity
+     */
+    void flush(PersistentEntity entity) {
+        datastore.getEntityCacheRepository().evictAll(entity)
+        datastore.getQueryResultCache().invalidate(getNamespace(entity))
+    }
+
+    /**
+     * @param databaseName The name of a watched database
+     * @return The persisted resume token of the change stream of the database or null if there is none
+     */
+    BsonDocument loadResumeToken(String databaseName) {
+        Document document = getResumeTokenCollection(databaseName).find(Filters.eq('_id', getResumeTokenId(databaseName))).first()
+        Object token = document?.get('token')
+        return token instanceof Document ? ((Document) token).toBsonDocument(BsonDocument, datastore.getCodecRegistry()) : null
+    }
+
+    /**
+     * Persists the resume token of the change stream of a database
+     *
+     * @param databaseName The name of a watched database
+     * @param token The token or null to remove the persisted token
+     */
+    void saveResumeToken(String databaseName, BsonDocument token) {
+        MongoCollection<Document> collection = getResumeTokenCollection(databaseName)
+        String id = getResumeTokenId(databaseName)
+        if (token == null) {
+            collection.deleteOne(Filters.eq('_id', id))
+        }
+        else {
+            Document document = new Document('_id', id)
+                    .append('token', token)
+                    .append('lastUpdated', new Date())
+            collection.replaceOne(Filters.eq('_id', id), document, new ReplaceOptions().upsert(true))
+        }
+    }
+
+    /**
+     * Opens the change stream of a database
+     *
+     * @param databaseName The name of the database
+     * @param collectionNames The names of the watched collections
+     * @return The change stream, reporting only the type, document key and namespaces of the changes of the watched collections
+     */
+    protected ChangeStreamIterable<Document> watch(String databaseName, Collection<String> collectionNames) {
+        return datastore.getMongoClient().getDatabase(databaseName).watch(createPipeline(collectionNames))
+    }
+
+    /**
+     * Creates the pipeline of the change stream of a database, matching the changes of the watched collections, including
+     * renames to one of them, and the changes of the database itself
+     *
+     * @param collectionNames The names of the watched collections
+     * @return The pipeline
+     */
+    protected static List<Bson> createPipeline(Collection<String> collectionNames) {
+        List<String> names = new ArrayList<>(collectionNames)
+        return [
+                Aggregates.match(Filters.or(
+                        Filters.in('ns.coll', names),
+                        Filters.in('to.coll', names),
+                        Filters.in('operationType', DATABASE_OPERATIONS)
+                )),
+                Aggregates.project(Projections.include('operationType', 'documentKey', 'ns', 'to'))
+        ]
+    }
+
+    protected String getResumeTokenId(String databaseName) {
+        return nodeName + ':' + databaseName
+    }
+
+    protected MongoCollection<Document> getResumeTokenCollection(String databaseName) {
+        return datastore.getMongoClient()
+                .getDatabase(databaseName)
+                .getCollection(settings.resumeTokenCollection)
+                .withCodecRegistry(datastore.getCodecRegistry())
+    }
+
+    protected String getNamespace(PersistentEntity entity) {
+        return datastore.getCollection(entity).namespace.fullName
+    }
+
+    /**
+     * Converts the identifier of a changed document to the type of the identity of the entity
+     */
+    protected Object toIdentifier(PersistentEntity entity, BsonValue documentId) {
+        return ChangeStreamSubscription.toIdentifier(datastore, entity, documentId)
+    }
+
+    private static String resolveHostName() {
+        try {
+            return InetAddress.localHost.hostName
+        } catch (IOException e) {
+            return 'localhost'
+        }
+    }
+
+    /**
+     * Watches a database on its own thread and applies its changes to the caches of the entities of the changed collections
+     */
+    @Slf4j
+    protected static class DatabaseWatcher implements Runnable {
+        final ChangeStreamCacheInvalidator invalidator
+        final String databaseName
+        final Map<String, List<PersistentEntity>> entitiesByCollection
+        private Thread thread
+
+        DatabaseWatcher(ChangeStreamCacheInvalidator invalidator, String databaseName, Map<String, List<PersistentEntity>> entitiesByCollection) {
+            this.invalidator = invalidator
+            this.databaseName = databaseName
+            this.entitiesByCollection = entitiesByCollection
+        }
+
+        void start(String name) {
+            thread = new Thread(this, name)
+            thread.setDaemon(true)
+            thread.start()
+        }
+
+        void join(long millis) {
+            try {
+                thread?.join(millis)
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt()
+            }
+        }
+
+        /**
+         * Applies a change to the caches of the entities of the changed collection, or of every entity of the database for
+         * changes of the database itself
+         */
+        void dispatch(ChangeStreamDocument<Document> change) {
+            BsonValue documentId = change.documentKey?.get('_id')
+            String collectionName = getCollectionName(change.namespaceDocument)
+            Collection<List<PersistentEntity>> changed = collectionName != null ?
+                    Collections.singletonList(getEntities(collectionName)) : entitiesByCollection.values()
+            for (List<PersistentEntity> entities in changed) {
+                for (PersistentEntity entity in entities) {
+                    invalidator.onChange(entity, change.operationType, documentId)
+                }
+            }
+            // the collection renamed to a watched collection replaces its documents
+            String renamedTo = getCollectionName(change.destinationNamespaceDocument)
+            if (renamedTo != null) {
+                for (PersistentEntity entity in getEntities(renamedTo)) {
+                    invalidator.flush(entity)
+                }
+            }
+        }
+
+        @Override
+        void run() {
+            long interval = TimeUnit.SECONDS.toNanos(invalidator.settings.resumeTokenInterval)
+            BsonDocument token = null
+            boolean startAfter = false
+            boolean lost = false
+            try {
+                token = invalidator.loadResumeToken(databaseName)
+            } catch (MongoException e) {
+                log.warn("Error loading the resume token of database [${databaseName}]: ${e.message}")
+            }
+            long lastSaved = System.nanoTime()
+
+            while (invalidator.isRunning()) {
+                try {
+                    if (lost) {
+                        // changes may have been missed since the token was taken
+                        flushAll()
+                        lost = false
+                    }
+                    ChangeStreamIterable<Document> stream = invalidator.watch(databaseName, entitiesByCollection.keySet())
+                            .maxAwaitTime(MAX_AWAIT_TIME_MS, TimeUnit.MILLISECONDS)
+                    if (token != null) {
+                        stream = startAfter ? stream.startAfter(token) : stream.resumeAfter(token)
+                        startAfter = false
+                    }
+                    MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor = stream.cursor()
+                    try {
+                        while (invalidator.isRunning()) {
+                            ChangeStreamDocument<Document> change = cursor.tryNext()
+                            if (change != null) {
+                                dispatch(change)
+                                if (change.operationType == OperationType.INVALIDATE) {
+                                    // an invalidated stream cannot be resumed, a new stream starts after the invalidation
+                                    token = change.resumeToken
+                                    startAfter = true
+                                    break
+                                }
+                            }
+                            BsonDocument current = cursor.resumeToken
+                            if (current != null) {
+                                token = current
+                            }
+                            if (token != null && System.nanoTime() - lastSaved >= interval) {
+                                invalidator.saveResumeToken(databaseName, token)
+                                lastSaved = System.nanoTime()
+                            }
+                        }
+                    } finally {
+                        cursor.close()
+                    }
+                } catch (MongoServerException e) {
+                    if (e.code == CHANGE_STREAM_NOT_SUPPORTED) {
+                        log.warn("Caches of database [${databaseName}] are not invalidated, change streams require a replica set or a sharded cluster")
+                        return
+                    }
+                    if (e.code == CHANGE_STREAM_HISTORY_LOST || e.code == CHANGE_STREAM_FATAL_ERROR || e.code == INVALID_RESUME_TOKEN) {
+                        log.warn("The change stream of database [${databaseName}] cannot be resumed, flushing its caches: ${e.message}")
+                        token = null
+                        startAfter = false
+                        lost = true
+                        invalidator.saveResumeToken(databaseName, null)
+                    }
+                    else if (!pause(e)) {
+                        return
+                    }
+                } catch (RuntimeException e) {
+                    if (!pause(e)) {
+                        return
+                    }
+                }
+            }
+
+            if (token != null) {
+                try {
+                    invalidator.saveResumeToken(databaseName, token)
+                } catch (RuntimeException e) {
+                    log.debug("Error saving the resume token of database [${databaseName}]: ${e.message}")
+                }
+            }
+        }
+
+        private List<PersistentEntity> getEntities(String collectionName) {
+            return entitiesByCollection.get(collectionName) ?: Collections.<PersistentEntity>emptyList()
+        }
+
+        private void flushAll() {
+            for (List<PersistentEntity> entities in entitiesByCollection.values()) {
+                for (PersistentEntity entity in entities) {
+                    invalidator.flush(entity)
+                }
+            }
+        }
+
+        private boolean pause(RuntimeException e) {
+            if (!invalidator.isRunning()) {
+                return false
+            }
+            log.warn("Error watching database [${databaseName}], retrying: ${e.message}")
+            try {
+                Thread.sleep(RETRY_DELAY_MS)
+                return true
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt()
+                return false
+            }
+        }
+
+        private static String getCollectionName(BsonDocument namespace) {
+            BsonValue collection = namespace?.get('coll')
+            return collection != null && collection.isString() ? collection.asString().value : null
+        }
+    }
+}
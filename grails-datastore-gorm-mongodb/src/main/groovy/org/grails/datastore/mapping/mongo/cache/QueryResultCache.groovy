@@ -0,0 +1,216 @@
+/*
+ * Copyright 2024 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.grails.datastore.mapping.mongo.cache
+
+import com.github.benmanes.caffeine.cache.Cache
+import com.github.benmanes.caffeine.cache.Caffeine
+import com.github.benmanes.caffeine.cache.stats.CacheStats
+import groovy.transform.CompileStatic
+import groovy.transform.EqualsAndHashCode
+import org.bson.BsonArray
+import org.bson.BsonDocument
+import org.bson.BsonValue
+import org.bson.Document
+import org.bson.codecs.configuration.CodecRegistry
+
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Caches the identifiers of the results of queries executed with the {@code cache: true} argument. Entries are keyed
+ * on the collection namespace, the normalized query filter, sort, offset and maximum number of results.
+ *
+ * Each namespace has a generation that forms part of the key. Invalidating a namespace assigns it a new generation so that
+ * existing entries, and the results of any query still running against the previous generation, are never read again and are
+ * left to be evicted. Generations are drawn from a single sequence and held in a cache bounded like the results, so a namespace
+ * whose generation has been evicted is given a new one and its previous entries can never be read again
+ *
+ * @since 9.0
+ */
+@CompileStatic
+class QueryResultCache {
+
+    protected final Cache<Key, List<Serializable>> cache
+    protected final Cache<String, Long> generations
+    protected final AtomicLong generationSequence = new AtomicLong()
+
+    QueryResultCache(long maximumSize, Long expireAfterWrite) {
+        Caffeine<Object, Object> builder = Caffeine.newBuilder()
+                .recordStats()
+                .maximumSize(maximumSize)
+        if (expireAfterWrite != null) {
+            builder.expireAfterWrite(expireAfterWrite, TimeUnit.SECONDS)
+        }
+        this.cache = builder.<Key, List<Serializable>>build()
+        this.generations = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .<String, Long>build()
+    }
+
+    /**
+     * Creates the key for a query
+     *
+     * @param namespace The full namespace of the collection
+     * @param entityName The name of the queried entity
+     * @param filter The query filter
+     * @param sort The sort document or null
+     * @param offset The offset
+     * @param max The maximum number of results
+     * @param codecRegistry The registry used to encode values of the filter
+     * @return The key
+     */
+    Key createKey(String namespace, String entityName, Document filter, Document sort, int offset, int max, CodecRegistry codecRegistry) {
+        return createKey(namespace, entityName, filter, sort, null, offset, max, codecRegistry)
+    }
+
+    /**
+     * Creates the key for a query executed with options that change its results, such as the collation, hint and read concern
+     *
+     * @param namespace The full namespace of the collection
+     * @param entityName The name of the queried entity
+     * @param filter The query filter
+     * @param sort The sort document or null
+     * @param options The options of the query or null
+     * @param offset The offset
+     * @param max The maximum number of results
+     * @param codecRegistry The registry used to encode values of the filter
+     * @return The key
+     */
+    Key createKey(String namespace, String entityName, Document filter, Document sort, Document options, int offset, int max, CodecRegistry codecRegistry) {
+        String filterJson = normalizeFilter(filter.toBsonDocument(BsonDocument, codecRegistry)).toJson()
+        String sortJson = sort != null ? sort.toBsonDocument(BsonDocument, codecRegistry).toJson() : null
+        String optionsJson = options ? options.toBsonDocument(BsonDocument, codecRegistry).toJson() : null
+        return new Key(namespace, getGeneration(namespace), entityName, filterJson, sortJson, optionsJson, offset, max)
+    }
+
+    /**
+     * @param key The key
+     * @return The cached identifiers or null if there is no entry
+     */
+    List<Serializable> get(Key key) {
+        return cache.getIfPresent(key)
+    }
+
+    /**
+     * Caches the identifiers of the results of a query. Results for a namespace that has been invalidated since the key was created are discarded
+     *
+     * @param key The key
+     * @param identifiers The identifiers of the results in order
+     */
+    void put(Key key, List<Serializable> identifiers) {
+        if (key.generation == getGeneration(key.namespace)) {
+            cache.put(key, Collections.unmodifiableList(new ArrayList<Serializable>(identifiers)))
+        }
+    }
+
+    /**
+     * Invalidates all cached results for a collection
+     *
+     * @param namespace The full namespace of the collection
+     */
+    void invalidate(String namespace) {
+        // a namespace without a generation is given a new one when it is next queried
+        generations.asMap().computeIfPresent(namespace, { String ns, Long generation -> generationSequence.incrementAndGet() })
+    }
+
+    /**
+     * Invalidates all cached results
+     */
+    void invalidateAll() {
+        generations.invalidateAll()
+        cache.invalidateAll()
+    }
+
+    /**
+     * @return The hit and miss statistics of the cache
+     */
+    CacheStats getStats() {
+        return cache.stats()
+    }
+
+    /**
+     * @return The number of namespaces that currently have a generation
+     */
+    long getGenerationCount() {
+        generations.cleanUp()
+        return generations.estimatedSize()
+    }
+
+    protected long getGeneration(String namespace) {
+        return generations.get(namespace, { String ns -> generationSequence.incrementAndGet() })
+    }
+
+    /**
+     * Orders the fields of a filter and of its operator documents so that equivalent filters produce the same key. Values that
+     * are documents compared by equality are left untouched as their field order is significant
+     */
+    protected static BsonDocument normalizeFilter(BsonDocument filter) {
+        BsonDocument normalized = new BsonDocument()
+        for (String name in new TreeSet<String>(filter.keySet())) {
+            BsonValue value = filter.get(name)
+            if (value instanceof BsonArray && (name == '$and' || name == '$or' || name == '$nor')) {
+                BsonArray array = new BsonArray()
+                for (BsonValue element in (BsonArray) value) {
+                    array.add(element instanceof BsonDocument ? normalizeFilter((BsonDocument) element) : element)
+                }
+                value = array
+            }
+            else if (value instanceof BsonDocument && isOperatorDocument((BsonDocument) value)) {
+                value = normalizeFilter((BsonDocument) value)
+            }
+            normalized.put(name, value)
+        }
+        return normalized
+    }
+
+    protected static boolean isOperatorDocument(BsonDocument document) {
+        if (document.isEmpty()) {
+            return false
+        }
+        for (String name in document.keySet()) {
+            if (!name.startsWith('$')) {
+                return false
+            }
+        }
+        return true
+    }
+
+    /**
+     * The key of a cached query
+     */
+    @EqualsAndHashCode
+    static class Key {
+        final String namespace
+        final long generation
+        final String entityName
+        final String filter
+        final String sort
+        final String options
+        final int offset
+        final int max
+
+        Key(String namespace, long generation, String entityName, String filter, String sort, String options, int offset, int max) {
+            this.namespace = namespace
+            this.generation = generation
+            this.entityName = entityName
+            this.filter = filter
+            this.sort = sort
+            this.options = options
+            this.offset = offset
+            this.max = max
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2024 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.grails.datastore.mapping.mongo.changes
+
+import com.mongodb.client.model.changestream.OperationType
+import groovy.transform.CompileStatic
+import groovy.transform.ToString
+import org.bson.BsonDocument
+import org.bson.BsonTimestamp
+
+/**
+ * A change of the collection of an entity delivered by a {@link ChangeStreamSubscription}
+ *
+ * @param <T> The type of the entity
+ * @since 9.0
+ */
+@CompileStatic
+@ToString(includes = ['operationType', 'namespace', 'id'], includePackage = false)
+class ChangeEvent<T> {
+
+    /**
+     * The type of the change
+     */
+    final OperationType operationType
+
+    /**
+     * The full name of the changed collection
+     */
+    final String namespace
+
+    /**
+     * The identifier of the changed document, converted to the type of the identity of the entity, or null if the change is not
+     * for a single document
+     */
+    final Object id
+
+    /**
+     * The changed instance decoded from the current state of the document, or null for deletions and for changes that are not
+     * for a single document
+     */
+    final T entity
+
+    /**
+     * The resume token of the change
+     */
+    final BsonDocument resumeToken
+
+    /**
+     * The time of the change in the oplog
+     */
+    final BsonTimestamp clusterTime
+
+    ChangeEvent(OperationType operationType, String namespace, Object id, T entity, BsonDocument resumeToken, BsonTimestamp clusterTime) {
+        this.operationType = operationType
+        this.namespace = namespace
+        this.id = id
+        this.entity = entity
+        this.resumeToken = resumeToken
+        this.clusterTime = clusterTime
+    }
+}
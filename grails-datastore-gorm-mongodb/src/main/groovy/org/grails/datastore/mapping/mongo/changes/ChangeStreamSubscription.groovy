@@ -0,0 +1,545 @@
+/*
+ * Copyright 2024 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.grails.datastore.mapping.mongo.changes
+
+import com.mongodb.MongoServerException
+import com.mongodb.client.ChangeStreamIterable
+import com.mongodb.client.MongoChangeStreamCursor
+import com.mongodb.client.MongoCollection
+import com.mongodb.client.model.Aggregates
+import com.mongodb.client.model.Filters
+import com.mongodb.client.model.ReplaceOptions
+import com.mongodb.client.model.changestream.ChangeStreamDocument
+import com.mongodb.client.model.changestream.FullDocument
+import com.mongodb.client.model.changestream.FullDocumentBeforeChange
+import com.mongodb.client.model.changestream.OperationType
+import groovy.transform.CompileStatic
+import groovy.util.logging.Slf4j
+import org.bson.BsonDocument
+import org.bson.BsonDocumentReader
+import org.bson.BsonTimestamp
+import org.bson.BsonValue
+import org.bson.Document
+import org.bson.RawBsonDocument
+import org.bson.codecs.Codec
+import org.bson.codecs.DecoderContext
+import org.bson.conversions.Bson
+import org.grails.datastore.mapping.core.DatastoreUtils
+import org.grails.datastore.mapping.core.Session
+import org.grails.datastore.mapping.model.PersistentEntity
+import org.grails.datastore.mapping.mongo.AbstractMongoSession
+import org.grails.datastore.mapping.mongo.MongoDatastore
+import org.grails.datastore.mapping.mongo.cache.ChangeStreamCacheInvalidator
+import org.springframework.core.convert.ConversionService
+
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.RejectedExecutionHandler
+import java.util.concurrent.ThreadFactory
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.function.Consumer
+
+/**
+ * A subscription to the changes of the collection of an entity. The changes are read from a change stream by a daemon thread,
+ * decoded into instances of the entity and delivered in order to a listener on a single delivery thread, each within its own
+ * session. Changes are queued up to a bounded number, beyond which the change stream is no longer read until the listener has
+ * caught up.
+ *
+ * When the subscription is named, the resume token of the last delivered change is checkpointed, at most once per interval, so
+ * that a subscription with the same name resumes after it. Delivery is therefore at least once. A change is only considered
+ * delivered once the listener has returned: if the listener throws, the subscription stops and the change is delivered again
+ * when a subscription with the same name is started
+ *
+ * @param <T> The type of the entity
+ * @since 9.0
+ */
+@CompileStatic
+@Slf4j
+class ChangeStreamSubscription<T> implements Closeable {
+
+    /**
+     * The name of the subscription, under which the resume token is checkpointed
+     */
+    static final String NAME_ARGUMENT = 'name'
+    /**
+     * The maximum number of changes waiting to be delivered
+     */
+    static final String BUFFER_SIZE_ARGUMENT = 'bufferSize'
+    /**
+     * The collection the resume tokens are checkpointed to
+     */
+    static final String CHECKPOINT_COLLECTION_ARGUMENT = 'checkpointCollection'
+    /**
+     * The minimum interval in seconds between two checkpoints
+     */
+    static final String CHECKPOINT_INTERVAL_ARGUMENT = 'checkpointInterval'
+    /**
+     * Whether the state of deleted documents before the change is requested, which requires the pre-images of the collection to
+     * be enabled
+     */
+    static final String FULL_DOCUMENT_BEFORE_CHANGE_ARGUMENT = 'fullDocumentBeforeChange'
+
+    static final int DEFAULT_BUFFER_SIZE = 256
+    static final String DEFAULT_CHECKPOINT_COLLECTION = 'gormResumeTokens'
+    static final long DEFAULT_CHECKPOINT_INTERVAL = 10
+
+    private static final String FULL_DOCUMENT = 'fullDocument'
+    private static final String FULL_DOCUMENT_BEFORE_CHANGE = 'fullDocumentBeforeChange'
+    private static final String DOCUMENT_KEY = 'documentKey'
+    private static final List<String> DOCUMENT_OPERATIONS = ['insert', 'update', 'replace']
+    private static final List<String> KEYED_OPERATIONS = ['insert', 'update', 'replace', 'delete']
+    private static final long RETRY_DELAY_MS = 1000
+    private static final long MAX_AWAIT_TIME_MS = 1000
+    private static final AtomicInteger SUBSCRIPTION_COUNT = new AtomicInteger()
+
+    protected final MongoDatastore datastore
+    protected final PersistentEntity entity
+    protected final MongoCollection<RawBsonDocument> collection
+    protected final List<Bson> pipeline
+    protected final Consumer<ChangeEvent<T>> listener
+
+    final String name
+    final int bufferSize
+    final String checkpointCollection
+    final long checkpointInterval
+    final boolean fullDocumentBeforeChange
+
+    private final ThreadPoolExecutor executor
+    private final String threadName
+    private volatile boolean running
+    private volatile BsonDocument deliveredToken
+    private volatile Throwable failure
+    private Thread watcher
+    private MongoChangeStreamCursor<ChangeStreamDocument<RawBsonDocument>> cursor
+
+    /**
+     * @param datastore The datastore
+     * @param entity The entity
+     * @param collection The collection of the entity
+     * @param pipeline The pipeline of the change stream, usually created with {@link #createPipeline(Document)}
+     * @param options The options of the subscription
+     * @param listener The listener of the changes
+     */
+    ChangeStreamSubscription(MongoDatastore datastore, PersistentEntity entity, MongoCollection<RawBsonDocument> collection, List<Bson> pipeline,
+                             Map options, Consumer<ChangeEvent<T>> listener) {
+        this.datastore = datastore
+        this.entity = entity
+        this.collection = collection
+        this.pipeline = pipeline
+        this.listener = listener
+        this.name = options.get(NAME_ARGUMENT)?.toString()
+        this.bufferSize = Math.max(1, toLong(options.get(BUFFER_SIZE_ARGUMENT), DEFAULT_BUFFER_SIZE).intValue())
+        this.checkpointCollection = options.get(CHECKPOINT_COLLECTION_ARGUMENT)?.toString() ?: DEFAULT_CHECKPOINT_COLLECTION
+        this.checkpointInterval = toLong(options.get(CHECKPOINT_INTERVAL_ARGUMENT), DEFAULT_CHECKPOINT_INTERVAL)
+        Object beforeChange = options.get(FULL_DOCUMENT_BEFORE_CHANGE_ARGUMENT)
+        this.fullDocumentBeforeChange = beforeChange instanceof Boolean ? (Boolean) beforeChange : Boolean.parseBoolean(String.valueOf(beforeChange))
+        this.threadName = "gorm-mongodb-watch-" + SUBSCRIPTION_COUNT.incrementAndGet()
+        this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(bufferSize),
+                new DeliveryThreadFactory(threadName + "-delivery"), new BlockingPolicy())
+    }
+
+    /**
+     * Creates the pipeline of a change stream matching the changes of the documents that match a query. As the query applies to
+     * the fields of the document, it is matched against the full document of insertions, updates and replacements, whereas
+     * deletions and changes of the collection, which have no document, are always matched
+     *
+     * @param query The query, for example {@link org.grails.datastore.mapping.mongo.query.MongoQuery#getMongoQuery()}
+     * @return The pipeline
+     */
+    static List<Bson> createPipeline(Document query) {
+        return createPipeline(query, null)
+    }
+
+    /**
+     * Creates the pipeline of a change stream matching the changes of the documents that match a query, within a partition of the
+     * collection that deletions must also match, such as the discriminator of a subclass or the tenant of discriminator
+     * multi-tenancy. A deletion has no document, so it is only matched if the partition matches its document key, which holds
+     * the shard key of a sharded collection, or the state of the document before the change when it is requested with
+     * {@link #FULL_DOCUMENT_BEFORE_CHANGE_ARGUMENT}. Changes of the whole collection are always matched
+     *
+     * @param query The query, including the criteria of the partition
+     * @param partition The criteria of the partition or null if the collection is not partitioned
+     * @return The pipeline
+     */
+    static List<Bson> createPipeline(Document query, Document partition) {
+        if (query == null || query.isEmpty()) {
+            return Collections.<Bson>emptyList()
+        }
+        Document documentChanges = new Document('operationType', new Document('$in', DOCUMENT_OPERATIONS))
+        documentChanges.putAll(prefixFields(query, FULL_DOCUMENT))
+        if (partition == null || partition.isEmpty()) {
+            Document otherChanges = new Document('operationType', new Document('$nin', DOCUMENT_OPERATIONS))
+            return Collections.<Bson>singletonList(Aggregates.match(new Document('$or', [documentChanges, otherChanges])))
+        }
+        Document deletions = new Document('operationType', 'delete')
+                .append('$or', [prefixFields(partition, DOCUMENT_KEY), prefixFields(partition, FULL_DOCUMENT_BEFORE_CHANGE)])
+        Document collectionChanges = new Document('operationType', new Document('$nin', KEYED_OPERATIONS))
+        return Collections.<Bson>singletonList(Aggregates.match(new Document('$or', [documentChanges, deletions, collectionChanges])))
+    }
+
+    /**
+     * Prefixes the fields of a query with the given path, including the fields of the queries combined with {@code $and},
+     * {@code $or} and {@code $nor}
+     *
+     * @param query The query
+     * @param prefix The path
+     * @return The prefixed query
+     * @throws IllegalArgumentException If the query has another top-level operator, which cannot be applied to a path
+     */
+    static Document prefixFields(Map<String, Object> query, String prefix) {
+        Document prefixed = new Document()
+        for (Map.Entry<String, Object> entry in query.entrySet()) {
+            String key = entry.key
+            if (key == '$and' || key == '$or' || key == '$nor') {
+                prefixed.put(key, ((Iterable) entry.value).collect { Object clause -> prefixFields((Map<String, Object>) clause, prefix) })
+            }
+            else if (key.startsWith('$')) {
+                throw new IllegalArgumentException("Query operator [$key] is not supported by change streams")
+            }
+            else {
+                prefixed.put(prefix + '.' + key, entry.value)
+            }
+        }
+        return prefixed
+    }
+
+    /**
+     * Converts the identifier of a changed document to the type of the identity of an entity
+     *
+     * @param datastore The datastore
+     * @param entity The entity
+     * @param documentId The identifier of the document
+     * @return The identifier
+     */
+    static Object toIdentifier(MongoDatastore datastore, PersistentEntity entity, BsonValue documentId) {
+        if (documentId == null) {
+            return null
+        }
+        Document holder = datastore.getCodecRegistry().get(Document).decode(new BsonDocumentReader(new BsonDocument('_id', documentId)), DecoderContext.builder().build())
+        Object identifier = holder.get('_id')
+        Class identityType = entity.identity?.type
+        if (identifier != null && identityType != null && !identityType.isInstance(identifier)) {
+            ConversionService conversionService = datastore.mappingContext.conversionService
+            if (conversionService.canConvert(identifier.getClass(), identityType)) {
+                return conversionService.convert(identifier, identityType)
+            }
+        }
+        return identifier
+    }
+
+    /**
+     * Opens the change stream and starts delivering changes. The change stream is opened on the calling thread, so that a
+     * server which does not support change streams fails the call
+     *
+     * @return This subscription
+     */
+    synchronized ChangeStreamSubscription<T> start() {
+        if (running) {
+            return this
+        }
+        BsonDocument token = loadCheckpoint()
+        cursor = openCursor(token, false)
+        // until a change is delivered the checkpoint stays where the stream was resumed
+        if (deliveredToken == null) {
+            deliveredToken = token
+        }
+        running = true
+        watcher = new Thread({ -> watch(token) } as Runnable, threadName)
+        watcher.setDaemon(true)
+        watcher.start()
+        return this
+    }
+
+    /**
+     * Stops reading the change stream, waits for the queued changes to be delivered and checkpoints the last delivered change,
+     * leaving the checkpoint the subscription started from when no change was delivered.
+     * The watcher is interrupted, so that it does not remain blocked on a full queue, and a listener that does not return in
+     * time is interrupted as well
+     */
+    @Override
+    synchronized void close() {
+        if (executor.isShutdown()) {
+            return
+        }
+        running = false
+        try {
+            if (watcher != null) {
+                watcher.interrupt()
+                watcher.join(MAX_AWAIT_TIME_MS * 5)
+            }
+            executor.shutdown()
+            if (!executor.awaitTermination(MAX_AWAIT_TIME_MS * 5, TimeUnit.MILLISECONDS)) {
+                executor.shutdownNow()
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt()
+        }
+        if (deliveredToken != null) {
+            saveCheckpoint(deliveredToken)
+        }
+    }
+
+    /**
+     * @return Whether the change stream is being read
+     */
+    boolean isRunning() {
+        return running
+    }
+
+    /**
+     * @return The number of changes waiting to be delivered
+     */
+    int getPendingCount() {
+        return executor.queue.size()
+    }
+
+    /**
+     * @return The resume token of the last delivered change, or of the checkpoint the subscription started from if none was delivered
+     */
+    BsonDocument getDeliveredToken() {
+        return deliveredToken
+    }
+
+    /**
+     * @return The exception thrown while delivering a change, which stopped the subscription, or null
+     */
+    Throwable getFailure() {
+        return failure
+    }
+
+    /**
+     * Queues a change for delivery, blocking while the queue is full
+     *
+     * @param operationType The type of the change
+     * @param documentId The identifier of the changed document or null
+     * @param fullDocument The current state of the changed document or null
+     * @param resumeToken The resume token of the change
+     * @param clusterTime The time of the change
+     */
+    void submit(OperationType operationType, BsonValue documentId, RawBsonDocument fullDocument, BsonDocument resumeToken, BsonTimestamp clusterTime) {
+        executor.execute({ -> deliver(operationType, documentId, fullDocument, resumeToken, clusterTime) } as Runnable)
+    }
+
+    /**
+     * @return The checkpointed resume token of this subscription or null if there is none or the subscription has no name
+     */
+    BsonDocument loadCheckpoint() {
+        if (name == null) {
+            return null
+        }
+        Document document = getCheckpointCollection().find(Filters.eq('_id', name)).first()
+        Object token = document?.get('token')
+        return token instanceof Document ? ((Document) token).toBsonDocument(BsonDocument, datastore.getCodecRegistry()) : null
+    }
+
+    /**
+     * Checkpoints the resume token of this subscription, unless it has no name
+     *
+     * @param token The token or null to remove the checkpoint
+     */
+    void saveCheckpoint(BsonDocument token) {
+        if (name == null) {
+            return
+        }
+        MongoCollection<Document> checkpoints = getCheckpointCollection()
+        if (token == null) {
+            checkpoints.deleteOne(Filters.eq('_id', name))
+        }
+        else {
+            Document document = new Document('_id', name)
+                    .append('namespace', collection.namespace.fullName)
+                    .append('token', token)
+                    .append('lastUpdated', new Date())
+            checkpoints.replaceOne(Filters.eq('_id', name), document, new ReplaceOptions().upsert(true))
+        }
+    }
+
+    protected MongoCollection<Document> getCheckpointCollection() {
+        return datastore.getMongoClient()
+                .getDatabase(collection.namespace.databaseName)
+                .getCollection(checkpointCollection)
+                .withCodecRegistry(datastore.getCodecRegistry())
+    }
+
+    protected MongoChangeStreamCursor<ChangeStreamDocument<RawBsonDocument>> openCursor(BsonDocument token, boolean startAfter) {
+        ChangeStreamIterable<RawBsonDocument> stream = collection.watch(pipeline)
+                .fullDocument(FullDocument.UPDATE_LOOKUP)
+                .maxAwaitTime(MAX_AWAIT_TIME_MS, TimeUnit.MILLISECONDS)
+        if (fullDocumentBeforeChange) {
+            stream = stream.fullDocumentBeforeChange(FullDocumentBeforeChange.WHEN_AVAILABLE)
+        }
+        if (token != null) {
+            stream = startAfter ? stream.startAfter(token) : stream.resumeAfter(token)
+        }
+        return stream.cursor()
+    }
+
+    /**
+     * Reads the change stream until the subscription is closed, reopening it after failures
+     */
+    protected void watch(BsonDocument token) {
+        long interval = TimeUnit.SECONDS.toNanos(checkpointInterval)
+        long lastSaved = System.nanoTime()
+        BsonDocument saved = token
+        boolean startAfter = false
+
+        while (running) {
+            try {
+                if (cursor == null) {
+                    cursor = openCursor(token, startAfter)
+                    startAfter = false
+                }
+                while (running) {
+                    ChangeStreamDocument<RawBsonDocument> change = cursor.tryNext()
+                    if (change != null) {
+                        submit(change.operationType, change.documentKey?.get('_id'), change.fullDocument, change.resumeToken, change.clusterTime)
+                        token = change.resumeToken
+                        if (change.operationType == OperationType.INVALIDATE) {
+                            // an invalidated stream cannot be resumed, a new stream starts after the invalidation
+                            startAfter = true
+                            break
+                        }
+                    }
+                    else if (cursor.resumeToken != null) {
+                        token = cursor.resumeToken
+                    }
+                    BsonDocument delivered = deliveredToken
+                    if (delivered != null && !delivered.is(saved) && System.nanoTime() - lastSaved >= interval) {
+                        saveCheckpoint(delivered)
+                        saved = delivered
+                        lastSaved = System.nanoTime()
+                    }
+                }
+                closeCursor()
+            } catch (MongoServerException e) {
+                closeCursor()
+                if (e.code == ChangeStreamCacheInvalidator.CHANGE_STREAM_HISTORY_LOST || e.code == ChangeStreamCacheInvalidator.CHANGE_STREAM_FATAL_ERROR ||
+                        e.code == ChangeStreamCacheInvalidator.INVALID_RESUME_TOKEN) {
+                    log.warn("The change stream of [${entity.name}] cannot be resumed, changes may have been missed: ${e.message}")
+                    token = null
+                    startAfter = false
+                    // the checkpoint the subscription started from, or reached, cannot be resumed either
+                    deliveredToken = null
+                    saveCheckpoint(null)
+                }
+                else if (!pause(e)) {
+                    break
+                }
+            } catch (RuntimeException e) {
+                closeCursor()
+                if (!pause(e)) {
+                    break
+                }
+            }
+        }
+        closeCursor()
+    }
+
+    /**
+     * Decodes a change and delivers it to the listener within a new session. The change is only recorded as delivered once the
+     * listener has returned. If decoding or the listener fails the subscription stops, and the changes queued after it are not
+     * delivered, so that the checkpoint never moves past a change that was not delivered
+     */
+    protected void deliver(OperationType operationType, BsonValue documentId, RawBsonDocument fullDocument, BsonDocument resumeToken, BsonTimestamp clusterTime) {
+        if (failure != null) {
+            return
+        }
+        Session session = datastore.connect()
+        try {
+            DatastoreUtils.bindNewSession(session)
+            T instance = null
+            if (fullDocument != null && operationType != OperationType.DELETE) {
+                Codec<T> codec = (Codec<T>) ((AbstractMongoSession) session).getCodecRegistry().get(entity.javaClass)
+                instance = codec.decode(new BsonDocumentReader(fullDocument), DecoderContext.builder().build())
+            }
+            listener.accept(new ChangeEvent<T>(operationType, collection.namespace.fullName, toIdentifier(datastore, entity, documentId), instance, resumeToken, clusterTime))
+            deliveredToken = resumeToken
+        } catch (Exception e) {
+            log.error("Error delivering a change of [${entity.name}], the subscription is stopped: ${e.message}", e)
+            failure = e
+            running = false
+        } finally {
+            DatastoreUtils.unbindSession(session)
+            session.disconnect()
+        }
+    }
+
+    private void closeCursor() {
+        try {
+            cursor?.close()
+        } catch (RuntimeException e) {
+            log.debug("Error closing the change stream of [${entity.name}]: ${e.message}")
+        }
+        cursor = null
+    }
+
+    private boolean pause(RuntimeException e) {
+        if (!running) {
+            return false
+        }
+        log.warn("Error watching the collection of [${entity.name}], retrying: ${e.message}")
+        try {
+            Thread.sleep(RETRY_DELAY_MS)
+            return true
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt()
+            return false
+        }
+    }
+
+    private static Long toLong(Object value, long defaultValue) {
+        if (value instanceof Number) {
+            return ((Number) value).longValue()
+        }
+        return value != null ? Long.valueOf(value.toString()) : defaultValue
+    }
+
+    /**
+     * Blocks the submitting thread while the queue of changes is full, so that the change stream is not read faster than the
+     * changes are delivered
+     */
+    private static class BlockingPolicy implements RejectedExecutionHandler {
+        @Override
+        void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("The subscription is closed")
+            }
+            try {
+                executor.queue.put(runnable)
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt()
+                throw new RejectedExecutionException("Interrupted while waiting to queue a change", e)
+            }
+        }
+    }
+
+    private static class DeliveryThreadFactory implements ThreadFactory {
+        private final String name
+
+        DeliveryThreadFactory(String name) {
+            this.name = name
+        }
+
+        @Override
+        Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, name)
+            thread.setDaemon(true)
+            return thread
+        }
+    }
+}
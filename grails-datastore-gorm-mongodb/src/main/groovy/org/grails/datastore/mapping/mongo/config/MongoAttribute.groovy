@@ -19,6 +19,8 @@ import groovy.transform.builder.Builder
 import groovy.transform.builder.SimpleStrategy
 import org.grails.datastore.mapping.document.config.Attribute
 
+import jakarta.persistence.FetchType
+
 /**
  * Extends {@link Attribute} class with additional Mongo specific configuration
  *
@@ -32,6 +34,9 @@ class MongoAttribute extends Attribute {
     public static final String INDEX_TYPE = "type"
     public static final String INDEX_TYPE_2D = "2d"
     public static final String INDEX_TYPE_2DSPHERE = "2dsphere"
+    public static final String FETCH_BATCH = "batch"
+    public static final int DEFAULT_BATCH_SIZE = 100
+    public static final int DEFAULT_BLOCK_SIZE = 100
 
     @SuppressWarnings("rawtypes")
     private Map indexAttributes
@@ -41,6 +46,10 @@ class MongoAttribute extends Attribute {
      */
     boolean reference = false
 
+    private boolean batchFetch = false
+    private Integer fetchBatchSize
+    private Integer identifierBlockSize
+
     /**
      * @return The attributes for the index
      */
@@ -147,6 +156,84 @@ class MongoAttribute extends Attribute {
         return this
     }
 
+    /**
+     * Sets the fetch strategy. In addition to the standard strategies a value of 'batch' loads the association eagerly,
+     * resolving the associated entities of each batch of query results with a single query
+     *
+     * @param name The name of the fetch strategy
+     */
+    void setFetch(String name) {
+        if (FETCH_BATCH.equalsIgnoreCase(name)) {
+            batchFetch = true
+            setFetchStrategy(FetchType.EAGER)
+        }
+        else {
+            batchFetch = false
+            super.setFetch(name)
+        }
+    }
+
+    /**
+     * @return Whether the association is loaded eagerly in batches
+     */
+    boolean isBatchFetch() {
+        return batchFetch
+    }
+
+    /**
+     * @return The number of associated entities to resolve per query when batch fetching
+     */
+    Integer getBatchSize() {
+        return fetchBatchSize
+    }
+
+    /**
+     * Sets the number of associated entities to resolve per query when batch fetching
+     *
+     * @param batchSize The batch size
+     */
+    void setBatchSize(Integer batchSize) {
+        this.fetchBatchSize = batchSize
+    }
+
+    /**
+     * Configures the number of associated entities to resolve per query when batch fetching
+     *
+     * @param batchSize The batch size
+     * @return This attribute
+     */
+    MongoAttribute batchSize(Integer batchSize) {
+        setBatchSize(batchSize)
+        return this
+    }
+
+    /**
+     * @return The number of identifiers reserved at once by the {@code hilo} identifier generator
+     */
+    Integer getBlockSize() {
+        return identifierBlockSize
+    }
+
+    /**
+     * Sets the number of identifiers reserved at once by the {@code hilo} identifier generator
+     *
+     * @param blockSize The block size
+     */
+    void setBlockSize(Integer blockSize) {
+        this.identifierBlockSize = blockSize
+    }
+
+    /**
+     * Configures the number of identifiers reserved at once by the {@code hilo} identifier generator
+     *
+     * @param blockSize The block size
+     * @return This attribute
+     */
+    MongoAttribute blockSize(Integer blockSize) {
+        setBlockSize(blockSize)
+        return this
+    }
+
     @SuppressWarnings("rawtypes")
     void initIndexAttributes() {
         if (indexAttributes == null) {
@@ -14,7 +14,15 @@
  */
 package org.grails.datastore.mapping.mongo.config
 
+import com.mongodb.ReadConcern
+import com.mongodb.ReadConcernLevel
+import com.mongodb.ReadPreference
 import com.mongodb.WriteConcern
+import com.mongodb.client.model.Collation
+import com.mongodb.client.model.CollationAlternate
+import com.mongodb.client.model.CollationCaseFirst
+import com.mongodb.client.model.CollationMaxVariable
+import com.mongodb.client.model.CollationStrength
 import groovy.transform.CompileStatic
 import groovy.transform.builder.Builder
 import groovy.transform.builder.SimpleStrategy
@@ -45,8 +53,54 @@ class MongoCollection extends Collection {
      */
     WriteConcern writeConcern
 
+    /**
+     * The {@link ReadPreference} of the collection, which takes precedence over the read preference of read-only sessions
+     */
+    ReadPreference readPreference
+
+    /**
+     * The {@link ReadConcern} of the collection
+     */
+    ReadConcern readConcern
+
+    /**
+     * The default {@link Collation} of the queries of the collection
+     */
+    Collation collation
+
+    /**
+     * The default number of documents fetched per round trip by the cursors of queries
+     */
+    Integer batchSize
+
+    /**
+     * The default maximum execution time of queries, in milliseconds
+     */
+    Long maxTimeMS
+
+    /**
+     * The default maximum time a tailable cursor waits for new documents, in milliseconds
+     */
+    Long maxAwaitTimeMS
+
+    /**
+     * The default comment attached to queries, which appears in the profiler and the logs of the server
+     */
+    String comment
+
+    /**
+     * Whether queries and aggregations may write temporary data to disk by default
+     */
+    Boolean allowDiskUse
+
+    /**
+     * Whether the cursors of queries are prevented from timing out by default
+     */
+    Boolean noCursorTimeout
+
     private List<Map> compoundIndices = new ArrayList<Map>()
     private List<Index> indices = new ArrayList<Index>()
+    private CacheConfig cacheConfig = new CacheConfig()
 
     @Override
     protected MongoAttribute newProperty() {
@@ -158,6 +212,89 @@ class MongoCollection extends Collection {
         return compoundIndices
     }
 
+    /**
+     * @return The default cursor arguments of queries that are set, keyed by the name of the query argument
+     */
+    Map<String, Object> getQueryArguments() {
+        Map<String, Object> arguments = new LinkedHashMap<String, Object>()
+        if (batchSize != null) arguments.put('batchSize', batchSize)
+        if (maxTimeMS != null) arguments.put('maxTimeMS', maxTimeMS)
+        if (maxAwaitTimeMS != null) arguments.put('maxAwaitTimeMS', maxAwaitTimeMS)
+        if (comment != null) arguments.put('comment', comment)
+        if (allowDiskUse != null) arguments.put('allowDiskUse', allowDiskUse)
+        if (noCursorTimeout != null) arguments.put('noCursorTimeout', noCursorTimeout)
+        if (collation != null) arguments.put('collation', collation)
+        return arguments
+    }
+
+    /**
+     * Sets the read preference of the collection by name, for example {@code secondaryPreferred}
+     *
+     * @param name The name of the read preference
+     * @return This collection
+     */
+    MongoCollection readPreference(String name) {
+        this.readPreference = ReadPreference.valueOf(name)
+        return this
+    }
+
+    /**
+     * Sets the read concern of the collection by level, for example {@code majority}
+     *
+     * @param level The read concern level
+     * @return This collection
+     */
+    MongoCollection readConcern(String level) {
+        this.readConcern = new ReadConcern(ReadConcernLevel.fromString(level))
+        return this
+    }
+
+    /**
+     * Sets the default collation of the queries of the collection. The supported settings are those of the
+     * <a href="https://www.mongodb.com/docs/manual/reference/collation/">collation document</a>, for example
+     * {@code [locale: 'en', strength: 2]}
+     *
+     * @param collation The collation settings
+     * @return This collection
+     */
+    MongoCollection collation(Map collation) {
+        this.collation = toCollation(collation)
+        return this
+    }
+
+    /**
+     * @return The second-level cache configuration for the entity
+     */
+    CacheConfig getCache() {
+        return cacheConfig
+    }
+
+    /**
+     * Enables or disables the second-level cache for the entity using the default cache settings
+     *
+     * @param enabled Whether the cache is enabled
+     * @return This collection
+     */
+    MongoCollection cache(boolean enabled) {
+        cacheConfig.enabled = enabled
+        return this
+    }
+
+    /**
+     * Enables the second-level cache for the entity. The supported settings are {@code maximumSize},
+     * {@code expireAfterWrite} and {@code expireAfterAccess} where the expiry settings are in seconds
+     *
+     * @param config The cache settings
+     * @return This collection
+     */
+    MongoCollection cache(Map config) {
+        cacheConfig.enabled = config.containsKey(CacheConfig.ENABLED) ? Boolean.valueOf(config.get(CacheConfig.ENABLED).toString()) : true
+        cacheConfig.maximumSize = toLong(config.get(CacheConfig.MAXIMUM_SIZE))
+        cacheConfig.expireAfterWrite = toLong(config.get(CacheConfig.EXPIRE_AFTER_WRITE))
+        cacheConfig.expireAfterAccess = toLong(config.get(CacheConfig.EXPIRE_AFTER_ACCESS))
+        return this
+    }
+
     @Override
     Entity property(String name, @DelegatesTo(MongoAttribute.class) Closure propertyConfig) {
         return super.property(name, propertyConfig)
@@ -182,6 +319,92 @@ class MongoCollection extends Collection {
     MongoAttribute property(Map propertyConfig) {
         return (MongoAttribute)super.property(propertyConfig)
     }
+    /**
+     * Creates a {@link Collation} from the settings of a collation document
+     *
+     * @param settings The collation settings
+     * @return The collation
+     */
+    static Collation toCollation(Map settings) {
+        Collation.Builder builder = Collation.builder()
+        for (Map.Entry entry in (Set<Map.Entry>) settings.entrySet()) {
+            String name = entry.key.toString()
+            Object value = entry.value
+            if (value == null) {
+                continue
+            }
+            switch (name) {
+                case 'locale':
+                    builder.locale(value.toString())
+                    break
+                case 'caseLevel':
+                    builder.caseLevel(Boolean.valueOf(value.toString()))
+                    break
+                case 'caseFirst':
+                    builder.collationCaseFirst(CollationCaseFirst.fromString(value.toString()))
+                    break
+                case 'strength':
+                    builder.collationStrength(CollationStrength.fromInt(value instanceof Number ? ((Number) value).intValue() : Integer.valueOf(value.toString())))
+                    break
+                case 'numericOrdering':
+                    builder.numericOrdering(Boolean.valueOf(value.toString()))
+                    break
+                case 'alternate':
+                    builder.collationAlternate(CollationAlternate.fromString(value.toString()))
+                    break
+                case 'maxVariable':
+                    builder.collationMaxVariable(CollationMaxVariable.fromString(value.toString()))
+                    break
+                case 'normalization':
+                    builder.normalization(Boolean.valueOf(value.toString()))
+                    break
+                case 'backwards':
+                    builder.backwards(Boolean.valueOf(value.toString()))
+                    break
+                default:
+                    throw new IllegalArgumentException("Unknown collation setting [$name]")
+            }
+        }
+        return builder.build()
+    }
+
+    private static Long toLong(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).longValue()
+        }
+        return value != null ? Long.valueOf(value.toString()) : null
+    }
+
+    /**
+     * Settings for the second-level cache of an entity
+     */
+    static class CacheConfig {
+        static final String ENABLED = "enabled"
+        static final String MAXIMUM_SIZE = "maximumSize"
+        static final String EXPIRE_AFTER_WRITE = "expireAfterWrite"
+        static final String EXPIRE_AFTER_ACCESS = "expireAfterAccess"
+
+        /**
+         * Whether the entity is cached
+         */
+        boolean enabled = false
+
+        /**
+         * The maximum number of entries to cache
+         */
+        Long maximumSize
+
+        /**
+         * The number of seconds after which an entry expires once written
+         */
+        Long expireAfterWrite
+
+        /**
+         * The number of seconds after which an entry expires once last read
+         */
+        Long expireAfterAccess
+    }
+
     /**
      * Definition of an index
      */
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2024 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.grails.datastore.mapping.mongo.config
+
+import groovy.transform.CompileStatic
+
+/**
+ * The strategy used to send the bulk writes produced when a session is flushed
+ *
+ * @since 9.0
+ */
+@CompileStatic
+enum MongoFlushStrategy {
+
+    /**
+     * One ordered bulk write per collection, sent one after another
+     */
+    ORDERED,
+
+    /**
+     * One unordered bulk write per collection, sent one after another. Writes for a collection remain ordered
+     * if more than one of them targets the same document
+     */
+    UNORDERED,
+
+    /**
+     * Unordered bulk writes as per {@link #UNORDERED} with the writes for each collection sent concurrently
+     */
+    PARALLEL
+}
@@ -73,6 +73,109 @@ interface MongoSettings extends Settings {
 
     String SETTING_STATELESS = "grails.mongodb.stateless"
 
+    /**
+     * Whether the queries executed within a read-only transaction return detached instances, as read-only queries do
+     */
+    String SETTING_DETACH_READ_ONLY_TRANSACTIONS = "grails.mongodb.detachReadOnlyTransactions"
+
     String SETTING_ENGINE = "grails.mongodb.engine"
 
-}
\ No newline at end of file
+    /**
+     * The strategy used to send bulk writes when flushing
+     *
+     * @see MongoFlushStrategy
+     */
+    String SETTING_FLUSH_STRATEGY = "grails.mongodb.flush.strategy"
+
+    /**
+     * The maximum number of collections written to concurrently when using the {@link MongoFlushStrategy#PARALLEL} strategy
+     */
+    String SETTING_FLUSH_CONCURRENCY = "grails.mongodb.flush.concurrency"
+
+    /**
+     * The maximum number of documents written per bulk write when flushing. Writes are sent as soon as a chunk is complete
+     */
+    String SETTING_FLUSH_CHUNK_SIZE = "grails.mongodb.flush.chunkSize"
+
+    /**
+     * The maximum number of query results cached for queries executed with the {@code cache: true} argument
+     */
+    String SETTING_QUERY_CACHE_MAXIMUM_SIZE = "grails.mongodb.queryCache.maximumSize"
+
+    /**
+     * The number of seconds after which cached query results expire
+     */
+    String SETTING_QUERY_CACHE_EXPIRE_AFTER_WRITE = "grails.mongodb.queryCache.expireAfterWrite"
+
+    /**
+     * The number of milliseconds after which a query, aggregation, search or flush bulk write is recorded as slow
+     */
+    String SETTING_PROFILING_SLOW_QUERY_THRESHOLD = "grails.mongodb.profiling.slowQueryThresholdMs"
+
+    /**
+     * The fraction of the slow reads that are explained, between 0 and 1
+     */
+    String SETTING_PROFILING_EXPLAIN_SAMPLE_RATE = "grails.mongodb.profiling.explainSampleRate"
+
+    /**
+     * The maximum number of slow operations kept by the profiler
+     */
+    String SETTING_PROFILING_BUFFER_SIZE = "grails.mongodb.profiling.bufferSize"
+
+    /**
+     * Whether the commands and connection pools of each connection source are instrumented with Micrometer, when it is present
+     */
+    String SETTING_METRICS_ENABLED = "grails.mongodb.metrics.enabled"
+
+    /**
+     * Whether the mapped indexes are created in the background once the datastore is ready, rather than during its initialization
+     */
+    String SETTING_INDEXES_ASYNC = "grails.mongodb.indexes.async"
+
+    /**
+     * The maximum number of collections whose indexes are created concurrently
+     */
+    String SETTING_INDEXES_CONCURRENCY = "grails.mongodb.indexes.concurrency"
+
+    /**
+     * Whether the queries of read-only sessions and transactions are routed with the read preference for read-only queries,
+     * false by default
+     */
+    String SETTING_READ_ROUTING_ENABLED = "grails.mongodb.readRouting.enabled"
+
+    /**
+     * The name of the read preference of read-only queries, such as secondaryPreferred
+     */
+    String SETTING_READ_ROUTING_READ_PREFERENCE = "grails.mongodb.readRouting.readPreference"
+
+    /**
+     * The tag sets of the read preference of read-only queries, as a list of maps of tag names to values
+     */
+    String SETTING_READ_ROUTING_TAG_SETS = "grails.mongodb.readRouting.tagSets"
+
+    /**
+     * Whether the second-level and query caches are invalidated with the change streams of the collections of the entities
+     */
+    String SETTING_CACHE_INVALIDATION_ENABLED = "grails.mongodb.cacheInvalidation.enabled"
+
+    /**
+     * The names of the entities whose collections are watched, all root entities if not set
+     */
+    String SETTING_CACHE_INVALIDATION_ENTITIES = "grails.mongodb.cacheInvalidation.entities"
+
+    /**
+     * The collection the resume tokens of the change streams are persisted to
+     */
+    String SETTING_CACHE_INVALIDATION_RESUME_TOKEN_COLLECTION = "grails.mongodb.cacheInvalidation.resumeTokenCollection"
+
+    /**
+     * The name identifying the resume tokens of this application node, the host name if not set
+     */
+    String SETTING_CACHE_INVALIDATION_NODE_NAME = "grails.mongodb.cacheInvalidation.nodeName"
+
+    /**
+     * The minimum number of seconds between two writes of the resume token of a change stream
+     */
+    String SETTING_CACHE_INVALIDATION_RESUME_TOKEN_INTERVAL = "grails.mongodb.cacheInvalidation.resumeTokenInterval"
+
+}
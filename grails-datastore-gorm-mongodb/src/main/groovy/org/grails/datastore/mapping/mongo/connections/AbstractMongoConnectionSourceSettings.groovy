@@ -1,7 +1,10 @@
 package org.grails.datastore.mapping.mongo.connections
 
 import com.mongodb.ConnectionString
+import com.mongodb.ReadPreference
 import com.mongodb.ServerAddress
+import com.mongodb.Tag
+import com.mongodb.TagSet
 import groovy.transform.AutoClone
 import groovy.transform.CompileStatic
 import groovy.transform.builder.Builder
@@ -10,6 +13,7 @@ import org.bson.codecs.Codec
 import org.bson.codecs.configuration.CodecRegistry
 import org.grails.datastore.mapping.core.connections.ConnectionSourceSettings
 import org.grails.datastore.mapping.mongo.MongoConstants
+import org.grails.datastore.mapping.mongo.config.MongoFlushStrategy
 import org.grails.datastore.mapping.mongo.config.MongoSettings
 
 /**
@@ -51,7 +55,7 @@ abstract class AbstractMongoConnectionSourceSettings extends ConnectionSourceSet
      */
     String password
     /**
-     * The engine to use by default
+     * The engine to use by default, either "codec" or "generated"
      */
     String engine = MongoConstants.CODEC_ENGINE
 
@@ -60,6 +64,11 @@ abstract class AbstractMongoConnectionSourceSettings extends ConnectionSourceSet
      */
     boolean stateless = false
 
+    /**
+     * Whether the queries executed within a read-only transaction return detached instances, as read-only queries do
+     */
+    boolean detachReadOnlyTransactions = false
+
     /**
      * Whether to use the decimal128 type for BigDecimal values
      *
@@ -82,6 +91,36 @@ abstract class AbstractMongoConnectionSourceSettings extends ConnectionSourceSet
      */
     CodecRegistry codecRegistry
 
+    /**
+     * Settings for how pending writes are sent when a session is flushed
+     */
+    FlushSettings flush = new FlushSettings()
+
+    /**
+     * Settings for the cache of queries executed with the {@code cache: true} argument
+     */
+    QueryCacheSettings queryCache = new QueryCacheSettings()
+
+    /**
+     * Settings for recording slow operations
+     */
+    ProfilingSettings profiling = new ProfilingSettings()
+
+    /**
+     * Settings for the creation of the mapped indexes
+     */
+    IndexSettings indexes = new IndexSettings()
+
+    /**
+     * Settings for the routing of read-only queries
+     */
+    ReadRoutingSettings readRouting = new ReadRoutingSettings()
+
+    /**
+     * Settings for the invalidation of caches with change streams
+     */
+    CacheInvalidationSettings cacheInvalidation = new CacheInvalidationSettings()
+
     /**
      * @return Obtain the final URL whether from the connection string or the host/port setting
      */
@@ -115,4 +154,159 @@ abstract class AbstractMongoConnectionSourceSettings extends ConnectionSourceSet
         }
     }
 
+    /**
+     * Settings for flushing sessions
+     */
+    @AutoClone
+    @Builder(builderStrategy = SimpleStrategy, prefix = '')
+    static class FlushSettings {
+
+        /**
+         * The strategy used to send the bulk writes for each collection
+         */
+        MongoFlushStrategy strategy = MongoFlushStrategy.ORDERED
+
+        /**
+         * The maximum number of collections written to concurrently when using {@link MongoFlushStrategy#PARALLEL}
+         */
+        int concurrency = 4
+
+        /**
+         * The maximum number of documents written per bulk write, with writes sent as soon as a chunk is complete.
+         * A value of 0 builds the writes for the whole session before sending them
+         */
+        int chunkSize = 0
+    }
+
+    /**
+     * Settings for the query cache
+     */
+    @AutoClone
+    @Builder(builderStrategy = SimpleStrategy, prefix = '')
+    static class QueryCacheSettings {
+
+        /**
+         * The maximum number of query results to cache
+         */
+        long maximumSize = 1000
+
+        /**
+         * The number of seconds after which cached results expire, if any
+         */
+        Long expireAfterWrite
+    }
+
+    /**
+     * Settings for the slow query profiler
+     */
+    @AutoClone
+    @Builder(builderStrategy = SimpleStrategy, prefix = '')
+    static class ProfilingSettings {
+
+        /**
+         * The number of milliseconds after which an operation is recorded as slow, if any
+         */
+        Long slowQueryThresholdMs
+
+        /**
+         * The fraction of the slow reads that are explained
+         */
+        double explainSampleRate = 1.0d
+
+        /**
+         * The maximum number of slow operations kept
+         */
+        int bufferSize = 100
+    }
+
+    /**
+     * Settings for the index manager
+     */
+    @AutoClone
+    @Builder(builderStrategy = SimpleStrategy, prefix = '')
+    static class IndexSettings {
+
+        /**
+         * Whether indexes are created in the background once the datastore is ready
+         */
+        boolean async = false
+
+        /**
+         * The maximum number of collections indexed concurrently
+         */
+        int concurrency = 4
+    }
+
+    /**
+     * Settings for routing the queries of read-only sessions and transactions
+     */
+    @AutoClone
+    @Builder(builderStrategy = SimpleStrategy, prefix = '')
+    static class ReadRoutingSettings {
+
+        /**
+         * Whether read-only queries are routed. Routing is opt-in, since a secondary may return data older than the writes
+         * of other sessions
+         */
+        boolean enabled = false
+
+        /**
+         * The name of the read preference of read-only queries
+         */
+        String readPreference = 'secondaryPreferred'
+
+        /**
+         * The tag sets of the read preference, in order of preference
+         */
+        List<Map<String, String>> tagSets = []
+
+        /**
+         * @return The read preference of read-only queries or null if they are not routed
+         */
+        ReadPreference toReadPreference() {
+            if (!enabled || readPreference == null || readPreference == ReadPreference.primary().name) {
+                return null
+            }
+            if (tagSets) {
+                List<TagSet> sets = tagSets.collect { Map<String, String> tags ->
+                    new TagSet(tags.collect { String name, String value -> new Tag(name, value) })
+                }
+                return ReadPreference.valueOf(readPreference, sets)
+            }
+            return ReadPreference.valueOf(readPreference)
+        }
+    }
+
+    /**
+     * Settings for invalidating the second-level and query caches with change streams
+     */
+    @AutoClone
+    @Builder(builderStrategy = SimpleStrategy, prefix = '')
+    static class CacheInvalidationSettings {
+
+        /**
+         * Whether caches are invalidated with change streams
+         */
+        boolean enabled = false
+
+        /**
+         * The names of the entities whose collections are watched, all root entities if empty
+         */
+        List<String> entities = []
+
+        /**
+         * The collection the resume tokens are persisted to
+         */
+        String resumeTokenCollection = 'gormResumeTokens'
+
+        /**
+         * The name identifying the resume tokens of this node, the host name if not set
+         */
+        String nodeName
+
+        /**
+         * The minimum number of seconds between two writes of the resume token of a change stream
+         */
+        long resumeTokenInterval = 10
+    }
 }
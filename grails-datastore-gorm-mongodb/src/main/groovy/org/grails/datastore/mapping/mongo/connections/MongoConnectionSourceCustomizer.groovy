@@ -0,0 +1,38 @@
+/*
+ * Copyright 2024 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.grails.datastore.mapping.mongo.connections
+
+import com.mongodb.MongoClientSettings
+import groovy.transform.CompileStatic
+
+/**
+ * Customizes the client settings of each connection source created by a {@link MongoConnectionSourceFactory}, for example to
+ * register command or connection pool listeners
+ *
+ * @since 9.0
+ */
+@CompileStatic
+interface MongoConnectionSourceCustomizer {
+
+    /**
+     * Customizes the client settings of a connection source
+     *
+     * @param connectionSourceName The name of the connection source
+     * @param settings The settings of the connection source
+     * @param builder The builder of the client settings
+     */
+    void customize(String connectionSourceName, MongoConnectionSourceSettings settings, MongoClientSettings.Builder builder)
+}
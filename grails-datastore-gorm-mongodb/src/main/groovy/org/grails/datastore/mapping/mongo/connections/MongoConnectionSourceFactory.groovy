@@ -41,6 +41,17 @@ class MongoConnectionSourceFactory extends AbstractConnectionSourceFactory<Mongo
     @Autowired(required = false)
     List<Codec> codecs = []
 
+    /**
+     * Optional customizers of the client settings of each connection source
+     */
+    @Autowired(required = false)
+    List<MongoConnectionSourceCustomizer> customizers = []
+
+    /**
+     * The clients created by this factory, whose settings are known
+     */
+    private final Set<MongoClient> createdClients = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<MongoClient, Boolean>()))
+
     @Override
     Serializable getConnectionSourcesConfigurationKey() {
         return MongoSettings.SETTING_CONNECTIONS
@@ -68,6 +79,56 @@ class MongoConnectionSourceFactory extends AbstractConnectionSourceFactory<Mongo
 
     @Override
     ConnectionSource<MongoClient, MongoConnectionSourceSettings> create(String name, MongoConnectionSourceSettings settings) {
+        MongoClient client = MongoClients.create(buildCustomizedClientSettings(name, settings))
+        createdClients.add(client)
+        return new DefaultConnectionSource<MongoClient, MongoConnectionSourceSettings>(name, client, settings)
+    }
+
+    /**
+     * Creates a reactive streams client with the same settings and customizers as the client of the given connection source.
+     * The caller is responsible for closing the client
+     *
+     * @param connectionSource The connection source, which must have been created by this factory
+     * @return The reactive streams client
+     * @throws IllegalStateException If the client of the connection source was not created by this factory, in which case its
+     * settings are unknown
+     * @since 9.0
+     */
+    com.mongodb.reactivestreams.client.MongoClient createReactiveClient(ConnectionSource<MongoClient, MongoConnectionSourceSettings> connectionSource) {
+        if (!createdClients.contains(connectionSource.source)) {
+            throw new IllegalStateException("Cannot create a reactive client for connection source [${connectionSource.name}] as its MongoClient was not created from the connection settings. Configure the connection with settings rather than supplying a MongoClient to use the reactive API.")
+        }
+        return com.mongodb.reactivestreams.client.MongoClients.create(buildCustomizedClientSettings(connectionSource.name, connectionSource.settings))
+    }
+
+    /**
+     * Builds the client settings for the given connection source settings and applies the {@link #customizers}
+     *
+     * @param name The name of the connection source
+     * @param settings The connection source settings
+     * @return The client settings
+     * @since 9.0
+     */
+    MongoClientSettings buildCustomizedClientSettings(String name, MongoConnectionSourceSettings settings) {
+        MongoClientSettings clientSettings = buildClientSettings(settings)
+        if (customizers) {
+            MongoClientSettings.Builder builder = MongoClientSettings.builder(clientSettings)
+            for (MongoConnectionSourceCustomizer customizer in customizers) {
+                customizer.customize(name, settings, builder)
+            }
+            clientSettings = builder.build()
+        }
+        return clientSettings
+    }
+
+    /**
+     * Builds the client settings for the given connection source settings
+     *
+     * @param settings The connection source settings
+     * @return The client settings
+     * @since 9.0
+     */
+    static MongoClientSettings buildClientSettings(MongoConnectionSourceSettings settings) {
         MongoClientSettings.Builder builder = settings.options
         if (builder != null) {
             builder = MongoClientSettings.builder(builder.build())
@@ -76,8 +137,7 @@ class MongoConnectionSourceFactory extends AbstractConnectionSourceFactory<Mongo
         }
 
         builder.applyConnectionString(settings.url)
-        MongoClient client = MongoClients.create(builder.build())
-        return new DefaultConnectionSource<MongoClient, MongoConnectionSourceSettings>(name, client, settings)
+        return builder.build()
     }
 
     @Override
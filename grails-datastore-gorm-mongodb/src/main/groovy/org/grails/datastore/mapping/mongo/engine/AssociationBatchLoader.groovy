@@ -0,0 +1,303 @@
+/*
+ * Copyright 2024 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.grails.datastore.mapping.mongo.engine
+
+import com.mongodb.client.MongoCollection
+import groovy.transform.CompileStatic
+import org.bson.Document
+import org.grails.datastore.bson.query.BsonQuery
+import org.grails.datastore.mapping.config.Property
+import org.grails.datastore.mapping.engine.EntityAccess
+import org.grails.datastore.mapping.engine.internal.MappingUtils
+import org.grails.datastore.mapping.model.PersistentEntity
+import org.grails.datastore.mapping.model.types.Association
+import org.grails.datastore.mapping.model.types.OneToOne
+import org.grails.datastore.mapping.model.types.ToOne
+import org.grails.datastore.mapping.mongo.MongoCodecSession
+import org.grails.datastore.mapping.mongo.MongoConstants
+import org.grails.datastore.mapping.mongo.config.MongoAttribute
+import org.grails.datastore.mapping.mongo.query.MongoQuery
+import org.grails.datastore.mapping.reflect.EntityReflector
+
+import jakarta.persistence.FetchType
+
+/**
+ * Collects the foreign keys of associations mapped with {@code fetch: 'batch'} while a batch of query results is decoded
+ * and resolves them with a single query per batch once decoding is complete. One-to-one associations mapped with
+ * {@code fetch: 'batch'} where the foreign key is held by the child are resolved in the same way, using a single aggregation
+ * grouped by the inverse property.
+ *
+ * Associated instances are loaded as the results of a query and cached in the session, unless the loader is created for detached
+ * results, in which case they are loaded with a read-only query
+ *
+ * @since 9.0
+ */
+@CompileStatic
+class AssociationBatchLoader {
+
+    protected static final String CHILD_ID_FIELD = "childId"
+
+    protected final MongoCodecSession session
+    protected final boolean cacheInstances
+    protected final boolean firePostLoadEvents
+    protected final Map<ToOne, Map<Serializable, List<EntityAccess>>> pendingToOnes = new LinkedHashMap<>()
+    protected final Map<ToOne, Map<Serializable, List<EntityAccess>>> pendingInverseToOnes = new LinkedHashMap<>()
+
+    AssociationBatchLoader(MongoCodecSession session) {
+        this(session, true, true)
+    }
+
+    /**
+     * @param session The session
+     * @param cacheInstances Whether the associated instances are cached in the session
+     * @param firePostLoadEvents Whether the post load event is fired for associated instances that are not cached
+     * @since 9.0
+     */
+    AssociationBatchLoader(MongoCodecSession session, boolean cacheInstances, boolean firePostLoadEvents) {
+        this.session = session
+        this.cacheInstances = cacheInstances
+        this.firePostLoadEvents = firePostLoadEvents
+    }
+
+    /**
+     * Registers a to-one association to be resolved once the current batch has been decoded
+     *
+     * @param association The association
+     * @param owner Access to the entity that owns the association
+     * @param associationId The identifier of the associated entity
+     */
+    void addPendingToOne(ToOne association, EntityAccess owner, Serializable associationId) {
+        addPending(pendingToOnes, association, owner, associationId)
+    }
+
+    /**
+     * Registers a one-to-one association where the foreign key is held by the child to be resolved once the current batch has been decoded
+     *
+     * @param association The association
+     * @param owner Access to the entity that owns the association
+     */
+    void addPendingInverseToOne(ToOne association, EntityAccess owner) {
+        addPending(pendingInverseToOnes, association, owner, (Serializable) owner.identifier)
+    }
+
+    /**
+     * @return Whether there are associations waiting to be resolved
+     */
+    boolean hasPending() {
+        return !pendingToOnes.isEmpty() || !pendingInverseToOnes.isEmpty()
+    }
+
+    /**
+     * Resolves all of the pending associations, issuing one query per batch of foreign keys
+     */
+    void load() {
+        for (ToOne association in pendingToOnes.keySet()) {
+            Map<Serializable, List<EntityAccess>> pending = pendingToOnes.get(association)
+            Map<Serializable, Object> loaded = retrieveAll(association.associatedEntity, pending.keySet(), getAssociationBatchSize(association))
+            for (Serializable id in pending.keySet()) {
+                setAssociation(association, pending.get(id), loaded.get(id))
+            }
+        }
+        pendingToOnes.clear()
+
+        for (ToOne association in pendingInverseToOnes.keySet()) {
+            Map<Serializable, List<EntityAccess>> pending = pendingInverseToOnes.get(association)
+            PersistentEntity associatedEntity = association.associatedEntity
+            Map<Serializable, Serializable> childIds = findChildIdentifiers(association, pending.keySet())
+
+            boolean lazy = ((Property) association.mapping.mappedForm)?.fetchStrategy == FetchType.LAZY
+            Map<Serializable, Object> loaded = lazy ? Collections.<Serializable, Object>emptyMap() : retrieveAll(associatedEntity, childIds.values(), getAssociationBatchSize(association))
+            for (Serializable parentId in pending.keySet()) {
+                Serializable childId = childIds.get(parentId)
+                Object value = null
+                if (childId != null) {
+                    value = lazy ? session.proxy(associatedEntity.javaClass, childId) : loaded.get(childId)
+                }
+                setAssociation(association, pending.get(parentId), value)
+            }
+        }
+        pendingInverseToOnes.clear()
+    }
+
+    /**
+     * Resolves the number of results to read ahead for the given entity, taking into account associations
+     * declared by subclasses of the entity
+     *
+     * @param entity The entity
+     * @return The batch size or 0 if the entity has no batch fetched associations
+     */
+    static int getBatchSize(PersistentEntity entity) {
+        int batchSize = getBatchSizeForEntity(entity)
+        for (PersistentEntity child in entity.mappingContext.getChildEntities(entity)) {
+            batchSize = Math.max(batchSize, getBatchSizeForEntity(child))
+        }
+        return batchSize
+    }
+
+    /**
+     * @param association The association
+     * @return Whether the association is mapped with {@code fetch: 'batch'}
+     */
+    static boolean isBatchFetched(Association association) {
+        Object mappedForm = association.mapping?.mappedForm
+        return mappedForm instanceof MongoAttribute && ((MongoAttribute) mappedForm).isBatchFetch()
+    }
+
+    /**
+     * @param association The association
+     * @return Whether the association is a one-to-one mapped with {@code fetch: 'batch'} where the foreign key is held by the
+     * child that can be resolved for a batch of results
+     */
+    static boolean isBatchableInverseToOne(Association association) {
+        if (association instanceof OneToOne && ((ToOne) association).isForeignKeyInChild() && isBatchFetched(association)) {
+            Association inverseSide = association.inverseSide
+            Object mappedForm = inverseSide?.mapping?.mappedForm
+            // DBRef values cannot be grouped on so these continue to be resolved one at a time
+            return inverseSide != null && !(mappedForm instanceof MongoAttribute && ((MongoAttribute) mappedForm).isReference())
+        }
+        return false
+    }
+
+    protected static int getBatchSizeForEntity(PersistentEntity entity) {
+        int batchSize = 0
+        for (Association association in entity.associations) {
+            if ((association instanceof ToOne && isBatchFetched(association)) || isBatchableInverseToOne(association)) {
+                batchSize = Math.max(batchSize, getAssociationBatchSize(association))
+            }
+        }
+        return batchSize
+    }
+
+    protected static int getAssociationBatchSize(Association association) {
+        Object mappedForm = association.mapping?.mappedForm
+        Integer batchSize = mappedForm instanceof MongoAttribute ? ((MongoAttribute) mappedForm).batchSize : null
+        return batchSize != null && batchSize > 0 ? batchSize : MongoAttribute.DEFAULT_BATCH_SIZE
+    }
+
+    /**
+     * Retrieves the entities for the given identifiers, using the session cache where possible and otherwise issuing
+     * one query per batch of identifiers
+     *
+     * @param entity The entity
+     * @param ids The identifiers
+     * @param batchSize The maximum number of identifiers per query
+     * @return The loaded entities keyed by identifier
+     */
+    protected Map<Serializable, Object> retrieveAll(PersistentEntity entity, Collection<Serializable> ids, int batchSize) {
+        Map<Serializable, Object> loaded = [:]
+        Class type = entity.javaClass
+        List<Serializable> toFetch = []
+        for (Serializable id in ids) {
+            Object cached = session.getCachedInstance(type, id)
+            if (cached != null) {
+                loaded.put(id, cached)
+            }
+            else if (!loaded.containsKey(id)) {
+                toFetch.add(id)
+            }
+        }
+
+        if (!toFetch.isEmpty()) {
+            EntityReflector reflector = entity.mappingContext.getEntityReflector(entity)
+            for (List<Serializable> batch in toFetch.unique(false).collate(batchSize)) {
+                for (Object instance in retrieveBatch(entity, batch)) {
+                    if (instance != null) {
+                        loaded.put(reflector.getIdentifier(instance), instance)
+                    }
+                }
+            }
+        }
+        return loaded
+    }
+
+    /**
+     * Retrieves the entities for a batch of identifiers, caching them in the session unless the loader is for detached results
+     *
+     * @param entity The entity
+     * @param ids The identifiers
+     * @return The entities
+     */
+    protected List<Object> retrieveBatch(PersistentEntity entity, List<Serializable> ids) {
+        MongoCodecEntityPersister persister = (MongoCodecEntityPersister) session.getPersister(entity.javaClass)
+        if (cacheInstances) {
+            return persister.retrieveAll(ids)
+        }
+
+        MongoQuery query = new MongoQuery(session, entity)
+        query.in(entity.identity.name, new ArrayList(ids))
+        query.setArguments(Collections.<String, Object>singletonMap(MongoQuery.READ_ONLY_ARGUMENT, Boolean.TRUE))
+        List<Object> instances = (List<Object>) query.list()
+        if (firePostLoadEvents) {
+            for (Object instance in instances) {
+                PersistentEntity instanceEntity = session.mappingContext.getPersistentEntity(instance.getClass().name) ?: entity
+                persister.firePostLoadEvent(instanceEntity, session.createEntityAccess(instanceEntity, instance))
+            }
+        }
+        return instances
+    }
+
+    /**
+     * Finds the identifiers of the children of a one-to-one association where the foreign key is held by the child
+     * using a single aggregation grouped by the inverse property
+     *
+     * @param association The association
+     * @param parentIds The identifiers of the parents
+     * @return The child identifiers keyed by parent identifier
+     */
+    protected Map<Serializable, Serializable> findChildIdentifiers(ToOne association, Collection<Serializable> parentIds) {
+        PersistentEntity associatedEntity = association.associatedEntity
+        Association inverseSide = association.inverseSide
+
+        MongoQuery query = new MongoQuery(session, associatedEntity)
+        query.in(inverseSide.name, new ArrayList(parentIds))
+        Document match = query.getMongoQuery()
+
+        List<Document> pipeline = [
+                new Document(BsonQuery.MATCH_OPERATOR, match),
+                new Document(BsonQuery.GROUP_OPERATOR,
+                        new Document(MongoConstants.MONGO_ID_FIELD, '$' + MappingUtils.getTargetKey(inverseSide))
+                                .append(CHILD_ID_FIELD, new Document('$first', '$' + MongoConstants.MONGO_ID_FIELD))
+                )
+        ]
+
+        Map<Serializable, Serializable> childIds = [:]
+        MongoCollection<Document> collection = session.getCollection(associatedEntity)
+        for (Document result in collection.aggregate(pipeline)) {
+            childIds.put((Serializable) result.get(MongoConstants.MONGO_ID_FIELD), (Serializable) result.get(CHILD_ID_FIELD))
+        }
+        return childIds
+    }
+
+    protected static void addPending(Map<ToOne, Map<Serializable, List<EntityAccess>>> pendingAssociations, ToOne association, EntityAccess owner, Serializable id) {
+        Map<Serializable, List<EntityAccess>> pending = pendingAssociations.get(association)
+        if (pending == null) {
+            pending = new LinkedHashMap<>()
+            pendingAssociations.put(association, pending)
+        }
+        List<EntityAccess> owners = pending.get(id)
+        if (owners == null) {
+            owners = new ArrayList<>(1)
+            pending.put(id, owners)
+        }
+        owners.add(owner)
+    }
+
+    protected void setAssociation(ToOne association, List<EntityAccess> owners, Object value) {
+        for (EntityAccess owner in owners) {
+            owner.setPropertyNoConversion(association.name, value)
+        }
+    }
+}
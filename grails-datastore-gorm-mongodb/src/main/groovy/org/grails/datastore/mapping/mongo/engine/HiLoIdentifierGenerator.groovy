@@ -0,0 +1,144 @@
+/*
+ * Copyright 2024 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.grails.datastore.mapping.mongo.engine
+
+import com.mongodb.client.MongoCollection
+import com.mongodb.client.model.FindOneAndUpdateOptions
+import com.mongodb.client.model.ReturnDocument
+import groovy.transform.CompileStatic
+import org.bson.Document
+import org.grails.datastore.mapping.core.IdentityGenerationException
+import org.grails.datastore.mapping.mongo.MongoConstants
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicReference
+
+/**
+ * Allocates numeric identifiers in blocks for entities mapped with {@code id generator: 'hilo'}. A block of identifiers is
+ * reserved with a single {@code $inc} of the counter document that the sequential generator increments by one, so that both
+ * generators can be used against the same collection. Identifiers are then handed out from the block in memory without locking,
+ * shared by all the sessions of the datastore. Once a block is used up a single thread reserves the next one, while the others
+ * wait for it.
+ *
+ * A block that is not used up before the datastore is closed leaves a gap in the sequence
+ *
+ * @since 9.0
+ */
+@CompileStatic
+class HiLoIdentifierGenerator {
+
+    /**
+     * The field of the counter document holding the last reserved identifier
+     */
+    public static final String NEXT_ID = "next_id"
+
+    private final Map<String, AtomicReference<IdentifierBlock>> blocks = new ConcurrentHashMap<>()
+
+    /**
+     * Obtains the next identifier for a collection
+     *
+     * @param counters The collection holding the counter document
+     * @param collectionName The name of the collection the identifier is generated for
+     * @param blockSize The number of identifiers to reserve at once
+     * @return The identifier
+     */
+    long nextId(MongoCollection<Document> counters, String collectionName, int blockSize) {
+        AtomicReference<IdentifierBlock> current = blocks.get(counters.namespace.fullName)
+        if (current == null) {
+            current = blocks.computeIfAbsent(counters.namespace.fullName, { String key -> new AtomicReference<IdentifierBlock>() })
+        }
+
+        long id = next(current)
+        if (id > -1L) {
+            return id
+        }
+
+        // only one thread refills, so that each used up block costs a single $inc of the counter
+        synchronized (current) {
+            id = next(current)
+            if (id > -1L) {
+                return id
+            }
+            IdentifierBlock reserved = reserve(counters, collectionName, Math.max(blockSize, 1))
+            id = reserved.next()
+            current.set(reserved)
+            return id
+        }
+    }
+
+    /**
+     * Discards the blocks in memory, so that the next identifiers are taken from newly reserved blocks
+     */
+    void clear() {
+        blocks.clear()
+    }
+
+    private static long next(AtomicReference<IdentifierBlock> current) {
+        IdentifierBlock block = current.get()
+        return block != null ? block.next() : -1L
+    }
+
+    /**
+     * Reserves a block of identifiers
+     *
+     * @param counters The collection holding the counter document
+     * @param collectionName The name of the collection the identifiers are generated for
+     * @param blockSize The number of identifiers to reserve
+     * @return The block
+     */
+    protected IdentifierBlock reserve(MongoCollection<Document> counters, String collectionName, int blockSize) {
+        FindOneAndUpdateOptions options = new FindOneAndUpdateOptions().upsert(true).returnDocument(ReturnDocument.AFTER)
+        int attempts = 0
+        while (true) {
+            Document result = counters.findOneAndUpdate(
+                    new Document(MongoConstants.MONGO_ID_FIELD, collectionName),
+                    new Document(MongoConstants.INC_OPERATOR, new Document(NEXT_ID, (long) blockSize)),
+                    options
+            )
+            // as for the sequential generator the result should never be null, but if it is we retry
+            if (result != null) {
+                long hi = ((Number) result.get(NEXT_ID)).longValue()
+                return new IdentifierBlock(hi - blockSize + 1, hi)
+            }
+            attempts++
+            if (attempts > 3) {
+                throw new IdentityGenerationException("Unable to reserve identifiers for collection [" + collectionName + "] using findAndModify after 3 attempts")
+            }
+        }
+    }
+
+    /**
+     * A range of reserved identifiers
+     */
+    protected static class IdentifierBlock {
+        private final AtomicLong next
+        private final long last
+
+        IdentifierBlock(long first, long last) {
+            this.next = new AtomicLong(first)
+            this.last = last
+        }
+
+        /**
+         * @return The next identifier of the block or -1 if the block is used up
+         */
+        long next() {
+            long id = next.getAndIncrement()
+            return id <= last ? id : -1L
+        }
+    }
+}
@@ -23,6 +23,7 @@ import grails.gorm.DetachedCriteria
 import groovy.transform.CompileStatic
 import org.bson.Document
 import org.bson.types.ObjectId
+import org.grails.datastore.mapping.cache.TPCacheAdapter
 import org.grails.datastore.mapping.cache.TPCacheAdapterRepository
 import org.grails.datastore.mapping.config.Property
 import org.grails.datastore.mapping.core.IdentityGenerationException
@@ -43,6 +44,8 @@ import org.grails.datastore.mapping.model.types.*
 import org.grails.datastore.mapping.mongo.MongoCodecSession
 import org.grails.datastore.mapping.mongo.MongoConstants
 import org.grails.datastore.mapping.mongo.MongoDatastore
+import org.grails.datastore.mapping.mongo.cache.CaffeineTPCacheAdapter
+import org.grails.datastore.mapping.mongo.config.MongoAttribute
 import org.grails.datastore.mapping.mongo.query.MongoQuery
 import org.grails.datastore.mapping.proxy.ProxyFactory
 import org.grails.datastore.mapping.query.Query
@@ -70,6 +73,7 @@ class MongoCodecEntityPersister extends ThirdPartyCacheEntityPersister<Object> {
     protected static final String NEXT_ID_SUFFIX = ".$NEXT_ID"
     public static final String INC_OPERATOR = MongoConstants.INC_OPERATOR
     public static final String ASSIGNED_IDENTIFIER_MAPPING = MongoConstants.ASSIGNED_IDENTIFIER_MAPPING
+    public static final String HILO_IDENTIFIER_MAPPING = MongoConstants.HILO_IDENTIFIER_MAPPING
 
 
     protected final MongoCodecSession mongoSession
@@ -131,29 +135,39 @@ class MongoCodecEntityPersister extends ThirdPartyCacheEntityPersister<Object> {
 
     @Override
     protected Object retrieveEntity(PersistentEntity pe, Serializable key) {
-        Object o = getFromTPCache(pe, key)
-        if (o != null) {
-            return o
-        }
-
         if (cancelLoad(pe, null)) {
             return null
-        } else {
+        }
+
+        // entries are held in encoded form so a cache hit is a newly decoded instance that goes through the same events as a read
+        Object o = getFromTPCache(pe, key)
+        if (o == null) {
+            TPCacheAdapter<Object> cacheAdapter = cacheAdapterRepository?.getTPCacheAdapter(pe)
+            long generation = cacheAdapter instanceof CaffeineTPCacheAdapter ? ((CaffeineTPCacheAdapter) cacheAdapter).generation : 0L
             MongoCollection mongoCollection = getMongoCollection(pe)
             Document idQuery = createIdQuery(key)
             o = mongoCollection
-                    .withDocumentClass(persistentEntity.javaClass)
-                    .withCodecRegistry(mongoDatastore.codecRegistry)
                     .find(idQuery, pe.javaClass)
                     .limit(1)
                     .first()
 
-            if (o != null) {
-                if (!cancelLoad(pe, createEntityAccess(pe, o))) {
-                    firePostLoadEvent(pe, createEntityAccess(pe, o))
-                    return o
+            if (o != null && !cancelLoad(pe, createEntityAccess(pe, o))) {
+                if (cacheAdapter instanceof CaffeineTPCacheAdapter) {
+                    // a write flushed while the document was read must not be overwritten by the state read before it
+                    ((CaffeineTPCacheAdapter) cacheAdapter).cacheLoadedEntry(key, o, generation)
                 }
+                else {
+                    updateTPCache(pe, o, key)
+                }
+                firePostLoadEvent(pe, createEntityAccess(pe, o))
+                return o
             }
+            return null
+        }
+
+        if (!cancelLoad(pe, createEntityAccess(pe, o))) {
+            firePostLoadEvent(pe, createEntityAccess(pe, o))
+            return o
         }
         return null
     }
@@ -370,7 +384,14 @@ class MongoCodecEntityPersister extends ThirdPartyCacheEntityPersister<Object> {
     }
 
     protected void updateCaches(PersistentEntity persistentEntity, Object e, Serializable id) {
-        updateTPCache(persistentEntity, e, id)
+        TPCacheAdapter<Object> cacheAdapter = cacheAdapterRepository?.getTPCacheAdapter(persistentEntity)
+        if (cacheAdapter instanceof CaffeineTPCacheAdapter) {
+            // the write has not been flushed yet, the entry is invalidated once it has
+            ((CaffeineTPCacheAdapter) cacheAdapter).evict(id)
+        }
+        else {
+            updateTPCache(persistentEntity, e, id)
+        }
     }
 
     Serializable generateIdentifier(final PersistentEntity persistentEntity) {
@@ -384,6 +405,13 @@ class MongoCodecEntityPersister extends ThirdPartyCacheEntityPersister<Object> {
                     .getDatabase(mongoSession.getDatabase(persistentEntity))
                     .getCollection("${collectionName}${NEXT_ID_SUFFIX}")
 
+            Property identityMapping = persistentEntity.identity.mapping.mappedForm
+            if (HILO_IDENTIFIER_MAPPING.equals(identityMapping?.generator)) {
+                Integer configuredBlockSize = identityMapping instanceof MongoAttribute ? ((MongoAttribute) identityMapping).blockSize : null
+                int blockSize = configuredBlockSize != null ? configuredBlockSize : MongoAttribute.DEFAULT_BLOCK_SIZE
+                return mongoDatastore.hiLoIdentifierGenerator.nextId(dbCollection, collectionName, blockSize)
+            }
+
             int attempts = 0
 
             while (true) {
@@ -518,17 +546,14 @@ class MongoCodecEntityPersister extends ThirdPartyCacheEntityPersister<Object> {
         return persistEntity(pe, obj, false)
     }
 
+    /**
+     * Obtains the collection of an entity, configured with the settings mapped for the entity
+     *
+     * @param pe The entity
+     * @return The collection
+     */
     protected MongoCollection getMongoCollection(PersistentEntity pe) {
-        def database = mongoSession.getDatabase(pe)
-        String collection = getCollectionName(pe)
-
-        MongoClient client = (MongoClient) mongoSession.nativeInterface
-
-        MongoCollection mongoCollection = client
-                .getDatabase(database)
-                .getCollection(collection)
-                .withDocumentClass(pe.javaClass)
-        return mongoCollection
+        return mongoSession.getCollection(pe, pe.javaClass)
     }
 
 
@@ -30,6 +30,7 @@ import com.mongodb.client.model.FindOneAndUpdateOptions;
 import com.mongodb.client.model.ReturnDocument;
 import org.bson.Document;
 import org.bson.types.ObjectId;
+import org.grails.datastore.mapping.config.Property;
 import org.grails.datastore.mapping.core.IdentityGenerationException;
 import org.grails.datastore.mapping.core.SessionImplementor;
 import org.grails.datastore.mapping.core.impl.PendingDeleteAdapter;
@@ -38,7 +39,9 @@ import org.grails.datastore.mapping.engine.internal.MappingUtils;
 import org.grails.datastore.mapping.model.MappingContext;
 import org.grails.datastore.mapping.model.PersistentEntity;
 import org.grails.datastore.mapping.model.types.EmbeddedCollection;
+import org.grails.datastore.mapping.mongo.MongoConstants;
 import org.grails.datastore.mapping.mongo.MongoSession;
+import org.grails.datastore.mapping.mongo.config.MongoAttribute;
 import org.grails.datastore.mapping.mongo.config.MongoMappingContext;
 import org.grails.datastore.mapping.mongo.query.MongoQuery;
 import org.grails.datastore.mapping.query.Query;
@@ -156,6 +159,14 @@ public class MongoEntityPersister extends AbstractMongoObectEntityPersister<Docu
                     .getDatabase(mongoSession.getDatabase(persistentEntity))
                     .getCollection(collectionName + NEXT_ID_SUFFIX);
 
+            final Property identityMapping = persistentEntity.getIdentity().getMapping().getMappedForm();
+            if (identityMapping != null && MongoConstants.HILO_IDENTIFIER_MAPPING.equals(identityMapping.getGenerator())) {
+                final Integer configuredBlockSize = identityMapping instanceof MongoAttribute ? ((MongoAttribute) identityMapping).getBlockSize() : null;
+                final int blockSize = configuredBlockSize != null ? configuredBlockSize : MongoAttribute.DEFAULT_BLOCK_SIZE;
+                final long nextId = mongoSession.getDatastore().getHiLoIdentifierGenerator().nextId(dbCollection, collectionName, blockSize);
+                nativeEntry.put(MONGO_ID_FIELD, nextId);
+                return nextId;
+            }
 
             int attempts = 0;
             while (true) {
@@ -299,11 +310,7 @@ public class MongoEntityPersister extends AbstractMongoObectEntityPersister<Docu
     protected Document retrieveEntry(final PersistentEntity persistentEntity,
                                      String family, final Serializable key) {
         final MongoSession mongoSession = getMongoSession();
-        final MongoCollection<Document> collection =
-                mongoSession
-                        .getNativeInterface()
-                        .getDatabase( mongoSession.getDatabase(persistentEntity))
-                        .getCollection( mongoSession.getCollectionName(persistentEntity ));
+        final MongoCollection<Document> collection = mongoSession.getCollection(persistentEntity);
         return collection.find(createDBObjectWithKey(key)).limit(1).first();
     }
 
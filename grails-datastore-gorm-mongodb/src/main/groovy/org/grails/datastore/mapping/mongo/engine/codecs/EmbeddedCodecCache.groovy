@@ -0,0 +1,137 @@
+/*
+ * Copyright 2024 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.grails.datastore.mapping.mongo.engine.codecs
+
+import groovy.transform.CompileStatic
+import org.bson.codecs.configuration.CodecRegistry
+import org.grails.datastore.bson.codecs.BsonPersistentEntityCodec
+import org.grails.datastore.bson.codecs.EntityCodecPlan
+import org.grails.datastore.bson.codecs.PropertyDecoder
+import org.grails.datastore.bson.codecs.PropertyEncoder
+import org.grails.datastore.bson.codecs.decoders.EmbeddedCollectionDecoder
+import org.grails.datastore.bson.codecs.decoders.EmbeddedDecoder
+import org.grails.datastore.bson.codecs.encoders.EmbeddedCollectionEncoder
+import org.grails.datastore.bson.codecs.encoders.EmbeddedEncoder
+import org.grails.datastore.mapping.model.PersistentEntity
+
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * A datastore scoped cache of the codecs used for embedded entities, and of the {@link EntityCodecPlan} instances of the
+ * codecs created by the datastore. Codecs created by the datastore resolve their embedded properties to the encoders and
+ * decoders of this cache so that a single codec is used for each embedded type rather than one per value.
+ *
+ * The cache is cleared when the mapping context or the codec registry of the datastore changes
+ *
+ * @since 9.0
+ */
+@CompileStatic
+abstract class EmbeddedCodecCache {
+
+    protected final Map<String, PersistentEntityCodec> codecs = new ConcurrentHashMap<>()
+    protected final Map<String, EntityCodecPlan> plans = new ConcurrentHashMap<>()
+
+    final PropertyEncoder embeddedEncoder = new EmbeddedEncoder() {
+        @Override
+        protected BsonPersistentEntityCodec createEmbeddedEntityCodec(CodecRegistry codecRegistry, PersistentEntity associatedEntity) {
+            return getCodec(codecRegistry, associatedEntity)
+        }
+    }
+
+    final PropertyDecoder embeddedDecoder = new EmbeddedDecoder() {
+        @Override
+        protected BsonPersistentEntityCodec createEmbeddedEntityCodec(CodecRegistry codecRegistry, PersistentEntity associatedEntity) {
+            return getCodec(codecRegistry, associatedEntity)
+        }
+    }
+
+    final PropertyEncoder embeddedCollectionEncoder = new EmbeddedCollectionEncoder() {
+        @Override
+        protected BsonPersistentEntityCodec createEmbeddedEntityCodec(CodecRegistry codecRegistry, PersistentEntity associatedEntity) {
+            return getCodec(codecRegistry, associatedEntity)
+        }
+    }
+
+    final PropertyDecoder embeddedCollectionDecoder = new EmbeddedCollectionDecoder() {
+        @Override
+        protected BsonPersistentEntityCodec createEmbeddedEntityCodec(CodecRegistry codecRegistry, PersistentEntity associatedEntity) {
+            return getCodec(codecRegistry, associatedEntity)
+        }
+    }
+
+    /**
+     * Obtains the codec for an embedded entity, creating it on first use
+     *
+     * @param entity The embedded entity
+     * @return The codec
+     */
+    PersistentEntityCodec getCodec(PersistentEntity entity) {
+        PersistentEntityCodec codec = codecs.get(entity.name)
+        if (codec == null) {
+            codec = codecs.computeIfAbsent(entity.name, { String name -> createCodec(entity) })
+        }
+        return codec
+    }
+
+    /**
+     * Obtains the codec for an embedded entity from the given registry. Registries bound to a session provide their own codecs
+     * so that the session is passed on to the properties of the embedded entity
+     *
+     * @param codecRegistry The registry of the codec encoding or decoding the owner of the embedded entity
+     * @param entity The embedded entity
+     * @return The codec
+     */
+    PersistentEntityCodec getCodec(CodecRegistry codecRegistry, PersistentEntity entity) {
+        if (codecRegistry instanceof SessionCodecRegistry) {
+            return ((SessionCodecRegistry) codecRegistry).getEmbeddedCodec(entity)
+        }
+        return getCodec(entity)
+    }
+
+    /**
+     * @param entity The entity
+     * @return The cached plan or null if the plan for the entity has not been created
+     */
+    EntityCodecPlan getCodecPlan(PersistentEntity entity) {
+        EntityCodecPlan plan = plans.get(entity.name)
+        return plan != null && plan.entity.is(entity) ? plan : null
+    }
+
+    /**
+     * Caches a plan
+     *
+     * @param plan The plan
+     */
+    void putCodecPlan(EntityCodecPlan plan) {
+        plans.put(plan.entity.name, plan)
+    }
+
+    /**
+     * Removes all codecs and plans
+     */
+    void clear() {
+        codecs.clear()
+        plans.clear()
+    }
+
+    /**
+     * Creates the codec for an embedded entity
+     *
+     * @param entity The entity
+     * @return The codec
+     */
+    protected abstract PersistentEntityCodec createCodec(PersistentEntity entity)
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2024 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.grails.datastore.mapping.mongo.engine.codecs
+
+import groovy.transform.CompileStatic
+import org.bson.BsonReader
+import org.bson.BsonType
+import org.bson.BsonWriter
+import org.bson.codecs.DecoderContext
+import org.bson.codecs.EncoderContext
+import org.bson.codecs.configuration.CodecRegistry
+import org.grails.datastore.bson.codecs.EntityCodecPlan
+import org.grails.datastore.mapping.engine.EntityAccess
+import org.grails.datastore.mapping.model.PersistentEntity
+import org.grails.datastore.mapping.reflect.FieldEntityAccess
+
+/**
+ * The codec used by the {@code generated} engine. When the plan of an entity is created each simple property is bound to a
+ * {@link GeneratedPropertyCodec} that reads and writes its field with typed calls. Properties the generator does not support
+ * are encoded and decoded by the regular {@link PersistentEntityCodec} encoders and decoders
+ *
+ * @since 9.0
+ */
+@CompileStatic
+class GeneratedEntityCodec extends PersistentEntityCodec {
+
+    GeneratedEntityCodec(CodecRegistry codecRegistry, PersistentEntity entity, boolean stateful = true) {
+        super(codecRegistry, entity, stateful)
+    }
+
+    @Override
+    protected EntityCodecPlan createCodecPlan(PersistentEntity entity) {
+        EntityCodecPlan plan = super.createCodecPlan(entity)
+        EntityCodecPlan.PropertySlot[] slots = plan.slots
+        GeneratedPropertyCodec[] generated = new GeneratedPropertyCodec[slots.length]
+        for (int i = 0; i < slots.length; i++) {
+            generated[i] = GeneratedPropertyCodec.create(slots[i].property)
+        }
+        return new GeneratedCodecPlan(entity, slots, generated)
+    }
+
+    @Override
+    protected void encodeProperties(BsonWriter writer, EntityCodecPlan plan, EntityAccess access, EncoderContext encoderContext) {
+        if (!(plan instanceof GeneratedCodecPlan)) {
+            super.encodeProperties(writer, plan, access, encoderContext)
+            return
+        }
+        EntityCodecPlan.PropertySlot[] slots = plan.slots
+        GeneratedPropertyCodec[] generated = ((GeneratedCodecPlan) plan).generated
+        boolean fieldAccess = access instanceof FieldEntityAccess
+        Object instance = access.entity
+        for (int i = 0; i < slots.length; i++) {
+            GeneratedPropertyCodec propertyCodec = generated[i]
+            if (propertyCodec != null) {
+                propertyCodec.encode(writer, instance)
+            }
+            else {
+                encodeProperty(writer, slots[i], access, instance, fieldAccess, encoderContext)
+            }
+        }
+    }
+
+    @Override
+    protected void decodeProperty(BsonReader bsonReader, BsonType bsonType, EntityCodecPlan plan, EntityCodecPlan.PropertySlot slot, EntityAccess access, boolean fieldAccess, DecoderContext decoderContext) {
+        GeneratedPropertyCodec propertyCodec = plan instanceof GeneratedCodecPlan ? ((GeneratedCodecPlan) plan).generated[slot.index] : null
+        // values stored with another type are converted by the regular decoder
+        if (propertyCodec != null && propertyCodec.bsonType == bsonType) {
+            propertyCodec.decode(bsonReader, access.entity)
+        }
+        else {
+            super.decodeProperty(bsonReader, bsonType, plan, slot, access, fieldAccess, decoderContext)
+        }
+    }
+
+    /**
+     * A plan with the {@link GeneratedPropertyCodec} of each slot, or null where the property is not supported
+     */
+    static class GeneratedCodecPlan extends EntityCodecPlan {
+        final GeneratedPropertyCodec[] generated
+
+        GeneratedCodecPlan(PersistentEntity entity, EntityCodecPlan.PropertySlot[] slots, GeneratedPropertyCodec[] generated) {
+            super(entity, slots)
+            this.generated = generated
+        }
+    }
+}
@@ -0,0 +1,295 @@
+/*
+ * Copyright 2024 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.grails.datastore.mapping.mongo.engine.codecs;
+
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.grails.datastore.mapping.engine.internal.MappingUtils;
+import org.grails.datastore.mapping.model.PersistentProperty;
+import org.grails.datastore.mapping.model.types.Simple;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Date;
+
+/**
+ * Reads and writes a simple property directly against its field with {@link MethodHandle}s and typed
+ * {@link BsonWriter} and {@link BsonReader} calls, without going through the {@link org.grails.datastore.mapping.engine.EntityAccess}
+ * or the {@link org.grails.datastore.bson.codecs.encoders.SimpleEncoder} type lookups.
+ *
+ * Only properties of type {@link String}, {@link Integer}, {@link Long}, {@link Double}, {@link Boolean}, their primitive
+ * equivalents and {@link Date} are supported. {@link #create(PersistentProperty)} returns null for anything else so that the
+ * property is handled by the regular encoders and decoders
+ *
+ * @since 9.0
+ */
+public abstract class GeneratedPropertyCodec {
+
+    protected final String targetKey;
+    protected final MethodHandle getter;
+    protected final MethodHandle setter;
+
+    protected GeneratedPropertyCodec(String targetKey, MethodHandle getter, MethodHandle setter) {
+        this.targetKey = targetKey;
+        this.getter = getter;
+        this.setter = setter;
+    }
+
+    /**
+     * Creates a codec for the given property
+     *
+     * @param property The property
+     * @return The codec or null if the property is not supported
+     */
+    public static GeneratedPropertyCodec create(PersistentProperty property) {
+        if (!(property instanceof Simple)) {
+            return null;
+        }
+        Class<?> type = property.getType();
+        Class<?> boxedType = box(type);
+        if (boxedType == null) {
+            return null;
+        }
+        Field field = findField(property.getOwner().getJavaClass(), property.getName(), type);
+        if (field == null) {
+            return null;
+        }
+
+        MethodHandle getter;
+        MethodHandle setter;
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(field.getDeclaringClass(), MethodHandles.lookup());
+            getter = lookup.unreflectGetter(field).asType(MethodType.methodType(boxedType, Object.class));
+            setter = lookup.unreflectSetter(field).asType(MethodType.methodType(void.class, Object.class, boxedType));
+        } catch (IllegalAccessException | IllegalArgumentException e) {
+            return null;
+        }
+
+        String targetKey = MappingUtils.getTargetKey(property);
+        if (boxedType == String.class) {
+            return new StringPropertyCodec(targetKey, getter, setter);
+        } else if (boxedType == Integer.class) {
+            return new IntegerPropertyCodec(targetKey, getter, setter);
+        } else if (boxedType == Long.class) {
+            return new LongPropertyCodec(targetKey, getter, setter);
+        } else if (boxedType == Double.class) {
+            return new DoublePropertyCodec(targetKey, getter, setter);
+        } else if (boxedType == Boolean.class) {
+            return new BooleanPropertyCodec(targetKey, getter, setter);
+        } else {
+            return new DatePropertyCodec(targetKey, getter, setter);
+        }
+    }
+
+    /**
+     * @return The BSON type read by {@link #decode(BsonReader, Object)}. Values of any other type are left to the regular decoder
+     */
+    public abstract BsonType getBsonType();
+
+    /**
+     * Writes the name and value of the property if the value is not null
+     *
+     * @param writer The writer
+     * @param instance The entity
+     */
+    public abstract void encode(BsonWriter writer, Object instance) throws Throwable;
+
+    /**
+     * Reads a value of {@link #getBsonType()} into the property
+     *
+     * @param reader The reader, positioned at the value
+     * @param instance The entity
+     */
+    public abstract void decode(BsonReader reader, Object instance) throws Throwable;
+
+    private static Class<?> box(Class<?> type) {
+        if (type == String.class || type == Integer.class || type == Long.class || type == Double.class || type == Boolean.class || type == Date.class) {
+            return type;
+        } else if (type == int.class) {
+            return Integer.class;
+        } else if (type == long.class) {
+            return Long.class;
+        } else if (type == double.class) {
+            return Double.class;
+        } else if (type == boolean.class) {
+            return Boolean.class;
+        }
+        return null;
+    }
+
+    private static Field findField(Class<?> type, String name, Class<?> fieldType) {
+        for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+            try {
+                Field field = current.getDeclaredField(name);
+                if (field.getType() == fieldType && !Modifier.isStatic(field.getModifiers()) && !Modifier.isFinal(field.getModifiers())) {
+                    return field;
+                }
+                return null;
+            } catch (NoSuchFieldException e) {
+                // continue with the superclass
+            }
+        }
+        return null;
+    }
+
+    static class StringPropertyCodec extends GeneratedPropertyCodec {
+        StringPropertyCodec(String targetKey, MethodHandle getter, MethodHandle setter) {
+            super(targetKey, getter, setter);
+        }
+
+        @Override
+        public BsonType getBsonType() {
+            return BsonType.STRING;
+        }
+
+        @Override
+        public void encode(BsonWriter writer, Object instance) throws Throwable {
+            String value = (String) getter.invokeExact(instance);
+            if (value != null) {
+                writer.writeString(targetKey, value);
+            }
+        }
+
+        @Override
+        public void decode(BsonReader reader, Object instance) throws Throwable {
+            setter.invokeExact(instance, reader.readString());
+        }
+    }
+
+    static class IntegerPropertyCodec extends GeneratedPropertyCodec {
+        IntegerPropertyCodec(String targetKey, MethodHandle getter, MethodHandle setter) {
+            super(targetKey, getter, setter);
+        }
+
+        @Override
+        public BsonType getBsonType() {
+            return BsonType.INT32;
+        }
+
+        @Override
+        public void encode(BsonWriter writer, Object instance) throws Throwable {
+            Integer value = (Integer) getter.invokeExact(instance);
+            if (value != null) {
+                writer.writeInt32(targetKey, value);
+            }
+        }
+
+        @Override
+        public void decode(BsonReader reader, Object instance) throws Throwable {
+            setter.invokeExact(instance, Integer.valueOf(reader.readInt32()));
+        }
+    }
+
+    static class LongPropertyCodec extends GeneratedPropertyCodec {
+        LongPropertyCodec(String targetKey, MethodHandle getter, MethodHandle setter) {
+            super(targetKey, getter, setter);
+        }
+
+        @Override
+        public BsonType getBsonType() {
+            return BsonType.INT64;
+        }
+
+        @Override
+        public void encode(BsonWriter writer, Object instance) throws Throwable {
+            Long value = (Long) getter.invokeExact(instance);
+            if (value != null) {
+                writer.writeInt64(targetKey, value);
+            }
+        }
+
+        @Override
+        public void decode(BsonReader reader, Object instance) throws Throwable {
+            setter.invokeExact(instance, Long.valueOf(reader.readInt64()));
+        }
+    }
+
+    static class DoublePropertyCodec extends GeneratedPropertyCodec {
+        DoublePropertyCodec(String targetKey, MethodHandle getter, MethodHandle setter) {
+            super(targetKey, getter, setter);
+        }
+
+        @Override
+        public BsonType getBsonType() {
+            return BsonType.DOUBLE;
+        }
+
+        @Override
+        public void encode(BsonWriter writer, Object instance) throws Throwable {
+            Double value = (Double) getter.invokeExact(instance);
+            if (value != null) {
+                writer.writeDouble(targetKey, value);
+            }
+        }
+
+        @Override
+        public void decode(BsonReader reader, Object instance) throws Throwable {
+            setter.invokeExact(instance, Double.valueOf(reader.readDouble()));
+        }
+    }
+
+    static class BooleanPropertyCodec extends GeneratedPropertyCodec {
+        BooleanPropertyCodec(String targetKey, MethodHandle getter, MethodHandle setter) {
+            super(targetKey, getter, setter);
+        }
+
+        @Override
+        public BsonType getBsonType() {
+            return BsonType.BOOLEAN;
+        }
+
+        @Override
+        public void encode(BsonWriter writer, Object instance) throws Throwable {
+            Boolean value = (Boolean) getter.invokeExact(instance);
+            if (value != null) {
+                writer.writeBoolean(targetKey, value);
+            }
+        }
+
+        @Override
+        public void decode(BsonReader reader, Object instance) throws Throwable {
+            setter.invokeExact(instance, Boolean.valueOf(reader.readBoolean()));
+        }
+    }
+
+    static class DatePropertyCodec extends GeneratedPropertyCodec {
+        DatePropertyCodec(String targetKey, MethodHandle getter, MethodHandle setter) {
+            super(targetKey, getter, setter);
+        }
+
+        @Override
+        public BsonType getBsonType() {
+            return BsonType.DATE_TIME;
+        }
+
+        @Override
+        public void encode(BsonWriter writer, Object instance) throws Throwable {
+            Date value = (Date) getter.invokeExact(instance);
+            if (value != null) {
+                writer.writeDateTime(targetKey, value.getTime());
+            }
+        }
+
+        @Override
+        public void decode(BsonReader reader, Object instance) throws Throwable {
+            setter.invokeExact(instance, new Date(reader.readDateTime()));
+        }
+    }
+}
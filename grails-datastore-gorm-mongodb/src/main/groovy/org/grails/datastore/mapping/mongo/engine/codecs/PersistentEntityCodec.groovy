@@ -25,6 +25,7 @@ import org.bson.codecs.configuration.CodecRegistry
 import org.bson.conversions.Bson
 import org.bson.types.ObjectId
 import org.grails.datastore.bson.codecs.BsonPersistentEntityCodec
+import org.grails.datastore.bson.codecs.EntityCodecPlan
 import org.grails.datastore.bson.codecs.PropertyDecoder
 import org.grails.datastore.bson.codecs.PropertyEncoder
 import org.grails.datastore.bson.codecs.decoders.EmbeddedCollectionDecoder
@@ -56,6 +57,7 @@ import org.grails.datastore.mapping.mongo.MongoCodecSession
 import org.grails.datastore.mapping.mongo.MongoConstants
 import org.grails.datastore.mapping.mongo.MongoDatastore
 import org.grails.datastore.mapping.mongo.config.MongoAttribute
+import org.grails.datastore.mapping.mongo.engine.AssociationBatchLoader
 import org.grails.datastore.mapping.mongo.engine.MongoCodecEntityPersister
 import org.grails.datastore.mapping.query.Query
 import org.grails.datastore.mapping.reflect.FieldEntityAccess
@@ -122,10 +124,92 @@ class PersistentEntityCodec extends BsonPersistentEntityCodec {
         registerDecoder(ManyToMany, new OneToManyDecoder())
     }
 
+    /**
+     * The cache of embedded codecs and plans of the datastore that created this codec, if any
+     */
+    EmbeddedCodecCache embeddedCodecCache
+
     PersistentEntityCodec(CodecRegistry codecRegistry, PersistentEntity entity, boolean stateful = true) {
         super(codecRegistry, entity, stateful)
     }
 
+    @Override
+    EntityCodecPlan getCodecPlan(PersistentEntity entity) {
+        EmbeddedCodecCache cache = embeddedCodecCache
+        if (cache == null) {
+            return super.getCodecPlan(entity)
+        }
+        EntityCodecPlan plan = cache.getCodecPlan(entity)
+        if (plan == null) {
+            plan = createCodecPlan(entity)
+            cache.putCodecPlan(plan)
+        }
+        return plan
+    }
+
+    @Override
+    protected <T extends PersistentProperty> PropertyEncoder<T> getPropertyEncoder(Class<T> type) {
+        EmbeddedCodecCache cache = embeddedCodecCache
+        if (cache != null) {
+            if (type == Embedded) {
+                return (PropertyEncoder<T>) cache.embeddedEncoder
+            }
+            else if (type == EmbeddedCollection) {
+                return (PropertyEncoder<T>) cache.embeddedCollectionEncoder
+            }
+        }
+        return super.getPropertyEncoder(type)
+    }
+
+    @Override
+    protected <T extends PersistentProperty> PropertyDecoder<T> getPropertyDecoder(Class<T> type) {
+        EmbeddedCodecCache cache = embeddedCodecCache
+        if (cache != null) {
+            if (type == Embedded) {
+                return (PropertyDecoder<T>) cache.embeddedDecoder
+            }
+            else if (type == EmbeddedCollection) {
+                return (PropertyDecoder<T>) cache.embeddedCollectionDecoder
+            }
+        }
+        return super.getPropertyDecoder(type)
+    }
+
+    /**
+     * Obtains the codec used to encode values of an embedded association
+     *
+     * @param entity The associated entity
+     * @return The codec
+     */
+    protected PersistentEntityCodec getEmbeddedEntityCodec(PersistentEntity entity) {
+        if (codecRegistry instanceof SessionCodecRegistry) {
+            return ((SessionCodecRegistry) codecRegistry).getEmbeddedCodec(entity)
+        }
+        EmbeddedCodecCache cache = embeddedCodecCache
+        return cache != null ? cache.getCodec(entity) : (PersistentEntityCodec) codecRegistry.get(entity.javaClass)
+    }
+
+    /**
+     * @return The session this codec is bound to, or null if the codec was not obtained from a {@link SessionCodecRegistry}
+     */
+    protected MongoCodecSession getBoundSession() {
+        return codecRegistry instanceof SessionCodecRegistry ? ((SessionCodecRegistry) codecRegistry).session : null
+    }
+
+    /**
+     * Resolves the session used by property encoders and decoders. The session carried by a {@link SessionCodecRegistry} is
+     * used if there is one, otherwise the session bound to the current thread
+     *
+     * @param codecRegistry The registry passed to the encoder or decoder
+     * @return The session or null if there is none
+     */
+    static Session resolveSession(CodecRegistry codecRegistry) {
+        if (codecRegistry instanceof SessionCodecRegistry) {
+            return ((SessionCodecRegistry) codecRegistry).session
+        }
+        return AbstractDatastore.retrieveSession(MongoDatastore)
+    }
+
     @Override
     protected boolean isIdentifierProperty(String name) {
         return MongoConstants.MONGO_ID_FIELD == name
@@ -133,6 +217,11 @@ class PersistentEntityCodec extends BsonPersistentEntityCodec {
 
     @Override
     protected void readingComplete(EntityAccess access) {
+        MongoCodecSession boundSession = getBoundSession()
+        if(boundSession != null) {
+            decodeAssociations(boundSession, access)
+            return
+        }
         Closure callback = { Session session ->
             decodeAssociations(session, access)
         }
@@ -146,6 +235,10 @@ class PersistentEntityCodec extends BsonPersistentEntityCodec {
 
     @Override
     protected Object retrieveCachedInstance(EntityAccess access) {
+        MongoCodecSession boundSession = getBoundSession()
+        if(boundSession != null) {
+            return boundSession.contains(access.entity) ? boundSession.retrieve(access.persistentEntity.javaClass, (Serializable) access.identifier) : null
+        }
         Closure callback = { Session session ->
             Object cachedInstance = null
             if (session?.contains(access.entity)) {
@@ -171,6 +264,12 @@ class PersistentEntityCodec extends BsonPersistentEntityCodec {
                     }
                 } else if (association instanceof OneToOne) {
                     if (((ToOne) association).isForeignKeyInChild()) {
+                        AssociationBatchLoader batchLoader = mongoSession instanceof MongoCodecSession ? ((MongoCodecSession) mongoSession).associationBatchLoader : null
+                        if (batchLoader != null && access.identifier != null && AssociationBatchLoader.isBatchableInverseToOne(association)) {
+                            // resolved for the whole batch of results with a single aggregation once the batch is decoded
+                            batchLoader.addPendingInverseToOne((ToOne) association, access)
+                            continue
+                        }
                         def associatedClass = association.associatedEntity.javaClass
                         Query query = mongoSession.createQuery(associatedClass)
                         query.eq(association.inverseSide.name, access.identifier)
@@ -277,8 +376,7 @@ class PersistentEntityCodec extends BsonPersistentEntityCodec {
                 }
             }
             else {
-
-                GormEnhancer.findStaticApi(entity.javaClass).withSession { Session mongoSession ->
+                Closure encodeSchemaless = { Session mongoSession ->
                     if(mongoSession != null) {
                         Document schemaless = (Document)mongoSession.getAttribute(value, SCHEMALESS_ATTRIBUTES)
                         if(schemaless != null) {
@@ -296,7 +394,13 @@ class PersistentEntityCodec extends BsonPersistentEntityCodec {
                         }
                     }
                 }
-
+                MongoCodecSession boundSession = getBoundSession()
+                if(boundSession != null) {
+                    encodeSchemaless(boundSession)
+                }
+                else {
+                    GormEnhancer.findStaticApi(entity.javaClass).withSession encodeSchemaless
+                }
             }
 
             for(association in entity.associations) {
@@ -389,7 +493,7 @@ class PersistentEntityCodec extends BsonPersistentEntityCodec {
                 // set so we overwrite existing
                 def associatedEntity = association.associatedEntity
                 def rootClass = associatedEntity.javaClass
-                PersistentEntityCodec entityCodec =  (PersistentEntityCodec)codecRegistry.get(rootClass)
+                PersistentEntityCodec entityCodec = getEmbeddedEntityCodec(associatedEntity)
                 def inverseProperty = association.inverseSide
                 List<BsonValue> documents =[]
                 for(o in v) {
@@ -407,7 +511,7 @@ class PersistentEntityCodec extends BsonPersistentEntityCodec {
                         if(entity == null) {
                             throw new DatastoreException("Value [$o] is not a valid type for association [$association]" )
                         }
-                        codec = (PersistentEntityCodec)codecRegistry.get(cls)
+                        codec = getEmbeddedEntityCodec(entity)
                     }
                     def ea = createEntityAccess(entity, o)
                     if(inverseProperty != null) {
@@ -458,7 +562,7 @@ class PersistentEntityCodec extends BsonPersistentEntityCodec {
     static class OneToManyDecoder implements PropertyDecoder<Association> {
         @Override
         void decode(BsonReader reader, Association property, EntityAccess entityAccess, DecoderContext decoderContext, CodecRegistry codecRegistry) {
-            def session = AbstractDatastore.retrieveSession(MongoDatastore)
+            def session = resolveSession(codecRegistry)
             if(property.isBidirectional() && !(property instanceof ManyToMany)) {
 
                 initializePersistentCollection(session, entityAccess, property)
@@ -533,7 +637,7 @@ class PersistentEntityCodec extends BsonPersistentEntityCodec {
         @Override
         void encode(BsonWriter writer, Association property, Object value, EntityAccess parentAccess, EncoderContext encoderContext, CodecRegistry codecRegistry) {
             boolean shouldEncodeIds = !property.isBidirectional() || (property instanceof ManyToMany)
-            MongoCodecSession mongoSession = (MongoCodecSession)AbstractDatastore.retrieveSession(MongoDatastore)
+            MongoCodecSession mongoSession = (MongoCodecSession)resolveSession(codecRegistry)
             if(shouldEncodeIds) {
                 // if it is unidirectional we encode the values inside the current
                 // document, otherwise nothing to do, encoding foreign key stored in inverse side
@@ -605,7 +709,7 @@ class PersistentEntityCodec extends BsonPersistentEntityCodec {
                         if(attr?.isReference()) {
                             def identityEncoder = codecRegistry.get(DBRef)
 
-                            MongoCodecSession mongoSession = (MongoCodecSession)AbstractDatastore.retrieveSession(MongoDatastore)
+                            MongoCodecSession mongoSession = (MongoCodecSession)resolveSession(codecRegistry)
                             def ref = new DBRef(mongoSession.getCollectionName( associatedEntity),associationId)
                             identityEncoder.encode writer, ref, encoderContext
                         }
@@ -626,7 +730,7 @@ class PersistentEntityCodec extends BsonPersistentEntityCodec {
 
         @Override
         void decode(BsonReader bsonReader, ToOne property, EntityAccess entityAccess, DecoderContext decoderContext, CodecRegistry codecRegistry) {
-            MongoCodecSession mongoSession = (MongoCodecSession)AbstractDatastore.retrieveSession(MongoDatastore)
+            MongoCodecSession mongoSession = (MongoCodecSession)resolveSession(codecRegistry)
             MongoAttribute attr = (MongoAttribute)property.mapping.mappedForm
             boolean isLazy = isLazyAssociation(attr)
             def associatedEntity = property.associatedEntity
@@ -659,7 +763,12 @@ class PersistentEntityCodec extends BsonPersistentEntityCodec {
             }
 
 
-            if(isLazy) {
+            AssociationBatchLoader batchLoader = mongoSession.associationBatchLoader
+            if(batchLoader != null && attr?.isBatchFetch()) {
+                // resolved together with the rest of the batch once the current batch of results is decoded
+                batchLoader.addPendingToOne(property, entityAccess, associationId)
+            }
+            else if(isLazy) {
                 entityAccess.setPropertyNoConversion(
                         property.name,
                         mongoSession.proxy(associatedEntity.javaClass, associationId )
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2024 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.grails.datastore.mapping.mongo.engine.codecs
+
+import groovy.transform.CompileStatic
+import org.bson.codecs.Codec
+import org.bson.codecs.configuration.CodecRegistry
+import org.grails.datastore.mapping.model.PersistentEntity
+import org.grails.datastore.mapping.mongo.MongoCodecSession
+
+import java.lang.reflect.Type
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * A {@link CodecRegistry} that carries a {@link MongoCodecSession}. The {@link PersistentEntityCodec} instances obtained from it
+ * are created for the session and hand the session to their property encoders and decoders through the registry, so that
+ * encoding and decoding does not depend on the session bound to the current thread. Codecs bound to a session can therefore be
+ * used from any thread, such as the threads of a parallel flush or of the reactive streams driver.
+ *
+ * Codecs for other types are obtained from the registry of the datastore
+ *
+ * @since 9.0
+ */
+@CompileStatic
+class SessionCodecRegistry implements CodecRegistry {
+
+    /**
+     * The session the codecs are bound to
+     */
+    final MongoCodecSession session
+
+    /**
+     * The registry of the datastore that other codecs are obtained from
+     */
+    final CodecRegistry codecRegistry
+
+    private final Map<String, PersistentEntityCodec> codecs = new ConcurrentHashMap<>()
+    private final Map<String, PersistentEntityCodec> embeddedCodecs = new ConcurrentHashMap<>()
+
+    SessionCodecRegistry(MongoCodecSession session, CodecRegistry codecRegistry) {
+        this.session = session
+        this.codecRegistry = codecRegistry
+    }
+
+    @Override
+    def <T> Codec<T> get(Class<T> clazz) {
+        return bind(clazz, codecRegistry.get(clazz))
+    }
+
+    @Override
+    def <T> Codec<T> get(Class<T> clazz, List<Type> typeArguments) {
+        return bind(clazz, codecRegistry.get(clazz, typeArguments))
+    }
+
+    @Override
+    def <T> Codec<T> get(Class<T> clazz, CodecRegistry registry) {
+        return bind(clazz, codecRegistry.get(clazz, registry))
+    }
+
+    /**
+     * Obtains the codec of an entity bound to the session
+     *
+     * @param entity The entity
+     * @return The codec
+     */
+    PersistentEntityCodec getEntityCodec(PersistentEntity entity) {
+        PersistentEntityCodec codec = codecs.get(entity.name)
+        if (codec == null) {
+            codec = codecs.computeIfAbsent(entity.name, { String name -> session.datastore.createPersistentEntityCodec(entity, this) })
+        }
+        return codec
+    }
+
+    /**
+     * Obtains the codec of an embedded entity bound to the session
+     *
+     * @param entity The embedded entity
+     * @return The codec
+     */
+    PersistentEntityCodec getEmbeddedCodec(PersistentEntity entity) {
+        PersistentEntityCodec codec = embeddedCodecs.get(entity.name)
+        if (codec == null) {
+            codec = embeddedCodecs.computeIfAbsent(entity.name, { String name -> session.datastore.createPersistentEntityCodec(entity, this) })
+        }
+        return codec
+    }
+
+    private <T> Codec<T> bind(Class<T> clazz, Codec<T> codec) {
+        if (codec instanceof PersistentEntityCodec) {
+            PersistentEntity entity = session.mappingContext.getPersistentEntity(clazz.name)
+            if (entity != null) {
+                return (Codec<T>) getEntityCodec(entity)
+            }
+        }
+        return codec
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2024 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.grails.datastore.mapping.mongo.indexes
+
+import com.mongodb.MongoNamespace
+import com.mongodb.client.MongoCollection
+import com.mongodb.client.model.IndexModel
+import groovy.transform.CompileStatic
+import groovy.util.logging.Slf4j
+import org.bson.BsonDocument
+import org.bson.BsonValue
+import org.bson.Document
+import org.bson.conversions.Bson
+import org.grails.datastore.mapping.model.PersistentEntity
+import org.grails.datastore.mapping.mongo.MongoDatastore
+
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletionException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.ThreadFactory
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Creates the indexes mapped for the entities of a datastore. The existing indexes of each collection are read once with
+ * {@code listIndexes} and compared by their keys with the mapped indexes, so that only the missing indexes are created, with a
+ * single {@code createIndexes} command per collection. Collections are processed in parallel and, when the manager is
+ * asynchronous, in the background once the datastore is ready
+ *
+ * @since 9.0
+ */
+@CompileStatic
+@Slf4j
+class MongoIndexManager {
+
+    private static final String TEXT_INDEX_KEY = '$text'
+
+    protected final MongoDatastore datastore
+
+    /**
+     * The maximum number of collections indexed concurrently
+     */
+    final int concurrency
+
+    /**
+     * Whether indexes are created in the background rather than before the datastore is ready
+     */
+    final boolean async
+
+    /**
+     * @param datastore The datastore
+     * @param concurrency The maximum number of collections indexed concurrently
+     * @param async Whether indexes are created in the background
+     */
+    MongoIndexManager(MongoDatastore datastore, int concurrency, boolean async) {
+        this.datastore = datastore
+        this.concurrency = Math.max(1, concurrency)
+        this.async = async
+    }
+
+    /**
+     * Creates the missing indexes of the given entities. Unless the manager is asynchronous the indexes have been created once
+     * this method returns and any failure is thrown, otherwise failures are logged
+     *
+     * @param entities The entities
+     * @return A future completed once the indexes of every collection have been created
+     */
+    CompletableFuture<Void> ensureIndexes(Collection<PersistentEntity> entities) {
+        Map<MongoNamespace, CollectionIndexes> collections = new LinkedHashMap<>()
+        for (PersistentEntity entity in entities) {
+            List<IndexModel> indexes = datastore.getIndexModels(entity)
+            if (indexes.isEmpty()) {
+                continue
+            }
+            MongoCollection<Document> collection = datastore.getCollection(entity)
+            CollectionIndexes collectionIndexes = collections.get(collection.namespace)
+            if (collectionIndexes == null) {
+                collectionIndexes = new CollectionIndexes(collection)
+                collections.put(collection.namespace, collectionIndexes)
+            }
+            collectionIndexes.indexes.addAll(indexes)
+        }
+        if (collections.isEmpty()) {
+            return CompletableFuture.<Void>completedFuture(null)
+        }
+        if (collections.size() == 1 && !async) {
+            createMissingIndexes(collections.values().first())
+            return CompletableFuture.<Void>completedFuture(null)
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(concurrency, collections.size()), new IndexThreadFactory())
+        List<CompletableFuture<Void>> futures = collections.values().collect { CollectionIndexes collectionIndexes ->
+            CompletableFuture.runAsync({ -> createMissingIndexes(collectionIndexes) } as Runnable, executor)
+        }
+        CompletableFuture<Void> all = CompletableFuture.allOf(futures as CompletableFuture[])
+        all.whenComplete { Void result, Throwable error -> executor.shutdown() }
+
+        if (async) {
+            all.exceptionally { Throwable error ->
+                log.error("Error creating indexes: ${error.message}", error)
+                return null
+            }
+            return all
+        }
+        try {
+            all.join()
+        } catch (CompletionException e) {
+            throw e.cause instanceof RuntimeException ? (RuntimeException) e.cause : e
+        }
+        return all
+    }
+
+    /**
+     * Obtains the indexes that do not exist in a collection, by comparing the keys of the given indexes with the keys of the
+     * existing indexes. Indexes with the same keys but different options are not recreated
+     *
+     * @param collection The collection
+     * @param indexes The mapped indexes
+     * @return The missing indexes
+     */
+    List<IndexModel> getMissingIndexes(MongoCollection<Document> collection, List<IndexModel> indexes) {
+        Set<List<String>> existingKeys = new HashSet<>()
+        for (Document index in collection.listIndexes()) {
+            Object key = index.get('key')
+            if (key instanceof Bson) {
+                existingKeys.add(normalizeKeys(((Bson) key).toBsonDocument(BsonDocument, collection.codecRegistry)))
+            }
+        }
+        List<IndexModel> missing = []
+        for (IndexModel index in indexes) {
+            // adding the keys also skips indexes mapped more than once, for entities of the same hierarchy
+            if (existingKeys.add(normalizeKeys(index.keys.toBsonDocument(BsonDocument, collection.codecRegistry)))) {
+                missing.add(index)
+            }
+        }
+        return missing
+    }
+
+    protected void createMissingIndexes(CollectionIndexes collectionIndexes) {
+        MongoCollection<Document> collection = collectionIndexes.collection
+        List<IndexModel> missing = getMissingIndexes(collection, collectionIndexes.indexes)
+        if (!missing.isEmpty()) {
+            collection.createIndexes(missing)
+            if (log.isDebugEnabled()) {
+                log.debug("Created ${missing.size()} indexes for collection [${collection.namespace}]")
+            }
+        }
+    }
+
+    /**
+     * Normalizes the keys of an index so that equivalent keys compare equal: the order of the fields is kept, directions are
+     * reduced to their sign and text indexes, which are stored with internal keys, are compared as a whole
+     */
+    protected static List<String> normalizeKeys(BsonDocument keys) {
+        List<String> normalized = []
+        for (Map.Entry<String, BsonValue> entry in keys.entrySet()) {
+            BsonValue value = entry.value
+            if (entry.key == '_fts' || (value.isString() && value.asString().value == 'text')) {
+                return [TEXT_INDEX_KEY]
+            }
+            String type = value.isNumber() ? (value.asNumber().doubleValue() < 0 ? '-1' : '1') : (value.isString() ? value.asString().value : value.toString())
+            normalized.add("${entry.key}:${type}".toString())
+        }
+        return normalized
+    }
+
+    protected static class CollectionIndexes {
+        final MongoCollection<Document> collection
+        final List<IndexModel> indexes = []
+
+        CollectionIndexes(MongoCollection<Document> collection) {
+            this.collection = collection
+        }
+    }
+
+    private static class IndexThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadCount = new AtomicInteger()
+
+        @Override
+        Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "gorm-mongodb-index-" + threadCount.incrementAndGet())
+            thread.setDaemon(true)
+            return thread
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2024 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.grails.datastore.mapping.mongo.metrics
+
+import com.mongodb.event.CommandEvent
+import com.mongodb.event.CommandFailedEvent
+import com.mongodb.event.CommandListener
+import com.mongodb.event.CommandStartedEvent
+import com.mongodb.event.CommandSucceededEvent
+import groovy.transform.CompileStatic
+import io.micrometer.core.instrument.MeterRegistry
+import io.micrometer.core.instrument.Tags
+import io.micrometer.core.instrument.Timer
+import org.bson.BsonDocument
+import org.bson.BsonValue
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+
+/**
+ * Times the commands sent by a client with a Micrometer {@link Timer}. Each timer is tagged with the command, its status, the
+ * connection source, the database, the collection and the GORM entity mapped to the collection
+ *
+ * @since 9.0
+ */
+@CompileStatic
+class MongoCommandMetricsListener implements CommandListener {
+
+    // not the name of the command metrics of Spring Boot, which are tagged differently
+    public static final String METRIC_NAME = "gorm.mongodb.commands"
+
+    protected final MeterRegistry registry
+    protected final String connectionSourceName
+    protected final MongoMetricsCustomizer entities
+
+    private final Map<Integer, CommandTarget> targets = new ConcurrentHashMap<>()
+
+    MongoCommandMetricsListener(MeterRegistry registry, String connectionSourceName, MongoMetricsCustomizer entities) {
+        this.registry = registry
+        this.connectionSourceName = connectionSourceName
+        this.entities = entities
+    }
+
+    @Override
+    void commandStarted(CommandStartedEvent event) {
+        targets.put(event.requestId, new CommandTarget(event.databaseName, getCollectionName(event.command, event.commandName)))
+    }
+
+    @Override
+    void commandSucceeded(CommandSucceededEvent event) {
+        record(event, "SUCCESS", event.getElapsedTime(TimeUnit.NANOSECONDS))
+    }
+
+    @Override
+    void commandFailed(CommandFailedEvent event) {
+        record(event, "FAILED", event.getElapsedTime(TimeUnit.NANOSECONDS))
+    }
+
+    protected void record(CommandEvent event, String status, long elapsedNanos) {
+        CommandTarget target = targets.remove(event.requestId)
+        String collection = target?.collection
+        Tags tags = Tags.of(
+                "command", event.commandName,
+                "status", status,
+                "connectionSource", connectionSourceName,
+                "database", target?.database ?: "unknown",
+                "collection", collection ?: "unknown",
+                "entity", (collection != null ? entities.getEntityName(collection) : null) ?: "none"
+        )
+        Timer.builder(METRIC_NAME)
+             .description("Timer of MongoDB commands")
+             .tags(tags)
+             .register(registry)
+             .record(elapsedNanos, TimeUnit.NANOSECONDS)
+    }
+
+    /**
+     * Obtains the collection a command targets. Most commands name the collection as the value of the command itself
+     */
+    protected static String getCollectionName(BsonDocument command, String commandName) {
+        BsonValue value = commandName == "getMore" ? command.get("collection") : command.get(commandName)
+        return value != null && value.isString() ? value.asString().value : null
+    }
+
+    private static class CommandTarget {
+        final String database
+        final String collection
+
+        CommandTarget(String database, String collection) {
+            this.database = database
+            this.collection = collection
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2024 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.grails.datastore.mapping.mongo.metrics
+
+import com.mongodb.connection.ServerId
+import com.mongodb.event.ConnectionCheckOutFailedEvent
+import com.mongodb.event.ConnectionCheckOutStartedEvent
+import com.mongodb.event.ConnectionCheckedInEvent
+import com.mongodb.event.ConnectionCheckedOutEvent
+import com.mongodb.event.ConnectionClosedEvent
+import com.mongodb.event.ConnectionCreatedEvent
+import com.mongodb.event.ConnectionPoolClosedEvent
+import com.mongodb.event.ConnectionPoolCreatedEvent
+import com.mongodb.event.ConnectionPoolListener
+import groovy.transform.CompileStatic
+import io.micrometer.core.instrument.Gauge
+import io.micrometer.core.instrument.Meter
+import io.micrometer.core.instrument.MeterRegistry
+import io.micrometer.core.instrument.Tags
+import io.micrometer.core.instrument.Timer
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.function.ToDoubleFunction
+
+/**
+ * Publishes the state of the connection pools of a client to Micrometer. For each server the size of the pool, the number of
+ * checked out connections and the number of threads waiting for a connection are published as gauges, and the time spent
+ * waiting for a connection is recorded with a timer. Each meter is tagged with the connection source and the server address.
+ * A listener may be shared by the blocking and reactive clients of a connection source, in which case the gauges publish the
+ * total of their pools and are removed once the last pool for a server is closed
+ *
+ * @since 9.0
+ */
+@CompileStatic
+class MongoConnectionPoolMetricsListener implements ConnectionPoolListener {
+
+    public static final String SIZE_METRIC_NAME = "gorm.mongodb.pool.size"
+    public static final String CHECKED_OUT_METRIC_NAME = "gorm.mongodb.pool.checkedout"
+    public static final String WAIT_QUEUE_METRIC_NAME = "gorm.mongodb.pool.waitqueuesize"
+    public static final String WAIT_METRIC_NAME = "gorm.mongodb.pool.wait"
+
+    protected final MeterRegistry registry
+    protected final String connectionSourceName
+
+    private final Map<ServerId, PoolMeters> pools = new ConcurrentHashMap<>()
+    private final Map<String, PoolMeters> metersByServer = new ConcurrentHashMap<>()
+
+    MongoConnectionPoolMetricsListener(MeterRegistry registry, String connectionSourceName) {
+        this.registry = registry
+        this.connectionSourceName = connectionSourceName
+    }
+
+    @Override
+    void connectionPoolCreated(ConnectionPoolCreatedEvent event) {
+        ServerId serverId = event.serverId
+        PoolMeters meters = metersByServer.compute(serverId.address.toString(), { String address, PoolMeters existing ->
+            PoolMeters poolMeters = existing ?: new PoolMeters(registry, getTags(serverId))
+            poolMeters.poolCount++
+            return poolMeters
+        })
+        pools.put(serverId, meters)
+    }
+
+    @Override
+    void connectionPoolClosed(ConnectionPoolClosedEvent event) {
+        PoolMeters meters = pools.remove(event.serverId)
+        if (meters != null) {
+            metersByServer.computeIfPresent(event.serverId.address.toString(), { String address, PoolMeters existing ->
+                if (--existing.poolCount > 0) {
+                    return existing
+                }
+                existing.remove(registry)
+                return null
+            })
+        }
+    }
+
+    @Override
+    void connectionCheckOutStarted(ConnectionCheckOutStartedEvent event) {
+        pools.get(event.serverId)?.waitQueueSize?.incrementAndGet()
+    }
+
+    @Override
+    void connectionCheckedOut(ConnectionCheckedOutEvent event) {
+        PoolMeters meters = pools.get(event.connectionId.serverId)
+        if (meters != null) {
+            meters.waitQueueSize.decrementAndGet()
+            meters.checkedOut.incrementAndGet()
+            recordWait(event.connectionId.serverId, "SUCCESS", event.getElapsedTime(TimeUnit.NANOSECONDS))
+        }
+    }
+
+    @Override
+    void connectionCheckOutFailed(ConnectionCheckOutFailedEvent event) {
+        PoolMeters meters = pools.get(event.serverId)
+        if (meters != null) {
+            meters.waitQueueSize.decrementAndGet()
+            recordWait(event.serverId, "FAILED", event.getElapsedTime(TimeUnit.NANOSECONDS))
+        }
+    }
+
+    @Override
+    void connectionCheckedIn(ConnectionCheckedInEvent event) {
+        pools.get(event.connectionId.serverId)?.checkedOut?.decrementAndGet()
+    }
+
+    @Override
+    void connectionCreated(ConnectionCreatedEvent event) {
+        pools.get(event.connectionId.serverId)?.size?.incrementAndGet()
+    }
+
+    @Override
+    void connectionClosed(ConnectionClosedEvent event) {
+        pools.get(event.connectionId.serverId)?.size?.decrementAndGet()
+    }
+
+    protected void recordWait(ServerId serverId, String status, long elapsedNanos) {
+        Timer.builder(WAIT_METRIC_NAME)
+             .description("Time spent waiting for a connection from the pool")
+             .tags(getTags(serverId).and("status", status))
+             .register(registry)
+             .record(elapsedNanos, TimeUnit.NANOSECONDS)
+    }
+
+    protected Tags getTags(ServerId serverId) {
+        return Tags.of(
+                "connectionSource", connectionSourceName,
+                "server", serverId.address.toString()
+        )
+    }
+
+    private static class PoolMeters {
+        final AtomicInteger size = new AtomicInteger()
+        final AtomicInteger checkedOut = new AtomicInteger()
+        final AtomicInteger waitQueueSize = new AtomicInteger()
+        final List<Meter> meters = []
+        int poolCount
+
+        PoolMeters(MeterRegistry registry, Tags tags) {
+            meters.add(gauge(registry, SIZE_METRIC_NAME, "The number of connections in the pool", size, tags))
+            meters.add(gauge(registry, CHECKED_OUT_METRIC_NAME, "The number of connections in use", checkedOut, tags))
+            meters.add(gauge(registry, WAIT_QUEUE_METRIC_NAME, "The number of threads waiting for a connection", waitQueueSize, tags))
+        }
+
+        void remove(MeterRegistry registry) {
+            for (Meter meter in meters) {
+                registry.remove(meter)
+            }
+        }
+
+        private static Gauge gauge(MeterRegistry registry, String name, String description, AtomicInteger value, Tags tags) {
+            return Gauge.builder(name, value, { AtomicInteger v -> v.doubleValue() } as ToDoubleFunction<AtomicInteger>)
+                        .description(description)
+                        .tags(tags)
+                        .register(registry)
+        }
+    }
+}
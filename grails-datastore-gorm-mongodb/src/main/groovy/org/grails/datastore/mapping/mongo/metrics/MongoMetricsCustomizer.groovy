@@ -0,0 +1,101 @@
+/*
+ * Copyright 2024 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.grails.datastore.mapping.mongo.metrics
+
+import com.mongodb.Block
+import com.mongodb.MongoClientSettings
+import com.mongodb.connection.ConnectionPoolSettings
+import groovy.transform.CompileStatic
+import io.micrometer.core.instrument.MeterRegistry
+import io.micrometer.core.instrument.Metrics
+import org.grails.datastore.mapping.model.PersistentEntity
+import org.grails.datastore.mapping.mongo.MongoDatastore
+import org.grails.datastore.mapping.mongo.connections.MongoConnectionSourceCustomizer
+import org.grails.datastore.mapping.mongo.connections.MongoConnectionSourceSettings
+import org.springframework.context.ApplicationListener
+import org.springframework.context.event.ContextRefreshedEvent
+
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Registers a {@link MongoCommandMetricsListener} and a {@link MongoConnectionPoolMetricsListener} with the client of every
+ * connection source, including the reactive client of a connection source, which shares the connection pool listener of the
+ * blocking client. The entities of the {@link MongoDatastore} beans of the application context are registered once it is
+ * refreshed, so that command metrics are tagged with the entity mapped to the collection. Outside of an application context
+ * the entities are registered with {@link #registerEntities(MongoDatastore)}
+ *
+ * @since 9.0
+ */
+@CompileStatic
+class MongoMetricsCustomizer implements MongoConnectionSourceCustomizer, ApplicationListener<ContextRefreshedEvent> {
+
+    protected final MeterRegistry registry
+
+    private final Map<String, String> entitiesByCollection = new ConcurrentHashMap<>()
+    private final Map<String, MongoConnectionPoolMetricsListener> poolListeners = new ConcurrentHashMap<>()
+
+    /**
+     * Creates a customizer publishing to the global registry
+     */
+    MongoMetricsCustomizer() {
+        this(Metrics.globalRegistry)
+    }
+
+    MongoMetricsCustomizer(MeterRegistry registry) {
+        this.registry = registry
+    }
+
+    @Override
+    void customize(String connectionSourceName, MongoConnectionSourceSettings settings, MongoClientSettings.Builder builder) {
+        builder.addCommandListener(new MongoCommandMetricsListener(registry, connectionSourceName, this))
+        // the clients of the same connection source publish the same pool gauges
+        MongoConnectionPoolMetricsListener poolListener = poolListeners.computeIfAbsent(connectionSourceName, { String name ->
+            new MongoConnectionPoolMetricsListener(registry, name)
+        })
+        builder.applyToConnectionPoolSettings({ ConnectionPoolSettings.Builder pool ->
+            pool.addConnectionPoolListener(poolListener)
+        } as Block<ConnectionPoolSettings.Builder>)
+    }
+
+    @Override
+    void onApplicationEvent(ContextRefreshedEvent event) {
+        for (MongoDatastore datastore in event.applicationContext.getBeansOfType(MongoDatastore).values()) {
+            registerEntities(datastore)
+        }
+    }
+
+    /**
+     * Registers the collections of the entities of a datastore. Entities of the same hierarchy are registered with the name of
+     * the root entity
+     *
+     * @param datastore The datastore
+     */
+    void registerEntities(MongoDatastore datastore) {
+        for (PersistentEntity entity in datastore.mappingContext.persistentEntities) {
+            if (entity.isRoot()) {
+                entitiesByCollection.put(datastore.getCollectionName(entity), entity.name)
+            }
+        }
+    }
+
+    /**
+     * @param collectionName The name of a collection
+     * @return The name of the entity mapped to the collection or null if there is none
+     */
+    String getEntityName(String collectionName) {
+        return entitiesByCollection.get(collectionName)
+    }
+}
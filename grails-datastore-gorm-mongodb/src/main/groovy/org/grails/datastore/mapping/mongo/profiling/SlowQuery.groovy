@@ -0,0 +1,166 @@
+/*
+ * Copyright 2024 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.grails.datastore.mapping.mongo.profiling
+
+import groovy.transform.CompileStatic
+import org.bson.Document
+import org.bson.conversions.Bson
+
+import java.time.Instant
+
+/**
+ * An operation recorded by the {@link SlowQueryProfiler} because it took longer than the threshold. When the operation was
+ * explained the winning plan and the execution statistics of the explain output are available, otherwise {@link #isExplained()}
+ * returns false and the statistics are -1
+ *
+ * @since 9.0
+ */
+@CompileStatic
+class SlowQuery {
+
+    /**
+     * The operation, such as {@link SlowQueryProfiler#FIND}
+     */
+    final String operation
+
+    /**
+     * The full name of the collection
+     */
+    final String namespace
+
+    /**
+     * The filter, pipeline or summary of the writes of the operation
+     */
+    final Bson command
+
+    /**
+     * The duration of the operation in milliseconds
+     */
+    final long durationMs
+
+    /**
+     * When the operation completed
+     */
+    final Instant timestamp
+
+    /**
+     * The winning plan of the explain output
+     */
+    final Document winningPlan
+
+    /**
+     * The number of documents examined, or -1 if unknown
+     */
+    final long docsExamined
+
+    /**
+     * The number of index keys examined, or -1 if unknown
+     */
+    final long keysExamined
+
+    /**
+     * The number of documents returned, or -1 if unknown
+     */
+    final long docsReturned
+
+    /**
+     * Whether the winning plan scans the whole collection
+     */
+    final boolean collectionScan
+
+    /**
+     * Whether the query was answered from an index without fetching any document
+     */
+    final boolean covered
+
+    SlowQuery(String operation, String namespace, Bson command, long durationMs, Document explain) {
+        this.operation = operation
+        this.namespace = namespace
+        this.command = command
+        this.durationMs = durationMs
+        this.timestamp = Instant.now()
+
+        Document root = explain != null ? findCursorExplain(explain) : null
+        Document queryPlanner = root != null ? (Document) root.get("queryPlanner") : null
+        Document plan = queryPlanner != null ? (Document) queryPlanner.get("winningPlan") : null
+        if (plan != null && plan.get("queryPlan") instanceof Document) {
+            // the slot based execution engine nests the plan
+            plan = (Document) plan.get("queryPlan")
+        }
+        Document executionStats = root != null ? (Document) root.get("executionStats") : null
+
+        this.winningPlan = plan
+        this.docsExamined = getStatistic(executionStats, "totalDocsExamined")
+        this.keysExamined = getStatistic(executionStats, "totalKeysExamined")
+        this.docsReturned = getStatistic(executionStats, "nReturned")
+
+        Set<String> stages = new HashSet<>()
+        collectStages(plan, stages)
+        this.collectionScan = stages.contains("COLLSCAN")
+        this.covered = stages.contains("IXSCAN") && !stages.contains("FETCH") && docsExamined == 0L
+    }
+
+    /**
+     * @return Whether the operation was explained
+     */
+    boolean isExplained() {
+        return winningPlan != null
+    }
+
+    @Override
+    String toString() {
+        return "${operation} on ${namespace} took ${durationMs}ms: ${command}" + (explained ? " (examined ${docsExamined} documents and ${keysExamined} keys, returned ${docsReturned}${collectionScan ? ', collection scan' : ''}${covered ? ', covered' : ''})" : '')
+    }
+
+    private static Document findCursorExplain(Document explain) {
+        Object stages = explain.get("stages")
+        if (stages instanceof List && !((List) stages).isEmpty()) {
+            // an aggregation reports the query of its first stage
+            Object first = ((List) stages).get(0)
+            if (first instanceof Document && ((Document) first).get('$cursor') instanceof Document) {
+                return (Document) ((Document) first).get('$cursor')
+            }
+        }
+        return explain
+    }
+
+    private static long getStatistic(Document executionStats, String name) {
+        Object value = executionStats != null ? executionStats.get(name) : null
+        return value instanceof Number ? ((Number) value).longValue() : -1L
+    }
+
+    private static void collectStages(Document plan, Set<String> stages) {
+        if (plan == null) {
+            return
+        }
+        Object stage = plan.get("stage")
+        if (stage != null) {
+            stages.add(stage.toString())
+        }
+        Object input = plan.get("inputStage")
+        if (input instanceof Document) {
+            collectStages((Document) input, stages)
+        }
+        Object inputs = plan.get("inputStages")
+        if (inputs instanceof List) {
+            for (Object child in (List) inputs) {
+                if (child instanceof Document) {
+                    collectStages((Document) child, stages)
+                }
+            }
+        }
+    }
+}
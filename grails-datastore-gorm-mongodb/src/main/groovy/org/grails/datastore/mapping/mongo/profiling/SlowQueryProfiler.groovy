@@ -0,0 +1,148 @@
+/*
+ * Copyright 2024 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.grails.datastore.mapping.mongo.profiling
+
+import com.mongodb.MongoException
+import com.mongodb.MongoNamespace
+import groovy.transform.CompileStatic
+import groovy.util.logging.Slf4j
+import org.bson.Document
+import org.bson.conversions.Bson
+
+import java.util.concurrent.ThreadLocalRandom
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicReferenceArray
+import java.util.function.Function
+import java.util.function.Supplier
+
+/**
+ * Records the operations of a datastore that take longer than a threshold. Queries, aggregations, text searches and the bulk
+ * writes of a flush are timed. A sample of the slow reads is explained again with the {@code executionStats} verbosity, so that
+ * the winning plan and the number of documents examined versus returned are known, and the slow operations are kept in a
+ * bounded ring buffer that can be read at runtime with {@link #getSlowQueries()}
+ *
+ * @since 9.0
+ */
+@CompileStatic
+@Slf4j
+class SlowQueryProfiler {
+
+    public static final String FIND = "find"
+    public static final String COUNT = "count"
+    public static final String DISTINCT = "distinct"
+    public static final String AGGREGATE = "aggregate"
+    public static final String SEARCH = "search"
+    public static final String BULK_WRITE = "bulkWrite"
+
+    /**
+     * The threshold in milliseconds, or -1 if profiling is disabled
+     */
+    final long thresholdMs
+
+    /**
+     * The fraction of the slow reads that are explained, between 0 and 1
+     */
+    final double explainSampleRate
+
+    private final AtomicReferenceArray<SlowQuery> buffer
+    private final AtomicLong position = new AtomicLong()
+
+    /**
+     * @param thresholdMs The threshold in milliseconds or null to disable profiling
+     * @param explainSampleRate The fraction of the slow reads that are explained
+     * @param bufferSize The maximum number of slow operations kept
+     */
+    SlowQueryProfiler(Long thresholdMs, double explainSampleRate, int bufferSize) {
+        this.thresholdMs = thresholdMs != null ? Math.max(0L, thresholdMs) : -1L
+        this.explainSampleRate = Math.min(1d, Math.max(0d, explainSampleRate))
+        this.buffer = new AtomicReferenceArray<>(Math.max(1, bufferSize))
+    }
+
+    /**
+     * @return Whether operations are timed
+     */
+    boolean isEnabled() {
+        return thresholdMs > -1L
+    }
+
+    /**
+     * Records an operation if it took longer than the threshold. The command and the explain output are only obtained for
+     * slow operations
+     *
+     * @param operation The operation
+     * @param namespace The collection the operation ran against
+     * @param startNanos The value of {@link System#nanoTime()} when the operation started
+     * @param command Supplies the filter, pipeline or summary of the operation
+     * @param explain Explains the operation given its command, or null if it cannot be explained
+     * @return The recorded operation or null if it was not slow
+     */
+    <B extends Bson> SlowQuery record(String operation, MongoNamespace namespace, long startNanos, Supplier<B> command, Function<B, Document> explain) {
+        if (!enabled) {
+            return null
+        }
+        long durationMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos)
+        if (durationMs < thresholdMs) {
+            return null
+        }
+
+        B commandValue = command.get()
+        Document explainOutput = null
+        if (explain != null && isSampled()) {
+            try {
+                explainOutput = explain.apply(commandValue)
+            } catch (MongoException e) {
+                log.debug("Unable to explain slow ${operation} on ${namespace}: ${e.message}", e)
+            }
+        }
+
+        SlowQuery slowQuery = new SlowQuery(operation, namespace.fullName, commandValue, durationMs, explainOutput)
+        buffer.set((int) (position.getAndIncrement() % buffer.length()), slowQuery)
+        if (log.isWarnEnabled()) {
+            log.warn("Slow ${slowQuery}")
+        }
+        return slowQuery
+    }
+
+    /**
+     * @return The slow operations kept in the buffer, oldest first
+     */
+    List<SlowQuery> getSlowQueries() {
+        long end = position.get()
+        int length = buffer.length()
+        List<SlowQuery> slowQueries = new ArrayList<>(length)
+        for (long i = Math.max(0L, end - length); i < end; i++) {
+            SlowQuery slowQuery = buffer.get((int) (i % length))
+            if (slowQuery != null) {
+                slowQueries.add(slowQuery)
+            }
+        }
+        return slowQueries
+    }
+
+    /**
+     * Discards the slow operations kept in the buffer
+     */
+    void clear() {
+        for (int i = 0; i < buffer.length(); i++) {
+            buffer.set(i, null)
+        }
+    }
+
+    protected boolean isSampled() {
+        return explainSampleRate >= 1d || (explainSampleRate > 0d && ThreadLocalRandom.current().nextDouble() < explainSampleRate)
+    }
+}
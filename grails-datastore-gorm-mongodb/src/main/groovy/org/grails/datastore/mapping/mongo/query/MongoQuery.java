@@ -15,18 +15,30 @@
 package org.grails.datastore.mapping.mongo.query;
 
 import com.mongodb.BasicDBObject;
+import com.mongodb.ExplainVerbosity;
 import com.mongodb.ReadConcern;
 import com.mongodb.client.AggregateIterable;
+import com.mongodb.client.ClientSession;
 import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoDatabase;
 import com.mongodb.client.MongoIterable;
+import com.mongodb.client.model.Collation;
+import com.mongodb.client.model.CountOptions;
+import com.mongodb.client.model.EstimatedDocumentCountOptions;
+import com.mongodb.reactivestreams.client.FindPublisher;
 import grails.mongodb.geo.*;
 import groovy.lang.Closure;
 import org.bson.BsonDocument;
 import org.bson.BsonDocumentReader;
 import org.bson.BsonDocumentWriter;
 import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
 import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.json.JsonMode;
+import org.bson.json.JsonParseException;
+import org.bson.json.JsonWriterSettings;
 import org.codehaus.groovy.runtime.DefaultGroovyMethods;
 import org.grails.datastore.bson.codecs.CodecCustomTypeMarshaller;
 import org.grails.datastore.bson.query.BsonQuery;
@@ -37,6 +49,7 @@ import org.grails.datastore.mapping.core.Session;
 import org.grails.datastore.mapping.core.SessionImplementor;
 import org.grails.datastore.mapping.engine.EntityAccess;
 import org.grails.datastore.mapping.engine.EntityPersister;
+import org.grails.datastore.mapping.engine.internal.MappingUtils;
 import org.grails.datastore.mapping.engine.types.CustomTypeMarshaller;
 import org.grails.datastore.mapping.model.EmbeddedPersistentEntity;
 import org.grails.datastore.mapping.model.MappingContext;
@@ -46,22 +59,33 @@ import org.grails.datastore.mapping.model.types.*;
 import org.grails.datastore.mapping.mongo.AbstractMongoSession;
 import org.grails.datastore.mapping.mongo.MongoCodecSession;
 import org.grails.datastore.mapping.mongo.MongoDatastore;
+import org.grails.datastore.mapping.mongo.cache.QueryResultCache;
 import org.grails.datastore.mapping.mongo.config.MongoCollection;
+import org.grails.datastore.mapping.mongo.engine.AssociationBatchLoader;
 import org.grails.datastore.mapping.mongo.engine.MongoCodecEntityPersister;
 import org.grails.datastore.mapping.mongo.engine.MongoEntityPersister;
 import org.grails.datastore.mapping.mongo.engine.codecs.PersistentEntityCodec;
+import org.grails.datastore.mapping.mongo.profiling.SlowQueryProfiler;
+import org.grails.datastore.mapping.mongo.reactive.EntityPublisher;
 import org.grails.datastore.mapping.query.AssociationQuery;
+import org.grails.datastore.mapping.reflect.EntityReflector;
 import org.grails.datastore.mapping.query.Query;
 import org.grails.datastore.mapping.query.Restrictions;
 import org.grails.datastore.mapping.query.api.QueryArgumentsAware;
 import org.grails.datastore.mapping.query.projections.ManualProjections;
+import org.reactivestreams.Publisher;
 import org.springframework.dao.InvalidDataAccessResourceUsageException;
 import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * A {@link org.grails.datastore.mapping.query.Query} implementation for the Mongo document store.
@@ -87,8 +111,20 @@ public class MongoQuery extends BsonQuery implements QueryArgumentsAware {
 
     public static final String HINT_ARGUMENT = "hint";
     public static final String READ_CONCERN_ARGUMENT = "readConcern";
+    public static final String CACHE_ARGUMENT = "cache";
+    public static final String BATCH_SIZE_ARGUMENT = "batchSize";
+    public static final String READ_ONLY_ARGUMENT = "readOnly";
+    public static final String AFTER_ARGUMENT = "after";
+    public static final String MAX_TIME_MS_ARGUMENT = "maxTimeMS";
+    public static final String MAX_AWAIT_TIME_MS_ARGUMENT = "maxAwaitTimeMS";
+    public static final String COMMENT_ARGUMENT = "comment";
+    public static final String ALLOW_DISK_USE_ARGUMENT = "allowDiskUse";
+    public static final String NO_CURSOR_TIMEOUT_ARGUMENT = "noCursorTimeout";
+    public static final String COLLATION_ARGUMENT = "collation";
 
     private Map queryArguments = Collections.emptyMap();
+    private Map arguments = Collections.emptyMap();
+    private Map criteriaArguments = Collections.emptyMap();
 
     public static final String NEAR_OPERATOR = "$near";
 
@@ -397,6 +433,10 @@ public class MongoQuery extends BsonQuery implements QueryArgumentsAware {
 
     @Override
     protected void flushBeforeQuery() {
+        // read-only queries return detached instances so pending changes do not need to be visible to them
+        if (isReadOnly()) {
+            return;
+        }
         // with Mongo we only flush the session if a transaction is not active to allow for session-managed transactions
         if (!TransactionSynchronizationManager.isSynchronizationActive()) {
             super.flushBeforeQuery();
@@ -416,33 +456,67 @@ public class MongoQuery extends BsonQuery implements QueryArgumentsAware {
 
     @Override
     protected List executeQuery(final PersistentEntity entity, final Junction criteria) {
+        final SlowQueryProfiler profiler = mongoSession.getDatastore().getSlowQueryProfiler();
+        if (!profiler.isEnabled()) {
+            return doExecuteQuery(entity, criteria);
+        }
+
+        long start = System.nanoTime();
+        List results = doExecuteQuery(entity, criteria);
+        final com.mongodb.client.MongoCollection<Document> collection = mongoSession.getReadCollection(entity, isReadOnlyRead());
+        final Document query = createQueryObject(entity);
+        if (!criteria.isEmpty()) {
+            populateMongoQuery(mongoSession, query, criteria, entity);
+        }
+        // record the command that was planned for the projections, as only a find or an aggregation can be explained again
+        final List<Projection> projectionList = projections().getProjectionList();
+        final ProjectionPlan plan = projectionList.isEmpty() ? ProjectionPlan.FIND : planProjections(entity, query, projectionList);
+        switch (plan) {
+            case COUNT:
+                profiler.record(SlowQueryProfiler.COUNT, collection.getNamespace(), start, () -> query, null);
+                break;
+            case DISTINCT:
+                profiler.record(SlowQueryProfiler.DISTINCT, collection.getNamespace(), start, () ->
+                        new Document("key", ((DistinctPropertyProjection) projectionList.get(0)).getPropertyName()).append("filter", query), null);
+                break;
+            case AGGREGATE:
+                profiler.record(SlowQueryProfiler.AGGREGATE, collection.getNamespace(), start, () ->
+                        new Document("pipeline", buildAggregatePipeline(entity, query, projectionList).getAggregationPipeline()), command ->
+                        applyCursorArguments((AggregateIterable<Document>) setHint(collection.aggregate(command.getList("pipeline", Document.class)))).explain(ExplainVerbosity.EXECUTION_STATS));
+                break;
+            default:
+                profiler.record(SlowQueryProfiler.FIND, collection.getNamespace(), start, () -> query,
+                        command -> ((FindIterable<Document>) setHint(executeQueryAndApplyPagination(collection, command))).explain(ExplainVerbosity.EXECUTION_STATS));
+        }
+        return results;
+    }
+
+    protected List doExecuteQuery(final PersistentEntity entity, final Junction criteria) {
         final AbstractMongoSession mongoSession = this.mongoSession;
-        com.mongodb.client.MongoCollection<Document> collection = mongoSession.getCollection(entity);
+        com.mongodb.client.MongoCollection<Document> collection = mongoSession.getReadCollection(entity, isReadOnlyRead());
 
         final List<Projection> projectionList = projections().getProjectionList();
         if (uniqueResult && projectionList.isEmpty()) {
             if(isCodecPersister) {
-                collection = collection
-                        .withDocumentClass(entity.getJavaClass());
+                collection = (com.mongodb.client.MongoCollection) mongoSession.getReadCollection(entity, entity.getJavaClass(), isReadOnlyRead());
             }
             final Object dbObject;
             if (criteria.isEmpty()) {
-                FindIterable<Document> cursor = collection
-                        .find(createQueryObject(entity));
+                FindIterable<Document> cursor = find(collection, createQueryObject(entity));
 
-                dbObject = ((FindIterable<Document>) setHint(cursor)).limit(1)
+                dbObject = applyCursorArguments((FindIterable<Document>) setHint(cursor)).limit(1)
                         .first();
             } else {
-                FindIterable<Document> cursor = collection.find(getMongoQuery());
+                FindIterable<Document> cursor = find(collection, getMongoQuery());
 
-                dbObject = ((FindIterable<Document>) setHint(cursor)).limit(1)
+                dbObject = applyCursorArguments((FindIterable<Document>) setHint(cursor)).limit(1)
                         .first();
             }
             if(dbObject == null) {
                 return wrapObjectResultInList(dbObject);
             }
             if(isCodecPersister) {
-                if(!mongoSession.contains(dbObject)) {
+                if(!isReadOnly() && !mongoSession.contains(dbObject)) {
                     final EntityAccess entityAccess = mongoSession.createEntityAccess(entity, dbObject);
                     mongoEntityPersister.firePostLoadEvent(entity, entityAccess);
                     mongoSession.cacheInstance(dbObject.getClass(), (Serializable) entityAccess.getIdentifier(), dbObject);
@@ -460,15 +534,27 @@ public class MongoQuery extends BsonQuery implements QueryArgumentsAware {
 
         if (projectionList.isEmpty()) {
             if(isCodecPersister) {
-                collection = collection
-                        .withDocumentClass(entity.getJavaClass())
-                        .withCodecRegistry( mongoSession.getDatastore().getCodecRegistry());
+                collection = (com.mongodb.client.MongoCollection) mongoSession.getReadCollection(entity, entity.getJavaClass(), isReadOnlyRead());
+            }
+            if (isQueryCacheEnabled()) {
+                return executeCachedQuery(entity, criteria, collection, query);
             }
             cursor = executeQuery(entity, criteria, collection, query);
-            return new MongoResultList(cursor, offset, mongoEntityPersister);
+            return new MongoResultList(cursor, offset, mongoEntityPersister, isReadOnly());
         }
 
         populateMongoQuery((AbstractMongoSession) session, query, criteria, entity);
+        switch (planProjections(entity, query, projectionList)) {
+            case FIND:
+                return executeFindProjection(entity, collection, query, projectionList);
+            case COUNT:
+                return executeCountProjection(collection, query);
+            case DISTINCT:
+                return executeDistinctProjection(entity, collection, query, (DistinctPropertyProjection) projectionList.get(0));
+            default:
+                break;
+        }
+
         AggregatePipeline aggregatePipeline = buildAggregatePipeline(entity, query, projectionList);
         List<Document> aggregationPipeline = aggregatePipeline.getAggregationPipeline();
         boolean singleResult = aggregatePipeline.isSingleResult();
@@ -476,8 +562,9 @@ public class MongoQuery extends BsonQuery implements QueryArgumentsAware {
         List projectedResults = new ArrayList();
 
 
-        AggregateIterable<Document> aggregatedResults = collection.aggregate(aggregationPipeline);
-        aggregatedResults = (AggregateIterable<Document>) setHint(aggregatedResults);
+        ClientSession clientSession = mongoSession.getReadClientSession(isReadOnlyRead());
+        AggregateIterable<Document> aggregatedResults = clientSession != null ? collection.aggregate(clientSession, aggregationPipeline) : collection.aggregate(aggregationPipeline);
+        aggregatedResults = applyCursorArguments((AggregateIterable<Document>) setHint(aggregatedResults));
         final MongoCursor<Document> aggregateCursor = aggregatedResults.iterator();
 
         if (singleResult && aggregateCursor.hasNext()) {
@@ -506,6 +593,334 @@ public class MongoQuery extends BsonQuery implements QueryArgumentsAware {
 
     }
 
+    /**
+     * Whether the query is read-only. A read-only query returns detached instances: they are not cached in the session, no
+     * post load event is fired for them and the session is not flushed before the query. The {@code readOnly} argument takes
+     * precedence, otherwise the query is read-only if the session is, or if the current transaction is read-only and the
+     * datastore is configured to {@link MongoDatastore#isDetachReadOnlyTransactions() detach read-only transactions}
+     *
+     * @return Whether the query is read-only
+     * @since 9.0
+     */
+    protected boolean isReadOnly() {
+        Boolean readOnly = getReadOnlyArgument();
+        if (readOnly != null) {
+            return readOnly;
+        }
+        if (mongoSession == null) {
+            return false;
+        }
+        return mongoSession.isReadOnly() ||
+                (mongoSession.getDatastore().isDetachReadOnlyTransactions() && TransactionSynchronizationManager.isCurrentTransactionReadOnly());
+    }
+
+    /**
+     * Whether the query only reads on behalf of a read-only session or transaction, in which case it can be routed with the read
+     * preference of read-only queries. Unlike {@link #isReadOnly()} this does not depend on whether the instances are detached
+     *
+     * @return Whether the query can be routed as a read-only query
+     * @since 9.0
+     */
+    protected boolean isReadOnlyRead() {
+        Boolean readOnly = getReadOnlyArgument();
+        if (readOnly != null) {
+            return readOnly;
+        }
+        return (mongoSession != null && mongoSession.isReadOnly()) || TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+    }
+
+    private Boolean getReadOnlyArgument() {
+        Object readOnly = queryArguments != null ? queryArguments.get(READ_ONLY_ARGUMENT) : null;
+        if (readOnly == null) {
+            return null;
+        }
+        return readOnly instanceof Boolean ? (Boolean) readOnly : Boolean.valueOf(readOnly.toString());
+    }
+
+    /**
+     * @return Whether the results of the query should be read from and stored in the {@link QueryResultCache}
+     */
+    protected boolean isQueryCacheEnabled() {
+        if (!isCodecPersister || queryArguments == null) {
+            return false;
+        }
+        Object cache = queryArguments.get(CACHE_ARGUMENT);
+        return cache instanceof Boolean ? (Boolean) cache : cache != null && Boolean.parseBoolean(cache.toString());
+    }
+
+    /**
+     * Executes the query using the {@link QueryResultCache}. On a hit the results are loaded by identifier, otherwise the query
+     * is executed and the identifiers of the results are cached
+     */
+    protected List executeCachedQuery(final PersistentEntity entity,
+                                      final Junction criteria,
+                                      final com.mongodb.client.MongoCollection<Document> collection,
+                                      final Document query) {
+        final MongoDatastore datastore = mongoSession.getDatastore();
+        final QueryResultCache queryResultCache = datastore.getQueryResultCache();
+        if (!criteria.isEmpty()) {
+            populateMongoQuery(mongoSession, query, criteria, entity);
+        }
+
+        final QueryResultCache.Key key = queryResultCache.createKey(
+                collection.getNamespace().getFullName(),
+                entity.getName(),
+                applyKeyset(entity, query),
+                createSortObject(entity),
+                createQueryCacheOptions(collection),
+                offset,
+                max,
+                datastore.getCodecRegistry()
+        );
+        final List<Serializable> identifiers = queryResultCache.get(key);
+        if (identifiers != null) {
+            return retrieveCachedResults(entity, identifiers);
+        }
+
+        final MongoCursor<Document> cursor = ((FindIterable<Document>) setHint(executeQueryAndApplyPagination(collection, query))).iterator();
+        final MongoResultList results = new MongoResultList(cursor, offset, mongoEntityPersister, isReadOnly());
+        final EntityReflector reflector = entity.getMappingContext().getEntityReflector(entity);
+        final List<Serializable> resultIdentifiers = new ArrayList<>(results.size());
+        for (Object result : results) {
+            resultIdentifiers.add(reflector.getIdentifier(result));
+        }
+        queryResultCache.put(key, resultIdentifiers);
+        return results;
+    }
+
+    /**
+     * Creates the options of the query that change its results and therefore form part of its key in the {@link QueryResultCache}:
+     * the effective collation, the hint and the effective read concern
+     *
+     * @param collection The collection the query is executed against
+     * @return The options
+     * @since 9.0
+     */
+    protected Document createQueryCacheOptions(com.mongodb.client.MongoCollection<Document> collection) {
+        Document options = new Document();
+        Collation collation = toCollation(getCursorArgument(COLLATION_ARGUMENT));
+        if (collation != null) {
+            options.put(COLLATION_ARGUMENT, collation.asDocument());
+        }
+        Object hint = queryArguments.get(HINT_ARGUMENT);
+        if (hint instanceof Map) {
+            options.put(HINT_ARGUMENT, new Document((Map<String, Object>) hint));
+        } else if (hint != null) {
+            options.put(HINT_ARGUMENT, hint.toString());
+        }
+        Object readConcern = queryArguments.get(READ_CONCERN_ARGUMENT);
+        options.put(READ_CONCERN_ARGUMENT, (readConcern instanceof ReadConcern ? (ReadConcern) readConcern : collection.getReadConcern()).asDocument());
+        return options;
+    }
+
+    /**
+     * Loads the results of a cached query in their original order, using instances from the session where possible. The results
+     * of a read-only query are loaded as detached instances, like the results of the query itself
+     */
+    protected List retrieveCachedResults(final PersistentEntity entity, final List<Serializable> identifiers) {
+        final Class type = entity.getJavaClass();
+        final boolean readOnly = isReadOnly();
+        final Map<Serializable, Object> loaded = new HashMap<>(identifiers.size());
+        final List<Serializable> toFetch = new ArrayList<>();
+        for (Serializable id : identifiers) {
+            Object cached = readOnly ? null : mongoSession.getCachedInstance(type, id);
+            if (cached != null) {
+                loaded.put(id, cached);
+            } else {
+                toFetch.add(id);
+            }
+        }
+        if (!toFetch.isEmpty()) {
+            final EntityReflector reflector = entity.getMappingContext().getEntityReflector(entity);
+            Iterable<?> fetched;
+            if (readOnly) {
+                MongoQuery query = (MongoQuery) mongoSession.createQuery(type);
+                query.in(entity.getIdentity().getName(), toFetch);
+                query.setArguments(Collections.singletonMap(READ_ONLY_ARGUMENT, Boolean.TRUE));
+                fetched = query.list();
+            } else {
+                fetched = mongoEntityPersister.retrieveAll(toFetch);
+            }
+            for (Object instance : fetched) {
+                if (instance != null) {
+                    loaded.put(reflector.getIdentifier(instance), instance);
+                }
+            }
+        }
+
+        final List results = new ArrayList(identifiers.size());
+        for (Serializable id : identifiers) {
+            Object instance = loaded.get(id);
+            // an instance deleted by another process since the query was cached is omitted
+            if (instance != null) {
+                results.add(instance);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Chooses the server command used to execute the projections of the query. Plain property and identifier lists are
+     * executed with a find and a field projection, a single count with a count command, a single distinct property with the
+     * distinct command and everything else with an aggregation
+     *
+     * @param entity The entity
+     * @param query The query document
+     * @param projectionList The projections
+     * @return The plan
+     * @since 9.0
+     */
+    protected ProjectionPlan planProjections(PersistentEntity entity, Document query, List<Projection> projectionList) {
+        if (projectionList.size() == 1) {
+            Projection projection = projectionList.get(0);
+            if (projection.getClass() == CountProjection.class) {
+                return ProjectionPlan.COUNT;
+            }
+            if (projection.getClass() == DistinctPropertyProjection.class) {
+                PersistentProperty property = entity.getPropertyByName(((DistinctPropertyProjection) projection).getPropertyName());
+                // the distinct command unwinds arrays and cannot be paginated
+                boolean canUseDistinct = property instanceof Simple &&
+                        max <= 0 && offset <= 0 &&
+                        !queryArguments.containsKey(HINT_ARGUMENT) &&
+                        !queryArguments.containsKey(READ_CONCERN_ARGUMENT);
+                return canUseDistinct ? ProjectionPlan.DISTINCT : ProjectionPlan.AGGREGATE;
+            }
+        }
+
+        for (Projection projection : projectionList) {
+            if (projection.getClass() == IdProjection.class) {
+                continue;
+            }
+            if (projection.getClass() != PropertyProjection.class) {
+                return ProjectionPlan.AGGREGATE;
+            }
+            PersistentProperty property = entity.getPropertyByName(((PropertyProjection) projection).getPropertyName());
+            if (property == null || property instanceof Identity) {
+                return ProjectionPlan.AGGREGATE;
+            }
+        }
+        return ProjectionPlan.FIND;
+    }
+
+    /**
+     * Executes property and identifier projections with a find and a field projection, which can be covered by an index
+     */
+    protected List executeFindProjection(PersistentEntity entity, com.mongodb.client.MongoCollection<Document> collection, Document query, List<Projection> projectionList) {
+        Document fields = new Document();
+        List<ProjectedProperty> projectedKeys = new ArrayList<ProjectedProperty>();
+        boolean includesId = false;
+        for (Projection projection : projectionList) {
+            ProjectedProperty projectedProperty = new ProjectedProperty();
+            projectedProperty.projection = projection;
+            if (projection instanceof IdProjection) {
+                projectedProperty.projectionKey = MongoEntityPersister.MONGO_ID_FIELD;
+                includesId = true;
+            } else {
+                PersistentProperty property = entity.getPropertyByName(((PropertyProjection) projection).getPropertyName());
+                projectedProperty.property = property;
+                projectedProperty.projectionKey = MappingUtils.getTargetKey(property);
+            }
+            fields.put(projectedProperty.projectionKey, 1);
+            projectedKeys.add(projectedProperty);
+        }
+        if (!includesId) {
+            fields.put(MongoEntityPersister.MONGO_ID_FIELD, 0);
+        }
+
+        FindIterable<Document> iterable = executeQueryAndApplyPagination(collection, query).projection(fields);
+        MongoCursor<Document> cursor = ((FindIterable<Document>) setHint(iterable)).iterator();
+        return new AggregatedResultList((AbstractMongoSession) getSession(), cursor, projectedKeys);
+    }
+
+    /**
+     * Executes a count projection. The count of an unrestricted query is read from the collection metadata
+     */
+    protected List executeCountProjection(com.mongodb.client.MongoCollection<Document> collection, Document query) {
+        Object readConcernObject = queryArguments.get(READ_CONCERN_ARGUMENT);
+        if (readConcernObject instanceof ReadConcern) {
+            collection = collection.withReadConcern((ReadConcern) readConcernObject);
+        }
+
+        long count;
+        Object hint = queryArguments.get(HINT_ARGUMENT);
+        Long maxTime = toLong(getCursorArgument(MAX_TIME_MS_ARGUMENT));
+        Object comment = getCursorArgument(COMMENT_ARGUMENT);
+        Collation collation = toCollation(getCursorArgument(COLLATION_ARGUMENT));
+        if (query.isEmpty() && max <= 0 && offset <= 0 && hint == null && collation == null) {
+            EstimatedDocumentCountOptions options = new EstimatedDocumentCountOptions();
+            if (maxTime != null) {
+                options.maxTime(maxTime, TimeUnit.MILLISECONDS);
+            }
+            if (comment != null) {
+                options.comment(comment.toString());
+            }
+            count = collection.estimatedDocumentCount(options);
+        } else {
+            CountOptions options = new CountOptions();
+            if (maxTime != null) {
+                options.maxTime(maxTime, TimeUnit.MILLISECONDS);
+            }
+            if (comment != null) {
+                options.comment(comment.toString());
+            }
+            if (collation != null) {
+                options.collation(collation);
+            }
+            if (offset > 0) {
+                options.skip(offset);
+            }
+            if (max > 0) {
+                options.limit(max);
+            }
+            if (hint instanceof Map) {
+                options.hint(new Document((Map<String, Object>) hint));
+            } else if (hint != null) {
+                options.hintString(hint.toString());
+            }
+            ClientSession clientSession = mongoSession.getReadClientSession(isReadOnlyRead());
+            count = clientSession != null ? collection.countDocuments(clientSession, query, options) : collection.countDocuments(query, options);
+        }
+
+        List results = new ArrayList(1);
+        // an aggregated $sum produces an integer until it overflows, so the same type is returned here
+        results.add(count <= Integer.MAX_VALUE ? (Object) (int) count : (Object) count);
+        return results;
+    }
+
+    /**
+     * Executes a single distinct property projection with the distinct command
+     */
+    protected List executeDistinctProjection(PersistentEntity entity, com.mongodb.client.MongoCollection<Document> collection, Document query, DistinctPropertyProjection projection) {
+        PersistentProperty property = entity.getPropertyByName(projection.getPropertyName());
+        Document command = new Document("distinct", collection.getNamespace().getCollectionName())
+                .append("key", MappingUtils.getTargetKey(property))
+                .append("query", query);
+        Long maxTime = toLong(getCursorArgument(MAX_TIME_MS_ARGUMENT));
+        if (maxTime != null) {
+            command.append(MAX_TIME_MS_ARGUMENT, maxTime);
+        }
+        Object comment = getCursorArgument(COMMENT_ARGUMENT);
+        if (comment != null) {
+            command.append(COMMENT_ARGUMENT, comment.toString());
+        }
+        Collation collation = toCollation(getCursorArgument(COLLATION_ARGUMENT));
+        if (collation != null) {
+            command.append(COLLATION_ARGUMENT, collation.asDocument());
+        }
+        // the command is not run on the collection, so the read concern mapped for it is added to the command
+        if (!collection.getReadConcern().isServerDefault()) {
+            command.append(READ_CONCERN_ARGUMENT, collection.getReadConcern().asDocument());
+        }
+
+        MongoDatabase database = mongoSession.getNativeInterface()
+                .getDatabase(collection.getNamespace().getDatabaseName())
+                .withCodecRegistry(collection.getCodecRegistry());
+        ClientSession clientSession = mongoSession.getReadClientSession(isReadOnlyRead());
+        Document result = clientSession != null ? database.runCommand(clientSession, command, collection.getReadPreference()) : database.runCommand(command, collection.getReadPreference());
+        List values = result.getList("values", Object.class);
+        return values != null ? new ArrayList(values) : new ArrayList();
+    }
+
     protected AggregatePipeline buildAggregatePipeline(PersistentEntity entity, Document query, List<Projection> projectionList) {
         return new AggregatePipeline(this, entity, query, projectionList).build();
     }
@@ -552,6 +967,136 @@ public class MongoQuery extends BsonQuery implements QueryArgumentsAware {
         return result;
     }
 
+    /**
+     * Obtains a cursor argument of the query, falling back to the default mapped for the entity
+     *
+     * @param name The name of the argument
+     * @return The value or null if it is not set
+     * @since 9.0
+     */
+    protected Object getCursorArgument(String name) {
+        Object value = queryArguments != null ? queryArguments.get(name) : null;
+        if (value == null && entity.getMapping() != null) {
+            MongoCollection mappedForm = (MongoCollection) entity.getMapping().getMappedForm();
+            if (mappedForm != null) {
+                value = mappedForm.getQueryArguments().get(name);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Applies the {@code batchSize}, {@code maxTimeMS}, {@code maxAwaitTimeMS}, {@code comment}, {@code allowDiskUse},
+     * {@code noCursorTimeout} and {@code collation} arguments to a find
+     *
+     * @since 9.0
+     */
+    protected <T> FindIterable<T> applyCursorArguments(FindIterable<T> iterable) {
+        return applyCursorArguments(iterable,
+                FindIterable::batchSize,
+                (cursor, maxTime) -> cursor.maxTime(maxTime, TimeUnit.MILLISECONDS),
+                (cursor, maxAwaitTime) -> cursor.maxAwaitTime(maxAwaitTime, TimeUnit.MILLISECONDS),
+                FindIterable::comment,
+                FindIterable::allowDiskUse,
+                FindIterable::noCursorTimeout,
+                FindIterable::collation);
+    }
+
+    /**
+     * Applies the {@code batchSize}, {@code maxTimeMS}, {@code maxAwaitTimeMS}, {@code comment}, {@code allowDiskUse} and
+     * {@code collation} arguments to an aggregation
+     *
+     * @since 9.0
+     */
+    protected <T> AggregateIterable<T> applyCursorArguments(AggregateIterable<T> iterable) {
+        return applyCursorArguments(iterable,
+                AggregateIterable::batchSize,
+                (cursor, maxTime) -> cursor.maxTime(maxTime, TimeUnit.MILLISECONDS),
+                (cursor, maxAwaitTime) -> cursor.maxAwaitTime(maxAwaitTime, TimeUnit.MILLISECONDS),
+                AggregateIterable::comment,
+                AggregateIterable::allowDiskUse,
+                null,
+                AggregateIterable::collation);
+    }
+
+    /**
+     * Applies the cursor arguments of the query to a find on the reactive streams driver
+     *
+     * @since 9.0
+     */
+    protected <T> FindPublisher<T> applyCursorArguments(FindPublisher<T> publisher) {
+        return applyCursorArguments(publisher,
+                FindPublisher::batchSize,
+                (cursor, maxTime) -> cursor.maxTime(maxTime, TimeUnit.MILLISECONDS),
+                (cursor, maxAwaitTime) -> cursor.maxAwaitTime(maxAwaitTime, TimeUnit.MILLISECONDS),
+                FindPublisher::comment,
+                FindPublisher::allowDiskUse,
+                FindPublisher::noCursorTimeout,
+                FindPublisher::collation);
+    }
+
+    /**
+     * Applies the cursor arguments of the query with the setters of a cursor type, since the driver has no common interface
+     * for them. A null setter skips an argument that the cursor type does not support
+     */
+    private <C> C applyCursorArguments(C cursor,
+                                       BiFunction<C, Integer, C> batchSize,
+                                       BiFunction<C, Long, C> maxTime,
+                                       BiFunction<C, Long, C> maxAwaitTime,
+                                       BiFunction<C, String, C> comment,
+                                       BiFunction<C, Boolean, C> allowDiskUse,
+                                       BiFunction<C, Boolean, C> noCursorTimeout,
+                                       BiFunction<C, Collation, C> collation) {
+        cursor = applyCursorArgument(cursor, toInteger(getCursorArgument(BATCH_SIZE_ARGUMENT)), batchSize);
+        cursor = applyCursorArgument(cursor, toLong(getCursorArgument(MAX_TIME_MS_ARGUMENT)), maxTime);
+        cursor = applyCursorArgument(cursor, toLong(getCursorArgument(MAX_AWAIT_TIME_MS_ARGUMENT)), maxAwaitTime);
+        Object commentValue = getCursorArgument(COMMENT_ARGUMENT);
+        cursor = applyCursorArgument(cursor, commentValue != null ? commentValue.toString() : null, comment);
+        cursor = applyCursorArgument(cursor, toBoolean(getCursorArgument(ALLOW_DISK_USE_ARGUMENT)), allowDiskUse);
+        cursor = applyCursorArgument(cursor, toBoolean(getCursorArgument(NO_CURSOR_TIMEOUT_ARGUMENT)), noCursorTimeout);
+        return applyCursorArgument(cursor, toCollation(getCursorArgument(COLLATION_ARGUMENT)), collation);
+    }
+
+    private static <C, V> C applyCursorArgument(C cursor, V value, BiFunction<C, V, C> setter) {
+        return value != null && setter != null ? setter.apply(cursor, value) : cursor;
+    }
+
+    private static Integer toInteger(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).intValue();
+        }
+        return value != null ? Integer.valueOf(value.toString()) : null;
+    }
+
+    private static Long toLong(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        return value != null ? Long.valueOf(value.toString()) : null;
+    }
+
+    private static Collation toCollation(Object value) {
+        if (value instanceof Map) {
+            return MongoCollection.toCollation((Map) value);
+        }
+        return (Collation) value;
+    }
+
+    private static Boolean toBoolean(Object value) {
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+        return value != null ? Boolean.valueOf(value.toString()) : null;
+    }
+
+    /**
+     * Starts a find, within the causally consistent client session of the routed reads of a read-only query if any
+     */
+    protected FindIterable<Document> find(com.mongodb.client.MongoCollection<Document> collection, Document filter) {
+        ClientSession clientSession = mongoSession.getReadClientSession(isReadOnlyRead());
+        return clientSession != null ? collection.find(clientSession, filter) : collection.find(filter);
+    }
+
     protected FindIterable<Document> executeQueryAndApplyPagination(com.mongodb.client.MongoCollection<Document> collection, Document query) {
         Object readConcernObject = queryArguments.get(READ_CONCERN_ARGUMENT);
         if(readConcernObject instanceof ReadConcern) {
@@ -560,7 +1105,7 @@ public class MongoQuery extends BsonQuery implements QueryArgumentsAware {
             );
         }
 
-        final FindIterable<Document> iterable = collection.find(query);
+        final FindIterable<Document> iterable = applyCursorArguments(find(collection, applyKeyset(entity, query)));
         if (offset > 0) {
             iterable.skip(offset);
         }
@@ -571,6 +1116,109 @@ public class MongoQuery extends BsonQuery implements QueryArgumentsAware {
             iterable.limit(1);
         }
 
+        Document orderObject = createSortObject(entity);
+        if (orderObject != null) {
+            iterable.sort(orderObject);
+        }
+
+        return iterable;
+    }
+
+    /**
+     * Executes this query on the reactive streams driver. The query document, sort, pagination, hint and read concern are
+     * built as they are for {@link #list()} and each document is decoded by the {@link PersistentEntityCodec} of the entity
+     * as it is emitted. Only the codec engine is supported and the query cannot have projections
+     *
+     * @return A publisher of the matching entities
+     * @since 9.0
+     */
+    public <T> Publisher<T> publisher() {
+        if (!isCodecPersister) {
+            throw new UnsupportedOperationException("Reactive queries are only supported by the codec engine");
+        }
+        if (!projections().getProjectionList().isEmpty()) {
+            throw new UnsupportedOperationException("Reactive queries do not support projections");
+        }
+
+        Document query = createQueryObject(entity);
+        if (!criteria.isEmpty()) {
+            populateMongoQuery(mongoSession, query, criteria, entity);
+        }
+
+        com.mongodb.reactivestreams.client.MongoCollection<RawBsonDocument> collection = mongoSession.getReactiveCollection(entity, RawBsonDocument.class, null, mongoSession.getRoutedReadPreference(entity, isReadOnlyRead()));
+        Object readConcernObject = queryArguments != null ? queryArguments.get(READ_CONCERN_ARGUMENT) : null;
+        if (readConcernObject instanceof ReadConcern) {
+            collection = collection.withReadConcern((ReadConcern) readConcernObject);
+        }
+
+        FindPublisher<RawBsonDocument> publisher = applyCursorArguments(collection.find(applyKeyset(entity, query)));
+        if (offset > 0) {
+            publisher = publisher.skip(offset);
+        }
+        if (max > -1) {
+            publisher = publisher.limit(max);
+        }
+        Document orderObject = createSortObject(entity);
+        if (orderObject != null) {
+            publisher = publisher.sort(orderObject);
+        }
+        Object hint = queryArguments != null ? queryArguments.get(HINT_ARGUMENT) : null;
+        if (hint instanceof Map) {
+            publisher = publisher.hint(new Document((Map<String, Object>) hint));
+        } else if (hint != null) {
+            publisher = publisher.hintString(hint.toString());
+        }
+        return new EntityPublisher<>(mongoSession.getDatastore(), entity, publisher);
+    }
+
+    /**
+     * Executes this query as a {@link Stream} backed directly by the cursor. The query document, sort, pagination, hint and read
+     * concern are built as they are for {@link #list()} and the number of documents fetched per round trip can be set with
+     * the {@code batchSize} argument. Decoded instances, and the instances of associations mapped with {@code fetch: 'batch'},
+     * are neither cached in the session nor retained by the stream, so that the results can be processed in constant memory.
+     * Like {@link #list()}, the session is flushed first and the post load event is fired unless the query is read-only. The cursor is closed when the stream is closed, hence the stream
+     * should be used within a try-with-resources block. Only the codec engine is supported and the query cannot have projections
+     *
+     * @return A stream of the matching entities
+     * @since 9.0
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Stream<T> stream() {
+        if (!isCodecPersister) {
+            throw new UnsupportedOperationException("Streaming queries are only supported by the codec engine");
+        }
+        if (!projections().getProjectionList().isEmpty()) {
+            throw new UnsupportedOperationException("Streaming queries do not support projections");
+        }
+
+        flushBeforeQuery();
+        Document query = createQueryObject(entity);
+        if (!criteria.isEmpty()) {
+            populateMongoQuery(mongoSession, query, criteria, entity);
+        }
+
+        com.mongodb.client.MongoCollection collection = mongoSession.getReadCollection(entity, entity.getJavaClass(), isReadOnlyRead());
+        FindIterable<Document> iterable = (FindIterable<Document>) setHint(executeQueryAndApplyPagination(collection, query));
+
+        final boolean readOnly = isReadOnly();
+        final MongoCursor cursor = iterable.iterator();
+        Iterator<Object> decodingIterator = new StreamingIterator(MongoResultList.createDecodingIterator(cursor, mongoEntityPersister, false, !readOnly), mongoEntityPersister, readOnly);
+        Spliterator<T> spliterator = Spliterators.spliteratorUnknownSize((Iterator<T>) decodingIterator, Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false).onClose(cursor::close);
+    }
+
+    /**
+     * @param entity The entity
+     * @return The sort document for the query, falling back to the default sort of the entity, or null if the results are not sorted
+     */
+    protected Document createSortObject(PersistentEntity entity) {
+        if (isKeysetQuery()) {
+            Document orderObject = new Document();
+            for (Order order : getKeysetOrders(entity)) {
+                orderObject.put(getPropertyName(entity, order.getProperty()), order.getDirection() == Order.Direction.DESC ? -1 : 1);
+            }
+            return orderObject;
+        }
         if (!orderBy.isEmpty()) {
             Document orderObject = new Document();
             for (Order order : orderBy) {
@@ -578,7 +1226,7 @@ public class MongoQuery extends BsonQuery implements QueryArgumentsAware {
                 property = getPropertyName(entity, property);
                 orderObject.put(property, order.getDirection() == Order.Direction.DESC ? -1 : 1);
             }
-            iterable.sort(orderObject);
+            return orderObject;
         } else {
             MongoCollection coll = (MongoCollection) entity.getMapping().getMappedForm();
             if (coll != null && coll.getSort() != null) {
@@ -587,11 +1235,99 @@ public class MongoQuery extends BsonQuery implements QueryArgumentsAware {
                 String property = order.getProperty();
                 property = getPropertyName(entity, property);
                 orderObject.put(property, order.getDirection() == Order.Direction.DESC ? -1 : 1);
-                iterable.sort(orderObject);
+                return orderObject;
             }
         }
+        return null;
+    }
 
-        return iterable;
+    /**
+     * @return Whether the query is paginated by keyset with the {@code after} argument
+     * @since 9.0
+     */
+    protected boolean isKeysetQuery() {
+        return queryArguments != null && queryArguments.containsKey(AFTER_ARGUMENT);
+    }
+
+    /**
+     * Obtains the orders of a keyset query, which are the orders of the query or the default sort of the entity followed by
+     * the identifier so that every document has a unique position
+     *
+     * @param entity The entity
+     * @return The orders
+     * @since 9.0
+     */
+    protected List<Order> getKeysetOrders(PersistentEntity entity) {
+        List<Order> orders = new ArrayList<>(orderBy);
+        if (orders.isEmpty()) {
+            MongoCollection coll = (MongoCollection) entity.getMapping().getMappedForm();
+            if (coll != null && coll.getSort() != null) {
+                orders.add(coll.getSort());
+            }
+        }
+        for (Order order : orders) {
+            if (MongoEntityPersister.MONGO_ID_FIELD.equals(getPropertyName(entity, order.getProperty()))) {
+                return orders;
+            }
+        }
+        Order.Direction direction = orders.isEmpty() ? Order.Direction.ASC : orders.get(orders.size() - 1).getDirection();
+        orders.add(new Order(entity.getIdentity().getName(), direction));
+        return orders;
+    }
+
+    /**
+     * Restricts the query to the documents positioned after the {@code after} token, if any
+     *
+     * @param entity The entity
+     * @param query The query
+     * @return The restricted query
+     * @since 9.0
+     */
+    protected Document applyKeyset(PersistentEntity entity, Document query) {
+        Object after = queryArguments != null ? queryArguments.get(AFTER_ARGUMENT) : null;
+        if (after == null) {
+            return query;
+        }
+        KeysetToken token = KeysetToken.decode(after.toString());
+        Document sort = createSortObject(entity);
+        if (!token.matches(sort)) {
+            throw new IllegalArgumentException("Keyset pagination token was created for the sort " + token.getSort().toJson() + " but the query is sorted by " + sort.toJson());
+        }
+        Document range = token.toFilter();
+        if (query.isEmpty()) {
+            return range;
+        }
+        return new Document(MONGO_AND_OPERATOR, Arrays.asList(query, range));
+    }
+
+    /**
+     * Creates the token of the position of an instance returned by this query, from which the next page is read with the
+     * {@code after} argument
+     *
+     * @param instance The last instance of a page
+     * @return The token
+     * @since 9.0
+     */
+    public String createKeysetToken(Object instance) {
+        final EntityReflector reflector = entity.getMappingContext().getEntityReflector(entity);
+        final MappingContext mappingContext = entity.getMappingContext();
+        Document sort = new Document();
+        List<Object> values = new ArrayList<>();
+        for (Order order : getKeysetOrders(entity)) {
+            String propertyName = getPropertyName(entity, order.getProperty());
+            Object value;
+            if (MongoEntityPersister.MONGO_ID_FIELD.equals(propertyName)) {
+                value = reflector.getIdentifier(instance);
+            } else {
+                value = reflector.getProperty(instance, order.getProperty());
+                if (value != null && mappingContext.isPersistentEntity(value)) {
+                    value = mongoSession.getObjectIdentifier(value);
+                }
+            }
+            sort.put(propertyName, order.getDirection() == Order.Direction.DESC ? -1 : 1);
+            values.add(value);
+        }
+        return new KeysetToken(sort, values).encode(mongoSession.getCodecRegistry());
     }
 
     private Document getClassFieldDocument(final PersistentEntity entity) {
@@ -926,10 +1662,35 @@ public class MongoQuery extends BsonQuery implements QueryArgumentsAware {
     }
 
     /**
+     * Sets the arguments of the query, replacing the arguments previously set. The arguments set with
+     * {@link #setCriteriaArguments(Map)} still apply unless they are overridden
+     *
      * @param arguments The query arguments
      */
     public void setArguments(Map arguments) {
-        this.queryArguments = arguments;
+        this.arguments = arguments != null ? arguments : Collections.emptyMap();
+        this.queryArguments = mergeArguments();
+    }
+
+    /**
+     * Sets the arguments of the {@code arguments} method of a criteria query, which are kept when the arguments of the
+     * {@code list} method are applied with {@link #setArguments(Map)}
+     *
+     * @param arguments The arguments
+     * @since 9.0
+     */
+    public void setCriteriaArguments(Map arguments) {
+        this.criteriaArguments = arguments != null ? arguments : Collections.emptyMap();
+        this.queryArguments = mergeArguments();
+    }
+
+    private Map mergeArguments() {
+        if (criteriaArguments.isEmpty()) {
+            return arguments;
+        }
+        Map merged = new LinkedHashMap(criteriaArguments);
+        merged.putAll(arguments);
+        return merged;
     }
 
     /**
@@ -1152,7 +1913,7 @@ public class MongoQuery extends BsonQuery implements QueryArgumentsAware {
                         Embedded embedded = (Embedded)property;
                         List embeddedList = new ArrayList();
                         CodecRegistry codecRegistry = session.getDatastore().getCodecRegistry();
-                        PersistentEntityCodec codec = new PersistentEntityCodec(codecRegistry, embedded.getAssociatedEntity());
+                        PersistentEntityCodec codec = session.getDatastore().getEmbeddedCodecCache().getCodec(embedded.getAssociatedEntity());
 
                         for (Serializable embeddedDoc : identifiers) {
                             if(embeddedDoc instanceof Document) {
@@ -1341,21 +2102,195 @@ public class MongoQuery extends BsonQuery implements QueryArgumentsAware {
 
 
 
+    /**
+     * The position of a document in the results of a keyset query: the sort of the query, ending with the identifier, and the
+     * values of the sorted fields of the document. The token is encoded as URL safe Base64 of its extended JSON
+     *
+     * @since 9.0
+     */
+    public static class KeysetToken {
+
+        private static final String SORT_FIELD = "s";
+        private static final String VALUES_FIELD = "v";
+        private static final JsonWriterSettings JSON_SETTINGS = JsonWriterSettings.builder().outputMode(JsonMode.EXTENDED).build();
+
+        private final Document sort;
+        private final List<Object> values;
+
+        public KeysetToken(Document sort, List<Object> values) {
+            if (sort.size() != values.size()) {
+                throw new IllegalArgumentException("A keyset token requires a value for each sorted field");
+            }
+            this.sort = sort;
+            this.values = values;
+        }
+
+        public Document getSort() {
+            return sort;
+        }
+
+        public List<Object> getValues() {
+            return values;
+        }
+
+        /**
+         * @param sort The sort of a query
+         * @return Whether the token was created for the given sort, including the order of the fields
+         */
+        public boolean matches(Document sort) {
+            return sort != null && new ArrayList<>(this.sort.entrySet()).equals(new ArrayList<>(sort.entrySet()));
+        }
+
+        /**
+         * Builds the filter matching the documents positioned after this token. For a sort on the fields a, b and _id the filter
+         * is {@code a > va or (a = va and b > vb) or (a = va and b = vb and _id > vid)}, with {@code <} for descending fields.
+         *
+         * MongoDB sorts null and missing values before any other value, so after a null value an ascending field matches the
+         * documents where it is not null and a descending field matches no document, while after a non null value a descending
+         * field also matches the documents where it is null
+         *
+         * @return The filter
+         */
+        public Document toFilter() {
+            List<String> fields = new ArrayList<>(sort.keySet());
+            List<Document> clauses = new ArrayList<>(fields.size());
+            for (int i = 0; i < fields.size(); i++) {
+                String field = fields.get(i);
+                Object value = values.get(i);
+                boolean descending = ((Number) sort.get(field)).intValue() < 0;
+                if (value == null && descending) {
+                    // nothing sorts after null in descending order
+                    continue;
+                }
+                Document clause = new Document();
+                for (int j = 0; j < i; j++) {
+                    clause.put(fields.get(j), values.get(j));
+                }
+                if (value == null) {
+                    clause.put(field, new Document(MONGO_NE_OPERATOR, null));
+                } else if (descending) {
+                    clause.put(MONGO_OR_OPERATOR, Arrays.asList(
+                            new Document(field, new Document(MONGO_LT_OPERATOR, value)),
+                            new Document(field, null)
+                    ));
+                } else {
+                    clause.put(field, new Document(MONGO_GT_OPERATOR, value));
+                }
+                clauses.add(clause);
+            }
+            return clauses.size() == 1 ? clauses.get(0) : new Document(MONGO_OR_OPERATOR, clauses);
+        }
+
+        /**
+         * @param codecRegistry The registry used to encode the values
+         * @return The opaque token
+         */
+        public String encode(CodecRegistry codecRegistry) {
+            Document document = new Document(SORT_FIELD, sort).append(VALUES_FIELD, values);
+            String json = document.toJson(JSON_SETTINGS, new DocumentCodec(codecRegistry));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(json.getBytes(StandardCharsets.UTF_8));
+        }
+
+        /**
+         * @param token An opaque token
+         * @return The decoded token
+         * @throws IllegalArgumentException If the token is invalid
+         */
+        @SuppressWarnings("unchecked")
+        public static KeysetToken decode(String token) {
+            final String message = "Invalid keyset pagination token [" + token + "]";
+            Document document;
+            try {
+                document = Document.parse(new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8));
+            } catch (JsonParseException | IllegalArgumentException e) {
+                throw new IllegalArgumentException(message, e);
+            }
+            Object sort = document.get(SORT_FIELD);
+            Object values = document.get(VALUES_FIELD);
+            if (!(sort instanceof Document) || !(values instanceof List) || ((Document) sort).size() != ((List) values).size()) {
+                throw new IllegalArgumentException(message);
+            }
+            return new KeysetToken((Document) sort, (List<Object>) values);
+        }
+    }
+
+    /**
+     * A page of the results of a keyset query, with the token from which the next page is read
+     *
+     * @since 9.0
+     */
+    public static class KeysetResultList<E> extends AbstractList<E> {
+
+        private final List<E> results;
+        private final String nextToken;
+
+        public KeysetResultList(List<E> results, String nextToken) {
+            this.results = results;
+            this.nextToken = nextToken;
+        }
+
+        /**
+         * @return The token of the last result, to pass as the {@code after} argument of the next page, or null if this is the last page
+         */
+        public String getNextToken() {
+            return nextToken;
+        }
+
+        @Override
+        public E get(int index) {
+            return results.get(index);
+        }
+
+        @Override
+        public int size() {
+            return results.size();
+        }
+    }
+
     @SuppressWarnings("serial")
     public static class MongoResultList extends AbstractResultList {
 
         private EntityPersister mongoEntityPersister;
         private MongoCursor cursor;
+        private Iterator<Object> decodingIterator;
         private boolean isCodecPersister;
+        private final boolean readOnly;
 
-        @SuppressWarnings("unchecked")
         public MongoResultList(MongoCursor cursor, int offset, EntityPersister mongoEntityPersister) {
-            super(offset,cursor);
+            this(cursor, offset, mongoEntityPersister, false);
+        }
+
+        /**
+         * @param cursor The cursor
+         * @param offset The offset
+         * @param mongoEntityPersister The persister
+         * @param readOnly Whether the results are returned detached, without caching them in the session or firing post load events
+         * @since 9.0
+         */
+        public MongoResultList(MongoCursor cursor, int offset, EntityPersister mongoEntityPersister, boolean readOnly) {
+            this(cursor, offset, mongoEntityPersister, createDecodingIterator(cursor, mongoEntityPersister, !readOnly, !readOnly), readOnly);
+        }
+
+        @SuppressWarnings("unchecked")
+        private MongoResultList(MongoCursor cursor, int offset, EntityPersister mongoEntityPersister, Iterator<Object> decodingIterator, boolean readOnly) {
+            super(offset, decodingIterator);
             this.cursor = cursor;
+            this.decodingIterator = decodingIterator;
             this.mongoEntityPersister = mongoEntityPersister;
             this.isCodecPersister = mongoEntityPersister instanceof MongoCodecEntityPersister;
+            this.readOnly = readOnly;
         }
 
+        @SuppressWarnings("unchecked")
+        private static Iterator<Object> createDecodingIterator(MongoCursor cursor, EntityPersister mongoEntityPersister, boolean cacheInstances, boolean firePostLoadEvents) {
+            if (mongoEntityPersister instanceof MongoCodecEntityPersister) {
+                int batchSize = AssociationBatchLoader.getBatchSize(mongoEntityPersister.getPersistentEntity());
+                if (batchSize > 0) {
+                    return new BatchLoadingIterator(cursor, (MongoCodecSession) mongoEntityPersister.getSession(), batchSize, cacheInstances, firePostLoadEvents);
+                }
+            }
+            return cursor;
+        }
 
 
         @Override
@@ -1378,8 +2313,8 @@ public class MongoQuery extends BsonQuery implements QueryArgumentsAware {
 
         @Override
         protected Object nextDecoded() {
-            final Object o = cursor.next();
-            if(isCodecPersister) {
+            final Object o = decodingIterator.next();
+            if(isCodecPersister && !readOnly) {
                 final AbstractMongoSession session = (AbstractMongoSession) mongoEntityPersister.getSession();
                 if(!session.contains(o)) {
                     final PersistentEntity entity = mongoEntityPersister.getPersistentEntity();
@@ -1412,7 +2347,9 @@ public class MongoQuery extends BsonQuery implements QueryArgumentsAware {
                     final MongoEntityPersister mep = (MongoEntityPersister) this.mongoEntityPersister;
                     instance = mep.createObjectFromNativeEntry(
                             this.mongoEntityPersister.getPersistentEntity(), (Serializable) id, dbObject);
-                    session.cacheInstance(type, (Serializable) id, instance);
+                    if (!readOnly) {
+                        session.cacheInstance(type, (Serializable) id, instance);
+                    }
                 }
                 return instance;
             }
@@ -1422,6 +2359,116 @@ public class MongoQuery extends BsonQuery implements QueryArgumentsAware {
 
 
 
+    /**
+     * Reads results ahead from the cursor in batches so that associations mapped with {@code fetch: 'batch'} can be resolved
+     * with a single query per batch rather than one query per result. For detached results, such as those of read-only and
+     * streaming queries, the associated instances are not cached in the session either
+     */
+    protected static class BatchLoadingIterator implements Iterator<Object> {
+        private final Iterator<Object> cursor;
+        private final MongoCodecSession session;
+        private final int batchSize;
+        private final boolean cacheInstances;
+        private final boolean firePostLoadEvents;
+        private final Deque<Object> buffer = new ArrayDeque<>();
+
+        protected BatchLoadingIterator(Iterator<Object> cursor, MongoCodecSession session, int batchSize) {
+            this(cursor, session, batchSize, true, true);
+        }
+
+        /**
+         * @param cursor The cursor
+         * @param session The session
+         * @param batchSize The number of results to read ahead
+         * @param cacheInstances Whether the associated instances are cached in the session
+         * @param firePostLoadEvents Whether the post load event is fired for associated instances that are not cached
+         * @since 9.0
+         */
+        protected BatchLoadingIterator(Iterator<Object> cursor, MongoCodecSession session, int batchSize, boolean cacheInstances, boolean firePostLoadEvents) {
+            this.cursor = cursor;
+            this.session = session;
+            this.batchSize = batchSize;
+            this.cacheInstances = cacheInstances;
+            this.firePostLoadEvents = firePostLoadEvents;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !buffer.isEmpty() || cursor.hasNext();
+        }
+
+        @Override
+        public Object next() {
+            if (buffer.isEmpty()) {
+                readBatch();
+            }
+            if (buffer.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            return buffer.poll();
+        }
+
+        protected void readBatch() {
+            final AssociationBatchLoader previous = session.getAssociationBatchLoader();
+            final AssociationBatchLoader batchLoader = new AssociationBatchLoader(session, cacheInstances, firePostLoadEvents);
+            session.setAssociationBatchLoader(batchLoader);
+            try {
+                while (buffer.size() < batchSize && cursor.hasNext()) {
+                    buffer.add(cursor.next());
+                }
+            } finally {
+                session.setAssociationBatchLoader(previous);
+            }
+            if (batchLoader.hasPending()) {
+                batchLoader.load();
+            }
+        }
+    }
+
+    /**
+     * Fires the post load event for each result of a streaming query without caching the instance in the session, unless the
+     * query is read-only
+     */
+    protected static class StreamingIterator implements Iterator<Object> {
+        private final Iterator<Object> cursor;
+        private final EntityPersister persister;
+        private final boolean readOnly;
+
+        protected StreamingIterator(Iterator<Object> cursor, EntityPersister persister, boolean readOnly) {
+            this.cursor = cursor;
+            this.persister = persister;
+            this.readOnly = readOnly;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return cursor.hasNext();
+        }
+
+        @Override
+        public Object next() {
+            final Object o = cursor.next();
+            if (readOnly) {
+                return o;
+            }
+            final AbstractMongoSession session = (AbstractMongoSession) persister.getSession();
+            if (!session.contains(o)) {
+                final PersistentEntity entity = persister.getPersistentEntity();
+                persister.firePostLoadEvent(entity, session.createEntityAccess(entity, o));
+            }
+            return o;
+        }
+    }
+
+    /**
+     * The server command used to execute the projections of a query
+     *
+     * @since 9.0
+     */
+    protected enum ProjectionPlan {
+        FIND, COUNT, DISTINCT, AGGREGATE
+    }
+
     public static class ProjectedProperty {
         public Projection projection;
         public String projectionKey;
@@ -1464,8 +2511,11 @@ public class MongoQuery extends BsonQuery implements QueryArgumentsAware {
                 aggregationPipeline.add(new Document(MATCH_OPERATOR, query));
             }
 
+            int max = mongoQuery.max;
+            int offset = mongoQuery.offset;
             List<Order> orderBy = mongoQuery.getOrderBy();
-            if (!orderBy.isEmpty()) {
+            // $group does not preserve the order of its input, so sorting only matters when the input is paginated
+            if (!orderBy.isEmpty() && (max > 0 || offset > 0)) {
                 Document sortBy = new Document();
                 Document sort = new Document(SORT_OPERATOR, sortBy);
                 for (Order order : orderBy) {
@@ -1475,11 +2525,9 @@ public class MongoQuery extends BsonQuery implements QueryArgumentsAware {
                 aggregationPipeline.add(sort);
             }
 
-            int max = mongoQuery.max;
             if (max > 0) {
                 aggregationPipeline.add(new Document("$limit", max));
             }
-            int offset = mongoQuery.offset;
             if (offset > 0) {
                 aggregationPipeline.add(new Document("$skip", offset));
             }
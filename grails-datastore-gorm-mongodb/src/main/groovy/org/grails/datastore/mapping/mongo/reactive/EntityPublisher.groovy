@@ -0,0 +1,233 @@
+/*
+ * Copyright 2024 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.grails.datastore.mapping.mongo.reactive
+
+import groovy.transform.CompileStatic
+import org.bson.BsonReader
+import org.bson.RawBsonDocument
+import org.bson.codecs.DecoderContext
+import org.grails.datastore.mapping.core.DatastoreUtils
+import org.grails.datastore.mapping.engine.EntityAccess
+import org.grails.datastore.mapping.engine.EntityPersister
+import org.grails.datastore.mapping.model.PersistentEntity
+import org.grails.datastore.mapping.mongo.AbstractMongoSession
+import org.grails.datastore.mapping.mongo.MongoDatastore
+import org.grails.datastore.mapping.mongo.engine.codecs.PersistentEntityCodec
+import org.reactivestreams.Publisher
+import org.reactivestreams.Subscriber
+import org.reactivestreams.Subscription
+
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * A {@link Publisher} of entities that decodes each document emitted by a reactive streams driver publisher with the
+ * {@link PersistentEntityCodec} of the entity.
+ *
+ * Each subscription connects its own session. Documents are decoded with the codecs of the session, so that instances are
+ * cached and associations are initialized as they are for blocking queries. As that may use the blocking API, documents are
+ * decoded on the reactive flush executor of the datastore, never on a thread of the driver, with the session bound while the
+ * post load event is fired. The session is disconnected once the subscription terminates, so instances are detached once the
+ * publisher completes
+ *
+ * @since 9.0
+ */
+@CompileStatic
+class EntityPublisher<T> implements Publisher<T> {
+
+    private static final DecoderContext DECODER_CONTEXT = DecoderContext.builder().build()
+
+    final MongoDatastore datastore
+    final PersistentEntity entity
+    protected final Publisher<RawBsonDocument> documents
+
+    EntityPublisher(MongoDatastore datastore, PersistentEntity entity, Publisher<RawBsonDocument> documents) {
+        this.datastore = datastore
+        this.entity = entity
+        this.documents = documents
+    }
+
+    @Override
+    void subscribe(Subscriber<? super T> subscriber) {
+        documents.subscribe(new DecodingSubscriber<T>(this, subscriber))
+    }
+
+    /**
+     * Decodes a document within the session of a subscription
+     *
+     * @param session The session of the subscription
+     * @param document The document
+     * @return The decoded instance
+     */
+    protected T decode(AbstractMongoSession session, RawBsonDocument document) {
+        PersistentEntityCodec codec = (PersistentEntityCodec) session.codecRegistry.get(entity.javaClass)
+        BsonReader reader = document.asBsonReader()
+        Object instance
+        try {
+            instance = codec.decode(reader, DECODER_CONTEXT)
+        } finally {
+            reader.close()
+        }
+        if(!session.contains(instance)) {
+            PersistentEntity persistentEntity = session.mappingContext.getPersistentEntity(instance.getClass().name) ?: entity
+            EntityAccess entityAccess = session.createEntityAccess(persistentEntity, instance)
+            Object id = entityAccess.identifier
+            if(id != null) {
+                session.cacheInstance(persistentEntity.javaClass, (Serializable) id, instance)
+            }
+            ((EntityPersister) session.getPersister(persistentEntity)).firePostLoadEvent(persistentEntity, entityAccess)
+        }
+        return (T) instance
+    }
+
+    /**
+     * Relays the demand of the downstream subscriber to the driver and decodes the documents it emits. Decoding may load
+     * associations with the blocking API and fires the post load event, so the signals of the driver are queued and handled one
+     * at a time, in order, on the {@link MongoDatastore#getReactiveFlushExecutor() reactive flush executor} of the datastore
+     */
+    protected static class DecodingSubscriber<T> implements Subscriber<RawBsonDocument>, Subscription {
+        private static final Object COMPLETE = new Object()
+        private static final Object CANCEL = new Object()
+
+        private final EntityPublisher<T> publisher
+        private final Subscriber<? super T> downstream
+        private final Queue<Object> signals = new ConcurrentLinkedQueue<>()
+        private final AtomicInteger pending = new AtomicInteger()
+        private Subscription upstream
+        private volatile AbstractMongoSession session
+        private volatile boolean done
+        private volatile boolean cancelled
+
+        DecodingSubscriber(EntityPublisher<T> publisher, Subscriber<? super T> downstream) {
+            this.publisher = publisher
+            this.downstream = downstream
+        }
+
+        @Override
+        void onSubscribe(Subscription subscription) {
+            upstream = subscription
+            session = (AbstractMongoSession) publisher.datastore.connect()
+            downstream.onSubscribe(this)
+        }
+
+        @Override
+        void onNext(RawBsonDocument document) {
+            if(done || cancelled) return
+            signal(document)
+        }
+
+        @Override
+        void onError(Throwable throwable) {
+            signal(throwable)
+        }
+
+        @Override
+        void onComplete() {
+            signal(COMPLETE)
+        }
+
+        @Override
+        void request(long n) {
+            upstream.request(n)
+        }
+
+        @Override
+        void cancel() {
+            cancelled = true
+            upstream.cancel()
+            signal(CANCEL)
+        }
+
+        private void signal(Object signal) {
+            signals.offer(signal)
+            if(pending.getAndIncrement() != 0) return
+
+            try {
+                publisher.datastore.reactiveFlushExecutor.execute {
+                    drain()
+                }
+            } catch (RejectedExecutionException e) {
+                signals.clear()
+                pending.set(0)
+                upstream.cancel()
+                terminate(e)
+            }
+        }
+
+        private void drain() {
+            while(true) {
+                Object signal = signals.poll()
+                if(signal != null) {
+                    handle(signal)
+                }
+                if(pending.decrementAndGet() == 0) return
+            }
+        }
+
+        private void handle(Object signal) {
+            if(signal.is(COMPLETE)) {
+                terminate(null)
+            }
+            else if(signal.is(CANCEL)) {
+                if(!done) {
+                    done = true
+                    disconnect()
+                }
+            }
+            else if(signal instanceof Throwable) {
+                terminate((Throwable) signal)
+            }
+            else if(!done && !cancelled) {
+                AbstractMongoSession current = session
+                T instance
+                DatastoreUtils.bindNewSession(current)
+                try {
+                    instance = publisher.decode(current, (RawBsonDocument) signal)
+                } catch (Throwable e) {
+                    upstream.cancel()
+                    terminate(e)
+                    return
+                } finally {
+                    DatastoreUtils.unbindSession(current)
+                }
+                downstream.onNext(instance)
+            }
+        }
+
+        private void terminate(Throwable failure) {
+            if(done) return
+            done = true
+            disconnect()
+            if(cancelled) return
+
+            if(failure != null) {
+                downstream.onError(failure)
+            }
+            else {
+                downstream.onComplete()
+            }
+        }
+
+        private void disconnect() {
+            AbstractMongoSession current = session
+            if(current != null) {
+                session = null
+                current.disconnect()
+            }
+        }
+    }
+}
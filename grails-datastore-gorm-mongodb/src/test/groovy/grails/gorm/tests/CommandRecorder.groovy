@@ -0,0 +1,61 @@
+package grails.gorm.tests
+
+import com.mongodb.MongoClientSettings
+import com.mongodb.event.CommandFailedEvent
+import com.mongodb.event.CommandListener
+import com.mongodb.event.CommandStartedEvent
+import com.mongodb.event.CommandSucceededEvent
+import org.bson.BsonDocument
+import org.grails.datastore.mapping.mongo.connections.MongoConnectionSourceCustomizer
+import org.grails.datastore.mapping.mongo.connections.MongoConnectionSourceSettings
+
+import java.util.concurrent.CopyOnWriteArrayList
+
+/**
+ * Records the commands sent by the clients of a datastore, so that specs can assert the number of round trips
+ */
+class CommandRecorder implements CommandListener, MongoConnectionSourceCustomizer {
+
+    final List<BsonDocument> commands = new CopyOnWriteArrayList<>()
+
+    @Override
+    void customize(String connectionSourceName, MongoConnectionSourceSettings settings, MongoClientSettings.Builder builder) {
+        builder.addCommandListener(this)
+    }
+
+    @Override
+    void commandStarted(CommandStartedEvent event) {
+        commands.add(event.command.clone())
+    }
+
+    @Override
+    void commandSucceeded(CommandSucceededEvent event) {
+    }
+
+    @Override
+    void commandFailed(CommandFailedEvent event) {
+    }
+
+    void clear() {
+        commands.clear()
+    }
+
+    /**
+     * @param commandName The name of the command, for example find or aggregate
+     * @param collectionName The collection the command was sent to or null for any collection
+     * @return The commands with the given name sent to the collection
+     */
+    List<BsonDocument> getCommands(String commandName, String collectionName = null) {
+        commands.findAll { BsonDocument command ->
+            command.getFirstKey() == commandName &&
+                    (collectionName == null || (command.get(commandName).isString() && command.getString(commandName).value == collectionName))
+        }
+    }
+
+    /**
+     * @return The number of commands with the given name sent to the collection
+     */
+    int count(String commandName, String collectionName = null) {
+        getCommands(commandName, collectionName).size()
+    }
+}
@@ -8,6 +8,7 @@ import grails.gorm.validation.PersistentEntityValidator
 import org.bson.Document
 import org.grails.datastore.bson.query.BsonQuery
 import org.grails.datastore.gorm.GormEnhancer
+import org.grails.datastore.gorm.events.DefaultApplicationEventPublisher
 import org.grails.datastore.gorm.mongo.Birthday
 import org.grails.datastore.gorm.validation.constraints.eval.DefaultConstraintEvaluator
 import org.grails.datastore.gorm.validation.constraints.registry.DefaultConstraintRegistry
@@ -19,6 +20,7 @@ import org.grails.datastore.mapping.model.PersistentProperty
 import org.grails.datastore.mapping.mongo.AbstractMongoSession
 import org.grails.datastore.mapping.mongo.MongoDatastore
 import org.grails.datastore.mapping.mongo.config.MongoSettings
+import org.grails.datastore.mapping.mongo.connections.MongoConnectionSourceFactory
 import org.grails.datastore.mapping.query.Query
 import org.springframework.context.support.GenericApplicationContext
 import org.springframework.context.support.StaticMessageSource
@@ -48,6 +50,7 @@ abstract class GormDatastoreSpec extends Specification {
     @Shared @AutoCleanup MongoDatastore mongoDatastore
     @Shared MongoClient mongoClient
     @Shared GrailsApplication grailsApplication
+    @Shared CommandRecorder commands = new CommandRecorder()
     @Shared MappingContext mappingContext
 
     AbstractMongoSession session
@@ -65,7 +68,7 @@ abstract class GormDatastoreSpec extends Specification {
         if(System.getenv('TRAVIS')) {
             config.put(MongoSettings.SETTING_DECIMAL_TYPE, false)
         }
-        mongoDatastore = new MongoDatastore(config << getConfiguration())
+        mongoDatastore = new MongoDatastore(DatastoreUtils.createPropertyResolver(config << getConfiguration()), new MongoConnectionSourceFactory(customizers: [commands]), new DefaultApplicationEventPublisher())
         mappingContext = mongoDatastore.mappingContext
         mappingContext.mappingFactory.registerCustomType(new AbstractMappingAwareCustomTypeMarshaller<Birthday, Document, Document>(Birthday) {
             @Override
@@ -117,6 +120,7 @@ abstract class GormDatastoreSpec extends Specification {
     }
 
     void setup() {
+        commands.clear()
         session = mongoDatastore.connect()
         DatastoreUtils.bindSession session
     }
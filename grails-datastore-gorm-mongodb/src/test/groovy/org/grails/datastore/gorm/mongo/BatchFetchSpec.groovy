@@ -0,0 +1,114 @@
+package org.grails.datastore.gorm.mongo
+
+import grails.gorm.tests.GormDatastoreSpec
+import grails.persistence.Entity
+import org.grails.datastore.mapping.mongo.config.MongoAttribute
+
+import jakarta.persistence.FetchType
+
+class BatchFetchSpec extends GormDatastoreSpec {
+
+    @Override
+    List getDomainClasses() {
+        [BatchFetchBook, EagerFetchBook, BatchFetchAuthor]
+    }
+
+    void "Test batch fetch mapping is configured"() {
+        when:"The mapping for a batch fetched association is read"
+        MongoAttribute attribute = (MongoAttribute) session.mappingContext
+                .getPersistentEntity(BatchFetchBook.name)
+                .getPropertyByName('author')
+                .mapping.mappedForm
+
+        then:"The association is eager and batch fetched"
+        attribute.batchFetch
+        attribute.batchSize == 2
+        attribute.fetchStrategy == FetchType.EAGER
+    }
+
+    void "Test batch fetched associations are loaded when results are read"() {
+        given:"Some books with authors"
+        def authors = (1..3).collect { new BatchFetchAuthor(name: "Author $it").save() }
+        (1..7).each { new BatchFetchBook(title: "Book $it", author: authors[it % 3]).save() }
+        session.flush()
+        session.clear()
+
+        when:"The books are listed"
+        commands.clear()
+        def books = BatchFetchBook.list(sort: 'title')
+
+        then:"The authors are loaded and are not proxies"
+        books.size() == 7
+        books.every { it.author != null && it.author.name.startsWith('Author') }
+        books.every { !session.mappingContext.proxyFactory.isProxy(it.author) }
+        books.find { it.title == 'Book 1' }.author.name == 'Author 2'
+
+        and:"Instances of the same author are shared"
+        books.collect { System.identityHashCode(it.author) }.unique().size() == 3
+
+        and:"The authors are read with one query per batch of two books, except for the authors already in the session"
+        commands.count('find', collectionName(BatchFetchAuthor)) == 2
+        commands.getCommands('find', collectionName(BatchFetchAuthor)).every { it.getDocument('filter').containsKey('_id') }
+    }
+
+    void "Test associations that are not batch fetched are loaded once per result"() {
+        given:"Some books with authors"
+        def authors = (1..3).collect { new BatchFetchAuthor(name: "Author $it").save() }
+        (1..7).each { new EagerFetchBook(title: "Book $it", author: authors[it % 3]).save() }
+        session.flush()
+        session.clear()
+
+        when:"The books are listed"
+        commands.clear()
+        def books = EagerFetchBook.list(sort: 'title')
+
+        then:"Each author that is not in the session is read with its own query"
+        books*.author*.name.every { it.startsWith('Author') }
+        commands.count('find', collectionName(BatchFetchAuthor)) == 3
+    }
+
+    void "Test batch fetched associations are loaded when retrieving a single result"() {
+        given:"A book with an author"
+        def author = new BatchFetchAuthor(name: "Stephen King").save()
+        new BatchFetchBook(title: "It", author: author).save(flush: true)
+        session.clear()
+
+        when:"The book is read"
+        def book = BatchFetchBook.findByTitle("It")
+
+        then:"The author is loaded"
+        book.author.name == "Stephen King"
+    }
+
+    private String collectionName(Class type) {
+        mongoDatastore.getCollectionName(session.mappingContext.getPersistentEntity(type.name))
+    }
+}
+
+@Entity
+class BatchFetchBook {
+    String id
+    String title
+    BatchFetchAuthor author
+
+    static mapping = {
+        author fetch: 'batch', batchSize: 2
+    }
+}
+
+@Entity
+class EagerFetchBook {
+    String id
+    String title
+    BatchFetchAuthor author
+
+    static mapping = {
+        author fetch: 'join'
+    }
+}
+
+@Entity
+class BatchFetchAuthor {
+    String id
+    String name
+}
@@ -0,0 +1,405 @@
+package org.grails.datastore.gorm.mongo
+
+import com.mongodb.MongoCommandException
+import com.mongodb.ServerAddress
+import com.mongodb.client.ChangeStreamIterable
+import com.mongodb.client.MongoChangeStreamCursor
+import com.mongodb.client.model.changestream.ChangeStreamDocument
+import com.mongodb.client.model.changestream.OperationType
+import grails.gorm.tests.GormDatastoreSpec
+import grails.mongodb.MongoEntity
+import grails.persistence.Entity
+import org.bson.BsonDocument
+import org.bson.BsonDocumentReader
+import org.bson.BsonDouble
+import org.bson.BsonInt32
+import org.bson.BsonObjectId
+import org.bson.BsonString
+import org.bson.BsonValue
+import org.bson.Document
+import org.bson.codecs.DecoderContext
+import org.bson.types.ObjectId
+import org.grails.datastore.mapping.cache.TPCacheAdapter
+import org.grails.datastore.mapping.model.PersistentEntity
+import org.grails.datastore.mapping.mongo.MongoDatastore
+import org.grails.datastore.mapping.mongo.cache.ChangeStreamCacheInvalidator
+import org.grails.datastore.mapping.mongo.connections.AbstractMongoConnectionSourceSettings
+import spock.util.concurrent.PollingConditions
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.atomic.AtomicInteger
+
+class CacheInvalidationSpec extends GormDatastoreSpec {
+
+    @Override
+    List getDomainClasses() {
+        [InvalidatedPlanet, InvalidatedMoon]
+    }
+
+    void "Test a changed document is evicted from the second-level cache"() {
+        given:"A cached entity"
+        def planet = new InvalidatedPlanet(name: 'Mars', moons: 2).save(flush: true)
+        session.clear()
+        InvalidatedPlanet.get(planet.id)
+        session.clear()
+        TPCacheAdapter<Object> cache = mongoDatastore.entityCacheRepository.getTPCacheAdapter(planetEntity)
+
+        expect:"The entity is cached"
+        cache.getCachedEntry(planet.id) != null
+
+        when:"The document is updated by another node"
+        InvalidatedPlanet.collection.updateOne(new Document('_id', planet.id), new Document('$set', new Document('moons', 3)))
+        invalidator.onChange(planetEntity, OperationType.UPDATE, new BsonObjectId(planet.id))
+
+        then:"The entity is evicted and the change is read"
+        cache.getCachedEntry(planet.id) == null
+        InvalidatedPlanet.get(planet.id).moons == 3
+    }
+
+    void "Test inserted documents invalidate the cached queries of the collection"() {
+        given:"A cached query"
+        new InvalidatedPlanet(name: 'Venus', moons: 0).save(flush: true)
+        session.clear()
+
+        expect:"The query is cached"
+        InvalidatedPlanet.findAllByMoons(0, [cache: true]).size() == 1
+
+        when:"A document is inserted by another node"
+        InvalidatedPlanet.collection.insertOne(new Document('name', 'Mercury').append('moons', 0))
+        session.clear()
+
+        then:"The cached result is still served"
+        InvalidatedPlanet.findAllByMoons(0, [cache: true]).size() == 1
+
+        when:"The change is received"
+        invalidator.onChange(planetEntity, OperationType.INSERT, null)
+        session.clear()
+
+        then:"The query is executed again"
+        InvalidatedPlanet.findAllByMoons(0, [cache: true]).size() == 2
+    }
+
+    void "Test other changes flush the caches of the collection"() {
+        given:"A cached entity"
+        def planet = new InvalidatedPlanet(name: 'Jupiter', moons: 95).save(flush: true)
+        session.clear()
+        InvalidatedPlanet.get(planet.id)
+        TPCacheAdapter<Object> cache = mongoDatastore.entityCacheRepository.getTPCacheAdapter(planetEntity)
+
+        when:"The collection is dropped"
+        invalidator.onChange(planetEntity, OperationType.DROP, null)
+
+        then:"The cache is empty"
+        cache.getCachedEntry(planet.id) == null
+    }
+
+    void "Test resume tokens are persisted"() {
+        given:"A resume token"
+        BsonDocument token = new BsonDocument('_data', new BsonString('8263A1B2C3000000012B022C0100296E5A1004'))
+
+        when:"The token is saved"
+        invalidator.saveResumeToken(databaseName, token)
+
+        then:"It is loaded"
+        invalidator.loadResumeToken(databaseName) == token
+
+        when:"The token is removed"
+        invalidator.saveResumeToken(databaseName, null)
+
+        then:"There is no token"
+        invalidator.loadResumeToken(databaseName) == null
+    }
+
+    void "Test the watched entities and settings"() {
+        expect:"Invalidation is disabled by default"
+        !invalidator.running
+        invalidator.watchedEntities.contains(planetEntity)
+
+        when:"The entities are restricted"
+        def settings = new AbstractMongoConnectionSourceSettings.CacheInvalidationSettings(enabled: true, entities: ['Unknown'])
+        def restricted = new ChangeStreamCacheInvalidator(mongoDatastore, settings)
+
+        then:"Only the configured entities are watched"
+        restricted.watchedEntities.isEmpty()
+        new ChangeStreamCacheInvalidator(mongoDatastore, new AbstractMongoConnectionSourceSettings.CacheInvalidationSettings(entities: ['InvalidatedPlanet'])).watchedEntities == [planetEntity]
+    }
+
+    void "Test a single change stream is opened for the collections of a database"() {
+        given:"An invalidator watching two entities"
+        ScriptedInvalidator scripted = new ScriptedInvalidator(mongoDatastore, new ConcurrentHashMap<>(), ['InvalidatedPlanet', 'InvalidatedMoon'])
+        scripted.cursors.add([change('update', '01'), change('insert', '02', moonCollection), change('insert', '03', 'unwatched'),
+                              change('dropDatabase', '04', null)])
+
+        when:"The database is watched"
+        scripted.start()
+        conditions.eventually { assert scripted.changes.size() == 4 }
+        scripted.close()
+
+        then:"One stream was opened for both collections"
+        scripted.opened == ['start']
+        scripted.watchedCollections == [planetCollection, moonCollection] as Set
+
+        and:"The changes were dispatched to the entities of the changed collection, or to every entity for the database"
+        scripted.changes == [OperationType.UPDATE, OperationType.INSERT, OperationType.DROP_DATABASE, OperationType.DROP_DATABASE]
+        scripted.changedEntities == [planetEntity, moonEntity, planetEntity, moonEntity]
+        scripted.flushes.get() == 2
+    }
+
+    void "Test the change stream of a database only reports the changes of the watched collections"() {
+        given:"Sample changes, evaluated by the server against the pipeline"
+        def samples = mongoClient.getDatabase(databaseName).getCollection('changeSamples')
+        samples.drop()
+        samples.insertMany([
+                new Document('_id', 1).append('operationType', 'insert').append('ns', new Document('db', databaseName).append('coll', planetCollection)),
+                new Document('_id', 2).append('operationType', 'insert').append('ns', new Document('db', databaseName).append('coll', 'unwatched')),
+                new Document('_id', 3).append('operationType', 'rename').append('ns', new Document('db', databaseName).append('coll', 'unwatched'))
+                                         .append('to', new Document('db', databaseName).append('coll', planetCollection)),
+                new Document('_id', 4).append('operationType', 'dropDatabase').append('ns', new Document('db', databaseName))
+        ])
+
+        expect:"Only the changes of the watched collection and of the database are matched"
+        samples.aggregate(ChangeStreamCacheInvalidator.createPipeline([planetCollection])).collect { Document d -> d.getInteger('_id') }.sort() == [1, 3, 4]
+
+        cleanup:
+        samples?.drop()
+    }
+
+    void "Test the watcher resumes after the persisted token when restarted"() {
+        given:"A persisted token and a change stream with a change"
+        Map<String, BsonDocument> tokens = new ConcurrentHashMap<>()
+        ScriptedInvalidator first = new ScriptedInvalidator(mongoDatastore, tokens)
+        first.saveResumeToken(databaseName, token('01'))
+        first.cursors.add([change('update', '02')])
+
+        when:"The database is watched until the change is received"
+        first.start()
+        conditions.eventually { assert first.changes == [OperationType.UPDATE] }
+        first.close()
+
+        then:"The stream was resumed after the persisted token and the token of the change is persisted"
+        first.opened == ['resumeAfter 01']
+        first.loadResumeToken(databaseName) == token('02')
+
+        when:"The invalidator is restarted"
+        ScriptedInvalidator second = new ScriptedInvalidator(mongoDatastore, tokens)
+        second.start()
+        conditions.eventually { assert second.opened.size() == 1 }
+        second.close()
+
+        then:"The stream is resumed after the last change"
+        second.opened == ['resumeAfter 02']
+    }
+
+    void "Test the caches are flushed when the change stream cannot be resumed with error #code"() {
+        given:"A persisted token that cannot be resumed"
+        ScriptedInvalidator scripted = new ScriptedInvalidator(mongoDatastore, new ConcurrentHashMap<>())
+        scripted.saveResumeToken(databaseName, token('01'))
+        scripted.cursors.add(serverError(code))
+        scripted.cursors.add([])
+
+        when:"The database is watched"
+        scripted.start()
+        conditions.eventually { assert scripted.opened.size() == 2 }
+        scripted.close()
+
+        then:"The token is discarded, the caches are flushed and a new stream is opened"
+        scripted.opened == ['resumeAfter 01', 'start']
+        scripted.flushes.get() == 1
+        scripted.loadResumeToken(databaseName) == null
+
+        where:
+        code << [ChangeStreamCacheInvalidator.CHANGE_STREAM_HISTORY_LOST,
+                 ChangeStreamCacheInvalidator.CHANGE_STREAM_FATAL_ERROR,
+                 ChangeStreamCacheInvalidator.INVALID_RESUME_TOKEN]
+    }
+
+    void "Test a new stream starts after an invalidation"() {
+        given:"A change stream that is invalidated"
+        ScriptedInvalidator scripted = new ScriptedInvalidator(mongoDatastore, new ConcurrentHashMap<>())
+        scripted.cursors.add([change('insert', '02'), change('invalidate', '03')])
+        scripted.cursors.add([])
+
+        when:"The database is watched"
+        scripted.start()
+        conditions.eventually { assert scripted.opened.size() == 2 }
+        scripted.close()
+
+        then:"The caches are flushed and the new stream starts after the invalidation"
+        scripted.changes == [OperationType.INSERT, OperationType.INVALIDATE]
+        scripted.flushes.get() == 1
+        scripted.opened == ['start', 'startAfter 03']
+        scripted.loadResumeToken(databaseName) == token('03')
+    }
+
+    void "Test the watcher stops when change streams are not supported"() {
+        given:"A server without change streams"
+        ScriptedInvalidator scripted = new ScriptedInvalidator(mongoDatastore, new ConcurrentHashMap<>())
+        scripted.cursors.add(serverError(ChangeStreamCacheInvalidator.CHANGE_STREAM_NOT_SUPPORTED))
+        scripted.cursors.add([])
+
+        when:"The database is watched for longer than the retry delay"
+        scripted.start()
+        Thread.sleep(1500)
+        scripted.close()
+
+        then:"The stream is not opened again"
+        scripted.opened == ['start']
+        scripted.flushes.get() == 0
+    }
+
+    private PollingConditions getConditions() {
+        new PollingConditions(timeout: 5)
+    }
+
+    private static BsonDocument token(String data) {
+        new BsonDocument('_data', new BsonString(data))
+    }
+
+    private ChangeStreamDocument<Document> change(String operationType, String data, String collection = planetCollection) {
+        BsonDocument document = new BsonDocument('_id', token(data)).append('operationType', new BsonString(operationType))
+        if (operationType != 'invalidate') {
+            BsonDocument namespace = new BsonDocument('db', new BsonString(databaseName))
+            if (collection != null) {
+                namespace.append('coll', new BsonString(collection))
+            }
+            document.append('ns', namespace)
+        }
+        if (operationType in ['insert', 'update', 'replace', 'delete']) {
+            document.append('documentKey', new BsonDocument('_id', new BsonObjectId(new ObjectId())))
+        }
+        ChangeStreamDocument.createCodec(Document, mongoDatastore.codecRegistry).decode(new BsonDocumentReader(document), DecoderContext.builder().build())
+    }
+
+    private static MongoCommandException serverError(int code) {
+        new MongoCommandException(new BsonDocument('ok', new BsonDouble(0)).append('code', new BsonInt32(code)).append('errmsg', new BsonString('Scripted error')), new ServerAddress())
+    }
+
+    private ChangeStreamCacheInvalidator getInvalidator() {
+        mongoDatastore.cacheInvalidator
+    }
+
+    private PersistentEntity getPlanetEntity() {
+        session.mappingContext.getPersistentEntity(InvalidatedPlanet.name)
+    }
+
+    private PersistentEntity getMoonEntity() {
+        session.mappingContext.getPersistentEntity(InvalidatedMoon.name)
+    }
+
+    private String getPlanetCollection() {
+        mongoDatastore.getCollectionName(planetEntity)
+    }
+
+    private String getMoonCollection() {
+        mongoDatastore.getCollectionName(moonEntity)
+    }
+
+    private String getDatabaseName() {
+        mongoDatastore.getDatabaseName(planetEntity)
+    }
+}
+
+@Entity
+class InvalidatedPlanet implements MongoEntity<InvalidatedPlanet> {
+    ObjectId id
+    String name
+    Integer moons
+
+    static mapping = {
+        cache true
+    }
+}
+
+@Entity
+class InvalidatedMoon implements MongoEntity<InvalidatedMoon> {
+    ObjectId id
+    String name
+}
+
+/**
+ * Runs the watch loop against scripted change streams: each item of {@code cursors} is either the changes of a cursor or the
+ * exception thrown when it is opened. Resume tokens are held in memory, keyed by database
+ */
+class ScriptedInvalidator extends ChangeStreamCacheInvalidator {
+
+    final Map<String, BsonDocument> tokens
+    final Queue<Object> cursors = new ConcurrentLinkedQueue<>()
+    final List<String> opened = new CopyOnWriteArrayList<>()
+    final List<OperationType> changes = new CopyOnWriteArrayList<>()
+    final List<PersistentEntity> changedEntities = new CopyOnWriteArrayList<>()
+    final AtomicInteger flushes = new AtomicInteger()
+    volatile Set<String> watchedCollections
+
+    ScriptedInvalidator(MongoDatastore datastore, Map<String, BsonDocument> tokens, List<String> entities = ['InvalidatedPlanet']) {
+        super(datastore, new AbstractMongoConnectionSourceSettings.CacheInvalidationSettings(enabled: true, entities: entities, nodeName: 'scripted'))
+        this.tokens = tokens
+    }
+
+    @Override
+    protected ChangeStreamIterable<Document> watch(String databaseName, Collection<String> collectionNames) {
+        watchedCollections = new HashSet<>(collectionNames)
+        String position = 'start'
+        ChangeStreamIterable<Document> iterable
+        iterable = [
+                maxAwaitTime: { time, unit -> iterable },
+                resumeAfter : { BsonDocument token -> position = "resumeAfter ${token.getString('_data').value}"; iterable },
+                startAfter  : { BsonDocument token -> position = "startAfter ${token.getString('_data').value}"; iterable },
+                cursor      : { ->
+                    opened.add(position)
+                    Object next = cursors.poll()
+                    if (next instanceof RuntimeException) {
+                        throw (RuntimeException) next
+                    }
+                    createCursor((List<ChangeStreamDocument<Document>>) (next ?: []))
+                }
+        ] as ChangeStreamIterable<Document>
+        return iterable
+    }
+
+    private static MongoChangeStreamCursor<ChangeStreamDocument<Document>> createCursor(List<ChangeStreamDocument<Document>> changes) {
+        Queue<ChangeStreamDocument<Document>> queue = new ConcurrentLinkedQueue<>(changes)
+        BsonDocument current = null
+        [
+                tryNext       : { ->
+                    ChangeStreamDocument<Document> change = queue.poll()
+                    if (change == null) {
+                        Thread.sleep(5)
+                    } else {
+                        current = change.resumeToken
+                    }
+                    change
+                },
+                getResumeToken: { -> current },
+                close         : { -> }
+        ] as MongoChangeStreamCursor<ChangeStreamDocument<Document>>
+    }
+
+    @Override
+    void onChange(PersistentEntity entity, OperationType operationType, BsonValue documentId) {
+        changes.add(operationType)
+        changedEntities.add(entity)
+        super.onChange(entity, operationType, documentId)
+    }
+
+    @Override
+    void flush(PersistentEntity entity) {
+        flushes.incrementAndGet()
+        super.flush(entity)
+    }
+
+    @Override
+    BsonDocument loadResumeToken(String databaseName) {
+        tokens.get(databaseName)
+    }
+
+    @Override
+    void saveResumeToken(String databaseName, BsonDocument token) {
+        if (token == null) {
+            tokens.remove(databaseName)
+        } else {
+            tokens.put(databaseName, token)
+        }
+    }
+}
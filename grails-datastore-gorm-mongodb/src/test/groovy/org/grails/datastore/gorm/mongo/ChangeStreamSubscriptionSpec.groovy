@@ -0,0 +1,393 @@
+package org.grails.datastore.gorm.mongo
+
+import com.mongodb.MongoSocketReadException
+import com.mongodb.ServerAddress
+import com.mongodb.client.MongoChangeStreamCursor
+import com.mongodb.client.MongoCollection
+import com.mongodb.client.model.Filters
+import com.mongodb.client.model.changestream.ChangeStreamDocument
+import com.mongodb.client.model.changestream.OperationType
+import grails.gorm.tests.GormDatastoreSpec
+import grails.mongodb.MongoEntity
+import grails.persistence.Entity
+import org.bson.BsonDocument
+import org.bson.BsonDocumentReader
+import org.bson.BsonObjectId
+import org.bson.BsonString
+import org.bson.Document
+import org.bson.RawBsonDocument
+import org.bson.codecs.DecoderContext
+import org.bson.conversions.Bson
+import org.bson.types.ObjectId
+import org.grails.datastore.mapping.model.PersistentEntity
+import org.grails.datastore.mapping.mongo.MongoDatastore
+import org.grails.datastore.mapping.mongo.changes.ChangeEvent
+import org.grails.datastore.mapping.mongo.changes.ChangeStreamSubscription
+import org.grails.datastore.mapping.mongo.query.MongoQuery
+import spock.lang.Requires
+import spock.util.concurrent.PollingConditions
+
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.TimeUnit
+import java.util.function.Consumer
+
+class ChangeStreamSubscriptionSpec extends GormDatastoreSpec {
+
+    @Override
+    List getDomainClasses() {
+        [WatchedBook, WatchedEbook]
+    }
+
+    void "Test criteria are matched against the full document"() {
+        given:"A query"
+        MongoQuery query = (MongoQuery) session.createQuery(WatchedBook)
+        query.eq('title', 'Dune').gt('pages', 100)
+
+        when:"The pipeline is created"
+        List<Bson> pipeline = ChangeStreamSubscription.createPipeline(query.mongoQuery)
+        Document match = Document.parse(pipeline[0].toBsonDocument(BsonDocument, mongoDatastore.codecRegistry).toJson())
+        List<Document> clauses = (List<Document>) ((Document) match.get('$match')).get('$or')
+
+        then:"The fields are prefixed and changes without a document are matched"
+        pipeline.size() == 1
+        clauses[0].get('fullDocument.title') == 'Dune'
+        clauses[0].get('operationType') == new Document('$in', ['insert', 'update', 'replace'])
+        clauses[1].get('operationType') == new Document('$nin', ['insert', 'update', 'replace'])
+
+        and:"An empty query matches every change"
+        ChangeStreamSubscription.createPipeline(new Document()).isEmpty()
+    }
+
+    void "Test deletions are restricted to the partition of the subscription"() {
+        given:"The pipeline of a subclass, evaluated by the server against sample changes"
+        MongoQuery query = (MongoQuery) session.createQuery(WatchedEbook)
+        query.gt('pages', 100)
+        Document partition = ((MongoQuery) session.createQuery(WatchedEbook)).mongoQuery
+        List<Bson> pipeline = ChangeStreamSubscription.createPipeline(query.mongoQuery, partition)
+        String ebook = session.mappingContext.getPersistentEntity(WatchedEbook.name).discriminator
+        MongoCollection<Document> samples = mongoClient.getDatabase(rawCollection.namespace.databaseName).getCollection('changeSamples')
+        samples.drop()
+        samples.insertMany([
+                new Document('sample', 1).append('operationType', 'delete').append('documentKey', new Document('_id', 1)),
+                new Document('sample', 2).append('operationType', 'delete').append('documentKey', new Document('_id', 2))
+                                         .append('fullDocumentBeforeChange', new Document('_class', ebook)),
+                new Document('sample', 3).append('operationType', 'delete').append('documentKey', new Document('_id', 3))
+                                         .append('fullDocumentBeforeChange', new Document('_class', 'other')),
+                new Document('sample', 4).append('operationType', 'delete').append('documentKey', new Document('_id', 4).append('_class', ebook)),
+                new Document('sample', 5).append('operationType', 'insert').append('fullDocument', new Document('_class', ebook).append('pages', 200)),
+                new Document('sample', 6).append('operationType', 'insert').append('fullDocument', new Document('_class', 'other').append('pages', 200)),
+                new Document('sample', 7).append('operationType', 'drop')
+        ])
+
+        expect:"Only the deletions known to be in the partition are matched"
+        partition == new Document('_class', ebook)
+        samples.aggregate(pipeline).collect { Document d -> d.getInteger('sample') }.sort() == [2, 4, 5, 7]
+
+        cleanup:
+        samples?.drop()
+    }
+
+    void "Test nested clauses are prefixed and other operators are rejected"() {
+        expect:"Combined clauses are prefixed"
+        ChangeStreamSubscription.prefixFields(new Document('$or', [new Document('title', 'A'), new Document('pages', 1)]), 'fullDocument') ==
+                new Document('$or', [new Document('fullDocument.title', 'A'), new Document('fullDocument.pages', 1)])
+
+        when:"The query has another top-level operator"
+        ChangeStreamSubscription.prefixFields(new Document('$where', 'true'), 'fullDocument')
+
+        then:"An exception is thrown"
+        thrown(IllegalArgumentException)
+    }
+
+    void "Test changes are decoded into entities and delivered"() {
+        given:"A book and a subscription"
+        def book = new WatchedBook(title: 'Dune', pages: 412).save(flush: true)
+        session.clear()
+        LinkedBlockingQueue<ChangeEvent<WatchedBook>> events = new LinkedBlockingQueue<>()
+        ChangeStreamSubscription<WatchedBook> subscription = createSubscription([:], { ChangeEvent<WatchedBook> e -> events.add(e) } as Consumer<ChangeEvent<WatchedBook>>)
+        BsonDocument token = new BsonDocument('_data', new BsonString('826A'))
+
+        when:"A change is submitted"
+        subscription.submit(OperationType.UPDATE, new BsonObjectId(book.id), rawCollection.find(Filters.eq('_id', book.id)).first(), token, null)
+        ChangeEvent<WatchedBook> event = events.poll(5, TimeUnit.SECONDS)
+
+        then:"The instance is decoded"
+        event.operationType == OperationType.UPDATE
+        event.id == book.id
+        event.entity instanceof WatchedBook
+        event.entity.title == 'Dune'
+        event.namespace == rawCollection.namespace.fullName
+
+        when:"A deletion is submitted"
+        subscription.submit(OperationType.DELETE, new BsonObjectId(book.id), null, token, null)
+        event = events.poll(5, TimeUnit.SECONDS)
+
+        then:"Only the identifier is delivered"
+        event.operationType == OperationType.DELETE
+        event.id == book.id
+        event.entity == null
+
+        cleanup:
+        subscription?.close()
+    }
+
+    void "Test the change stream is not read faster than changes are delivered"() {
+        given:"A subscription with a buffer of one change and a blocked listener"
+        CountDownLatch latch = new CountDownLatch(1)
+        List<OperationType> delivered = Collections.synchronizedList([])
+        ChangeStreamSubscription<WatchedBook> subscription = createSubscription([bufferSize: 1], { ChangeEvent<WatchedBook> e ->
+            latch.await(5, TimeUnit.SECONDS)
+            delivered.add(e.operationType)
+        } as Consumer<ChangeEvent<WatchedBook>>)
+
+        when:"More changes are submitted than can be queued"
+        subscription.submit(OperationType.INSERT, null, null, null, null)
+        subscription.submit(OperationType.UPDATE, null, null, null, null)
+        Thread submitter = Thread.start { subscription.submit(OperationType.DELETE, null, null, null, null) }
+        submitter.join(300)
+
+        then:"The submitter waits"
+        submitter.alive
+        subscription.pendingCount == 1
+
+        when:"The listener catches up"
+        latch.countDown()
+        submitter.join(5000)
+        subscription.close()
+
+        then:"Every change is delivered in order"
+        !submitter.alive
+        delivered == [OperationType.INSERT, OperationType.UPDATE, OperationType.DELETE]
+    }
+
+    void "Test a failed delivery stops the subscription without checkpointing the change"() {
+        given:"A named subscription whose listener fails for deletions"
+        List<OperationType> delivered = Collections.synchronizedList([])
+        ChangeStreamSubscription<WatchedBook> subscription = createSubscription([name: 'failingIndexer'], { ChangeEvent<WatchedBook> e ->
+            if (e.operationType == OperationType.DELETE) {
+                throw new IllegalStateException('The index is unavailable')
+            }
+            delivered.add(e.operationType)
+        } as Consumer<ChangeEvent<WatchedBook>>)
+
+        when:"A deletion is submitted between two other changes and the subscription is closed"
+        subscription.submit(OperationType.UPDATE, null, null, token('01'), null)
+        subscription.submit(OperationType.DELETE, null, null, token('02'), null)
+        subscription.submit(OperationType.INSERT, null, null, token('03'), null)
+        subscription.close()
+
+        then:"The subscription stopped at the failed change, which is not checkpointed"
+        delivered == [OperationType.UPDATE]
+        subscription.failure instanceof IllegalStateException
+        subscription.deliveredToken == token('01')
+        subscription.loadCheckpoint() == token('01')
+
+        cleanup:
+        subscription?.saveCheckpoint(null)
+    }
+
+    void "Test the subscription resumes from its checkpoint when started and after a failure"() {
+        given:"A checkpointed subscription whose change stream fails after a change"
+        LinkedBlockingQueue<ChangeEvent<WatchedBook>> events = new LinkedBlockingQueue<>()
+        ScriptedSubscription subscription = new ScriptedSubscription(mongoDatastore, bookEntity, rawCollection, [name: 'scriptedIndexer'],
+                { ChangeEvent<WatchedBook> e -> events.add(e) } as Consumer<ChangeEvent<WatchedBook>>,
+                [[change('insert', '02'), new MongoSocketReadException('Scripted error', new ServerAddress())].iterator(), [].iterator()])
+        subscription.saveCheckpoint(token('01'))
+
+        when:"The subscription is started"
+        subscription.start()
+        conditions.eventually { assert subscription.opened.size() == 2 }
+        subscription.close()
+
+        then:"The stream is resumed after the checkpoint, then after the last change"
+        subscription.opened == ['resumeAfter 01', 'resumeAfter 02']
+        events*.operationType == [OperationType.INSERT]
+        subscription.loadCheckpoint() == token('02')
+
+        cleanup:
+        subscription?.saveCheckpoint(null)
+    }
+
+    void "Test closing before a change is delivered keeps the checkpoint"() {
+        given:"A checkpointed subscription whose change stream has no changes"
+        ScriptedSubscription subscription = new ScriptedSubscription(mongoDatastore, bookEntity, rawCollection, [name: 'idleIndexer'],
+                { ChangeEvent<WatchedBook> e -> } as Consumer<ChangeEvent<WatchedBook>>, [[].iterator()])
+        subscription.saveCheckpoint(token('01'))
+
+        when:"The subscription is started and closed"
+        subscription.start()
+        conditions.eventually { assert subscription.watcherThread != null }
+        subscription.close()
+
+        then:"The checkpoint is unchanged"
+        subscription.opened == ['resumeAfter 01']
+        subscription.loadCheckpoint() == token('01')
+
+        cleanup:
+        subscription?.saveCheckpoint(null)
+    }
+
+    void "Test closing does not wait for a watcher blocked on a full buffer"() {
+        given:"A subscription with an endless stream and a blocked listener"
+        CountDownLatch release = new CountDownLatch(1)
+        int count = 0
+        Iterator<Object> endless = [hasNext: { -> true }, next: { -> change('insert', String.format('%04d', ++count)) }] as Iterator<Object>
+        ScriptedSubscription subscription = new ScriptedSubscription(mongoDatastore, bookEntity, rawCollection, [bufferSize: 1],
+                { ChangeEvent<WatchedBook> e -> release.await(30, TimeUnit.SECONDS) } as Consumer<ChangeEvent<WatchedBook>>,
+                [endless])
+        subscription.start()
+        conditions.eventually { assert subscription.pendingCount == 1 }
+
+        when:"The subscription is closed"
+        subscription.close()
+
+        then:"The watcher has stopped"
+        !subscription.running
+        !subscription.watcherThread.alive
+
+        cleanup:
+        release.countDown()
+    }
+
+    @Requires({ shared.changeStreamsSupported })
+    void "Test a change stream delivers changes and resumes from the checkpoint when started"() {
+        given:"A named subscription"
+        LinkedBlockingQueue<ChangeEvent<WatchedBook>> events = new LinkedBlockingQueue<>()
+        Consumer<ChangeEvent<WatchedBook>> listener = { ChangeEvent<WatchedBook> e -> events.add(e) } as Consumer<ChangeEvent<WatchedBook>>
+        createSubscription([name: 'realIndexer'], listener).saveCheckpoint(null)
+        ChangeStreamSubscription<WatchedBook> subscription = WatchedBook.watch([name: 'realIndexer'], { gt 'pages', 100 }, listener)
+
+        when:"Books are saved"
+        new WatchedBook(title: 'Animal Farm', pages: 92).save(flush: true)
+        new WatchedBook(title: 'Dune', pages: 412).save(flush: true)
+        ChangeEvent<WatchedBook> event = events.poll(10, TimeUnit.SECONDS)
+
+        then:"The matching change is delivered"
+        event.operationType == OperationType.INSERT
+        event.entity.title == 'Dune'
+
+        when:"A book is saved while the subscription is closed and a subscription with the same name is started"
+        subscription.close()
+        new WatchedBook(title: 'Emma', pages: 474).save(flush: true)
+        subscription = WatchedBook.watch([name: 'realIndexer'], { gt 'pages', 100 }, listener)
+        event = events.poll(10, TimeUnit.SECONDS)
+
+        then:"The change made while it was closed is delivered and the delivered change is not"
+        event.entity.title == 'Emma'
+        events.poll(500, TimeUnit.MILLISECONDS) == null
+
+        cleanup:
+        subscription?.close()
+        subscription?.saveCheckpoint(null)
+    }
+
+    void "Test named subscriptions checkpoint their resume token"() {
+        given:"A named subscription"
+        ChangeStreamSubscription<WatchedBook> subscription = createSubscription([name: 'bookIndexer'], { ChangeEvent<WatchedBook> e -> } as Consumer<ChangeEvent<WatchedBook>>)
+        BsonDocument token = new BsonDocument('_data', new BsonString('8263A1B2C3000000012B022C0100296E5A1004'))
+
+        when:"A token is checkpointed"
+        subscription.saveCheckpoint(token)
+
+        then:"It is loaded"
+        subscription.loadCheckpoint() == token
+        createSubscription([name: 'otherIndexer'], { ChangeEvent<WatchedBook> e -> } as Consumer<ChangeEvent<WatchedBook>>).loadCheckpoint() == null
+
+        when:"The checkpoint is removed"
+        subscription.saveCheckpoint(null)
+
+        then:"There is no token"
+        subscription.loadCheckpoint() == null
+
+        cleanup:
+        subscription?.close()
+    }
+
+    boolean isChangeStreamsSupported() {
+        Document hello = mongoClient.getDatabase('admin').runCommand(new Document('hello', 1))
+        hello.containsKey('setName') || hello.get('msg') == 'isdbgrid'
+    }
+
+    private PollingConditions getConditions() {
+        new PollingConditions(timeout: 5)
+    }
+
+    private static BsonDocument token(String data) {
+        new BsonDocument('_data', new BsonString(data))
+    }
+
+    private ChangeStreamDocument<RawBsonDocument> change(String operationType, String data) {
+        BsonDocument document = new BsonDocument('_id', token(data))
+                .append('operationType', new BsonString(operationType))
+                .append('documentKey', new BsonDocument('_id', new BsonObjectId(new ObjectId())))
+        ChangeStreamDocument.createCodec(RawBsonDocument, mongoDatastore.codecRegistry).decode(new BsonDocumentReader(document), DecoderContext.builder().build())
+    }
+
+    private ChangeStreamSubscription<WatchedBook> createSubscription(Map options, Consumer<ChangeEvent<WatchedBook>> listener) {
+        new ChangeStreamSubscription<WatchedBook>(mongoDatastore, bookEntity, rawCollection, Collections.<Bson>emptyList(), options, listener)
+    }
+
+    private MongoCollection<RawBsonDocument> getRawCollection() {
+        mongoDatastore.getCollection(bookEntity).withDocumentClass(RawBsonDocument)
+    }
+
+    private PersistentEntity getBookEntity() {
+        session.mappingContext.getPersistentEntity(WatchedBook.name)
+    }
+}
+
+@Entity
+class WatchedBook implements MongoEntity<WatchedBook> {
+    ObjectId id
+    String title
+    Integer pages
+}
+
+@Entity
+class WatchedEbook extends WatchedBook {
+    String format
+}
+
+/**
+ * Reads scripted cursors instead of change streams: each cursor is an iterator of changes, and of exceptions thrown when they
+ * are read. A cursor returns no change once its iterator is exhausted
+ */
+class ScriptedSubscription extends ChangeStreamSubscription<WatchedBook> {
+
+    final List<String> opened = new CopyOnWriteArrayList<>()
+    final Queue<Iterator<Object>> cursors
+    volatile Thread watcherThread
+
+    ScriptedSubscription(MongoDatastore datastore, PersistentEntity entity, MongoCollection<RawBsonDocument> collection, Map options,
+                         Consumer<ChangeEvent<WatchedBook>> listener, List<Iterator<Object>> cursors) {
+        super(datastore, entity, collection, Collections.<Bson>emptyList(), options, listener)
+        this.cursors = new ConcurrentLinkedQueue<>(cursors)
+    }
+
+    @Override
+    protected MongoChangeStreamCursor<ChangeStreamDocument<RawBsonDocument>> openCursor(BsonDocument token, boolean startAfter) {
+        opened.add(token == null ? 'start' : "${startAfter ? 'startAfter' : 'resumeAfter'} ${token.getString('_data').value}".toString())
+        Iterator<Object> changes = cursors.poll() ?: Collections.emptyIterator()
+        BsonDocument current = null
+        [
+                tryNext       : { ->
+                    watcherThread = Thread.currentThread()
+                    if (!changes.hasNext()) {
+                        Thread.sleep(5)
+                        return null
+                    }
+                    Object next = changes.next()
+                    if (next instanceof RuntimeException) {
+                        throw (RuntimeException) next
+                    }
+                    current = ((ChangeStreamDocument<RawBsonDocument>) next).resumeToken
+                    next
+                },
+                getResumeToken: { -> current },
+                close         : { -> }
+        ] as MongoChangeStreamCursor<ChangeStreamDocument<RawBsonDocument>>
+    }
+}
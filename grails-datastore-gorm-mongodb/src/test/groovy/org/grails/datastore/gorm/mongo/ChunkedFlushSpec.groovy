@@ -0,0 +1,91 @@
+package org.grails.datastore.gorm.mongo
+
+import grails.gorm.tests.GormDatastoreSpec
+import grails.persistence.Entity
+import org.grails.datastore.mapping.mongo.MongoCodecSession
+import org.grails.datastore.mapping.mongo.config.MongoSettings
+
+class ChunkedFlushSpec extends GormDatastoreSpec {
+
+    @Override
+    Map getConfiguration() {
+        [(MongoSettings.SETTING_FLUSH_CHUNK_SIZE): 10]
+    }
+
+    @Override
+    List getDomainClasses() {
+        [ChunkedFlushItem]
+    }
+
+    void "Test the chunk size is read from configuration"() {
+        expect:
+        mongoDatastore.flushChunkSize == 10
+        ((MongoCodecSession) session).flushChunkSize == 10
+    }
+
+    void "Test a session larger than the chunk size is flushed in chunks"() {
+        when:"More entities than the chunk size are saved"
+        (1..25).each { new ChunkedFlushItem(name: "Item $it", position: it).save() }
+        session.flush()
+        session.clear()
+
+        then:"They are all written with one insert per chunk"
+        batchSizes('insert', 'documents') == [10, 10, 5]
+        ChunkedFlushItem.count() == 25
+
+        when:"More entities than the chunk size are updated"
+        ChunkedFlushItem.list().each { it.position = it.position * 10 }
+        commands.clear()
+        session.flush()
+        session.clear()
+
+        then:"The updates are sent with one update per chunk"
+        batchSizes('update', 'updates') == [10, 10, 5]
+
+        and:"All of the updates are applied and versions incremented"
+        ChunkedFlushItem.list().every { it.position % 10 == 0 && it.version == 1 }
+
+        when:"More entities than the chunk size are deleted"
+        ChunkedFlushItem.list().each { it.delete() }
+        commands.clear()
+        session.flush()
+        session.clear()
+
+        then:"The deletes are sent with one delete per chunk"
+        commands.getCommands('delete', collectionName).collect { it.getArray('deletes').size() } == [1, 1, 1]
+        commands.getCommands('delete', collectionName).collect { it.getArray('deletes')[0].asDocument().getDocument('q').getDocument('_id').getArray('$in').size() } == [10, 10, 5]
+
+        and:"They are all deleted"
+        ChunkedFlushItem.count() == 0
+    }
+
+    void "Test chunking can be disabled for a session"() {
+        given:"A session that sends all writes at once"
+        ((MongoCodecSession) session).flushChunkSize = 0
+
+        when:"More entities than the chunk size are saved"
+        (1..15).each { new ChunkedFlushItem(name: "Item $it", position: it).save() }
+        session.flush()
+        session.clear()
+
+        then:"They are all written with a single insert"
+        batchSizes('insert', 'documents') == [15]
+        ChunkedFlushItem.count() == 15
+    }
+
+    private List<Integer> batchSizes(String commandName, String field) {
+        commands.getCommands(commandName, collectionName).collect { it.getArray(field).size() }
+    }
+
+    private String getCollectionName() {
+        mongoDatastore.getCollectionName(session.mappingContext.getPersistentEntity(ChunkedFlushItem.name))
+    }
+}
+
+@Entity
+class ChunkedFlushItem {
+    String id
+    Long version
+    String name
+    int position
+}
@@ -0,0 +1,83 @@
+package org.grails.datastore.gorm.mongo
+
+import com.mongodb.ReadPreference
+import com.mongodb.WriteConcern
+import grails.gorm.tests.GormDatastoreSpec
+import grails.mongodb.MongoEntity
+import grails.persistence.Entity
+import org.bson.Document
+import org.bson.types.ObjectId
+import org.grails.datastore.mapping.model.PersistentEntity
+import org.grails.datastore.mapping.mongo.AbstractMongoSession
+import org.grails.datastore.mapping.mongo.MongoCollectionHandles
+
+class CollectionHandlesSpec extends GormDatastoreSpec {
+
+    @Override
+    List getDomainClasses() {
+        [HandledOrder]
+    }
+
+    void "Test collections are shared for the same key"() {
+        given:"The handle table"
+        PersistentEntity entity = session.mappingContext.getPersistentEntity(HandledOrder.name)
+        MongoCollectionHandles handles = mongoDatastore.collectionHandles
+        String database = mongoDatastore.getDatabaseName(entity)
+        String collection = mongoDatastore.getCollectionName(entity)
+
+        expect:"The same collection for the same key"
+        handles.getCollection(entity, database, collection, Document, null, null).is(handles.getCollection(entity, database, collection, Document, null, null))
+        handles.getCollection(entity, database, collection, HandledOrder, WriteConcern.MAJORITY, null).is(handles.getCollection(entity, database, collection, HandledOrder, WriteConcern.MAJORITY, null))
+
+        and:"Different collections for different keys"
+        !handles.getCollection(entity, database, collection, Document, null, null).is(handles.getCollection(entity, database, collection, HandledOrder, null, null))
+        handles.getCollection(entity, database, collection, Document, WriteConcern.MAJORITY, null).writeConcern == WriteConcern.MAJORITY
+        handles.getCollection(entity, database, collection, Document, null, ReadPreference.nearest()).readPreference == ReadPreference.nearest()
+
+        and:"The mapped write concern is the default"
+        handles.getCollection(entity, database, collection, Document, null, null).writeConcern == WriteConcern.W1
+    }
+
+    void "Test sessions honour the collection and database they use"() {
+        given:"A session"
+        PersistentEntity entity = session.mappingContext.getPersistentEntity(HandledOrder.name)
+        AbstractMongoSession mongoSession = (AbstractMongoSession) session
+
+        when:"Another collection and database are used"
+        String previousCollection = mongoSession.useCollection(entity, 'archivedOrders')
+        String previousDatabase = mongoSession.useDatabase(entity, 'archive')
+        def collection = mongoSession.getCollection(entity, HandledOrder)
+
+        then:"The collection of the session is used"
+        collection.namespace.collectionName == 'archivedOrders'
+        collection.namespace.databaseName == 'archive'
+        collection.documentClass == HandledOrder
+        collection.codecRegistry.is(mongoSession.codecRegistry)
+        collection.is(mongoSession.getCollection(entity, HandledOrder))
+
+        cleanup:
+        mongoSession.useCollection(entity, previousCollection)
+        mongoSession.useDatabase(entity, previousDatabase)
+    }
+
+    void "Test entities are written and read through the shared collections"() {
+        when:"An order is saved and read"
+        def order = new HandledOrder(reference: 'A-1').save(flush: true)
+        session.clear()
+
+        then:"It is found"
+        HandledOrder.get(order.id).reference == 'A-1'
+        HandledOrder.findByReference('A-1') != null
+        HandledOrder.collection.countDocuments() == 1
+    }
+}
+
+@Entity
+class HandledOrder implements MongoEntity<HandledOrder> {
+    ObjectId id
+    String reference
+
+    static mapping = {
+        writeConcern WriteConcern.W1
+    }
+}
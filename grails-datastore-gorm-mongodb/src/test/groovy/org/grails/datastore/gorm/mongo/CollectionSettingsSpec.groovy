@@ -0,0 +1,85 @@
+package org.grails.datastore.gorm.mongo
+
+import com.mongodb.ReadConcern
+import com.mongodb.ReadPreference
+import com.mongodb.WriteConcern
+import com.mongodb.client.model.CollationStrength
+import grails.gorm.tests.GormDatastoreSpec
+import grails.mongodb.MongoEntity
+import grails.persistence.Entity
+import org.bson.types.ObjectId
+import org.grails.datastore.mapping.model.PersistentEntity
+import org.grails.datastore.mapping.mongo.AbstractMongoSession
+import org.grails.datastore.mapping.mongo.config.MongoCollection
+
+class CollectionSettingsSpec extends GormDatastoreSpec {
+
+    @Override
+    List getDomainClasses() {
+        [TunedEvent]
+    }
+
+    void "Test the collection settings are mapped"() {
+        when:"The mapping of the entity is read"
+        PersistentEntity entity = session.mappingContext.getPersistentEntity(TunedEvent.name)
+        MongoCollection mappedForm = (MongoCollection) entity.mapping.mappedForm
+
+        then:"The settings are parsed"
+        mappedForm.readPreference == ReadPreference.secondaryPreferred()
+        mappedForm.readConcern == ReadConcern.MAJORITY
+        mappedForm.collation.locale == 'en'
+        mappedForm.collation.strength == CollationStrength.SECONDARY
+        mappedForm.queryArguments.collation == mappedForm.collation
+        mappedForm.queryArguments.maxTimeMS == 2000L
+    }
+
+    void "Test the configured collection is cached and used by sessions"() {
+        given:"The entity"
+        PersistentEntity entity = session.mappingContext.getPersistentEntity(TunedEvent.name)
+        AbstractMongoSession mongoSession = (AbstractMongoSession) session
+
+        when:"The collection is obtained twice"
+        def first = mongoDatastore.getCollection(entity)
+        def second = mongoDatastore.getCollection(entity)
+
+        then:"The configured collection is cached"
+        first.is(second)
+        first.readPreference == ReadPreference.secondaryPreferred()
+        first.readConcern == ReadConcern.MAJORITY
+        first.writeConcern == WriteConcern.MAJORITY
+
+        and:"Sessions obtain the configured collection"
+        mongoSession.getCollection(entity).is(mongoSession.getCollection(entity))
+        mongoSession.getCollection(entity).readPreference == ReadPreference.secondaryPreferred()
+        mongoSession.getReactiveCollection(entity).readConcern == ReadConcern.MAJORITY
+
+        and:"The mapped read preference is not routed"
+        mongoSession.getRoutedReadPreference(entity, true) == null
+    }
+
+    void "Test queries are executed with the mapped collation"() {
+        given:"Some events"
+        new TunedEvent(name: 'alpha').save()
+        new TunedEvent(name: 'Beta').save(flush: true)
+        session.clear()
+
+        expect:"Strings are compared case insensitively"
+        TunedEvent.findByName('ALPHA') != null
+        TunedEvent.countByName('beta') == 1
+        TunedEvent.list(sort: 'name')*.name == ['alpha', 'Beta']
+    }
+}
+
+@Entity
+class TunedEvent implements MongoEntity<TunedEvent> {
+    ObjectId id
+    String name
+
+    static mapping = {
+        readPreference 'secondaryPreferred'
+        readConcern 'majority'
+        writeConcern WriteConcern.MAJORITY
+        collation locale: 'en', strength: 2
+        maxTimeMS 2000
+    }
+}
@@ -0,0 +1,105 @@
+package org.grails.datastore.gorm.mongo
+
+import com.mongodb.client.AggregateIterable
+import com.mongodb.client.FindIterable
+import grails.gorm.tests.GormDatastoreSpec
+import grails.mongodb.MongoEntity
+import grails.persistence.Entity
+import org.bson.types.ObjectId
+import org.grails.datastore.mapping.mongo.query.MongoQuery
+
+import java.util.concurrent.TimeUnit
+
+class CursorArgumentsSpec extends GormDatastoreSpec {
+
+    @Override
+    List getDomainClasses() {
+        [ArgumentedReport]
+    }
+
+    void "Test cursor arguments are applied to finds with the mapped defaults"() {
+        given:"A query with cursor arguments"
+        MongoQuery query = (MongoQuery) session.createQuery(ArgumentedReport)
+        query.arguments = [batchSize: 20, comment: 'reports', noCursorTimeout: 'true']
+        FindIterable iterable = Mock(FindIterable)
+
+        when:"The arguments are applied"
+        query.applyCursorArguments(iterable)
+
+        then:"The arguments and the mapped maxTimeMS are set"
+        1 * iterable.batchSize(20) >> iterable
+        1 * iterable.maxTime(5000L, TimeUnit.MILLISECONDS) >> iterable
+        1 * iterable.comment('reports') >> iterable
+        1 * iterable.noCursorTimeout(true) >> iterable
+        0 * iterable.allowDiskUse(_)
+        0 * iterable.maxAwaitTime(_, _)
+    }
+
+    void "Test cursor arguments are applied to aggregations"() {
+        given:"A query with cursor arguments"
+        MongoQuery query = (MongoQuery) session.createQuery(ArgumentedReport)
+        query.arguments = [allowDiskUse: true, maxTimeMS: 100]
+        AggregateIterable iterable = Mock(AggregateIterable)
+
+        when:"The arguments are applied"
+        query.applyCursorArguments(iterable)
+
+        then:"The arguments override the mapped defaults"
+        1 * iterable.batchSize(50) >> iterable
+        1 * iterable.maxTime(100L, TimeUnit.MILLISECONDS) >> iterable
+        1 * iterable.allowDiskUse(true) >> iterable
+        0 * iterable.comment(_)
+    }
+
+    void "Test arguments replace the previous arguments but not the criteria arguments"() {
+        given:"A query with criteria arguments and arguments set twice"
+        MongoQuery query = (MongoQuery) session.createQuery(ArgumentedReport)
+        query.criteriaArguments = [comment: 'criteria', allowDiskUse: true]
+        query.arguments = [batchSize: 20, noCursorTimeout: true]
+        query.arguments = [comment: 'list']
+        FindIterable iterable = Mock(FindIterable)
+
+        when:"The arguments are applied"
+        query.applyCursorArguments(iterable)
+
+        then:"Only the last arguments apply over the criteria arguments"
+        1 * iterable.batchSize(50) >> iterable
+        1 * iterable.maxTime(5000L, TimeUnit.MILLISECONDS) >> iterable
+        1 * iterable.comment('list') >> iterable
+        1 * iterable.allowDiskUse(true) >> iterable
+        0 * iterable.noCursorTimeout(_)
+    }
+
+    void "Test queries are executed with cursor arguments"() {
+        given:"Some reports"
+        (1..5).each { new ArgumentedReport(title: "Report $it", pages: it).save() }
+        session.flush()
+        session.clear()
+
+        expect:"Finds, projections and criteria arguments to be accepted by the server"
+        ArgumentedReport.findAllByPagesGreaterThan(1, [batchSize: 2, maxTimeMS: 1000, comment: 'finder', allowDiskUse: true, sort: 'pages']).size() == 4
+        ArgumentedReport.withCriteria(max: 3) {
+            arguments(comment: 'criteria', batchSize: 1)
+            order 'pages'
+        }*.pages == [1, 2, 3]
+        ArgumentedReport.withCriteria {
+            arguments(allowDiskUse: true, comment: 'aggregate')
+            projections {
+                sum 'pages'
+            }
+        } == [15]
+        ArgumentedReport.count() == 5
+    }
+}
+
+@Entity
+class ArgumentedReport implements MongoEntity<ArgumentedReport> {
+    ObjectId id
+    String title
+    Integer pages
+
+    static mapping = {
+        batchSize 50
+        maxTimeMS 5000
+    }
+}
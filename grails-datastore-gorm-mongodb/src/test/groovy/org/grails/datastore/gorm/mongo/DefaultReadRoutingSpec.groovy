@@ -0,0 +1,52 @@
+package org.grails.datastore.gorm.mongo
+
+import com.mongodb.ReadPreference
+import grails.gorm.tests.GormDatastoreSpec
+import org.grails.datastore.mapping.model.PersistentEntity
+import org.grails.datastore.mapping.mongo.AbstractMongoSession
+import org.grails.datastore.mapping.mongo.query.MongoQuery
+
+class DefaultReadRoutingSpec extends GormDatastoreSpec {
+
+    @Override
+    List getDomainClasses() {
+        [RoutedBook]
+    }
+
+    void "Test read-only queries stay on the primary by default"() {
+        given:"Some books"
+        new RoutedBook(title: 'Emma', pages: 474).save()
+        new RoutedBook(title: 'Dune', pages: 412).save(flush: true)
+        session.clear()
+        PersistentEntity entity = session.mappingContext.getPersistentEntity(RoutedBook.name)
+
+        expect:"Routing is disabled"
+        mongoDatastore.readOnlyReadPreference == null
+
+        when:"Books are queried in a read-only session"
+        ReadPreference readPreference
+        ReadPreference collectionReadPreference
+        Object clientSession
+        List<String> titles = RoutedBook.withNewSession(readOnly: true) { AbstractMongoSession readOnlySession ->
+            readPreference = readOnlySession.getRoutedReadPreference(true)
+            collectionReadPreference = readOnlySession.getReadCollection(entity, true).readPreference
+            clientSession = readOnlySession.getReadClientSession(true)
+            RoutedBook.findAllByPagesGreaterThan(100, [sort: 'title'])*.title
+        }
+
+        then:"The queries are sent to the primary without a routed client session"
+        titles == ['Dune', 'Emma']
+        readPreference == null
+        collectionReadPreference == ReadPreference.primary()
+        clientSession == null
+
+        when:"A query is created in a read-only transaction"
+        readPreference = RoutedBook.withTransaction(readOnly: true) {
+            MongoQuery query = (MongoQuery) session.datastore.currentSession.createQuery(RoutedBook)
+            ((AbstractMongoSession) session.datastore.currentSession).getRoutedReadPreference(query.isReadOnlyRead())
+        }
+
+        then:"It is not routed"
+        readPreference == null
+    }
+}
@@ -0,0 +1,46 @@
+package org.grails.datastore.gorm.mongo
+
+import grails.gorm.tests.GormDatastoreSpec
+import org.grails.datastore.mapping.mongo.config.MongoSettings
+import org.springframework.transaction.support.DefaultTransactionDefinition
+import org.springframework.transaction.support.TransactionTemplate
+
+class DetachedReadOnlyTransactionSpec extends GormDatastoreSpec {
+
+    @Override
+    Map getConfiguration() {
+        [(MongoSettings.SETTING_DETACH_READ_ONLY_TRANSACTIONS): true]
+    }
+
+    @Override
+    List getDomainClasses() {
+        [ReadOnlyArticle]
+    }
+
+    void "Test queries of a read-only transaction are read-only when configured"() {
+        given:"Some articles"
+        new ReadOnlyArticle(title: 'Alpha', published: true).save()
+        new ReadOnlyArticle(title: 'Beta', published: true).save(flush: true)
+        session.clear()
+
+        when:"A query is run within a read-only transaction"
+        def definition = new DefaultTransactionDefinition()
+        definition.readOnly = true
+        List<ReadOnlyArticle> articles = (List<ReadOnlyArticle>) new TransactionTemplate(mongoDatastore.transactionManager, definition).execute {
+            ReadOnlyArticle.findAllByPublished(true)
+        }
+
+        then:"The instances are detached"
+        mongoDatastore.detachReadOnlyTransactions
+        articles.size() == 2
+        articles.every { !session.contains(it) }
+
+        when:"A query is run within a read-only transaction with readOnly: false"
+        articles = (List<ReadOnlyArticle>) new TransactionTemplate(mongoDatastore.transactionManager, definition).execute {
+            ReadOnlyArticle.findAllByPublished(true, [readOnly: false])
+        }
+
+        then:"The argument takes precedence"
+        articles.every { session.contains(it) }
+    }
+}
@@ -0,0 +1,80 @@
+package org.grails.datastore.gorm.mongo
+
+import grails.gorm.tests.GormDatastoreSpec
+import grails.persistence.Entity
+import org.grails.datastore.mapping.model.PersistentEntity
+import org.grails.datastore.mapping.model.types.Embedded
+import org.grails.datastore.mapping.mongo.engine.codecs.EmbeddedCodecCache
+import org.grails.datastore.mapping.mongo.engine.codecs.PersistentEntityCodec
+
+class EmbeddedCodecCacheSpec extends GormDatastoreSpec {
+
+    @Override
+    List getDomainClasses() {
+        [CodecCacheShop, CodecCacheAddress]
+    }
+
+    void "Test embedded entities are written and read with cached codecs"() {
+        given:"A shop with embedded values"
+        def shop = new CodecCacheShop(name: "Corner", address: new CodecCacheAddress(street: "Main"),
+                branches: [new CodecCacheAddress(street: "First"), new CodecCacheAddress(street: "Second")])
+        shop.save(flush: true)
+        session.clear()
+
+        when:"The shop is read back and updated"
+        shop = CodecCacheShop.get(shop.id)
+        shop.branches[1].street = "Third"
+        shop.address = new CodecCacheAddress(street: "High")
+        shop.save(flush: true)
+        session.clear()
+        shop = CodecCacheShop.get(shop.id)
+
+        then:"The embedded values are correct"
+        shop.address.street == "High"
+        shop.branches*.street == ["First", "Third"]
+
+        and:"A single codec is used for the embedded type"
+        EmbeddedCodecCache cache = mongoDatastore.embeddedCodecCache
+        PersistentEntityCodec codec = cache.getCodec(addressEntity)
+        codec.is(cache.getCodec(addressEntity))
+        codec.embeddedCodecCache.is(cache)
+        mongoDatastore.getPersistentEntityCodec(CodecCacheShop).embeddedCodecCache.is(cache)
+    }
+
+    void "Test the cache is cleared when the mapping context changes"() {
+        given:"A cached codec"
+        EmbeddedCodecCache cache = mongoDatastore.embeddedCodecCache
+        PersistentEntityCodec codec = cache.getCodec(addressEntity)
+
+        when:"An entity is added to the mapping context"
+        session.mappingContext.addPersistentEntity(CodecCacheSupplier)
+
+        then:"A new codec is created"
+        !cache.getCodec(addressEntity).is(codec)
+    }
+
+    private PersistentEntity getAddressEntity() {
+        ((Embedded) session.mappingContext.getPersistentEntity(CodecCacheShop.name).getPropertyByName('address')).associatedEntity
+    }
+}
+
+@Entity
+class CodecCacheShop {
+    String id
+    String name
+    CodecCacheAddress address
+    List<CodecCacheAddress> branches
+
+    static embedded = ['address', 'branches']
+}
+
+@Entity
+class CodecCacheAddress {
+    String street
+}
+
+@Entity
+class CodecCacheSupplier {
+    String id
+    String name
+}
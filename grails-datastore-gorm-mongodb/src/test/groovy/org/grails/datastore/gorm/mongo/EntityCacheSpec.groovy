@@ -0,0 +1,216 @@
+package org.grails.datastore.gorm.mongo
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats
+import grails.gorm.tests.GormDatastoreSpec
+import grails.persistence.Entity
+import org.grails.datastore.mapping.core.Datastore
+import org.grails.datastore.mapping.engine.event.AbstractPersistenceEvent
+import org.grails.datastore.mapping.engine.event.AbstractPersistenceEventListener
+import org.grails.datastore.mapping.engine.event.EventType
+import org.grails.datastore.mapping.model.PersistentEntity
+import org.grails.datastore.mapping.mongo.cache.CaffeineTPCacheAdapter
+import org.grails.datastore.mapping.mongo.config.MongoCollection
+import org.springframework.context.ApplicationEvent
+
+class EntityCacheSpec extends GormDatastoreSpec {
+
+    @Override
+    List getDomainClasses() {
+        [CachedCountry, UncachedCity]
+    }
+
+    void "Test cache mapping is configured"() {
+        when:"The mapping of a cached entity is read"
+        MongoCollection.CacheConfig config = ((MongoCollection) countryEntity.mapping.mappedForm).cache
+
+        then:"The cache settings are applied"
+        config.enabled
+        config.maximumSize == 100
+        config.expireAfterWrite == 60
+
+        and:"Entities without cache mapping have no cache"
+        mongoDatastore.entityCacheRepository.getTPCacheAdapter(session.mappingContext.getPersistentEntity(UncachedCity.name)) == null
+    }
+
+    void "Test entities are read from the cache"() {
+        given:"A cached entity"
+        def country = new CachedCountry(name: "France", population: 67).save(flush: true)
+        session.clear()
+        CacheStats before = mongoDatastore.entityCacheRepository.getStats(countryEntity)
+
+        when:"The entity is read twice in different sessions"
+        def first = CachedCountry.get(country.id)
+        session.clear()
+        def second = CachedCountry.get(country.id)
+        CacheStats stats = mongoDatastore.entityCacheRepository.getStats(countryEntity).minus(before)
+
+        then:"The second read is served by the cache with a new instance"
+        first.name == "France"
+        second.name == "France"
+        !first.is(second)
+        stats.hitCount() == 1
+        stats.missCount() == 1
+    }
+
+    void "Test instances handed out do not modify the cache"() {
+        given:"A cached entity"
+        def country = new CachedCountry(name: "Spain", population: 47).save(flush: true)
+        session.clear()
+        CachedCountry.get(country.id).name = "Modified"
+        session.clear()
+
+        when:"The entity is read again"
+        def cached = CachedCountry.get(country.id)
+
+        then:"The cached state is unchanged"
+        cached.name == "Spain"
+    }
+
+    void "Test the cache is invalidated on flush"() {
+        given:"A cached entity"
+        def country = new CachedCountry(name: "Italy", population: 59).save(flush: true)
+        session.clear()
+        CachedCountry.get(country.id)
+        session.clear()
+
+        when:"The entity is updated"
+        def loaded = CachedCountry.get(country.id)
+        loaded.population = 60
+        loaded.save(flush: true)
+        session.clear()
+
+        then:"The updated state is read"
+        CachedCountry.get(country.id).population == 60
+
+        when:"The entity is deleted"
+        session.clear()
+        CachedCountry.get(country.id).delete(flush: true)
+        session.clear()
+
+        then:"It is no longer found"
+        CachedCountry.get(country.id) == null
+    }
+
+    void "Test the cache is invalidated by a batch update"() {
+        given:"A cached entity"
+        def country = new CachedCountry(name: "Germany", population: 83).save(flush: true)
+        session.clear()
+        CachedCountry.get(country.id)
+        session.clear()
+
+        when:"The entity is updated with a query"
+        CachedCountry.where { name == "Germany" }.updateAll(population: 84)
+        session.clear()
+
+        then:"The updated state is read"
+        CachedCountry.get(country.id).population == 84
+    }
+
+    void "Test an entry read before an eviction is not cached"() {
+        given:"A cached entity"
+        def country = new CachedCountry(name: "Portugal", population: 10).save(flush: true)
+        session.clear()
+        CaffeineTPCacheAdapter cache = (CaffeineTPCacheAdapter) mongoDatastore.entityCacheRepository.getTPCacheAdapter(countryEntity)
+
+        when:"The entity is evicted while it is being read"
+        long generation = cache.generation
+        cache.evict(country.id)
+        cache.cacheLoadedEntry(country.id, country, generation)
+
+        then:"The state read before the eviction is not cached"
+        cache.getCachedEntry(country.id) == null
+
+        when:"The entity is read without a concurrent eviction"
+        cache.cacheLoadedEntry(country.id, country, cache.generation)
+
+        then:"It is cached"
+        cache.getCachedEntry(country.id).name == "Portugal"
+    }
+
+    void "Test cache hits publish the same load events as reads"() {
+        given:"A cached entity and a load listener"
+        def country = new CachedCountry(name: "Austria", population: 9).save(flush: true)
+        session.clear()
+        CacheLoadListener listener = new CacheLoadListener(session.datastore)
+        session.datastore.applicationEventPublisher.addApplicationListener(listener)
+
+        when:"The entity is read from the database"
+        CachedCountry.get(country.id)
+        session.clear()
+        int preLoads = listener.preLoadCount
+        int postLoads = listener.postLoadCount
+
+        and:"The entity is read from the cache"
+        CachedCountry.get(country.id)
+        session.clear()
+
+        then:"The same events are published"
+        preLoads > 0
+        postLoads == 1
+        listener.preLoadCount == preLoads * 2
+        listener.postLoadCount == 2
+
+        when:"Loads are cancelled"
+        listener.cancel = true
+
+        then:"A cache hit is cancelled too"
+        CachedCountry.get(country.id) == null
+
+        cleanup:
+        listener?.cancel = false
+        listener?.enabled = false
+    }
+
+    private PersistentEntity getCountryEntity() {
+        session.mappingContext.getPersistentEntity(CachedCountry.name)
+    }
+}
+
+@Entity
+class CachedCountry {
+    String id
+    String name
+    Integer population
+
+    static mapping = {
+        cache maximumSize: 100, expireAfterWrite: 60
+    }
+}
+
+@Entity
+class UncachedCity {
+    String id
+    String name
+}
+
+class CacheLoadListener extends AbstractPersistenceEventListener {
+    int preLoadCount
+    int postLoadCount
+    boolean cancel
+    boolean enabled = true
+
+    CacheLoadListener(Datastore datastore) {
+        super(datastore)
+    }
+
+    @Override
+    protected void onPersistenceEvent(AbstractPersistenceEvent event) {
+        if (!enabled || !(event.entity?.javaClass == CachedCountry)) {
+            return
+        }
+        if (event.eventType == EventType.PreLoad) {
+            preLoadCount++
+            if (cancel) {
+                event.cancel()
+            }
+        }
+        else if (event.eventType == EventType.PostLoad) {
+            postLoadCount++
+        }
+    }
+
+    @Override
+    boolean supportsEventType(Class<? extends ApplicationEvent> eventType) {
+        return true
+    }
+}
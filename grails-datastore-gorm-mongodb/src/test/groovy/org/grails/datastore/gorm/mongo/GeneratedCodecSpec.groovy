@@ -0,0 +1,109 @@
+package org.grails.datastore.gorm.mongo
+
+import grails.gorm.tests.GormDatastoreSpec
+import grails.persistence.Entity
+import org.bson.Document
+import org.grails.datastore.mapping.mongo.MongoConstants
+import org.grails.datastore.mapping.mongo.config.MongoSettings
+import org.grails.datastore.mapping.mongo.engine.codecs.GeneratedEntityCodec
+
+class GeneratedCodecSpec extends GormDatastoreSpec {
+
+    @Override
+    Map getConfiguration() {
+        [(MongoSettings.SETTING_ENGINE): MongoConstants.GENERATED_CODEC_ENGINE]
+    }
+
+    @Override
+    List getDomainClasses() {
+        [GeneratedCodecReading, GeneratedCodecLocation]
+    }
+
+    void "Test the generated engine uses generated codecs"() {
+        when:"The codec of an entity is obtained"
+        def codec = mongoDatastore.getPersistentEntityCodec(GeneratedCodecReading)
+        def plan = (GeneratedEntityCodec.GeneratedCodecPlan) codec.getCodecPlan(codec.entity)
+
+        then:"Supported simple properties are generated and others use the regular encoders"
+        codec instanceof GeneratedEntityCodec
+        plan.generated[plan.getSlot('sensor').index] != null
+        plan.generated[plan.getSlot('count').index] != null
+        plan.generated[plan.getSlot('total').index] != null
+        plan.generated[plan.getSlot('location').index] == null
+        plan.generated[plan.getSlot('tags').index] == null
+    }
+
+    void "Test entities are written and read with the generated engine"() {
+        given:"A reading"
+        def takenAt = new Date(1000)
+        def reading = new GeneratedCodecReading(sensor: 'a1', count: 3, total: 10L, average: 2.5d, active: true,
+                takenAt: takenAt, location: new GeneratedCodecLocation(name: 'Roof'), tags: ['x', 'y'])
+        reading.save(flush: true)
+        session.clear()
+
+        when:"The reading is read back"
+        reading = GeneratedCodecReading.get(reading.id)
+
+        then:"Each property is read"
+        reading.sensor == 'a1'
+        reading.count == 3
+        reading.total == 10L
+        reading.average == 2.5d
+        reading.active
+        reading.takenAt == takenAt
+        reading.location.name == 'Roof'
+        reading.tags == ['x', 'y']
+
+        and:"The document uses the mapped field names and BSON types"
+        Document document = GeneratedCodecReading.collection.find(new Document('_id', reading.id)).first()
+        document.getString('s') == 'a1'
+        document.get('count') instanceof Integer
+        document.get('total') instanceof Long
+    }
+
+    void "Test values stored with another type are converted"() {
+        given:"A document with a long stored as an int and a missing primitive"
+        def reading = new GeneratedCodecReading(sensor: 'b2', count: 1, total: 1L).save(flush: true)
+        GeneratedCodecReading.collection.updateOne(new Document('_id', reading.id), new Document('$set', new Document('total', 5)))
+        session.clear()
+
+        when:"The reading is read back"
+        reading = GeneratedCodecReading.get(reading.id)
+
+        then:"The value is converted by the regular decoder"
+        reading.total == 5L
+    }
+}
+
+@Entity
+class GeneratedCodecReading {
+    String id
+    String sensor
+    int count
+    Long total
+    double average
+    Boolean active
+    Date takenAt
+    GeneratedCodecLocation location
+    List<String> tags
+
+    static mapWith = "mongo"
+
+    static embedded = ['location']
+
+    static mapping = {
+        sensor attribute: 's'
+    }
+
+    static constraints = {
+        active nullable: true
+        takenAt nullable: true
+        location nullable: true
+        tags nullable: true
+    }
+}
+
+@Entity
+class GeneratedCodecLocation {
+    String name
+}
@@ -0,0 +1,90 @@
+package org.grails.datastore.gorm.mongo
+
+import grails.gorm.tests.GormDatastoreSpec
+import grails.persistence.Entity
+import org.bson.Document
+import org.grails.datastore.mapping.model.PersistentEntity
+
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+
+class HiLoIdentifierSpec extends GormDatastoreSpec {
+
+    @Override
+    List getDomainClasses() {
+        [HiLoPerson]
+    }
+
+    void "Test identifiers are allocated in blocks"() {
+        given:"No reserved identifiers"
+        mongoDatastore.hiLoIdentifierGenerator.clear()
+
+        when:"Entities are saved"
+        List<HiLoPerson> people = (1..25).collect { new HiLoPerson(name: "Person $it").save() }
+        session.flush()
+
+        then:"Identifiers are taken from blocks in order"
+        people*.id == (1L..25L).toList()
+        HiLoPerson.count() == 25
+
+        and:"The counter was only incremented once per block"
+        counter == 30L
+
+        when:"The blocks in memory are discarded"
+        mongoDatastore.hiLoIdentifierGenerator.clear()
+        def person = new HiLoPerson(name: "Another").save(flush: true)
+
+        then:"A new block is reserved"
+        person.id == 31L
+        counter == 40L
+    }
+
+    void "Test identifiers are unique when generated concurrently"() {
+        given:"No reserved identifiers"
+        mongoDatastore.hiLoIdentifierGenerator.clear()
+        PersistentEntity entity = session.mappingContext.getPersistentEntity(HiLoPerson.name)
+        def counters = session.getCollection(entity).namespace.with { ns ->
+            mongoDatastore.mongoClient.getDatabase(ns.databaseName).getCollection(ns.collectionName + ".next_id")
+        }
+        String collectionName = session.getCollectionName(entity)
+        ExecutorService executor = Executors.newFixedThreadPool(8)
+
+        when:"Identifiers are generated by many threads"
+        List<Future<List<Long>>> futures = (1..8).collect {
+            executor.submit({
+                (1..200).collect { mongoDatastore.hiLoIdentifierGenerator.nextId(counters, collectionName, 10) }
+            } as Callable<List<Long>>)
+        }
+        List<Long> ids = futures.collectMany { it.get() }
+
+        then:"No identifier is handed out twice"
+        ids.size() == 1600
+        ids.toSet().size() == 1600
+
+        and:"No reserved identifier was discarded"
+        ids.sort() == (1L..1600L).toList()
+        counter == 1600L
+
+        cleanup:
+        executor.shutdown()
+    }
+
+    private long getCounter() {
+        PersistentEntity entity = session.mappingContext.getPersistentEntity(HiLoPerson.name)
+        def ns = session.getCollection(entity).namespace
+        Document counter = mongoDatastore.mongoClient.getDatabase(ns.databaseName).getCollection(ns.collectionName + ".next_id").find().first()
+        return ((Number) counter.get("next_id")).longValue()
+    }
+}
+
+@Entity
+class HiLoPerson {
+    Long id
+    String name
+
+    static mapping = {
+        id generator: 'hilo', blockSize: 10
+    }
+}
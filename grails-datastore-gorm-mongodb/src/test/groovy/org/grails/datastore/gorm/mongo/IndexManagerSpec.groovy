@@ -0,0 +1,84 @@
+package org.grails.datastore.gorm.mongo
+
+import com.mongodb.client.MongoCollection
+import com.mongodb.client.model.IndexModel
+import grails.gorm.tests.GormDatastoreSpec
+import grails.persistence.Entity
+import org.bson.Document
+import org.bson.types.ObjectId
+import org.grails.datastore.mapping.model.PersistentEntity
+import org.grails.datastore.mapping.mongo.indexes.MongoIndexManager
+
+class IndexManagerSpec extends GormDatastoreSpec {
+
+    @Override
+    List getDomainClasses() {
+        [IndexedTicket, IndexedRunway]
+    }
+
+    void "Test only the missing indexes are created"() {
+        given:"The mapped indexes of an entity"
+        PersistentEntity entity = session.mappingContext.getPersistentEntity(IndexedTicket.name)
+        MongoCollection<Document> collection = mongoDatastore.getCollection(entity)
+        List<IndexModel> indexes = mongoDatastore.getIndexModels(entity)
+        MongoIndexManager indexManager = mongoDatastore.indexManager
+
+        expect:"The indexes were created on startup"
+        indexes.size() == 2
+        indexManager.getMissingIndexes(collection, indexes).isEmpty()
+
+        when:"An index is dropped"
+        collection.dropIndex(new Document('code', 1))
+
+        then:"Only that index is missing"
+        indexManager.getMissingIndexes(collection, indexes)*.keys == [new Document('code', 1)]
+
+        when:"The indexes are ensured"
+        indexManager.ensureIndexes([entity])
+
+        then:"The index is created again"
+        collection.listIndexes().collect { it.key }.contains(new Document('code', 1))
+        indexManager.getMissingIndexes(collection, indexes).isEmpty()
+    }
+
+    void "Test indexes of several collections are created in the background"() {
+        given:"Collections without their indexes"
+        List<PersistentEntity> entities = [IndexedTicket, IndexedRunway].collect { session.mappingContext.getPersistentEntity(it.name) }
+        for (PersistentEntity entity in entities) {
+            mongoDatastore.getCollection(entity).dropIndexes()
+        }
+        MongoIndexManager indexManager = new MongoIndexManager(mongoDatastore, 2, true)
+
+        when:"The indexes are ensured asynchronously"
+        indexManager.ensureIndexes(entities).get()
+
+        then:"Every collection is indexed"
+        entities.every { PersistentEntity entity ->
+            indexManager.getMissingIndexes(mongoDatastore.getCollection(entity), mongoDatastore.getIndexModels(entity)).isEmpty()
+        }
+        mongoDatastore.getCollection(entities[1]).listIndexes().find { it.key == new Document('length', -1) }.unique
+    }
+}
+
+@Entity
+class IndexedTicket {
+    ObjectId id
+    String code
+    String holder
+    String seat
+
+    static mapping = {
+        code index: true
+        compoundIndex holder: 1, seat: 1
+    }
+}
+
+@Entity
+class IndexedRunway {
+    ObjectId id
+    Integer length
+
+    static mapping = {
+        index([length: -1], [unique: true])
+    }
+}
@@ -0,0 +1,143 @@
+package org.grails.datastore.gorm.mongo
+
+import grails.gorm.tests.GormDatastoreSpec
+import grails.mongodb.MongoEntity
+import grails.persistence.Entity
+import org.bson.Document
+import org.bson.types.ObjectId
+import org.grails.datastore.mapping.mongo.query.MongoQuery
+
+class KeysetPaginationSpec extends GormDatastoreSpec {
+
+    @Override
+    List getDomainClasses() {
+        [AuditEntry, RankedEntry]
+    }
+
+    void "Test pages are read after the token of the previous page"() {
+        given:"Entries with duplicate sort values"
+        createEntries()
+        List<ObjectId> expected = AuditEntry.list().sort { AuditEntry a, AuditEntry b -> a.priority <=> b.priority ?: a.id <=> b.id }*.id
+        session.clear()
+
+        when:"Every page is read"
+        List<ObjectId> read = []
+        List<Integer> sizes = []
+        String token = null
+        MongoQuery.KeysetResultList<AuditEntry> page
+        while (true) {
+            page = AuditEntry.listAfter(token, [max: 3, sort: 'priority'])
+            read.addAll(page*.id)
+            sizes << page.size()
+            token = page.nextToken
+            if (token == null) break
+        }
+
+        then:"The entries are read once, in the order of the sort and identifier"
+        sizes == [3, 3, 1]
+        read == expected
+    }
+
+    void "Test compound sorts with criteria"() {
+        given:"Entries"
+        createEntries()
+        List<ObjectId> expected = AuditEntry.findAllByCategory('A')
+                                            .sort { AuditEntry a, AuditEntry b -> b.priority <=> a.priority ?: a.action <=> b.action ?: a.id <=> b.id }*.id
+        session.clear()
+
+        when:"The pages of a criteria query sorted by several properties are read"
+        def criteria = {
+            eq 'category', 'A'
+            order 'priority', 'desc'
+            order 'action'
+        }
+        MongoQuery.KeysetResultList<AuditEntry> first = AuditEntry.listAfter(null, [max: 2], criteria)
+        MongoQuery.KeysetResultList<AuditEntry> second = AuditEntry.listAfter(first.nextToken, [max: 2], criteria)
+        MongoQuery.KeysetResultList<AuditEntry> third = AuditEntry.listAfter(second.nextToken, [max: 2], criteria)
+
+        then:"The pages continue after each other"
+        (first*.id + second*.id + third*.id) == expected
+        third.nextToken == null
+
+        when:"A token is used with another sort"
+        AuditEntry.listAfter(first.nextToken, [max: 2, sort: 'action'])
+
+        then:"It is rejected"
+        thrown(IllegalArgumentException)
+
+        when:"An invalid token is used"
+        AuditEntry.listAfter('not a token', [max: 2])
+
+        then:"It is rejected"
+        thrown(IllegalArgumentException)
+    }
+
+    void "Test null sort values are paginated in the order of MongoDB"() {
+        given:"Entries where some sort values are null"
+        [3, null, 1, null, 2, null, 1].each { Integer rank ->
+            new RankedEntry(rank: rank).save()
+        }
+        session.flush()
+        List<RankedEntry> all = RankedEntry.list()
+        Comparator<RankedEntry> byRank = { RankedEntry a, RankedEntry b ->
+            (a.rank == null ? (b.rank == null ? 0 : -1) : (b.rank == null ? 1 : a.rank <=> b.rank))
+        } as Comparator<RankedEntry>
+        List<ObjectId> ascending = all.toSorted { RankedEntry a, RankedEntry b -> byRank.compare(a, b) ?: a.id <=> b.id }*.id
+        List<ObjectId> descending = all.toSorted { RankedEntry a, RankedEntry b -> byRank.compare(b, a) ?: b.id <=> a.id }*.id
+        session.clear()
+
+        expect:"Every entry is read once in either direction"
+        readAll([sort: 'rank', order: 'asc']) == ascending
+        readAll([sort: 'rank', order: 'desc']) == descending
+    }
+
+    void "Test the filter of a token with null values"() {
+        expect:"Null values are matched with the null first order of MongoDB"
+        new MongoQuery.KeysetToken(new Document('rank', 1).append('_id', 1), [null, 5]).toFilter() ==
+                new Document('$or', [new Document('rank', new Document('$ne', null)),
+                                     new Document('rank', null).append('_id', new Document('$gt', 5))])
+        new MongoQuery.KeysetToken(new Document('rank', -1).append('_id', -1), [null, 5]).toFilter() ==
+                new Document('rank', null).append('_id', new Document('$lt', 5))
+        new MongoQuery.KeysetToken(new Document('rank', -1).append('_id', -1), [2, 5]).toFilter() ==
+                new Document('$or', [new Document('$or', [new Document('rank', new Document('$lt', 2)), new Document('rank', null)]),
+                                     new Document('rank', 2).append('_id', new Document('$lt', 5))])
+    }
+
+    private List<ObjectId> readAll(Map arguments) {
+        List<ObjectId> read = []
+        String token = null
+        while (true) {
+            MongoQuery.KeysetResultList<RankedEntry> page = RankedEntry.listAfter(token, [max: 2] + arguments)
+            read.addAll(page*.id)
+            token = page.nextToken
+            if (token == null) break
+        }
+        read
+    }
+
+    private void createEntries() {
+        [['A', 2, 'login'], ['B', 1, 'login'], ['A', 2, 'delete'], ['A', 1, 'update'],
+         ['B', 2, 'update'], ['A', 3, 'login'], ['A', 1, 'update']].each { List values ->
+            new AuditEntry(category: values[0], priority: values[1], action: values[2]).save()
+        }
+        session.flush()
+    }
+}
+
+@Entity
+class AuditEntry implements MongoEntity<AuditEntry> {
+    ObjectId id
+    String category
+    Integer priority
+    String action
+}
+
+@Entity
+class RankedEntry implements MongoEntity<RankedEntry> {
+    ObjectId id
+    Integer rank
+
+    static constraints = {
+        rank nullable: true
+    }
+}
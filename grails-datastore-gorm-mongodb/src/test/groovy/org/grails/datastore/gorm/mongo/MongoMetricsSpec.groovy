@@ -0,0 +1,135 @@
+package org.grails.datastore.gorm.mongo
+
+import com.mongodb.client.MongoClient
+import grails.gorm.tests.GormDatastoreSpec
+import grails.persistence.Entity
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.bson.Document
+import org.bson.types.ObjectId
+import org.grails.datastore.mapping.core.connections.ConnectionSource
+import org.grails.datastore.mapping.model.PersistentEntity
+import org.grails.datastore.mapping.mongo.connections.MongoConnectionSourceFactory
+import org.grails.datastore.mapping.mongo.connections.MongoConnectionSourceSettings
+import org.grails.datastore.mapping.mongo.metrics.MongoCommandMetricsListener
+import org.grails.datastore.mapping.mongo.metrics.MongoConnectionPoolMetricsListener
+import org.grails.datastore.mapping.mongo.metrics.MongoMetricsCustomizer
+import org.reactivestreams.Publisher
+import org.reactivestreams.Subscriber
+import org.reactivestreams.Subscription
+
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.TimeUnit
+
+class MongoMetricsSpec extends GormDatastoreSpec {
+
+    @Override
+    List getDomainClasses() {
+        [MeteredInvoice]
+    }
+
+    void "Test commands and connection pools of a connection source are instrumented"() {
+        given:"A connection source created with the metrics customizer"
+        SimpleMeterRegistry registry = new SimpleMeterRegistry()
+        MongoMetricsCustomizer customizer = new MongoMetricsCustomizer(registry)
+        customizer.registerEntities(mongoDatastore)
+        MongoConnectionSourceFactory factory = new MongoConnectionSourceFactory(customizers: [customizer])
+        ConnectionSource<MongoClient, MongoConnectionSourceSettings> connectionSource = factory.create(ConnectionSource.DEFAULT, mongoDatastore.connectionSources.defaultConnectionSource.settings)
+
+        PersistentEntity entity = session.mappingContext.getPersistentEntity(MeteredInvoice.name)
+        String databaseName = mongoDatastore.getDatabaseName(entity)
+        String collectionName = mongoDatastore.getCollectionName(entity)
+
+        when:"Commands are sent"
+        def collection = connectionSource.source.getDatabase(databaseName).getCollection(collectionName)
+        collection.insertOne(new Document('number', 1))
+        collection.find().first()
+
+        then:"The commands are timed and tagged with the collection and entity"
+        def timer = registry.find(MongoCommandMetricsListener.METRIC_NAME)
+                            .tags('command', 'find',
+                                  'status', 'SUCCESS',
+                                  'connectionSource', ConnectionSource.DEFAULT,
+                                  'database', databaseName,
+                                  'collection', collectionName,
+                                  'entity', MeteredInvoice.name)
+                            .timer()
+        timer != null
+        timer.count() == 1L
+        registry.find(MongoCommandMetricsListener.METRIC_NAME).tags('command', 'insert', 'entity', MeteredInvoice.name).timer().count() == 1L
+
+        and:"The connection pool is published"
+        registry.find(MongoConnectionPoolMetricsListener.WAIT_METRIC_NAME).tags('connectionSource', ConnectionSource.DEFAULT).timer().count() > 0L
+        registry.find(MongoConnectionPoolMetricsListener.SIZE_METRIC_NAME).gauge().value() >= 1d
+        registry.find(MongoConnectionPoolMetricsListener.CHECKED_OUT_METRIC_NAME).gauge().value() == 0d
+
+        cleanup:
+        connectionSource?.close()
+    }
+
+    void "Test the reactive client of a connection source is instrumented"() {
+        given:"A connection source and its reactive client created with the metrics customizer"
+        SimpleMeterRegistry registry = new SimpleMeterRegistry()
+        MongoMetricsCustomizer customizer = new MongoMetricsCustomizer(registry)
+        customizer.registerEntities(mongoDatastore)
+        MongoConnectionSourceFactory factory = new MongoConnectionSourceFactory(customizers: [customizer])
+        ConnectionSource<MongoClient, MongoConnectionSourceSettings> connectionSource = factory.create(ConnectionSource.DEFAULT, mongoDatastore.connectionSources.defaultConnectionSource.settings)
+        com.mongodb.reactivestreams.client.MongoClient reactiveClient = factory.createReactiveClient(connectionSource)
+
+        PersistentEntity entity = session.mappingContext.getPersistentEntity(MeteredInvoice.name)
+        String databaseName = mongoDatastore.getDatabaseName(entity)
+        String collectionName = mongoDatastore.getCollectionName(entity)
+
+        when:"Commands are sent by both clients"
+        connectionSource.source.getDatabase(databaseName).getCollection(collectionName).insertOne(new Document('number', 1))
+        await(reactiveClient.getDatabase(databaseName).getCollection(collectionName).find().first())
+
+        then:"The commands of the reactive client are timed"
+        registry.find(MongoCommandMetricsListener.METRIC_NAME).tags('command', 'find', 'entity', MeteredInvoice.name).timer().count() == 1L
+
+        and:"The pools of both clients are published together"
+        registry.find(MongoConnectionPoolMetricsListener.SIZE_METRIC_NAME).gauges().size() == 1
+        registry.find(MongoConnectionPoolMetricsListener.SIZE_METRIC_NAME).gauge().value() >= 2d
+
+        when:"The reactive client is closed"
+        reactiveClient.close()
+        reactiveClient = null
+
+        then:"The gauges of the remaining pool are still published"
+        registry.find(MongoConnectionPoolMetricsListener.SIZE_METRIC_NAME).gauge() != null
+
+        cleanup:
+        reactiveClient?.close()
+        connectionSource?.close()
+    }
+
+    private static void await(Publisher<?> publisher) {
+        CompletableFuture<Object> future = new CompletableFuture<>()
+        publisher.subscribe(new Subscriber<Object>() {
+            @Override
+            void onSubscribe(Subscription subscription) {
+                subscription.request(Long.MAX_VALUE)
+            }
+
+            @Override
+            void onNext(Object item) {
+            }
+
+            @Override
+            void onError(Throwable throwable) {
+                future.completeExceptionally(throwable)
+            }
+
+            @Override
+            void onComplete() {
+                future.complete(null)
+            }
+        })
+        future.get(10, TimeUnit.SECONDS)
+    }
+}
+
+@Entity
+class MeteredInvoice {
+    ObjectId id
+    Integer number
+}
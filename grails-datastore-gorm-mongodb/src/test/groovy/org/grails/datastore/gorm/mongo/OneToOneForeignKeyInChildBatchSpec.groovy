@@ -0,0 +1,105 @@
+package org.grails.datastore.gorm.mongo
+
+import grails.gorm.tests.GormDatastoreSpec
+import grails.persistence.Entity
+
+class OneToOneForeignKeyInChildBatchSpec extends GormDatastoreSpec {
+
+    @Override
+    List getDomainClasses() {
+        [BatchCitizen, BatchPassport, PlainCitizen, PlainPassport]
+    }
+
+    void "Test one-to-one associations with the foreign key in the child are resolved when listing parents"() {
+        given:"Some parents, most of which have a child"
+        (1..5).each { int i ->
+            def citizen = new BatchCitizen(name: "Citizen $i")
+            if (i != 3) {
+                citizen.passport = new BatchPassport(number: "P$i")
+            }
+            citizen.save()
+        }
+        session.flush()
+        session.clear()
+
+        when:"The parents are listed"
+        commands.clear()
+        def citizens = BatchCitizen.list(sort: 'name')
+
+        then:"Each parent is associated with its own child"
+        citizens.size() == 5
+        citizens.findAll { it.passport != null }.size() == 4
+        citizens.every { it.passport == null || it.passport.number == "P${it.name - 'Citizen '}" }
+        citizens.find { it.name == 'Citizen 3' }.passport == null
+
+        and:"The children are found with a single aggregation and loaded with a single query"
+        commands.count('aggregate', collectionName(BatchPassport)) == 1
+        commands.count('find', collectionName(BatchPassport)) == 1
+    }
+
+    void "Test one-to-one associations that are not batch fetched are resolved per parent"() {
+        given:"Some parents with a child"
+        (1..3).each { int i ->
+            new PlainCitizen(name: "Citizen $i", passport: new PlainPassport(number: "P$i")).save()
+        }
+        session.flush()
+        session.clear()
+
+        when:"The parents are listed"
+        commands.clear()
+        def citizens = PlainCitizen.list(sort: 'name')
+
+        then:"The child of each parent is looked up with its own query"
+        citizens*.passport*.number == ['P1', 'P2', 'P3']
+        commands.count('aggregate', collectionName(PlainPassport)) == 0
+        commands.count('find', collectionName(PlainPassport)) >= 3
+    }
+
+    private String collectionName(Class type) {
+        mongoDatastore.getCollectionName(session.mappingContext.getPersistentEntity(type.name))
+    }
+}
+
+@Entity
+class BatchCitizen {
+    String id
+    String name
+    BatchPassport passport
+
+    static hasOne = [passport: BatchPassport]
+
+    static mapping = {
+        passport fetch: 'batch'
+    }
+
+    static constraints = {
+        passport nullable: true
+    }
+}
+
+@Entity
+class BatchPassport {
+    String id
+    String number
+    BatchCitizen citizen
+
+    static belongsTo = [citizen: BatchCitizen]
+}
+
+@Entity
+class PlainCitizen {
+    String id
+    String name
+    PlainPassport passport
+
+    static hasOne = [passport: PlainPassport]
+}
+
+@Entity
+class PlainPassport {
+    String id
+    String number
+    PlainCitizen citizen
+
+    static belongsTo = [citizen: PlainCitizen]
+}
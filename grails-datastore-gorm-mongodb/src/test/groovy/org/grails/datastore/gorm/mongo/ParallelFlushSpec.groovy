@@ -0,0 +1,152 @@
+package org.grails.datastore.gorm.mongo
+
+import grails.gorm.tests.GormDatastoreSpec
+import com.mongodb.MongoBulkWriteException
+import grails.persistence.Entity
+import org.grails.datastore.mapping.core.OptimisticLockingException
+import org.grails.datastore.mapping.mongo.MongoCodecSession
+import org.grails.datastore.mapping.mongo.config.MongoFlushStrategy
+import org.grails.datastore.mapping.mongo.config.MongoSettings
+
+import jakarta.persistence.FlushModeType
+
+class ParallelFlushSpec extends GormDatastoreSpec {
+
+    @Override
+    Map getConfiguration() {
+        [(MongoSettings.SETTING_FLUSH_STRATEGY): MongoFlushStrategy.PARALLEL.name(),
+         (MongoSettings.SETTING_FLUSH_CONCURRENCY): 2]
+    }
+
+    @Override
+    List getDomainClasses() {
+        [ParallelFlushAuthor, ParallelFlushBook, ParallelFlushCounter, ParallelFlushTag]
+    }
+
+    void "Test the flush strategy is read from configuration"() {
+        expect:
+        mongoDatastore.flushStrategy == MongoFlushStrategy.PARALLEL
+        ((MongoCodecSession) session).flushStrategy == MongoFlushStrategy.PARALLEL
+    }
+
+    void "Test inserts, updates and deletes across collections are flushed"() {
+        when:"Entities of several types are saved"
+        def authors = (1..5).collect { new ParallelFlushAuthor(name: "Author $it").save() }
+        (1..5).each { new ParallelFlushBook(title: "Book $it").save() }
+        session.flush()
+        session.clear()
+
+        then:"They are all written"
+        ParallelFlushAuthor.count() == 5
+        ParallelFlushBook.count() == 5
+
+        when:"Entities of several types are updated and deleted in the same flush"
+        ParallelFlushAuthor.get(authors[0].id).name = "Updated"
+        ParallelFlushAuthor.get(authors[1].id).delete()
+        ParallelFlushBook.findByTitle("Book 1").delete()
+        new ParallelFlushBook(title: "Book 6").save()
+        session.flush()
+        session.clear()
+
+        then:"All of the writes are applied"
+        ParallelFlushAuthor.count() == 4
+        ParallelFlushAuthor.countByName("Updated") == 1
+        ParallelFlushBook.count() == 5
+        ParallelFlushBook.findByTitle("Book 6")
+    }
+
+    void "Test an optimistic locking exception is thrown when flushing in parallel"() {
+        given:"A counter and a book"
+        ParallelFlushCounter counter = new ParallelFlushCounter(counter: 0).save(flush: true)
+        session.clear()
+
+        when:"The counter is concurrently updated"
+        counter = ParallelFlushCounter.get(counter.id)
+        Thread.start {
+            ParallelFlushCounter.withNewSession {
+                ParallelFlushCounter other = ParallelFlushCounter.get(counter.id)
+                other.counter++
+                other.save(flush: true)
+            }
+        }.join()
+        counter.counter = 2
+        counter.save()
+        new ParallelFlushBook(title: "Another Book").save()
+        session.flush()
+
+        then:"An optimistic locking exception is thrown"
+        thrown(OptimisticLockingException)
+        session.flushMode == FlushModeType.COMMIT
+    }
+
+    void "Test the failure of the first bulk write is reported when several writes fail"() {
+        given:"A tag and a counter"
+        new ParallelFlushTag(name: "groovy").save(flush: true)
+        ParallelFlushCounter counter = new ParallelFlushCounter(counter: 0).save(flush: true)
+        session.clear()
+
+        when:"The counter is concurrently updated and a duplicate tag is inserted in the same flush"
+        counter = ParallelFlushCounter.get(counter.id)
+        Thread.start {
+            ParallelFlushCounter.withNewSession {
+                ParallelFlushCounter other = ParallelFlushCounter.get(counter.id)
+                other.counter++
+                other.save(flush: true)
+            }
+        }.join()
+        counter.counter = 2
+        counter.save()
+        new ParallelFlushTag(name: "groovy").insert()
+        session.flush()
+
+        then:"The failure of the inserts, which are written first, is reported rather than the optimistic locking failure"
+        thrown(MongoBulkWriteException)
+    }
+
+    void "Test the flush strategy can be changed for a session"() {
+        given:"A session that flushes unordered writes serially"
+        ((MongoCodecSession) session).flushStrategy = MongoFlushStrategy.UNORDERED
+
+        when:"An entity is saved and deleted in the same flush"
+        def author = new ParallelFlushAuthor(name: "Fred").save()
+        new ParallelFlushBook(title: "Flintstones").save()
+        session.flush()
+        author.delete()
+        new ParallelFlushAuthor(name: "Barney").save()
+        session.flush()
+        session.clear()
+
+        then:"The writes are applied"
+        ParallelFlushAuthor.count() == 1
+        ParallelFlushAuthor.countByName("Barney") == 1
+        ParallelFlushBook.count() == 1
+    }
+}
+
+@Entity
+class ParallelFlushAuthor {
+    String id
+    String name
+}
+
+@Entity
+class ParallelFlushBook {
+    String id
+    String title
+}
+
+@Entity
+class ParallelFlushCounter {
+    Long id
+    Long version
+    int counter
+}
+
+@Entity
+class ParallelFlushTag {
+    String name
+
+    static mapping = {
+        id name: 'name', generator: 'assigned'
+    }
+}
@@ -0,0 +1,121 @@
+package org.grails.datastore.gorm.mongo
+
+import grails.gorm.tests.GormDatastoreSpec
+import grails.persistence.Entity
+import org.bson.Document
+import org.bson.types.ObjectId
+import org.grails.datastore.mapping.mongo.query.MongoQuery
+
+class ProjectionPlanSpec extends GormDatastoreSpec {
+
+    @Override
+    List getDomainClasses() {
+        [PlannedCity, PlannedCountry]
+    }
+
+    void "Test the cheapest command is planned for each projection"() {
+        expect:
+        plan { q -> q.projections().property('name') } == 'FIND'
+        plan { q -> q.projections().id().property('population') } == 'FIND'
+        plan { q -> q.projections().count() } == 'COUNT'
+        plan { q -> q.projections().distinct('region') } == 'DISTINCT'
+        plan { q -> q.max(2); q.projections().distinct('region') } == 'AGGREGATE'
+        plan { q -> q.projections().distinct('tags') } == 'AGGREGATE'
+        plan { q -> q.projections().sum('population') } == 'AGGREGATE'
+        plan { q -> q.projections().property('name').count() } == 'AGGREGATE'
+    }
+
+    void "Test property projections are executed with a sorted find"() {
+        given:"Some cities"
+        createCities()
+
+        when:"Properties are projected"
+        List names = PlannedCity.withCriteria {
+            projections {
+                property 'name'
+            }
+            order 'population', 'desc'
+        }
+        List rows = PlannedCity.withCriteria {
+            projections {
+                property 'name'
+                property 'country'
+            }
+            eq 'region', 'North'
+            order 'name'
+            maxResults 2
+        }
+
+        then:"The values are returned in order"
+        names == ['Oslo', 'Helsinki', 'Bergen', 'Tampere', 'Turku']
+        rows.size() == 2
+        rows*.getAt(0) == ['Bergen', 'Helsinki']
+        rows*.getAt(1)*.name == ['Norway', 'Finland']
+    }
+
+    void "Test count and distinct projections"() {
+        given:"Some cities"
+        createCities()
+
+        expect:"Counts are returned with or without criteria"
+        PlannedCity.count() == 5
+        PlannedCity.countByRegion('North') == 3
+        PlannedCity.withCriteria {
+            projections { count() }
+            maxResults 2
+        } == [2]
+
+        and:"Distinct values are returned"
+        PlannedCity.withCriteria {
+            projections { distinct 'region' }
+        }.sort() == ['North', 'South']
+        PlannedCity.withCriteria {
+            projections { distinct 'region' }
+            eq 'name', 'Turku'
+        } == ['South']
+
+        and:"Grouping projections still aggregate"
+        PlannedCity.withCriteria {
+            projections { sum 'population' }
+        } == [2_030_000]
+    }
+
+    void "Test a count of an empty collection"() {
+        expect:
+        PlannedCity.count() == 0
+        PlannedCity.withCriteria { projections { count() } } == [0]
+    }
+
+    private String plan(Closure configurer) {
+        MongoQuery query = (MongoQuery) session.createQuery(PlannedCity)
+        configurer.call(query)
+        return query.planProjections(query.entity, new Document(), query.projections().projectionList).name()
+    }
+
+    private void createCities() {
+        def norway = new PlannedCountry(name: 'Norway').save()
+        def finland = new PlannedCountry(name: 'Finland').save()
+        new PlannedCity(name: 'Oslo', region: 'North', population: 700_000, country: norway).save()
+        new PlannedCity(name: 'Bergen', region: 'North', population: 290_000, country: norway).save()
+        new PlannedCity(name: 'Helsinki', region: 'North', population: 660_000, country: finland).save()
+        new PlannedCity(name: 'Tampere', region: 'South', population: 240_000, country: finland).save()
+        new PlannedCity(name: 'Turku', region: 'South', population: 140_000, country: finland).save(flush: true)
+        session.clear()
+    }
+}
+
+@Entity
+class PlannedCity {
+    ObjectId id
+    String name
+    String region
+    Integer population
+    List<String> tags = []
+    PlannedCountry country
+}
+
+@Entity
+class PlannedCountry {
+    ObjectId id
+    String name
+}
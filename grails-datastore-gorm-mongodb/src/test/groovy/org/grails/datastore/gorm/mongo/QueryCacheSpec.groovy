@@ -0,0 +1,155 @@
+package org.grails.datastore.gorm.mongo
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats
+import com.mongodb.ReadConcern
+import grails.gorm.tests.GormDatastoreSpec
+import grails.persistence.Entity
+import org.bson.Document
+import org.grails.datastore.mapping.mongo.cache.QueryResultCache
+
+class QueryCacheSpec extends GormDatastoreSpec {
+
+    @Override
+    List getDomainClasses() {
+        [CachedQueryBook]
+    }
+
+    void "Test query results are cached when the cache argument is used"() {
+        given:"Some books"
+        createBooks()
+        CacheStats before = stats
+
+        when:"The same query is executed twice in different sessions"
+        def first = CachedQueryBook.findAllByStatus('ACTIVE', [sort: 'title', max: 2, cache: true])
+        session.clear()
+        def second = CachedQueryBook.findAllByStatus('ACTIVE', [sort: 'title', max: 2, cache: true])
+        CacheStats delta = stats.minus(before)
+
+        then:"The second query is served from the cache in the same order"
+        first*.title == ['A', 'B']
+        second*.title == ['A', 'B']
+        delta.hitCount() == 1
+        delta.missCount() == 1
+    }
+
+    void "Test queries without the cache argument are not cached"() {
+        given:"Some books"
+        createBooks()
+        CacheStats before = stats
+
+        when:"A query is executed without the cache argument"
+        CachedQueryBook.findAllByStatus('ACTIVE')
+        CachedQueryBook.findAllByStatus('ACTIVE')
+
+        then:"The cache is not used"
+        stats.minus(before).requestCount() == 0
+    }
+
+    void "Test different pagination is cached separately"() {
+        given:"Some books"
+        createBooks()
+
+        when:"The same query is executed with different offsets"
+        def page1 = CachedQueryBook.findAllByStatus('ACTIVE', [sort: 'title', max: 1, cache: true])
+        def page2 = CachedQueryBook.findAllByStatus('ACTIVE', [sort: 'title', max: 1, offset: 1, cache: true])
+
+        then:"The results are different"
+        page1*.title == ['A']
+        page2*.title == ['B']
+    }
+
+    void "Test the collation, hint and read concern are part of the key"() {
+        given:"Some books and a cached query"
+        createBooks()
+        CachedQueryBook.findAllByStatus('active', [cache: true])
+        CacheStats before = stats
+
+        when:"The query is executed with a case insensitive collation"
+        List<CachedQueryBook> books = CachedQueryBook.findAllByStatus('active', [cache: true, collation: [locale: 'en', strength: 2]])
+
+        then:"The results of the query without a collation are not served"
+        books.size() == 3
+        stats.minus(before).missCount() == 1
+
+        when:"The query is executed with a hint and with a read concern"
+        session.clear()
+        int withHint = CachedQueryBook.findAllByStatus('ACTIVE', [cache: true, hint: '_id_']).size()
+        int withReadConcern = CachedQueryBook.findAllByStatus('ACTIVE', [cache: true, hint: '_id_', readConcern: ReadConcern.LOCAL]).size()
+        CacheStats delta = stats.minus(before)
+
+        then:"Each is cached separately"
+        withHint == 3
+        withReadConcern == 3
+        delta.missCount() == 3
+        delta.hitCount() == 0
+    }
+
+    void "Test cached results are invalidated when the collection is flushed"() {
+        given:"Some books and a cached query"
+        createBooks()
+        CachedQueryBook.findAllByStatus('ACTIVE', [cache: true])
+
+        when:"A matching book is saved"
+        new CachedQueryBook(title: 'D', status: 'ACTIVE').save(flush: true)
+        session.clear()
+
+        then:"The new book is found"
+        CachedQueryBook.findAllByStatus('ACTIVE', [cache: true]).size() == 4
+
+        when:"Books are updated with a query"
+        CachedQueryBook.where { title == 'A' }.updateAll(status: 'RETIRED')
+        session.clear()
+
+        then:"The update is visible"
+        CachedQueryBook.findAllByStatus('ACTIVE', [cache: true]).size() == 3
+
+        when:"Books are deleted with a query"
+        CachedQueryBook.where { title == 'B' }.deleteAll()
+        session.clear()
+
+        then:"The delete is visible"
+        CachedQueryBook.findAllByStatus('ACTIVE', [cache: true]).size() == 2
+    }
+
+    void "Test the generations of namespaces are bounded and never reused"() {
+        given:"A small cache with an entry"
+        QueryResultCache cache = new QueryResultCache(2, null)
+        QueryResultCache.Key key = cache.createKey('test.books', 'Book', new Document('status', 'ACTIVE'), null, 0, 10, mongoDatastore.codecRegistry)
+        cache.put(key, ['1', '2'])
+
+        when:"Many other namespaces are queried"
+        (1..100).each { cache.createKey("test.other$it", 'Other', new Document(), null, 0, 10, mongoDatastore.codecRegistry) }
+
+        then:"The number of generations held is bounded"
+        cache.generationCount <= 2
+
+
+        when:"The generation of a namespace with a cached entry is evicted"
+        cache.put(key, ['1', '2'])
+        cache.generations.invalidate('test.books')
+
+        then:"Its previous entries are not served"
+        cache.get(cache.createKey('test.books', 'Book', new Document('status', 'ACTIVE'), null, 0, 10, mongoDatastore.codecRegistry)) == null
+    }
+
+    private void createBooks() {
+        // collections are dropped between tests without going through a session
+        mongoDatastore.queryResultCache.invalidateAll()
+        new CachedQueryBook(title: 'C', status: 'ACTIVE').save()
+        new CachedQueryBook(title: 'A', status: 'ACTIVE').save()
+        new CachedQueryBook(title: 'B', status: 'ACTIVE').save()
+        new CachedQueryBook(title: 'Z', status: 'DRAFT').save(flush: true)
+        session.clear()
+    }
+
+    private CacheStats getStats() {
+        mongoDatastore.queryResultCache.stats
+    }
+}
+
+@Entity
+class CachedQueryBook {
+    String id
+    String title
+    String status
+}
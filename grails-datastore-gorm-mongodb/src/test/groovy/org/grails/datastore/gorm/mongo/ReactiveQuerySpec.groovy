@@ -0,0 +1,184 @@
+package org.grails.datastore.gorm.mongo
+
+import com.mongodb.client.MongoClient
+import com.mongodb.client.MongoClients
+import grails.gorm.tests.GormDatastoreSpec
+import grails.mongodb.MongoEntity
+import grails.persistence.Entity
+import org.bson.types.ObjectId
+import org.grails.datastore.mapping.mongo.MongoDatastore
+import org.reactivestreams.Publisher
+import org.reactivestreams.Subscriber
+import org.reactivestreams.Subscription
+
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.TimeUnit
+
+class ReactiveQuerySpec extends GormDatastoreSpec {
+
+    @Override
+    List getDomainClasses() {
+        [ReactiveTitle]
+    }
+
+    void "Test criteria queries and dynamic finders return publishers"() {
+        given:"Some titles"
+        createTitles()
+
+        when:"Titles are queried reactively"
+        List<ReactiveTitle> byCriteria = await(ReactiveTitle.reactive.find(sort: 'pages', order: 'desc', max: 2) {
+            gt 'pages', 100
+        })
+        List<ReactiveTitle> byFinder = await(ReactiveTitle.reactive.findAllByGenre('fantasy', [sort: 'pages']))
+        List<ReactiveTitle> single = await(ReactiveTitle.reactive.findByName('Dune'))
+
+        then:"The entities are decoded"
+        byCriteria*.name == ['Dune', 'The Hobbit']
+        byFinder*.name == ['The Hobbit', 'Dune']
+        single*.name == ['Dune']
+        single[0].id != null
+    }
+
+    void "Test aggregate and search return publishers"() {
+        given:"Some titles"
+        createTitles()
+
+        when:"An aggregation and a search are run reactively"
+        List<ReactiveTitle> aggregated = await(ReactiveTitle.reactive.aggregate([[$match: [genre: 'fantasy']], [$sort: [pages: 1]]]))
+        List<ReactiveTitle> found = await(ReactiveTitle.reactive.search('hobbit'))
+
+        then:"The results are decoded"
+        aggregated*.name == ['The Hobbit', 'Dune']
+        found*.name == ['The Hobbit']
+    }
+
+    void "Test a session is flushed without blocking"() {
+        given:"Unflushed changes"
+        new ReactiveTitle(name: 'Emma', genre: 'classic', pages: 320).save()
+        new ReactiveTitle(name: 'Persuasion', genre: 'classic', pages: 250).save()
+
+        when:"The session is flushed reactively"
+        Publisher<Void> flush = ReactiveTitle.reactive.flush()
+
+        then:"Nothing is written until the publisher is subscribed to"
+        ReactiveTitle.collection.countDocuments() == 0
+
+        when:"The publisher is subscribed to"
+        await(flush)
+
+        then:"The writes are sent"
+        ReactiveTitle.collection.countDocuments() == 2
+    }
+
+    void "Test operations that follow a flush do not run on a thread of the driver"() {
+        given:"Unflushed changes and an operation to run after the flush"
+        new ReactiveTitle(name: 'Emma', genre: 'classic', pages: 320).save()
+        String threadName = null
+        boolean sessionBound = false
+        session.addPostFlushOperation({
+            threadName = Thread.currentThread().name
+            sessionBound = mongoDatastore.hasCurrentSession()
+        } as Runnable)
+
+        when:"The session is flushed reactively"
+        await(ReactiveTitle.reactive.flush())
+
+        then:"The operation ran on the reactive flush executor with the session bound"
+        threadName.startsWith('gorm-mongodb-reactive-flush-')
+        sessionBound
+    }
+
+    void "Test documents are not decoded on a thread of the driver"() {
+        given:"Some titles"
+        createTitles()
+
+        when:"Titles are queried reactively"
+        List<ReactiveTitle> titles = await(ReactiveTitle.reactive.findAllByGenre('fantasy', [sort: 'pages']))
+
+        then:"They were decoded and loaded on the reactive flush executor, in order"
+        titles*.name == ['The Hobbit', 'Dune']
+        titles.every { ReactiveTitle title -> title.loadedOn.startsWith('gorm-mongodb-reactive-flush-') }
+    }
+
+    void "Test the reactive client is created with the customizers of the connection source"() {
+        given:"Some titles"
+        createTitles()
+        commands.clear()
+
+        when:"Titles are queried reactively"
+        await(ReactiveTitle.reactive.findAllByGenre('fantasy'))
+
+        then:"The commands of the reactive client are seen by the customizers"
+        commands.count('find', mongoDatastore.getCollectionName(session.mappingContext.getPersistentEntity(ReactiveTitle.name))) == 1
+    }
+
+    void "Test a reactive client cannot be created for a supplied client"() {
+        given:"A datastore for a supplied client"
+        MongoClient client = MongoClients.create()
+        MongoDatastore datastore = new MongoDatastore(client)
+
+        when:"The reactive client is obtained"
+        datastore.reactiveMongoClient
+
+        then:"An exception is thrown as the settings of the client are unknown"
+        def e = thrown(IllegalStateException)
+        e.message.contains('supplying a MongoClient')
+
+        cleanup:
+        datastore?.close()
+        client?.close()
+    }
+
+    private void createTitles() {
+        new ReactiveTitle(name: 'Dune', genre: 'fantasy', pages: 412).save()
+        new ReactiveTitle(name: 'The Hobbit', genre: 'fantasy', pages: 310).save()
+        new ReactiveTitle(name: 'Emma', genre: 'classic', pages: 90).save(flush: true)
+        session.clear()
+    }
+
+    private static <T> List<T> await(Publisher<T> publisher) {
+        List<T> results = Collections.synchronizedList([])
+        CompletableFuture<List<T>> future = new CompletableFuture<>()
+        publisher.subscribe(new Subscriber<T>() {
+            @Override
+            void onSubscribe(Subscription subscription) {
+                subscription.request(Long.MAX_VALUE)
+            }
+
+            @Override
+            void onNext(T item) {
+                results.add(item)
+            }
+
+            @Override
+            void onError(Throwable throwable) {
+                future.completeExceptionally(throwable)
+            }
+
+            @Override
+            void onComplete() {
+                future.complete(results)
+            }
+        })
+        return future.get(10, TimeUnit.SECONDS)
+    }
+}
+
+@Entity
+class ReactiveTitle implements MongoEntity<ReactiveTitle> {
+    ObjectId id
+    String name
+    String genre
+    Integer pages
+    String loadedOn
+
+    static transients = ['loadedOn']
+
+    def afterLoad() {
+        loadedOn = Thread.currentThread().name
+    }
+
+    static mapping = {
+        index name: "text"
+    }
+}
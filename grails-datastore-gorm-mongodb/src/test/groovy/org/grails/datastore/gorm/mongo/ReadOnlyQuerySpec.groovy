@@ -0,0 +1,110 @@
+package org.grails.datastore.gorm.mongo
+
+import grails.gorm.tests.GormDatastoreSpec
+import grails.persistence.Entity
+import org.springframework.transaction.support.DefaultTransactionDefinition
+import org.springframework.transaction.support.TransactionTemplate
+
+class ReadOnlyQuerySpec extends GormDatastoreSpec {
+
+    @Override
+    List getDomainClasses() {
+        [ReadOnlyArticle]
+    }
+
+    void "Test read-only queries return detached instances"() {
+        given:"Some articles"
+        createArticles()
+
+        when:"The articles are queried with the readOnly argument"
+        List<ReadOnlyArticle> articles = ReadOnlyArticle.findAllByPublished(true, [readOnly: true, sort: 'title'])
+        ReadOnlyArticle single = ReadOnlyArticle.findByTitle('Alpha', [readOnly: true])
+
+        then:"The instances are not cached in the session"
+        articles*.title == ['Alpha', 'Beta']
+        articles.every { !session.contains(it) }
+        single.title == 'Alpha'
+        !session.contains(single)
+
+        when:"The articles are queried without the argument"
+        articles = ReadOnlyArticle.findAllByPublished(true, [sort: 'title'])
+
+        then:"The instances are cached"
+        articles.every { session.contains(it) }
+    }
+
+    void "Test read-only queries do not flush the session"() {
+        given:"An unflushed article"
+        createArticles()
+        new ReadOnlyArticle(title: 'Gamma', published: true).save()
+
+        when:"A read-only query is executed"
+        int readOnlyCount = ReadOnlyArticle.findAllByPublished(true, [readOnly: true]).size()
+
+        then:"The pending insert was not flushed"
+        readOnlyCount == 2
+
+        when:"A regular query is executed"
+        int count = ReadOnlyArticle.findAllByPublished(true).size()
+
+        then:"The session is flushed first"
+        count == 3
+    }
+
+    void "Test queries of a read-only session are read-only"() {
+        given:"Some articles"
+        createArticles()
+
+        when:"The session is read-only"
+        session.readOnly = true
+        List<ReadOnlyArticle> articles = ReadOnlyArticle.findAllByPublished(true)
+
+        then:"The instances are detached"
+        articles.size() == 2
+        articles.every { !session.contains(it) }
+
+        when:"A query is run within a read-only transaction"
+        session.readOnly = false
+        def definition = new DefaultTransactionDefinition()
+        definition.readOnly = true
+        articles = (List<ReadOnlyArticle>) new TransactionTemplate(mongoDatastore.transactionManager, definition).execute {
+            ReadOnlyArticle.findAllByPublished(true)
+        }
+
+        then:"The instances are cached as read-only transactions are not detached by default"
+        !mongoDatastore.detachReadOnlyTransactions
+        articles.size() == 2
+        articles.every { session.contains(it) }
+
+        cleanup:
+        session.readOnly = false
+    }
+
+    void "Test cached results of a read-only query are detached"() {
+        given:"Some articles and a cached query"
+        createArticles()
+        mongoDatastore.queryResultCache.invalidateAll()
+        ReadOnlyArticle.findAllByPublished(true, [cache: true, readOnly: true])
+
+        when:"The query is served from the cache"
+        List<ReadOnlyArticle> articles = ReadOnlyArticle.findAllByPublished(true, [cache: true, readOnly: true])
+
+        then:"The instances are not cached in the session"
+        articles.size() == 2
+        articles.every { !session.contains(it) }
+    }
+
+    private void createArticles() {
+        new ReadOnlyArticle(title: 'Alpha', published: true).save()
+        new ReadOnlyArticle(title: 'Beta', published: true).save()
+        new ReadOnlyArticle(title: 'Draft', published: false).save(flush: true)
+        session.clear()
+    }
+}
+
+@Entity
+class ReadOnlyArticle {
+    String id
+    String title
+    boolean published
+}
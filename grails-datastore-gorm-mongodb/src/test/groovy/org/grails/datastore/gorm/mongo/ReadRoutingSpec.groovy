@@ -0,0 +1,115 @@
+package org.grails.datastore.gorm.mongo
+
+import com.mongodb.ReadPreference
+import com.mongodb.Tag
+import com.mongodb.TagSet
+import com.mongodb.client.ClientSession
+import grails.gorm.tests.GormDatastoreSpec
+import grails.mongodb.MongoEntity
+import grails.persistence.Entity
+import org.bson.types.ObjectId
+import org.grails.datastore.mapping.mongo.AbstractMongoSession
+import org.grails.datastore.mapping.mongo.config.MongoSettings
+import org.grails.datastore.mapping.mongo.connections.AbstractMongoConnectionSourceSettings
+import org.grails.datastore.mapping.mongo.query.MongoQuery
+
+class ReadRoutingSpec extends GormDatastoreSpec {
+
+    @Override
+    Map getConfiguration() {
+        [(MongoSettings.SETTING_READ_ROUTING_ENABLED): true]
+    }
+
+    @Override
+    List getDomainClasses() {
+        [RoutedBook]
+    }
+
+    void "Test the queries of a read-only session are routed to secondaries"() {
+        given:"Some books"
+        createBooks()
+
+        expect:"Queries of a regular session stay on the primary"
+        ((AbstractMongoSession) session).getRoutedReadPreference(false) == null
+        mongoDatastore.readOnlyReadPreference == ReadPreference.secondaryPreferred()
+
+        when:"Books are queried in a read-only session"
+        ReadPreference readPreference
+        ClientSession clientSession
+        List<String> titles = RoutedBook.withNewSession(readOnly: true) { AbstractMongoSession readOnlySession ->
+            readPreference = readOnlySession.getRoutedReadPreference(readOnlySession.readOnly)
+            clientSession = readOnlySession.getReadClientSession(true)
+            RoutedBook.findAllByPagesGreaterThan(100, [sort: 'title'])*.title
+        }
+
+        then:"The queries are routed within a causally consistent client session"
+        titles == ['Dune', 'Emma']
+        readPreference == ReadPreference.secondaryPreferred()
+        clientSession.causallyConsistent
+
+        when:"The server session of the client session is obtained once the session has ended"
+        clientSession.serverSession
+
+        then:"The client session was closed"
+        thrown(IllegalStateException)
+    }
+
+    void "Test reads stay on the primary once the session has written"() {
+        given:"Some books"
+        createBooks()
+
+        when:"A read-only session writes"
+        ReadPreference beforeFlush
+        ReadPreference afterFlush
+        int count = RoutedBook.withNewSession(readOnly: true) { AbstractMongoSession readOnlySession ->
+            new RoutedBook(title: 'Ulysses', pages: 730).save()
+            beforeFlush = readOnlySession.getRoutedReadPreference(true)
+            readOnlySession.flush()
+            afterFlush = readOnlySession.getRoutedReadPreference(true)
+            RoutedBook.count()
+        }
+
+        then:"Its queries read the writes from the primary"
+        beforeFlush == null
+        afterFlush == null
+        count == 4
+    }
+
+    void "Test the queries of a read-only transaction are routed"() {
+        given:"Some books"
+        createBooks()
+
+        when:"A query is created in a read-only transaction"
+        ReadPreference readPreference = RoutedBook.withTransaction(readOnly: true) {
+            MongoQuery query = (MongoQuery) session.datastore.currentSession.createQuery(RoutedBook)
+            ((AbstractMongoSession) session.datastore.currentSession).getRoutedReadPreference(query.isReadOnlyRead())
+        }
+
+        then:"It is routed"
+        readPreference == ReadPreference.secondaryPreferred()
+    }
+
+    void "Test the read preference of read-only queries is configurable"() {
+        expect:
+        new AbstractMongoConnectionSourceSettings.ReadRoutingSettings().toReadPreference() == null
+        new AbstractMongoConnectionSourceSettings.ReadRoutingSettings(enabled: true).toReadPreference() == ReadPreference.secondaryPreferred()
+        new AbstractMongoConnectionSourceSettings.ReadRoutingSettings(enabled: true, readPreference: 'nearest', tagSets: [[dc: 'east']]).toReadPreference() ==
+                ReadPreference.nearest(new TagSet(new Tag('dc', 'east')))
+        new AbstractMongoConnectionSourceSettings.ReadRoutingSettings(enabled: true, readPreference: 'primary').toReadPreference() == null
+        new AbstractMongoConnectionSourceSettings.ReadRoutingSettings(enabled: false).toReadPreference() == null
+    }
+
+    private void createBooks() {
+        new RoutedBook(title: 'Emma', pages: 474).save()
+        new RoutedBook(title: 'Dune', pages: 412).save()
+        new RoutedBook(title: 'Animal Farm', pages: 92).save(flush: true)
+        session.clear()
+    }
+}
+
+@Entity
+class RoutedBook implements MongoEntity<RoutedBook> {
+    ObjectId id
+    String title
+    Integer pages
+}
@@ -0,0 +1,72 @@
+package org.grails.datastore.gorm.mongo
+
+import grails.gorm.tests.GormDatastoreSpec
+import grails.persistence.Entity
+import org.bson.Document
+import org.bson.types.ObjectId
+import org.grails.datastore.mapping.collection.PersistentSet
+import org.grails.datastore.mapping.mongo.engine.codecs.PersistentEntityCodec
+import org.grails.datastore.mapping.mongo.engine.codecs.SessionCodecRegistry
+
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.TimeUnit
+
+class SessionCodecRegistrySpec extends GormDatastoreSpec {
+
+    @Override
+    List getDomainClasses() {
+        [SessionCodecAuthor, SessionCodecBook]
+    }
+
+    void "Test the codecs of a session are bound to the session"() {
+        when:"The codec of an entity is obtained from the session"
+        SessionCodecRegistry registry = (SessionCodecRegistry) session.codecRegistry
+        PersistentEntityCodec codec = (PersistentEntityCodec) registry.get(SessionCodecBook)
+
+        then:"The codec is bound to the session and reused"
+        registry.session.is(session)
+        codec.is(registry.get(SessionCodecBook))
+        !codec.is(mongoDatastore.getPersistentEntityCodec(SessionCodecBook))
+        PersistentEntityCodec.resolveSession(registry).is(session)
+    }
+
+    void "Test associations are decoded on a thread the session is not bound to"() {
+        given:"An author with books"
+        def author = new SessionCodecAuthor(name: "Austen")
+        author.addToBooks(new SessionCodecBook(title: "Emma"))
+        author.addToBooks(new SessionCodecBook(title: "Persuasion"))
+        author.save(flush: true)
+        session.clear()
+
+        Document authorDocument = session.getCollection(session.mappingContext.getPersistentEntity(SessionCodecAuthor.name)).find().first()
+        Document bookDocument = session.getCollection(session.mappingContext.getPersistentEntity(SessionCodecBook.name)).find(new Document('title', 'Emma')).first()
+
+        when:"The documents are decoded on another thread"
+        def current = session
+        SessionCodecAuthor decodedAuthor = CompletableFuture.supplyAsync({ current.decode(SessionCodecAuthor, authorDocument) }).get(10, TimeUnit.SECONDS)
+        SessionCodecBook decodedBook = CompletableFuture.supplyAsync({ current.decode(SessionCodecBook, bookDocument) }).get(10, TimeUnit.SECONDS)
+
+        then:"The associations are initialized with the session"
+        decodedAuthor.books instanceof PersistentSet
+        decodedAuthor.books*.title.sort() == ["Emma", "Persuasion"]
+        decodedBook.author.id == author.id
+        decodedBook.author.name == "Austen"
+    }
+}
+
+@Entity
+class SessionCodecAuthor {
+    ObjectId id
+    String name
+    Set<SessionCodecBook> books
+
+    static hasMany = [books: SessionCodecBook]
+}
+
+@Entity
+class SessionCodecBook {
+    ObjectId id
+    String title
+
+    static belongsTo = [author: SessionCodecAuthor]
+}
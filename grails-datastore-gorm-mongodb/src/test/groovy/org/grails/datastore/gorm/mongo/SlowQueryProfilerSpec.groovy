@@ -0,0 +1,126 @@
+package org.grails.datastore.gorm.mongo
+
+import grails.gorm.tests.GormDatastoreSpec
+import grails.mongodb.MongoEntity
+import grails.persistence.Entity
+import org.bson.Document
+import org.bson.types.ObjectId
+import org.grails.datastore.mapping.mongo.config.MongoSettings
+import org.grails.datastore.mapping.mongo.profiling.SlowQuery
+import org.grails.datastore.mapping.mongo.profiling.SlowQueryProfiler
+
+class SlowQueryProfilerSpec extends GormDatastoreSpec {
+
+    @Override
+    Map getConfiguration() {
+        [(MongoSettings.SETTING_PROFILING_SLOW_QUERY_THRESHOLD): 0,
+         (MongoSettings.SETTING_PROFILING_BUFFER_SIZE): 5]
+    }
+
+    @Override
+    List getDomainClasses() {
+        [ProfiledOrder]
+    }
+
+    void "Test slow queries are explained"() {
+        given:"Some orders"
+        SlowQueryProfiler profiler = mongoDatastore.slowQueryProfiler
+        createOrders()
+        profiler.clear()
+
+        when:"A finder is executed on a property without an index"
+        ProfiledOrder.findAllByCustomer('Ann')
+        SlowQuery slowQuery = profiler.slowQueries.last()
+
+        then:"The query is recorded as a collection scan"
+        slowQuery.operation == SlowQueryProfiler.FIND
+        ((Document) slowQuery.command).customer == 'Ann'
+        slowQuery.explained
+        slowQuery.collectionScan
+        !slowQuery.covered
+        slowQuery.docsExamined == 6L
+        slowQuery.docsReturned == 2L
+
+        when:"An aggregation is executed"
+        ProfiledOrder.aggregate([['$match': [customer: 'Bob']]])
+        slowQuery = profiler.slowQueries.last()
+
+        then:"The aggregation is recorded"
+        slowQuery.operation == SlowQueryProfiler.AGGREGATE
+        slowQuery.explained
+    }
+
+    void "Test projections are recorded as the command that ran them"() {
+        given:"Some orders"
+        SlowQueryProfiler profiler = mongoDatastore.slowQueryProfiler
+        createOrders()
+        profiler.clear()
+
+        when:"A count projection is executed"
+        ProfiledOrder.countByCustomer('Ann')
+        SlowQuery slowQuery = profiler.slowQueries.last()
+
+        then:"It is recorded as a count, which is not explained"
+        slowQuery.operation == SlowQueryProfiler.COUNT
+        ((Document) slowQuery.command).customer == 'Ann'
+        !slowQuery.explained
+
+        when:"A distinct projection is executed"
+        ProfiledOrder.withCriteria { projections { distinct 'customer' } }
+        slowQuery = profiler.slowQueries.last()
+
+        then:"It is recorded as a distinct, which is not explained"
+        slowQuery.operation == SlowQueryProfiler.DISTINCT
+        ((Document) slowQuery.command).key == 'customer'
+        !slowQuery.explained
+
+        when:"A projection run as an aggregation is executed"
+        ProfiledOrder.withCriteria {
+            eq 'customer', 'Bob'
+            projections { sum 'total' }
+        }
+        slowQuery = profiler.slowQueries.last()
+
+        then:"It is recorded and explained as the aggregation"
+        slowQuery.operation == SlowQueryProfiler.AGGREGATE
+        ((Document) slowQuery.command).getList('pipeline', Document).first().containsKey('$match')
+        slowQuery.explained
+    }
+
+    void "Test flush bulk writes are recorded and the buffer is bounded"() {
+        given:"The profiler"
+        SlowQueryProfiler profiler = mongoDatastore.slowQueryProfiler
+        profiler.clear()
+
+        when:"The session is flushed"
+        createOrders()
+
+        then:"The bulk write is recorded without an explain"
+        SlowQuery slowQuery = profiler.slowQueries.find { it.operation == SlowQueryProfiler.BULK_WRITE }
+        slowQuery != null
+        !slowQuery.explained
+        ((Document) slowQuery.command).writes == 6
+
+        when:"More operations are executed than the buffer holds"
+        8.times { ProfiledOrder.findAllByCustomer('Ann') }
+
+        then:"Only the most recent operations are kept"
+        profiler.slowQueries.size() == 5
+        profiler.slowQueries.every { it.operation == SlowQueryProfiler.FIND }
+    }
+
+    private void createOrders() {
+        ['Ann', 'Bob', 'Ann', 'Cid', 'Bob', 'Dee'].eachWithIndex { String customer, int i ->
+            new ProfiledOrder(customer: customer, total: i * 10).save()
+        }
+        session.flush()
+        session.clear()
+    }
+}
+
+@Entity
+class ProfiledOrder implements MongoEntity<ProfiledOrder> {
+    ObjectId id
+    String customer
+    Integer total
+}
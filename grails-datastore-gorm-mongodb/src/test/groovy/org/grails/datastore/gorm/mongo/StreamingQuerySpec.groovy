@@ -0,0 +1,178 @@
+package org.grails.datastore.gorm.mongo
+
+import grails.gorm.DetachedCriteria
+import grails.gorm.tests.GormDatastoreSpec
+import grails.mongodb.MongoEntity
+import grails.persistence.Entity
+import org.bson.types.ObjectId
+
+import java.util.stream.Collectors
+import java.util.stream.Stream
+
+class StreamingQuerySpec extends GormDatastoreSpec {
+
+    @Override
+    List getDomainClasses() {
+        [StreamedTask, StreamedProject, StreamedOwner]
+    }
+
+    void "Test criteria queries are streamed without caching instances"() {
+        given:"Some tasks"
+        createTasks()
+
+        when:"The open tasks are streamed in small batches"
+        List<StreamedTask> tasks
+        Stream<StreamedTask> stream = StreamedTask.stream(batchSize: 5, sort: 'priority') { eq 'status', 'OPEN' }
+        try {
+            tasks = stream.collect(Collectors.toList())
+        } finally {
+            stream.close()
+        }
+
+        then:"All the matching tasks are read in order"
+        tasks.size() == 20
+        tasks*.priority == (1..30).findAll { it % 3 != 0 }
+
+        and:"The instances are not cached in the session"
+        tasks.every { !session.contains(it) }
+    }
+
+    void "Test detached criteria and query arguments are applied"() {
+        given:"Some tasks"
+        createTasks()
+        def criteria = new DetachedCriteria<StreamedTask>(StreamedTask).build {
+            eq 'status', 'DONE'
+        }
+
+        when:"The done tasks are streamed"
+        List<Integer> priorities
+        Stream<StreamedTask> stream = StreamedTask.stream(criteria, [sort: 'priority', order: 'desc', max: 3, offset: 1])
+        try {
+            priorities = stream.map { StreamedTask task -> task.priority }.collect(Collectors.toList())
+        } finally {
+            stream.close()
+        }
+
+        then:"The pagination and sort are applied"
+        priorities == [27, 24, 21]
+    }
+
+    void "Test pending changes are flushed before streaming"() {
+        given:"Unflushed tasks"
+        createTasks()
+        new StreamedTask(status: 'OPEN', priority: 31).save()
+        StreamedTask.findByPriority(1).status = 'DONE'
+
+        when:"The open tasks are streamed"
+        List<Integer> priorities
+        Stream<StreamedTask> stream = StreamedTask.stream(sort: 'priority') { eq 'status', 'OPEN' }
+        try {
+            priorities = stream.map { StreamedTask task -> task.priority }.collect(Collectors.toList())
+        } finally {
+            stream.close()
+        }
+
+        then:"The pending changes are visible"
+        priorities.size() == 20
+        !priorities.contains(1)
+        priorities.contains(31)
+    }
+
+    void "Test batch fetched associations of streamed instances are not cached in the session"() {
+        given:"Some projects with owners"
+        createProjects()
+
+        when:"The projects are streamed"
+        List<StreamedProject> projects
+        Stream<StreamedProject> stream = StreamedProject.stream(sort: 'name') { isNotNull 'owner' }
+        try {
+            projects = stream.collect(Collectors.toList())
+        } finally {
+            stream.close()
+        }
+
+        then:"The owners are loaded and the post load event is fired"
+        projects.size() == 12
+        projects.every { it.owner.name.startsWith('Owner') && !session.mappingContext.proxyFactory.isProxy(it.owner) }
+        projects.every { it.loaded && it.owner.loaded }
+
+        and:"Neither the projects nor their owners are cached in the session"
+        projects.every { !session.contains(it) && !session.contains(it.owner) }
+        session.getCachedInstance(StreamedOwner, projects[0].owner.id) == null
+    }
+
+    void "Test no post load event is fired for read-only streams"() {
+        given:"Some projects with owners"
+        createProjects()
+
+        when:"The projects are streamed read-only"
+        List<StreamedProject> projects
+        Stream<StreamedProject> stream = StreamedProject.stream(readOnly: true) { isNotNull 'owner' }
+        try {
+            projects = stream.collect(Collectors.toList())
+        } finally {
+            stream.close()
+        }
+
+        then:"The instances are loaded but no post load event is fired"
+        projects.size() == 12
+        projects.every { it.owner.name.startsWith('Owner') }
+        projects.every { !it.loaded && !it.owner.loaded }
+        projects.every { !session.contains(it) && !session.contains(it.owner) }
+    }
+
+    private void createProjects() {
+        List<StreamedOwner> owners = (1..4).collect { new StreamedOwner(name: "Owner $it").save() }
+        for (int i in 1..12) {
+            new StreamedProject(name: String.format('Project %02d', i), owner: owners[i % 4]).save()
+        }
+        session.flush()
+        session.clear()
+    }
+
+    private void createTasks() {
+        for (int i in 1..30) {
+            new StreamedTask(status: i % 3 == 0 ? 'DONE' : 'OPEN', priority: i).save()
+        }
+        session.flush()
+        session.clear()
+    }
+}
+
+@Entity
+class StreamedTask implements MongoEntity<StreamedTask> {
+    ObjectId id
+    String status
+    Integer priority
+}
+
+@Entity
+class StreamedProject implements MongoEntity<StreamedProject> {
+    ObjectId id
+    String name
+    StreamedOwner owner
+    boolean loaded
+
+    static transients = ['loaded']
+
+    static mapping = {
+        owner fetch: 'batch', batchSize: 5
+    }
+
+    def afterLoad() {
+        loaded = true
+    }
+}
+
+@Entity
+class StreamedOwner {
+    ObjectId id
+    String name
+    boolean loaded
+
+    static transients = ['loaded']
+
+    def afterLoad() {
+        loaded = true
+    }
+}
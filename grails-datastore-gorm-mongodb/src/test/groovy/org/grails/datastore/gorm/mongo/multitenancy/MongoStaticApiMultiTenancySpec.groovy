@@ -250,6 +250,28 @@ class MongoStaticApiMultiTenancySpec extends Specification {
         result.size() == 1
     }
 
+    void "test listAfter"() {
+        setup: "drop existing database"
+        Book.DB.drop()
+        datastore.buildIndex()
+
+        when: "set tenantId, and create books for two tenants"
+        System.setProperty(SystemPropertyTenantResolver.PROPERTY_NAME, "mix")
+        createBook("Making Java Groovy")
+        System.setProperty(SystemPropertyTenantResolver.PROPERTY_NAME, "grails")
+        createBooks()
+
+        and: "page through the books of one tenant"
+        def firstPage = Book.listAfter(null, [max: 4, sort: "title"])
+        def secondPage = Book.listAfter(firstPage.nextToken, [max: 4, sort: "title"])
+
+        then: "only the books of the tenant are read"
+        firstPage.size() == 4
+        secondPage.size() == 3
+        secondPage.nextToken == null
+        (firstPage + secondPage).every { it.tenantId == "grails" }
+    }
+
     List getDomainClasses() {
         [Book]
     }